@@ -0,0 +1,148 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Plain HTTP client of the load tests, timing every request it makes.
+ *
+ * @since 0.0.6
+ */
+public class BenchmarkClient
+{
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final TypeReference<Map<String, String>> STRING_MAP = new TypeReference<Map<String, String>>() { };
+
+  private final String authorization;
+
+  private final Timer requests = new Timer(new UniformReservoir(100_000));
+
+  private final LongAdder bytesReceived = new LongAdder();
+
+  private final LongAdder bytesSent = new LongAdder();
+
+  /**
+   * @param username for basic authentication, none if null
+   */
+  public BenchmarkClient(@Nullable final String username, @Nullable final String password) {
+    this.authorization = username == null ? null :
+        "Basic " + Base64.getEncoder().encodeToString((username + ":" + (password == null ? "" : password))
+            .getBytes(UTF_8));
+  }
+
+  /**
+   * Parses {@code key=value} program arguments.
+   */
+  public static Map<String, String> options(final String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (equals < 0) {
+        throw new IllegalArgumentException("Expected key=value but got " + arg);
+      }
+      options.put(arg.substring(0, equals), arg.substring(equals + 1));
+    }
+    return options;
+  }
+
+  public byte[] get(final String url) throws IOException {
+    return request("GET", url, null);
+  }
+
+  public byte[] put(final String url, final byte[] body) throws IOException {
+    return request("PUT", url, body);
+  }
+
+  public byte[] post(final String url, final byte[] body) throws IOException {
+    return request("POST", url, body);
+  }
+
+  public Map<String, String> getJson(final String url) throws IOException {
+    return MAPPER.readValue(get(url), STRING_MAP);
+  }
+
+  public Map<String, String> postJson(final String url, final Map<String, String> body) throws IOException {
+    return MAPPER.readValue(post(url, MAPPER.writeValueAsBytes(body)), STRING_MAP);
+  }
+
+  public Timer getRequests() {
+    return requests;
+  }
+
+  public long getBytesReceived() {
+    return bytesReceived.sum();
+  }
+
+  public long getBytesSent() {
+    return bytesSent.sum();
+  }
+
+  public static String latency(final Snapshot snapshot) {
+    return String.format("p50 %.1fms, p99 %.1fms, max %.1fms", snapshot.getMedian() / 1e6,
+        snapshot.get99thPercentile() / 1e6, snapshot.getMax() / 1e6);
+  }
+
+  private byte[] request(final String method, final String url, @Nullable final byte[] body) throws IOException {
+    long start = System.nanoTime();
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setRequestMethod(method);
+    if (authorization != null) {
+      connection.setRequestProperty("Authorization", authorization);
+    }
+    try {
+      if (body != null) {
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(body);
+        }
+        bytesSent.add(body.length);
+      }
+      int status = connection.getResponseCode();
+      if (status / 100 != 2) {
+        throw new IOException(method + " " + url + " answered " + status);
+      }
+      try (InputStream in = connection.getInputStream()) {
+        byte[] answer = ByteStreams.toByteArray(in);
+        bytesReceived.add(answer.length);
+        requests.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return answer;
+      }
+    }
+    finally {
+      connection.disconnect();
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Matcher;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Route;
+
+import com.google.common.io.ByteStreams;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Inputs for the benchmarks, built from the test resources and scaled up to the sizes seen in large repositories.
+ */
+public final class BenchmarkData
+{
+  private static final String RESOURCES = "/org/sonatype/repository/conan/internal/metadata/";
+
+  public static final String REPOSITORY_URL = "http://localhost:8081/repository/conan-proxy";
+
+  public static final String REMOTE_PREFIX =
+      "https://api.bintray.com/conan/conan/conan-center/v1/files/vthiery/jsonformoderncpp/2.1.1/stable/export/";
+
+  private BenchmarkData() {
+  }
+
+  public static byte[] resource(final String name) {
+    try (InputStream in = BenchmarkData.class.getResourceAsStream(RESOURCES + name)) {
+      if (in == null) {
+        throw new IllegalStateException("Missing test resource " + name);
+      }
+      return ByteStreams.toByteArray(in);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * conaninfo.txt with {@code scale} extra options and full_options entries.
+   */
+  public static byte[] conanInfo(final int scale) {
+    String info = new String(resource("conaninfo.txt"), UTF_8);
+    StringBuilder options = new StringBuilder();
+    for (int i = 0; i < scale; i++) {
+      options.append("    option_").append(i).append("=value_").append(i).append('\n');
+    }
+    return info
+        .replace("[options]\n", "[options]\n" + options)
+        .replace("[full_options]\n", "[full_options]\n" + options)
+        .getBytes(UTF_8);
+  }
+
+  /**
+   * conanmanifest.txt listing {@code scale} files besides the recipe.
+   */
+  public static byte[] conanManifest(final int scale) {
+    StringBuilder manifest = new StringBuilder(new String(resource("conanmanifest.txt"), UTF_8).trim()).append('\n');
+    for (int i = 0; i < scale; i++) {
+      manifest.append("include/nlohmann/detail/file_").append(i).append(".hpp: ")
+          .append(String.format("%032x", i * 2654435761L)).append('\n');
+    }
+    return manifest.toString().getBytes(UTF_8);
+  }
+
+  /**
+   * The file names listed by {@link #downloadUrls(int)} and {@link #uploadUrls(int)}.
+   */
+  public static List<String> fileNames(final int scale) {
+    List<String> names = new ArrayList<>();
+    names.add("conanmanifest.txt");
+    names.add("conanfile.py");
+    for (int i = 0; i < scale; i++) {
+      names.add("file_" + i + ".tgz");
+    }
+    return names;
+  }
+
+  /**
+   * download_urls json with absolute remote urls for {@code scale} files besides the manifest and recipe.
+   */
+  public static byte[] downloadUrls(final int scale) {
+    StringBuilder json = new StringBuilder("{\n");
+    List<String> names = fileNames(scale);
+    for (int i = 0; i < names.size(); i++) {
+      json.append("  \"").append(names.get(i)).append("\" : \"").append(REMOTE_PREFIX).append(names.get(i)).append('"')
+          .append(i < names.size() - 1 ? ",\n" : "\n");
+    }
+    return json.append('}').toString().getBytes(UTF_8);
+  }
+
+  /**
+   * upload_urls request json, mapping each file to its size.
+   */
+  public static byte[] uploadUrls(final int scale) {
+    StringBuilder json = new StringBuilder("{");
+    List<String> names = fileNames(scale);
+    for (int i = 0; i < names.size(); i++) {
+      json.append('"').append(names.get(i)).append("\":\"").append(1000 + i * 37).append('"')
+          .append(i < names.size() - 1 ? "," : "");
+    }
+    return json.append('}').toString().getBytes(UTF_8);
+  }
+
+  /**
+   * A repository answering only {@link Repository#getName()} and {@link Repository#getUrl()}, cheap enough to be
+   * called from measured code unlike a mock.
+   */
+  public static Repository repository(final String name) {
+    return (Repository) Proxy.newProxyInstance(Repository.class.getClassLoader(), new Class<?>[]{Repository.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getName":
+              return name;
+            case "getUrl":
+              return REPOSITORY_URL;
+            case "toString":
+              return name;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  public static Context context(final Repository repository, final String action, final String path) {
+    return new Context(repository, new Request.Builder().action(action).path(path).build());
+  }
+
+  public static Matcher matcher(final Route.Builder builder) {
+    return builder.handler(context -> null).create().getMatcher();
+  }
+}
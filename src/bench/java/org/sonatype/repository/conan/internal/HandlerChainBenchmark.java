@@ -0,0 +1,146 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.http.HttpHandlers;
+import org.sonatype.nexus.repository.http.HttpResponses;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.Route;
+import org.sonatype.nexus.repository.view.Router;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+import org.sonatype.repository.conan.internal.metadata.ConanCoords;
+import org.sonatype.repository.conan.internal.proxy.ConanProxyHelper;
+import org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher;
+import org.sonatype.repository.conan.internal.route.ConanRouteIndex.IndexedMatcher;
+
+import groovy.lang.Closure;
+import org.codehaus.groovy.runtime.DefaultGroovyMethods;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.DIGEST;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.GROUP;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.PROJECT;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.STATE;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.VERSION;
+
+/**
+ * Dispatch of a proxy conan_package.tgz request through its route, up to the point where the facet would fetch the
+ * asset: matching, setting the asset kind, and deriving the coordinates, asset path and spec as the handler, facet and
+ * url indexer each do. Run with {@code -prof gc} to compare the bytes allocated per request.
+ *
+ * The legacy benchmark reproduces the routes before the route index: sequential token matchers, a curried Groovy
+ * closure setting the asset kind, and coordinates parsed from the matcher state and formatted on every use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandlerChainBenchmark
+{
+  private static final String PATH =
+      "/vthiery/jsonformoderncpp/2.1.1/stable/packages/5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9/conan_package.tgz";
+
+  private static final Response OK = HttpResponses.ok();
+
+  private Repository repository;
+
+  private Request request;
+
+  private Router current;
+
+  private Router legacy;
+
+  @Setup
+  public void setUp() {
+    repository = BenchmarkData.repository("conan-proxy");
+    request = new Request.Builder().action("GET").path(PATH).build();
+
+    Route.Builder route = new ConanMatcher().conanPackage();
+    current = router(new Route.Builder()
+        .matcher(route.handler(context -> null).create().getMatcher())
+        .handler(AssetKindHandler.assetKind(AssetKind.CONAN_PACKAGE))
+        .handler(HandlerChainBenchmark::currentFacet)
+        .create());
+
+    Closure<Response> assetKindHandler = new Closure<Response>(null)
+    {
+      @SuppressWarnings("unused")
+      public Response doCall(final Context context, final AssetKind value) throws Exception {
+        context.getAttributes().set(AssetKind.class, value);
+        return context.proceed();
+      }
+    };
+    legacy = router(new Route.Builder()
+        .matcher(((IndexedMatcher) new ConanMatcher().conanPackage().handler(context -> null).create().getMatcher())
+            .getSequentialMatcher())
+        .handler(DefaultGroovyMethods.asType(assetKindHandler.rcurry(AssetKind.CONAN_PACKAGE), Handler.class))
+        .handler(HandlerChainBenchmark::legacyFacet)
+        .create());
+  }
+
+  @Benchmark
+  public Response current() throws Exception {
+    return current.dispatch(repository, request, null);
+  }
+
+  @Benchmark
+  public Response legacy() throws Exception {
+    return legacy.dispatch(repository, request, null);
+  }
+
+  private static Router router(final Route route) {
+    return new Router.Builder().route(route).defaultHandlers(HttpHandlers.notFound()).create();
+  }
+
+  private static Response currentFacet(final Context context) {
+    String assetPath = null;
+    String spec = null;
+    for (int i = 0; i < 3; i++) {
+      assetPath = ConanProxyHelper.buildAssetPath(context);
+      spec = ConanCoords.getSpec(ConanCoords.fromContext(context));
+    }
+    return assetPath.length() > spec.length() ? OK : null;
+  }
+
+  private static Response legacyFacet(final Context context) {
+    String assetPath = null;
+    String spec = null;
+    for (int i = 0; i < 3; i++) {
+      TokenMatcher.State state = context.getAttributes().require(TokenMatcher.State.class);
+      String sha = state.getTokens().get(DIGEST);
+      assetPath = String.format("%s/%s/%s/%s%s", state.getTokens().get(GROUP), state.getTokens().get(PROJECT),
+          state.getTokens().get(VERSION), state.getTokens().get(STATE), sha == null ? "" : "/packages/" + sha)
+          + "/" + context.getAttributes().require(AssetKind.class).getFilename();
+      spec = String.format("%s/%s@%s/%s", state.getTokens().get(PROJECT), state.getTokens().get(VERSION),
+          state.getTokens().get(GROUP), state.getTokens().get(STATE));
+    }
+    return assetPath.length() > spec.length() ? OK : null;
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.hosted;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+import org.sonatype.repository.conan.internal.BenchmarkClient;
+
+import static org.sonatype.repository.conan.internal.BenchmarkClient.latency;
+
+/**
+ * Populates a Conan hosted repository with a {@link SyntheticDataset} in growing steps, measuring after each step
+ * the upload throughput and the latency of search and searchUrl, so that scaling cliffs show before a release.
+ *
+ * Options are given as {@code key=value} arguments:
+ *
+ * <ul>
+ * <li>{@code repositoryUrl} url of the hosted repository, required</li>
+ * <li>{@code username}, {@code password} of a user allowed to upload, default admin/admin123</li>
+ * <li>{@code steps} recipe counts N to measure at, default 100,1000,10000</li>
+ * <li>{@code from} recipes already uploaded by an earlier run, default 0</li>
+ * <li>{@code versions} M versions of each recipe, default 3</li>
+ * <li>{@code binaries} K binaries of each version, default 4</li>
+ * <li>{@code exportBytes}, {@code packageBytes} archive sizes, default 4 KiB and 64 KiB</li>
+ * <li>{@code clients} concurrent uploads and queries, default 8</li>
+ * <li>{@code queries} of each kind per step, default 200</li>
+ * </ul>
+ *
+ * @since 0.0.6
+ */
+public final class HostedScalingBenchmark
+{
+  private final String repositoryUrl;
+
+  private final String username;
+
+  private final String password;
+
+  private final SyntheticDataset dataset;
+
+  private final int versions;
+
+  private final int binaries;
+
+  private final int clients;
+
+  private HostedScalingBenchmark(final Map<String, String> options) {
+    this.repositoryUrl = options.get("repositoryUrl");
+    if (repositoryUrl == null) {
+      throw new IllegalArgumentException("repositoryUrl of a Conan hosted repository is required");
+    }
+    this.username = options.getOrDefault("username", "admin");
+    this.password = options.getOrDefault("password", "admin123");
+    this.dataset = new SyntheticDataset(Integer.parseInt(options.getOrDefault("exportBytes", "4096")),
+        Integer.parseInt(options.getOrDefault("packageBytes", "65536")));
+    this.versions = Integer.parseInt(options.getOrDefault("versions", "3"));
+    this.binaries = Integer.parseInt(options.getOrDefault("binaries", "4"));
+    this.clients = Integer.parseInt(options.getOrDefault("clients", "8"));
+  }
+
+  public static void main(final String[] args) throws Exception {
+    Map<String, String> options = BenchmarkClient.options(args);
+    HostedScalingBenchmark benchmark = new HostedScalingBenchmark(options);
+    int queries = Integer.parseInt(options.getOrDefault("queries", "200"));
+
+    int recipes = Integer.parseInt(options.getOrDefault("from", "0"));
+    for (String step : options.getOrDefault("steps", "100,1000,10000").split(",")) {
+      int target = Integer.parseInt(step.trim());
+      if (target > recipes) {
+        benchmark.upload(recipes, target);
+        recipes = target;
+      }
+      benchmark.query(recipes, queries);
+    }
+  }
+
+  private void upload(final int from, final int to) throws InterruptedException {
+    BenchmarkClient client = newClient();
+    LongAdder failures = new LongAdder();
+    long elapsed = run(to - from, index -> {
+      int recipe = from + index;
+      for (int version = 0; version < versions; version++) {
+        try {
+          uploadRecipe(client, recipe, version);
+        }
+        catch (IOException e) {
+          failures.increment();
+        }
+      }
+    });
+
+    double seconds = elapsed / 1e9;
+    int recipeVersions = (to - from) * versions;
+    System.out.printf("N=%d upload of %d recipe versions with %d binaries each in %.1fs, %d failed%n", to,
+        recipeVersions, binaries, seconds, failures.sum());
+    System.out.printf("  throughput %.1f recipe versions/s, %.1f requests/s, %.1f MiB/s%n", recipeVersions / seconds,
+        client.getRequests().getCount() / seconds, client.getBytesSent() / seconds / (1 << 20));
+    System.out.println("  request latency " + latency(client.getRequests().getSnapshot()));
+  }
+
+  /**
+   * Uploads a recipe version and its binaries the way the client does: upload_urls, then a PUT of each listed file.
+   */
+  private void uploadRecipe(final BenchmarkClient client, final int recipe, final int version) throws IOException {
+    String recipeUrl = repositoryUrl + "/v1/conans/" + SyntheticDataset.recipePath(recipe, version);
+    uploadFiles(client, recipeUrl + "/upload_urls", dataset.recipeFiles(recipe, version));
+    for (int binary = 0; binary < binaries; binary++) {
+      String packageUrl = recipeUrl + "/packages/" + SyntheticDataset.packageId(recipe, version, binary);
+      uploadFiles(client, packageUrl + "/upload_urls", dataset.packageFiles(recipe, version, binary));
+    }
+  }
+
+  private static void uploadFiles(final BenchmarkClient client,
+                                  final String uploadUrls,
+                                  final Map<String, byte[]> files) throws IOException
+  {
+    Map<String, String> sizes = new LinkedHashMap<>();
+    files.forEach((name, content) -> sizes.put(name, Integer.toString(content.length)));
+    Map<String, String> urls = client.postJson(uploadUrls, sizes);
+    for (Map.Entry<String, byte[]> file : files.entrySet()) {
+      String url = urls.get(file.getKey());
+      if (url == null) {
+        throw new IOException("No upload url for " + file.getKey() + " from " + uploadUrls);
+      }
+      client.put(url, file.getValue());
+    }
+  }
+
+  private void query(final int recipes, final int queries) throws InterruptedException {
+    BenchmarkClient search = newClient();
+    BenchmarkClient pattern = newClient();
+    BenchmarkClient searchUrl = newClient();
+    LongAdder failures = new LongAdder();
+    run(queries, index -> {
+      int recipe = ThreadLocalRandom.current().nextInt(recipes);
+      int version = ThreadLocalRandom.current().nextInt(versions);
+      try {
+        search.get(repositoryUrl + "/v1/conans/search?q=" + encode(SyntheticDataset.name(recipe)));
+        pattern.get(repositoryUrl + "/v1/conans/search?q=" + encode(SyntheticDataset.name(recipe) + "*"));
+        searchUrl.get(repositoryUrl + "/v1/conans/" + SyntheticDataset.recipePath(recipe, version) + "/search");
+      }
+      catch (IOException e) {
+        failures.increment();
+      }
+    });
+
+    System.out.printf("N=%d queries, %d failed%n", recipes, failures.sum());
+    System.out.println("  search name      " + latency(search.getRequests().getSnapshot()));
+    System.out.println("  search pattern   " + latency(pattern.getRequests().getSnapshot()));
+    System.out.println("  searchUrl        " + latency(searchUrl.getRequests().getSnapshot()));
+  }
+
+  private BenchmarkClient newClient() {
+    return new BenchmarkClient(username, password);
+  }
+
+  /**
+   * Runs {@code count} tasks on {@link #clients} threads.
+   *
+   * @return elapsed nanoseconds
+   */
+  private long run(final int count, final IntConsumer task) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(clients);
+    AtomicInteger next = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(clients);
+    long start = System.nanoTime();
+    for (int i = 0; i < clients; i++) {
+      executor.execute(() -> {
+        try {
+          for (int index = next.getAndIncrement(); index < count; index = next.getAndIncrement()) {
+            task.accept(index);
+          }
+        }
+        finally {
+          done.countDown();
+        }
+      });
+    }
+    done.await();
+    long elapsed = System.nanoTime() - start;
+    executor.shutdown();
+    return elapsed;
+  }
+
+  private static String encode(final String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
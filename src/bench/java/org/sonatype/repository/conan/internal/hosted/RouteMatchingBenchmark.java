@@ -0,0 +1,174 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.hosted;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Matcher;
+import org.sonatype.repository.conan.internal.BenchmarkData;
+import org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher;
+import org.sonatype.repository.conan.internal.route.ConanRouteIndex;
+import org.sonatype.repository.conan.internal.route.ConanRouteIndex.IndexedMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.DIGEST;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.GROUP;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.PROJECT;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.STATE;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.VERSION;
+
+/**
+ * Route matching of the hosted and proxy recipes. The routers try each route in the order they were configured, so
+ * the matchers are tried the same way, for requests matching early, late or none of the routes.
+ *
+ * The sequential benchmarks try the token matchers of each route in turn, the indexed ones use the
+ * {@link ConanRouteIndex} the recipes route with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteMatchingBenchmark
+{
+  private static final String GAV = "/v1/conans/{" + GROUP + "}/{" + PROJECT + "}/{" + VERSION + "}/{" + STATE + "}";
+
+  private static final String PACKAGES = "/packages/{" + DIGEST + "}";
+
+  private static final String SHA = "5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9";
+
+  @Param({
+      "POST /v1/conans/jsonformoderncpp/2.1.1/vthiery/stable/upload_urls",
+      "GET /v1/conans/vthiery/jsonformoderncpp/2.1.1/stable/packages/" + SHA + "/conan_package.tgz",
+      "GET /v1/conans/search",
+      "GET /v1/ping",
+      "GET /v1/unknown"
+  })
+  public String request;
+
+  private List<Matcher> hostedRoutes;
+
+  private List<Matcher> proxyRoutes;
+
+  private List<Matcher> sequentialHostedRoutes;
+
+  private List<Matcher> sequentialProxyRoutes;
+
+  private Repository repository;
+
+  private String action;
+
+  private String path;
+
+  @Setup
+  public void setUp() {
+    ConanRouteIndex routes = new ConanRouteIndex();
+    hostedRoutes = new ArrayList<>();
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.uploadUrls(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.uploadManifest(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.uploadConanfile(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.uploadConaninfo(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.uploadConanPackageZip(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.uploadConanSources(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.uploadConanExportZip(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.downloadUrls(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.downloadManifest(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.downloadConanfile(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.downloadConaninfo(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(
+        ConanHostedRecipe.downloadConanTgz(GAV + PACKAGES + "/conan_package.tgz", routes)));
+    hostedRoutes.add(BenchmarkData.matcher(
+        ConanHostedRecipe.downloadConanTgz(GAV + "/conan_sources.tgz", routes)));
+    hostedRoutes.add(BenchmarkData.matcher(
+        ConanHostedRecipe.downloadConanTgz(GAV + "/conan_export.tgz", routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.ping(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.checkCredentials(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.authenticate(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.search(routes)));
+    hostedRoutes.add(BenchmarkData.matcher(ConanHostedRecipe.searchUrl(routes)));
+
+    ConanMatcher conanMatcher = new ConanMatcher();
+    proxyRoutes = new ArrayList<>();
+    proxyRoutes.add(BenchmarkData.matcher(conanMatcher.downloadUrls()));
+    proxyRoutes.add(BenchmarkData.matcher(conanMatcher.conanManifest()));
+    proxyRoutes.add(BenchmarkData.matcher(conanMatcher.conanFile()));
+    proxyRoutes.add(BenchmarkData.matcher(conanMatcher.conanInfo()));
+    proxyRoutes.add(BenchmarkData.matcher(conanMatcher.conanPackage()));
+    proxyRoutes.add(BenchmarkData.matcher(ConanMatcher.ping()));
+
+    sequentialHostedRoutes = sequential(hostedRoutes);
+    sequentialProxyRoutes = sequential(proxyRoutes);
+
+    repository = BenchmarkData.repository("conan");
+    int space = request.indexOf(' ');
+    action = request.substring(0, space);
+    path = request.substring(space + 1);
+  }
+
+  @Benchmark
+  public int hostedIndexed() {
+    return dispatch(hostedRoutes);
+  }
+
+  @Benchmark
+  public int hostedSequential() {
+    return dispatch(sequentialHostedRoutes);
+  }
+
+  @Benchmark
+  public int proxyIndexed() {
+    return dispatch(proxyRoutes);
+  }
+
+  @Benchmark
+  public int proxySequential() {
+    return dispatch(sequentialProxyRoutes);
+  }
+
+  private static List<Matcher> sequential(final List<Matcher> routes) {
+    List<Matcher> sequential = new ArrayList<>();
+    for (Matcher route : routes) {
+      sequential.add(route instanceof IndexedMatcher ? ((IndexedMatcher) route).getSequentialMatcher() : route);
+    }
+    return sequential;
+  }
+
+  /**
+   * @return the index of the first matching route, or -1 when the default handlers would be used
+   */
+  private int dispatch(final List<Matcher> routes) {
+    Context context = BenchmarkData.context(repository, action, path);
+    for (int i = 0; i < routes.size(); i++) {
+      if (routes.get(i).matches(context)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.hosted;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.hash.Hashing;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Generates recipes and binary packages shaped like those of a production repository: N recipes, each in M
+ * versions, each built into K binaries for different settings.
+ *
+ * Recipe {@code n} version {@code m} is {@code lib<n>/1.<m>.0@bench/stable}. Every file is derived from its
+ * coordinates, so the same dataset is generated on every run and binaries are built from the settings matrix of
+ * common platforms and compilers.
+ *
+ * @since 0.0.6
+ */
+public class SyntheticDataset
+{
+  public static final String USER = "bench";
+
+  public static final String CHANNEL = "stable";
+
+  private static final String[][] PLATFORMS = {
+      {"Linux", "x86_64", "gcc", "7", "libstdc++11"},
+      {"Linux", "x86_64", "gcc", "5", "libstdc++"},
+      {"Linux", "armv8", "gcc", "7", "libstdc++11"},
+      {"Linux", "x86_64", "clang", "6.0", "libc++"},
+      {"Windows", "x86_64", "Visual Studio", "15", null},
+      {"Windows", "x86", "Visual Studio", "15", null},
+      {"Macos", "x86_64", "apple-clang", "10.0", "libc++"}
+  };
+
+  private static final String[] BUILD_TYPES = {"Release", "Debug"};
+
+  private final int exportBytes;
+
+  private final int packageBytes;
+
+  public SyntheticDataset(final int exportBytes, final int packageBytes) {
+    this.exportBytes = exportBytes;
+    this.packageBytes = packageBytes;
+  }
+
+  public static String name(final int recipe) {
+    return "lib" + recipe;
+  }
+
+  public static String version(final int version) {
+    return "1." + version + ".0";
+  }
+
+  /**
+   * @return e.g. {@code lib12/1.3.0/bench/stable}, the path of upload_urls, download_urls and search requests
+   */
+  public static String recipePath(final int recipe, final int version) {
+    return name(recipe) + "/" + version(version) + "/" + USER + "/" + CHANNEL;
+  }
+
+  public static String packageId(final int recipe, final int version, final int binary) {
+    return Hashing.sha1().hashString(recipePath(recipe, version) + "#" + binary, UTF_8).toString();
+  }
+
+  /**
+   * @return the recipe files by name, in the order the client uploads them
+   */
+  public Map<String, byte[]> recipeFiles(final int recipe, final int version) {
+    byte[] conanFile = conanFile(recipe, version);
+    Map<String, byte[]> files = new LinkedHashMap<>();
+    files.put("conanfile.py", conanFile);
+    files.put("conan_export.tgz", bytes(recipePath(recipe, version), exportBytes));
+    files.put("conanmanifest.txt", manifest(
+        "conanfile.py", conanFile,
+        "include/" + name(recipe) + ".h", null,
+        "CMakeLists.txt", null));
+    return files;
+  }
+
+  /**
+   * @return the files of binary {@code binary} by name, in the order the client uploads them
+   */
+  public Map<String, byte[]> packageFiles(final int recipe, final int version, final int binary) {
+    byte[] conanInfo = conanInfo(recipe, version, binary);
+    Map<String, byte[]> files = new LinkedHashMap<>();
+    files.put("conaninfo.txt", conanInfo);
+    files.put("conan_package.tgz", bytes(packageId(recipe, version, binary), packageBytes));
+    files.put("conanmanifest.txt", manifest(
+        "conaninfo.txt", conanInfo,
+        "include/" + name(recipe) + ".h", null,
+        "lib/" + name(recipe) + (binary % PLATFORMS.length >= 4 ? ".lib" : ".a"), null));
+    return files;
+  }
+
+  private static byte[] conanFile(final int recipe, final int version) {
+    StringBuilder conanFile = new StringBuilder()
+        .append("from conans import ConanFile, CMake\n\n")
+        .append("class Lib").append(recipe).append("Conan(ConanFile):\n")
+        .append("    name = \"").append(name(recipe)).append("\"\n")
+        .append("    version = \"").append(version(version)).append("\"\n")
+        .append("    license = \"MIT\"\n")
+        .append("    settings = \"os\", \"compiler\", \"build_type\", \"arch\"\n")
+        .append("    options = {\"shared\": [True, False], \"fPIC\": [True, False]}\n")
+        .append("    default_options = \"shared=False\", \"fPIC=True\"\n")
+        .append("    exports_sources = \"CMakeLists.txt\", \"include/*\", \"src/*\"\n");
+    if (recipe > 0) {
+      conanFile.append("    requires = \"").append(dependency(recipe)).append("\"\n");
+    }
+    return conanFile
+        .append("\n    def build(self):\n")
+        .append("        cmake = CMake(self)\n")
+        .append("        cmake.configure()\n")
+        .append("        cmake.build()\n")
+        .toString().getBytes(UTF_8);
+  }
+
+  private static byte[] conanInfo(final int recipe, final int version, final int binary) {
+    String[] platform = PLATFORMS[binary % PLATFORMS.length];
+    String buildType = BUILD_TYPES[(binary / PLATFORMS.length) % BUILD_TYPES.length];
+    boolean shared = (binary / (PLATFORMS.length * BUILD_TYPES.length)) % 2 == 1;
+
+    StringBuilder settings = new StringBuilder()
+        .append("    arch=").append(platform[1]).append('\n')
+        .append("    build_type=").append(buildType).append('\n')
+        .append("    compiler=").append(platform[2]).append('\n');
+    if (platform[4] != null) {
+      settings.append("    compiler.libcxx=").append(platform[4]).append('\n');
+    }
+    settings
+        .append("    compiler.version=").append(platform[3]).append('\n')
+        .append("    os=").append(platform[0]).append('\n');
+
+    String options = "    fPIC=True\n    shared=" + (shared ? "True" : "False") + "\n";
+    String requires = recipe > 0 ? "    " + name(recipe / 2) + "/1.Y.Z\n" : "";
+    String fullRequires = recipe > 0 ?
+        "    " + dependency(recipe) + ":" + packageId(recipe / 2, 0, binary) + "\n" : "";
+
+    return ("[settings]\n" + settings
+        + "\n[requires]\n" + requires
+        + "\n[options]\n" + options
+        + "\n[full_settings]\n" + settings
+        + "\n[full_requires]\n" + fullRequires
+        + "\n[full_options]\n" + options
+        + "\n[recipe_hash]\n    " + Hashing.md5().hashBytes(conanFile(recipe, version)) + "\n"
+        + "\n[env]\n\n").getBytes(UTF_8);
+  }
+
+  /**
+   * Recipes depend on an older recipe, giving every recipe but the first a requirement.
+   */
+  private static String dependency(final int recipe) {
+    return name(recipe / 2) + "/" + version(0) + "@" + USER + "/" + CHANNEL;
+  }
+
+  /**
+   * @param entries file name then content pairs, the md5 of content which is null is derived from the name
+   */
+  private static byte[] manifest(final Object... entries) {
+    StringBuilder manifest = new StringBuilder("1500296716\n");
+    for (int i = 0; i < entries.length; i += 2) {
+      String name = (String) entries[i];
+      byte[] content = entries[i + 1] == null ? name.getBytes(UTF_8) : (byte[]) entries[i + 1];
+      manifest.append(name).append(": ").append(Hashing.md5().hashBytes(content)).append('\n');
+    }
+    return manifest.toString().getBytes(UTF_8);
+  }
+
+  private static byte[] bytes(final String seed, final int size) {
+    byte[] bytes = new byte[size];
+    new Random(seed.hashCode()).nextBytes(bytes);
+    return bytes;
+  }
+}
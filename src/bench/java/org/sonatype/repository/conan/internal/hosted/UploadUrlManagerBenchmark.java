@@ -0,0 +1,94 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.hosted;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.repository.conan.internal.BenchmarkData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The upload_urls and download_urls conversions of hosted repositories, for {@code scale} files besides the manifest
+ * and recipe.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UploadUrlManagerBenchmark
+{
+  private static final String ASSET_PATH = "/v1/conans/vthiery/jsonformoderncpp/2.1.1/stable/";
+
+  @Param({"1", "16", "256"})
+  public int scale;
+
+  private UploadUrlManager uploadUrlManager;
+
+  private byte[] uploadUrls;
+
+  private byte[] savedUrls;
+
+  @Setup
+  public void setUp() {
+    uploadUrlManager = new UploadUrlManager();
+    uploadUrls = BenchmarkData.uploadUrls(scale);
+    savedUrls = uploadUrlManager.convertKeys(ASSET_PATH, new ByteArrayInputStream(uploadUrls)).getBytes(UTF_8);
+  }
+
+  @Benchmark
+  public String convertKeys() {
+    return uploadUrlManager.convertKeys(ASSET_PATH, new ByteArrayInputStream(uploadUrls));
+  }
+
+  @Benchmark
+  public String prefixToValues() {
+    return uploadUrlManager.prefixToValues(BenchmarkData.REPOSITORY_URL, new ByteArrayInputStream(savedUrls));
+  }
+
+  /**
+   * The saved download_urls and the response of an upload_urls request, as the hosted facet writes them.
+   */
+  @Benchmark
+  public ByteArrayOutputStream uploadUrls() {
+    ByteArrayOutputStream saved = new ByteArrayOutputStream();
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    uploadUrlManager.convertKeys(ASSET_PATH, BenchmarkData.REPOSITORY_URL, new ByteArrayInputStream(uploadUrls), saved,
+        response);
+    return response;
+  }
+
+  /**
+   * The download_urls response as the hosted facet serves it.
+   */
+  @Benchmark
+  public byte[] downloadUrls() {
+    return uploadUrlManager.prefixToValuesBytes(BenchmarkData.REPOSITORY_URL, new ByteArrayInputStream(savedUrls));
+  }
+}
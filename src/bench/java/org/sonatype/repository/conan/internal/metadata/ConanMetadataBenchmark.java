@@ -0,0 +1,183 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.metadata;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobId;
+import org.sonatype.nexus.blobstore.api.BlobMetrics;
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.storage.TempBlob;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+import org.sonatype.repository.conan.internal.BenchmarkData;
+import org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.sonatype.nexus.repository.http.HttpMethods.GET;
+
+/**
+ * Parsing and rewriting of the Conan metadata files served by proxy and hosted repositories.
+ *
+ * {@code scale} is the number of entries added to the realistic test resources: options of conaninfo.txt, files of
+ * conanmanifest.txt and download_urls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConanMetadataBenchmark
+{
+  private static final String DOWNLOAD_URLS_PATH = "/v1/conans/jsonformoderncpp/2.1.1/vthiery/stable/download_urls";
+
+  @Param({"1", "16", "256"})
+  public int scale;
+
+  private byte[] conanInfo;
+
+  private byte[] downloadUrls;
+
+  private TempBlob manifestBlob;
+
+  private Repository repository;
+
+  private Context downloadUrlsContext;
+
+  private ConanUrlIndexer urlIndexer;
+
+  private ConanCoords coords;
+
+  private ConanCoords packageCoords;
+
+  private String lastFile;
+
+  @Setup
+  public void setUp() throws Exception {
+    conanInfo = BenchmarkData.conanInfo(scale);
+    downloadUrls = BenchmarkData.downloadUrls(scale);
+    manifestBlob = new TempBlob(new BytesBlob(BenchmarkData.conanManifest(scale)), Collections.emptyMap(), true,
+        mock(BlobStore.class));
+
+    repository = BenchmarkData.repository("conan-proxy");
+    downloadUrlsContext = BenchmarkData.context(repository, GET, DOWNLOAD_URLS_PATH);
+    if (!BenchmarkData.matcher(new ConanMatcher().downloadUrls()).matches(downloadUrlsContext)) {
+      throw new IllegalStateException("download_urls matcher does not match " + DOWNLOAD_URLS_PATH);
+    }
+    urlIndexer = new ConanUrlIndexer();
+
+    coords = new ConanCoords("vthiery", "jsonformoderncpp", "2.1.1", "stable", null);
+    packageCoords = new ConanCoords("vthiery", "jsonformoderncpp", "2.1.1", "stable",
+        "5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9");
+    lastFile = BenchmarkData.fileNames(scale).get(scale + 1);
+  }
+
+  @Benchmark
+  public ConanInfo conanInfoParse() {
+    return ConanInfo.parse(new ByteArrayInputStream(conanInfo));
+  }
+
+  @Benchmark
+  public ConanInfo conanInfoLoad() {
+    return ConanInfo.load(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(conanInfo), UTF_8)));
+  }
+
+  @Benchmark
+  public AttributesMap conanManifestParse() {
+    return ConanManifest.parse(manifestBlob);
+  }
+
+  @Benchmark
+  public byte[] updateAbsoluteUrls() throws IOException {
+    return urlIndexer.updateAbsoluteUrlsBytes(downloadUrlsContext,
+        new Content(new BytesPayload(downloadUrls, "application/json")), repository);
+  }
+
+  @Benchmark
+  public String findUrl() {
+    return urlIndexer.findUrl(new ByteArrayInputStream(downloadUrls), lastFile);
+  }
+
+  @Benchmark
+  public String coordsGetPath() {
+    return ConanCoords.getPath(coords);
+  }
+
+  @Benchmark
+  public String coordsGetPackagePath() {
+    return ConanCoords.getPath(packageCoords);
+  }
+
+  @Benchmark
+  public String coordsGetSpec() {
+    return ConanCoords.getSpec(coords);
+  }
+
+  /**
+   * An in memory blob, {@link TempBlob#get()} opens a new stream for every parse.
+   */
+  private static class BytesBlob
+      implements Blob
+  {
+    private final byte[] bytes;
+
+    BytesBlob(final byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public BlobId getId() {
+      return new BlobId("benchmark");
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public BlobMetrics getMetrics() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.proxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A stand-in for a remote Conan v1 server such as conan-center, serving generated recipes and packages with
+ * injectable latency, bandwidth limit and failures.
+ *
+ * Recipe {@code i} is {@code lib<i>/1.0.0@bench/stable} with a single binary package. download_urls answers point at
+ * {@code /files/...} on this server, as conan-center points at its file storage.
+ *
+ * @since 0.0.6
+ */
+public class FakeConanUpstream
+    implements AutoCloseable
+{
+  public static class Options
+  {
+    /**
+     * Host name of this server in download_urls answers, as reached by the proxy
+     */
+    public String host = "localhost";
+
+    public int recipes = 100;
+
+    public int exportBytes = 64 * 1024;
+
+    public int packageBytes = 8 * 1024 * 1024;
+
+    /**
+     * Delay before every answer
+     */
+    public long latencyMillis;
+
+    /**
+     * Bandwidth of each answer, 0 for unlimited
+     */
+    public long bytesPerSecond;
+
+    /**
+     * Share of requests answered with 500 Internal Server Error
+     */
+    public double errorRate;
+  }
+
+  public static final String USER = "bench";
+
+  public static final String VERSION = "1.0.0";
+
+  public static final String CHANNEL = "stable";
+
+  private static final Pattern DOWNLOAD_URLS =
+      Pattern.compile("/v1/conans/lib(\\d+)/[^/]+/[^/]+/[^/]+(/packages/[^/]+)?/download_urls");
+
+  private static final Pattern FILES = Pattern.compile("/files/[^/]+/lib(\\d+)/[^/]+/[^/]+/(export|package)/([^/]+)");
+
+  private static final int CHUNK = 16 * 1024;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  static {
+    // small answers otherwise wait out the client's delayed ack, adding 40ms to every metadata request
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final Options options;
+
+  private final HttpServer server;
+
+  private final ExecutorService executor;
+
+  private final byte[] exportArchive;
+
+  private final byte[] packageArchive;
+
+  private final ConcurrentMap<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+  private final LongAdder failures = new LongAdder();
+
+  private final LongAdder bytesServed = new LongAdder();
+
+  private FakeConanUpstream(final int port, final Options options) throws IOException {
+    this.options = options;
+    this.exportArchive = randomBytes(options.exportBytes);
+    this.packageArchive = randomBytes(options.packageBytes);
+    this.executor = Executors.newCachedThreadPool();
+    this.server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+  }
+
+  /**
+   * @param port to listen on, 0 for any free port
+   */
+  public static FakeConanUpstream start(final int port, final Options options) throws IOException {
+    FakeConanUpstream upstream = new FakeConanUpstream(port, options);
+    upstream.server.start();
+    return upstream;
+  }
+
+  public String getUrl() {
+    return "http://" + options.host + ":" + server.getAddress().getPort();
+  }
+
+  public static String recipePath(final int recipe) {
+    return "lib" + recipe + "/" + VERSION + "/" + USER + "/" + CHANNEL;
+  }
+
+  public static String packageId(final int recipe) {
+    return Hashing.sha1().hashString("lib" + recipe, UTF_8).toString();
+  }
+
+  /**
+   * @return requests received, by file name
+   */
+  public Map<String, Long> getRequestCounts() {
+    Map<String, Long> counts = new TreeMap<>();
+    requests.forEach((name, count) -> counts.put(name, count.sum()));
+    return counts;
+  }
+
+  public long getRequestCount() {
+    return requests.values().stream().mapToLong(LongAdder::sum).sum();
+  }
+
+  public long getFailureCount() {
+    return failures.sum();
+  }
+
+  public long getBytesServed() {
+    return bytesServed.sum();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(final HttpExchange exchange) throws IOException {
+    try {
+      String path = exchange.getRequestURI().getPath();
+      requests.computeIfAbsent(path.substring(path.lastIndexOf('/') + 1), name -> new LongAdder()).increment();
+
+      if (options.latencyMillis > 0) {
+        TimeUnit.MILLISECONDS.sleep(options.latencyMillis);
+      }
+      if (options.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < options.errorRate) {
+        failures.increment();
+        exchange.sendResponseHeaders(500, -1);
+        return;
+      }
+
+      byte[] body = answer(path);
+      if (body == null) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+      exchange.sendResponseHeaders(200, body.length);
+      if (!"HEAD".equals(exchange.getRequestMethod())) {
+        write(exchange.getResponseBody(), body);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  private byte[] answer(final String path) throws IOException {
+    if ("/v1/ping".equals(path)) {
+      return new byte[0];
+    }
+    Matcher matcher = DOWNLOAD_URLS.matcher(path);
+    if (matcher.matches()) {
+      int recipe = Integer.parseInt(matcher.group(1));
+      return recipe < options.recipes ? downloadUrls(recipe, matcher.group(2) != null) : null;
+    }
+    matcher = FILES.matcher(path);
+    if (matcher.matches()) {
+      int recipe = Integer.parseInt(matcher.group(1));
+      return recipe < options.recipes ? file(recipe, "package".equals(matcher.group(2)), matcher.group(3)) : null;
+    }
+    return null;
+  }
+
+  private byte[] downloadUrls(final int recipe, final boolean binary) throws IOException {
+    String base = getUrl() + "/files/" + USER + "/lib" + recipe + "/" + VERSION + "/" + CHANNEL
+        + (binary ? "/package/" : "/export/");
+    Map<String, String> urls = new LinkedHashMap<>();
+    if (binary) {
+      urls.put("conaninfo.txt", base + "conaninfo.txt");
+      urls.put("conanmanifest.txt", base + "conanmanifest.txt");
+      urls.put("conan_package.tgz", base + "conan_package.tgz");
+    }
+    else {
+      urls.put("conanmanifest.txt", base + "conanmanifest.txt");
+      urls.put("conanfile.py", base + "conanfile.py");
+      urls.put("conan_export.tgz", base + "conan_export.tgz");
+    }
+    return MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(urls);
+  }
+
+  private byte[] file(final int recipe, final boolean binary, final String name) {
+    switch (name) {
+      case "conanfile.py":
+        return binary ? null : conanFile(recipe);
+      case "conaninfo.txt":
+        return binary ? conanInfo(recipe) : null;
+      case "conanmanifest.txt":
+        return manifest(binary ? "conaninfo.txt" : "conanfile.py", binary ? conanInfo(recipe) : conanFile(recipe));
+      case "conan_export.tgz":
+        return binary ? null : exportArchive;
+      case "conan_package.tgz":
+        return binary ? packageArchive : null;
+      default:
+        return null;
+    }
+  }
+
+  private static byte[] conanFile(final int recipe) {
+    return ("from conans import ConanFile\n\n"
+        + "class Lib" + recipe + "Conan(ConanFile):\n"
+        + "    name = \"lib" + recipe + "\"\n"
+        + "    version = \"" + VERSION + "\"\n"
+        + "    settings = \"os\", \"compiler\", \"build_type\", \"arch\"\n"
+        + "    options = {\"shared\": [True, False]}\n"
+        + "    default_options = \"shared=False\"\n").getBytes(UTF_8);
+  }
+
+  private static byte[] conanInfo(final int recipe) {
+    return ("[settings]\n"
+        + "    arch=x86_64\n"
+        + "    build_type=Release\n"
+        + "    compiler=gcc\n"
+        + "    compiler.libcxx=libstdc++11\n"
+        + "    compiler.version=7\n"
+        + "    os=Linux\n\n"
+        + "[requires]\n\n\n"
+        + "[options]\n"
+        + "    shared=False\n\n"
+        + "[recipe_hash]\n"
+        + "    " + Hashing.md5().hashString("lib" + recipe, UTF_8) + "\n").getBytes(UTF_8);
+  }
+
+  /**
+   * Lists the md5 of the recipe or package metadata file, which the proxy verifies once fetched.
+   */
+  private static byte[] manifest(final String name, final byte[] content) {
+    return ("1500296716\n" + name + ": " + Hashing.md5().hashBytes(content) + "\n").getBytes(UTF_8);
+  }
+
+  private void write(final OutputStream out, final byte[] body) throws IOException, InterruptedException {
+    long start = System.nanoTime();
+    for (int offset = 0; offset < body.length; offset += CHUNK) {
+      int length = Math.min(CHUNK, body.length - offset);
+      out.write(body, offset, length);
+      bytesServed.add(length);
+      if (options.bytesPerSecond > 0) {
+        long due = TimeUnit.SECONDS.toNanos(offset + length) / options.bytesPerSecond;
+        long ahead = due - (System.nanoTime() - start);
+        if (ahead > 0) {
+          TimeUnit.NANOSECONDS.sleep(ahead);
+        }
+      }
+    }
+  }
+
+  private static byte[] randomBytes(final int size) {
+    byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.proxy;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.sonatype.repository.conan.internal.BenchmarkClient;
+
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+
+import static org.sonatype.repository.conan.internal.BenchmarkClient.latency;
+
+/**
+ * Drives concurrent {@code conan install} flows against a Conan proxy repository whose remote is a
+ * {@link FakeConanUpstream}, and reports throughput, latency, upstream requests and cache hit ratio.
+ *
+ * Each install fetches the recipe download_urls, then every file it lists, then the same for the binary package, as
+ * the v1 client does. Options are given as {@code key=value} arguments:
+ *
+ * <ul>
+ * <li>{@code proxyUrl} url of the proxy repository, its remote url must be the upstream url printed on start; without
+ * it the upstream is driven directly, as a baseline</li>
+ * <li>{@code username}, {@code password} for the proxy repository, if anonymous access is disabled</li>
+ * <li>{@code clients} concurrent installs, default 8</li>
+ * <li>{@code installs} total installs, default 200</li>
+ * <li>{@code port} of the upstream, default 9081; {@code host} it is reached at by the proxy, default localhost</li>
+ * <li>{@code recipes}, {@code exportBytes}, {@code packageBytes}, {@code latencyMillis}, {@code bytesPerSecond},
+ * {@code errorRate} see {@link FakeConanUpstream.Options}</li>
+ * </ul>
+ *
+ * @since 0.0.6
+ */
+public final class ProxyLoadTest
+{
+  private final String target;
+
+  private final BenchmarkClient client;
+
+  private final Timer installs = new Timer(new UniformReservoir(100_000));
+
+  private final LongAdder failedInstalls = new LongAdder();
+
+  private ProxyLoadTest(final String target, final BenchmarkClient client) {
+    this.target = target;
+    this.client = client;
+  }
+
+  public static void main(final String[] args) throws Exception {
+    Map<String, String> options = BenchmarkClient.options(args);
+
+    FakeConanUpstream.Options upstreamOptions = new FakeConanUpstream.Options();
+    upstreamOptions.host = options.getOrDefault("host", upstreamOptions.host);
+    upstreamOptions.recipes = Integer.parseInt(options.getOrDefault("recipes", "" + upstreamOptions.recipes));
+    upstreamOptions.exportBytes =
+        Integer.parseInt(options.getOrDefault("exportBytes", "" + upstreamOptions.exportBytes));
+    upstreamOptions.packageBytes =
+        Integer.parseInt(options.getOrDefault("packageBytes", "" + upstreamOptions.packageBytes));
+    upstreamOptions.latencyMillis = Long.parseLong(options.getOrDefault("latencyMillis", "0"));
+    upstreamOptions.bytesPerSecond = Long.parseLong(options.getOrDefault("bytesPerSecond", "0"));
+    upstreamOptions.errorRate = Double.parseDouble(options.getOrDefault("errorRate", "0"));
+
+    int clients = Integer.parseInt(options.getOrDefault("clients", "8"));
+    int installCount = Integer.parseInt(options.getOrDefault("installs", "200"));
+    int port = Integer.parseInt(options.getOrDefault("port", "9081"));
+    String proxyUrl = options.get("proxyUrl");
+    BenchmarkClient client = new BenchmarkClient(options.get("username"), options.get("password"));
+
+    try (FakeConanUpstream upstream = FakeConanUpstream.start(port, upstreamOptions)) {
+      System.out.println("Upstream listening at " + upstream.getUrl());
+      if (proxyUrl == null) {
+        System.out.println("No proxyUrl given, driving the upstream directly");
+      }
+      ProxyLoadTest loadTest = new ProxyLoadTest(proxyUrl == null ? upstream.getUrl() : proxyUrl, client);
+
+      long elapsed = loadTest.run(clients, installCount, upstreamOptions.recipes);
+
+      loadTest.report(elapsed, upstream);
+    }
+  }
+
+  private long run(final int clients, final int installCount, final int recipes) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(clients);
+    AtomicInteger remaining = new AtomicInteger(installCount);
+    CountDownLatch done = new CountDownLatch(clients);
+    long start = System.nanoTime();
+    for (int i = 0; i < clients; i++) {
+      executor.execute(() -> {
+        try {
+          while (remaining.getAndDecrement() > 0) {
+            install(ThreadLocalRandom.current().nextInt(recipes));
+          }
+        }
+        finally {
+          done.countDown();
+        }
+      });
+    }
+    done.await();
+    long elapsed = System.nanoTime() - start;
+    executor.shutdown();
+    return elapsed;
+  }
+
+  private void install(final int recipe) {
+    String recipeUrl = target + "/v1/conans/" + FakeConanUpstream.recipePath(recipe);
+    long start = System.nanoTime();
+    try {
+      fetchAll(recipeUrl + "/download_urls");
+      fetchAll(recipeUrl + "/packages/" + FakeConanUpstream.packageId(recipe) + "/download_urls");
+      installs.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    catch (IOException e) {
+      failedInstalls.increment();
+    }
+  }
+
+  private void fetchAll(final String downloadUrls) throws IOException {
+    for (String url : client.getJson(downloadUrls).values()) {
+      client.get(url);
+    }
+  }
+
+  private void report(final long elapsedNanos, final FakeConanUpstream upstream) {
+    double seconds = elapsedNanos / 1e9;
+    long upstreamRequests = upstream.getRequestCount();
+    long clientRequests = client.getRequests().getCount();
+
+    System.out.printf("Installs:          %d ok, %d failed in %.1fs%n", installs.getCount(), failedInstalls.sum(),
+        seconds);
+    System.out.printf("Throughput:        %.1f installs/s, %.1f requests/s, %.1f MiB/s%n",
+        installs.getCount() / seconds, clientRequests / seconds, client.getBytesReceived() / seconds / (1 << 20));
+    System.out.println("Request latency:   " + latency(client.getRequests().getSnapshot()));
+    System.out.println("Install latency:   " + latency(installs.getSnapshot()));
+    System.out.printf("Upstream requests: %d %s, %d failures injected, %.1f MiB served%n", upstreamRequests,
+        upstream.getRequestCounts(), upstream.getFailureCount(), upstream.getBytesServed() / (double) (1 << 20));
+    if (clientRequests > 0) {
+      System.out.printf("Cache hit ratio:   %.1f%%%n",
+          100.0 * Math.max(0, clientRequests - upstreamRequests) / clientRequests);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.sonatype.nexus.mime.MimeRulesSource;
+import org.sonatype.nexus.mime.internal.DefaultMimeSupport;
+import org.sonatype.nexus.repository.storage.ContentValidator;
+import org.sonatype.nexus.repository.storage.DefaultContentValidator;
+import org.sonatype.repository.conan.internal.BenchmarkData;
+
+import com.google.common.base.Supplier;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Content type detection for the files stored by one recipe and binary package upload, with strict validation as
+ * repositories default to. {@link Io} reports the streams opened and bytes read per upload, which are blob store
+ * reads on a real repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentValidatorBenchmark
+{
+  private static final String RECIPE = "vthiery/jsonformoderncpp/2.1.1/stable/";
+
+  private static final String PACKAGE = RECIPE + "packages/5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9/";
+
+  @Param({"65536"})
+  public int archiveBytes;
+
+  private final Map<String, byte[]> upload = new LinkedHashMap<>();
+
+  private ContentValidator conan;
+
+  private ContentValidator nexusDefault;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Io
+  {
+    public long streamsOpened;
+
+    public long bytesRead;
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    DefaultContentValidator defaultContentValidator = new DefaultContentValidator(new DefaultMimeSupport());
+    conan = new ConanContentValidator(defaultContentValidator);
+    nexusDefault = defaultContentValidator;
+
+    upload.put(RECIPE + "download_urls", BenchmarkData.downloadUrls(1));
+    upload.put(RECIPE + "conanfile.py", BenchmarkData.resource("conanfile.py"));
+    upload.put(RECIPE + "conanmanifest.txt", BenchmarkData.conanManifest(16));
+    upload.put(RECIPE + "conan_export.tgz", gzip(archiveBytes));
+    upload.put(PACKAGE + "download_urls", BenchmarkData.downloadUrls(1));
+    upload.put(PACKAGE + "conaninfo.txt", BenchmarkData.conanInfo(16));
+    upload.put(PACKAGE + "conanmanifest.txt", BenchmarkData.conanManifest(16));
+    upload.put(PACKAGE + "conan_package.tgz", gzip(archiveBytes));
+  }
+
+  @Benchmark
+  public int conan(final Io io) throws IOException {
+    return determineContentTypes(conan, io);
+  }
+
+  @Benchmark
+  public int nexusDefault(final Io io) throws IOException {
+    return determineContentTypes(nexusDefault, io);
+  }
+
+  private int determineContentTypes(final ContentValidator validator, final Io io) throws IOException {
+    int hash = 0;
+    for (Map.Entry<String, byte[]> file : upload.entrySet()) {
+      hash += validator.determineContentType(true, counting(file.getValue(), io), MimeRulesSource.NOOP,
+          file.getKey(), null).hashCode();
+    }
+    return hash;
+  }
+
+  private static Supplier<InputStream> counting(final byte[] content, final Io io) {
+    return () -> {
+      io.streamsOpened++;
+      return new FilterInputStream(new ByteArrayInputStream(content))
+      {
+        @Override
+        public int read() throws IOException {
+          int b = super.read();
+          if (b >= 0) {
+            io.bytesRead++;
+          }
+          return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+          int count = super.read(b, off, len);
+          if (count > 0) {
+            io.bytesRead += count;
+          }
+          return count;
+        }
+      };
+    };
+  }
+
+  private static byte[] gzip(final int size) throws IOException {
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(content);
+    }
+    return out.toByteArray();
+  }
+}
@@ -15,26 +15,33 @@ package org.sonatype.repository.conan.internal
 import org.sonatype.nexus.repository.cache.CacheControllerHolder.CacheType
 
 import static org.sonatype.nexus.repository.cache.CacheControllerHolder.METADATA
+import static org.sonatype.nexus.repository.view.ContentTypes.APPLICATION_GZIP
+import static org.sonatype.nexus.repository.view.ContentTypes.APPLICATION_JSON
+import static org.sonatype.nexus.repository.view.ContentTypes.TEXT_PLAIN
 
 /**
  * @since 0.0.1
  */
 enum AssetKind {
-  DOWNLOAD_URL(METADATA, "download_urls"),
-  CONAN_MANIFEST(METADATA, "conanmanifest.txt"),
-  CONAN_FILE(METADATA, "conanfile.py"),
-  CONAN_INFO(METADATA, "conaninfo.txt"),
-  CONAN_PACKAGE(METADATA, "conan_package.tgz"),
-  CONAN_SOURCES(METADATA, "conan_sources.tgz"),
-  CONAN_EXPORT(METADATA, "conan_export.tgz")
+  DOWNLOAD_URL(METADATA, "download_urls", APPLICATION_JSON),
+  CONAN_MANIFEST(METADATA, "conanmanifest.txt", TEXT_PLAIN),
+  CONAN_FILE(METADATA, "conanfile.py", "text/x-python"),
+  CONAN_INFO(METADATA, "conaninfo.txt", TEXT_PLAIN),
+  CONAN_PACKAGE(METADATA, "conan_package.tgz", APPLICATION_GZIP),
+  CONAN_SOURCES(METADATA, "conan_sources.tgz", APPLICATION_GZIP),
+  CONAN_EXPORT(METADATA, "conan_export.tgz", APPLICATION_GZIP),
+  REVISIONS(METADATA, "revisions", APPLICATION_JSON)
 
   private final CacheType cacheType
 
   private final String filename
 
-  AssetKind(final CacheType cacheType, final String filename) {
+  private final String contentType
+
+  AssetKind(final CacheType cacheType, final String filename, final String contentType) {
     this.cacheType = cacheType
     this.filename = filename
+    this.contentType = contentType
   }
 
   CacheType getCacheType() {
@@ -44,4 +51,11 @@ enum AssetKind {
   String getFilename() {
     return filename
   }
+
+  /**
+   * @return the content type of every file of this kind, which is never sniffed from the content
+   */
+  String getContentType() {
+    return contentType
+  }
 }
@@ -0,0 +1,56 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Response;
+
+/**
+ * Sets the {@link AssetKind} served by a route on the context, for the handlers and facets after it.
+ *
+ * @since 0.0.6
+ */
+public final class AssetKindHandler
+    implements Handler
+{
+  private static final Map<AssetKind, AssetKindHandler> HANDLERS = new EnumMap<>(AssetKind.class);
+
+  static {
+    for (AssetKind assetKind : AssetKind.values()) {
+      HANDLERS.put(assetKind, new AssetKindHandler(assetKind));
+    }
+  }
+
+  private final AssetKind assetKind;
+
+  private AssetKindHandler(final AssetKind assetKind) {
+    this.assetKind = assetKind;
+  }
+
+  public static AssetKindHandler assetKind(final AssetKind assetKind) {
+    return HANDLERS.get(assetKind);
+  }
+
+  @Nonnull
+  @Override
+  public Response handle(@Nonnull final Context context) throws Exception {
+    context.getAttributes().set(AssetKind.class, assetKind);
+    return context.proceed();
+  }
+}
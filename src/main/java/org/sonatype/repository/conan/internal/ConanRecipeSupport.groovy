@@ -20,7 +20,6 @@ import org.sonatype.nexus.repository.RecipeSupport
 import org.sonatype.nexus.repository.Type
 import org.sonatype.nexus.repository.attributes.AttributesFacet
 import org.sonatype.nexus.repository.cache.NegativeCacheFacet
-import org.sonatype.nexus.repository.cache.NegativeCacheHandler
 import org.sonatype.nexus.repository.http.PartialFetchHandler
 import org.sonatype.nexus.repository.httpclient.HttpClientFacet
 import org.sonatype.nexus.repository.purge.PurgeUnusedFacet
@@ -36,6 +35,8 @@ import org.sonatype.nexus.repository.view.handlers.ContentHeadersHandler
 import org.sonatype.nexus.repository.view.handlers.ExceptionHandler
 import org.sonatype.nexus.repository.view.handlers.HandlerContributor
 import org.sonatype.nexus.repository.view.handlers.TimingHandler
+import org.sonatype.repository.conan.internal.metrics.RequestTraceHandler
+import org.sonatype.repository.conan.internal.proxy.ConanNegativeCacheHandler
 import org.sonatype.repository.conan.internal.security.ConanSecurityFacet
 
 /**
@@ -67,6 +68,9 @@ abstract class ConanRecipeSupport
   @Inject
   TimingHandler timingHandler
 
+  @Inject
+  RequestTraceHandler traceHandler
+
   @Inject
   SecurityHandler securityHandler
 
@@ -101,7 +105,7 @@ abstract class ConanRecipeSupport
   Provider<NegativeCacheFacet> negativeCacheFacet
 
   @Inject
-  NegativeCacheHandler negativeCacheHandler
+  ConanNegativeCacheHandler negativeCacheHandler
 
   protected ConanRecipeSupport(final Type type, final Format format) {
     super(type, format)
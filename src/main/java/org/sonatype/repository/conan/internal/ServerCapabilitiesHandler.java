@@ -0,0 +1,54 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal;
+
+import javax.annotation.Nonnull;
+
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Response;
+
+/**
+ * Tells clients on a successful ping that the v2 revisions API is available, whichever handler answered it.
+ *
+ * @since 0.0.6
+ */
+public final class ServerCapabilitiesHandler
+    implements Handler
+{
+  public static final String SERVER_CAPABILITIES = "X-Conan-Server-Capabilities";
+
+  public static final String REVISIONS = "revisions";
+
+  private static final ServerCapabilitiesHandler INSTANCE = new ServerCapabilitiesHandler();
+
+  private ServerCapabilitiesHandler() {
+  }
+
+  public static ServerCapabilitiesHandler serverCapabilities() {
+    return INSTANCE;
+  }
+
+  @Nonnull
+  @Override
+  public Response handle(@Nonnull final Context context) throws Exception {
+    Response response = context.proceed();
+    if (!response.getStatus().isSuccessful() || response.getHeaders().contains(SERVER_CAPABILITIES)) {
+      return response;
+    }
+    return new Response.Builder()
+        .copy(response)
+        .header(SERVER_CAPABILITIES, REVISIONS)
+        .build();
+  }
+}
@@ -0,0 +1,406 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.group;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.common.app.BaseUrlHolder;
+import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.group.GroupFacet;
+import org.sonatype.nexus.repository.group.GroupHandler;
+import org.sonatype.nexus.repository.http.HttpResponses;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.ViewFacet;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+import org.sonatype.repository.conan.internal.AssetKind;
+import org.sonatype.repository.conan.internal.utils.JsonMapRewriter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.joda.time.DateTime;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.sonatype.nexus.repository.view.Content.CONTENT_LAST_MODIFIED;
+import static org.sonatype.nexus.repository.view.ContentTypes.APPLICATION_JSON;
+
+/**
+ * Resolves Conan requests against the members of a group in parallel.
+ *
+ * Every member is asked at once, the highest priority member answering successfully wins, and the group only waits
+ * on members ranked above it. Responses of the other members are closed once they arrive, and members not started
+ * yet are not asked at all. Archives are the exception: members are asked in turn, so that a proxy member does not
+ * download an archive a member ranked above it already has. download_urls and digest listings are rewritten to point
+ * at the group, so that the client fetches every file through it; search results are merged across all members.
+ *
+ * Members are dispatched on at most {@code nexus.conan.group.threads} threads, the first member on the requesting
+ * thread itself. When all threads are busy a member is asked on the requesting thread instead, which also keeps
+ * groups nested in groups from waiting on each other for threads; 0 asks every member in turn.
+ *
+ * @since 0.0.6
+ */
+@Named
+@Singleton
+public class ConanGroupHandler
+    extends GroupHandler
+{
+  static final String SEARCH = "/v1/conans/search";
+
+  static final String SEARCH_V2 = "/v2/conans/search";
+
+  private static final String DOWNLOAD_URLS = "/download_urls";
+
+  private static final String DIGEST = "/digest";
+
+  private static final String RESULTS = "results";
+
+  private static final Set<String> ARCHIVES = ImmutableSet.of(AssetKind.CONAN_PACKAGE.getFilename(),
+      AssetKind.CONAN_SOURCES.getFilename(), AssetKind.CONAN_EXPORT.getFilename());
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Nullable
+  private final Executor executor;
+
+  /**
+   * Acknowledges a ping without asking the members
+   */
+  final Handler ping = context -> HttpResponses.ok();
+
+  @Inject
+  public ConanGroupHandler(@Named("${nexus.conan.group.threads:-32}") final int threads) {
+    checkArgument(threads >= 0, "threads must not be negative");
+    if (threads > 0) {
+      this.executor = new ThreadPoolExecutor(0, threads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+          new ThreadFactoryBuilder().setNameFormat("conan-group-%d").setDaemon(true).build(),
+          new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    else {
+      this.executor = null;
+    }
+  }
+
+  @Override
+  protected Response doGet(final Context context, final DispatchedRepositories dispatched) throws Exception {
+    DispatchedRepositories shared = shared(context.getRequest(), dispatched);
+    List<Repository> members = context.getRepository().facet(GroupFacet.class).members();
+    String path = context.getRequest().getPath();
+
+    if (SEARCH.equals(path) || SEARCH_V2.equals(path)) {
+      return search(context, dispatch(context, members, shared, true));
+    }
+
+    Map<Repository, MemberTask> responses = dispatch(context, members, shared, !isArchive(path));
+    try {
+      for (Map.Entry<Repository, MemberTask> entry : responses.entrySet()) {
+        Response response = await(entry.getKey(), entry.getValue());
+        if (response != null && response.getStatus().isSuccessful()) {
+          entry.getValue().taken();
+          if (path.endsWith(DOWNLOAD_URLS) || path.endsWith(DIGEST)) {
+            return rewriteUrls(entry.getKey(), context.getRepository(), response);
+          }
+          return response;
+        }
+      }
+      return notFoundResponse(context);
+    }
+    finally {
+      responses.values().forEach(MemberTask::abandon);
+    }
+  }
+
+  private static boolean isArchive(final String path) {
+    return ARCHIVES.contains(path.substring(path.lastIndexOf('/') + 1));
+  }
+
+  /**
+   * Prepares the request on every member not yet asked by an enclosing group, starting them all at once when
+   * {@code parallel}, otherwise each is asked once the group awaits it.
+   *
+   * @return the pending responses in member priority order
+   */
+  private Map<Repository, MemberTask> dispatch(final Context context,
+                                               final List<Repository> members,
+                                               final DispatchedRepositories dispatched,
+                                               final boolean parallel)
+  {
+    Map<Repository, MemberTask> responses = new LinkedHashMap<>();
+    for (Repository member : members) {
+      if (dispatched.contains(member)) {
+        log.trace("Skipping already dispatched member {}", member.getName());
+        continue;
+      }
+      dispatched.add(member);
+      Request request = memberRequest(context.getRequest());
+      responses.put(member, new MemberTask(member, withCaller(
+          () -> member.facet(ViewFacet.class).dispatch(request, context))));
+    }
+
+    if (executor != null && parallel) {
+      responses.values().stream().skip(1).forEach(executor::execute);
+    }
+    return responses;
+  }
+
+  /**
+   * Runs the request on the calling thread unless another thread has picked it up already.
+   *
+   * @return the response of {@code member}, or null when it failed
+   */
+  @Nullable
+  private Response await(final Repository member, final FutureTask<Response> task) throws InterruptedException {
+    task.run();
+    try {
+      return task.get();
+    }
+    catch (ExecutionException e) {
+      log.warn("Member {} failed to respond", member.getName(), e.getCause());
+      return null;
+    }
+  }
+
+  /**
+   * Each member gets its own copy of the request attributes, so that members answering at the same time do not
+   * share a map; the record of dispatched members stays shared.
+   */
+  private static Request memberRequest(final Request request) {
+    AttributesMap attributes = new AttributesMap(new LinkedHashMap<>(request.getAttributes().backing()));
+    return new Request.Builder().copy(request).attributes(attributes).build();
+  }
+
+  private static DispatchedRepositories shared(final Request request, final DispatchedRepositories dispatched) {
+    if (dispatched instanceof SharedDispatchedRepositories) {
+      return dispatched;
+    }
+    DispatchedRepositories shared = new SharedDispatchedRepositories(dispatched.getDispatched());
+    request.getAttributes().set(DispatchedRepositories.class, shared);
+    return shared;
+  }
+
+  /**
+   * Runs {@code callable} as the subject and with the base url of the calling thread, wherever it runs. Pool threads
+   * would otherwise keep the base url inherited from the request which started them.
+   */
+  private static Callable<Response> withCaller(final Callable<Response> callable) {
+    String baseUrl = BaseUrlHolder.isSet() ? BaseUrlHolder.get() : null;
+    Callable<Response> withBaseUrl = baseUrl == null ? callable : () -> {
+      String previous = BaseUrlHolder.isSet() ? BaseUrlHolder.get() : null;
+      BaseUrlHolder.set(baseUrl);
+      try {
+        return callable.call();
+      }
+      finally {
+        if (previous == null) {
+          BaseUrlHolder.unset();
+        }
+        else {
+          BaseUrlHolder.set(previous);
+        }
+      }
+    };
+    Subject subject = ThreadContext.getSubject();
+    return subject == null ? withBaseUrl : subject.associateWith(withBaseUrl);
+  }
+
+  /**
+   * Points the urls listed by {@code member} at the same paths of the group.
+   */
+  private Response rewriteUrls(final Repository member,
+                               final Repository group,
+                               final Response response) throws IOException
+  {
+    Payload payload = response.getPayload();
+    if (payload == null) {
+      return response;
+    }
+    String memberUrl = member.getUrl();
+    String groupUrl = group.getUrl();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = payload.openInputStream()) {
+      JsonMapRewriter.rewrite(in, JsonMapRewriter.target(out, (key, value) ->
+          value != null && value.startsWith(memberUrl + "/") ? groupUrl + value.substring(memberUrl.length()) : value));
+    }
+
+    Content content = new Content(new BytesPayload(out.toByteArray(), APPLICATION_JSON));
+    if (payload instanceof Content) {
+      DateTime lastModified = ((Content) payload).getAttributes().get(CONTENT_LAST_MODIFIED, DateTime.class);
+      content.getAttributes().set(CONTENT_LAST_MODIFIED, lastModified);
+    }
+    return new Response.Builder().copy(response).payload(content).build();
+  }
+
+  /**
+   * Merges the v1 or v2 recipe search results of all members, keeping the order of the members and of their results.
+   */
+  private Response search(final Context context,
+                          final Map<Repository, MemberTask> responses) throws Exception
+  {
+    Set<String> results = new LinkedHashSet<>();
+    boolean found = false;
+    try {
+      for (Map.Entry<Repository, MemberTask> entry : responses.entrySet()) {
+        Response response = await(entry.getKey(), entry.getValue());
+        if (response == null || !response.getStatus().isSuccessful() || response.getPayload() == null) {
+          continue;
+        }
+        try (InputStream in = response.getPayload().openInputStream()) {
+          JsonNode node = MAPPER.readTree(in).path(RESULTS);
+          node.forEach(result -> results.add(result.asText()));
+          found = true;
+        }
+        catch (IOException e) {
+          log.warn("Unable to read search results of member {}", entry.getKey().getName(), e);
+        }
+      }
+    }
+    finally {
+      responses.values().forEach(MemberTask::abandon);
+    }
+    if (!found) {
+      return notFoundResponse(context);
+    }
+    byte[] merged = MAPPER.writeValueAsBytes(Collections.singletonMap(RESULTS, results));
+    return HttpResponses.ok(new BytesPayload(merged, APPLICATION_JSON));
+  }
+
+  /**
+   * The request to one member, whose response is closed once the group no longer needs it.
+   */
+  private final class MemberTask
+      extends FutureTask<Response>
+  {
+    private final Repository member;
+
+    private final AtomicBoolean abandoned;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile boolean taken;
+
+    MemberTask(final Repository member, final Callable<Response> callable) {
+      this(member, callable, new AtomicBoolean());
+    }
+
+    private MemberTask(final Repository member, final Callable<Response> callable, final AtomicBoolean abandoned) {
+      super(() -> abandoned.get() ? null : callable.call());
+      this.member = member;
+      this.abandoned = abandoned;
+    }
+
+    /**
+     * The response is handed to the client, which closes it.
+     */
+    void taken() {
+      taken = true;
+    }
+
+    /**
+     * Skips the request when it has not started yet, and closes the response once there is one.
+     */
+    void abandon() {
+      abandoned.set(true);
+      if (isDone()) {
+        closeResponse();
+      }
+    }
+
+    @Override
+    protected void done() {
+      if (abandoned.get()) {
+        closeResponse();
+      }
+    }
+
+    private void closeResponse() {
+      if (taken || isCancelled() || !closed.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        Response response = get();
+        if (response != null && response.getPayload() != null) {
+          response.getPayload().close();
+        }
+      }
+      catch (ExecutionException | InterruptedException | IOException e) {
+        log.trace("Unable to close response of member {}", member.getName(), e);
+      }
+    }
+  }
+
+  /**
+   * {@link DispatchedRepositories} which may be updated by several members at once.
+   */
+  private static class SharedDispatchedRepositories
+      extends DispatchedRepositories
+  {
+    private final Set<String> dispatched;
+
+    SharedDispatchedRepositories(final Set<String> dispatched) {
+      this.dispatched = Collections.synchronizedSet(new HashSet<>(dispatched));
+    }
+
+    @Override
+    public void add(final Repository repository) {
+      dispatched.add(repository.getName());
+    }
+
+    @Override
+    public boolean contains(final Repository repository) {
+      return dispatched.contains(repository.getName());
+    }
+
+    @Override
+    public Set<String> getDispatched() {
+      synchronized (dispatched) {
+        return new HashSet<>(dispatched);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return dispatched.toString();
+    }
+  }
+}
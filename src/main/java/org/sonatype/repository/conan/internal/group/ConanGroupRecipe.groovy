@@ -0,0 +1,107 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.group
+
+import javax.annotation.Nonnull
+import javax.inject.Inject
+import javax.inject.Named
+import javax.inject.Provider
+import javax.inject.Singleton
+
+import org.sonatype.nexus.repository.Format
+import org.sonatype.nexus.repository.Repository
+import org.sonatype.nexus.repository.Type
+import org.sonatype.nexus.repository.group.GroupFacetImpl
+import org.sonatype.nexus.repository.types.GroupType
+import org.sonatype.nexus.repository.view.ConfigurableViewFacet
+import org.sonatype.nexus.repository.view.Route
+import org.sonatype.nexus.repository.view.Router
+import org.sonatype.nexus.repository.view.ViewFacet
+import org.sonatype.nexus.repository.view.handlers.BrowseUnsupportedHandler
+import org.sonatype.nexus.repository.view.matchers.ActionMatcher
+import org.sonatype.repository.conan.internal.ConanFormat
+import org.sonatype.repository.conan.internal.ConanRecipeSupport
+import org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher
+
+import static org.sonatype.nexus.repository.http.HttpHandlers.notFound
+import static org.sonatype.nexus.repository.http.HttpMethods.GET
+import static org.sonatype.nexus.repository.http.HttpMethods.HEAD
+import static org.sonatype.repository.conan.internal.ServerCapabilitiesHandler.serverCapabilities
+
+/**
+ * Conan group recipe, resolving downloads and searches against its hosted, proxy and group members in parallel.
+ *
+ * @since 0.0.6
+ */
+@Named(ConanGroupRecipe.NAME)
+@Singleton
+class ConanGroupRecipe
+  extends ConanRecipeSupport
+{
+  public static final String NAME = 'conan-group'
+
+  @Inject
+  Provider<GroupFacetImpl> groupFacet
+
+  @Inject
+  ConanGroupHandler groupHandler
+
+  @Inject
+  protected ConanGroupRecipe(@Named(GroupType.NAME) final Type type,
+                             @Named(ConanFormat.NAME) final Format format) {
+    super(type, format)
+  }
+
+  @Override
+  void apply(@Nonnull final Repository repository) throws Exception {
+    repository.attach(securityFacet.get())
+    repository.attach(configure(viewFacet.get()))
+    repository.attach(groupFacet.get())
+    repository.attach(storageFacet.get())
+    repository.attach(attributesFacet.get())
+  }
+
+  ViewFacet configure(final ConfigurableViewFacet facet) {
+    Router.Builder builder = new Router.Builder()
+
+    builder.route(ConanMatcher.ping()
+        .handler(traceHandler)
+        .handler(timingHandler)
+        .handler(serverCapabilities())
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(groupHandler.ping)
+        .create())
+
+    builder.route(new Route.Builder()
+        .matcher(BrowseUnsupportedHandler.MATCHER)
+        .handler(browseUnsupportedHandler)
+        .create())
+
+    // download_urls, files and searches alike, members route them as they would when asked directly
+    builder.route(new Route.Builder()
+        .matcher(new ActionMatcher(GET, HEAD))
+        .handler(traceHandler)
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(groupHandler)
+        .create())
+
+    builder.defaultHandlers(notFound())
+    facet.configure(builder.create())
+    return facet
+  }
+}
@@ -0,0 +1,681 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.hosted;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.util.concurrent.Striped;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.MD5;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA1;
+
+/**
+ * Persistent staging area for archives uploaded in several {@code Content-Range} chunks.
+ *
+ * Every chunk is kept in its own file together with its length and SHA1, so an interrupted upload can resume from
+ * the last chunk received, even across restarts. Once all chunks are present they are streamed back, in order and
+ * checked against their recorded SHA1, into a single blob.
+ *
+ * Assembling reads the staged chunks once more: the blob store only ingests a stream, and the digests of the whole
+ * archive cannot be carried over from one chunk to the next across restarts, so they are computed in that same pass.
+ *
+ * While the content of an upload is open for committing, its chunks are neither replaced nor discarded by other
+ * requests, nor is it opened a second time.
+ *
+ * Uploads which are not completed within {@code nexus.conan.upload.stagingExpiryHours} are discarded.
+ *
+ * @since 0.0.6
+ */
+@Named
+@Singleton
+public class ChunkedUploadStore
+    extends ComponentSupport
+{
+  private static final String METADATA = "upload.properties";
+
+  private static final String CHUNK_SUFFIX = ".chunk";
+
+  private static final String P_TOTAL = "total";
+
+  private static final String P_SHA1 = "sha1";
+
+  private static final String P_CHUNKS = "chunks";
+
+  private static final long PURGE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+  private final Path baseDirectory;
+
+  private final long expiryMillis;
+
+  private final Striped<Lock> locks = Striped.lazyWeakLock(64);
+
+  private final AtomicLong lastPurge = new AtomicLong();
+
+  /**
+   * Directories of the uploads whose content is open for committing, changed under the lock of each upload
+   */
+  private final Set<Path> committing = ConcurrentHashMap.newKeySet();
+
+  @Inject
+  public ChunkedUploadStore(final ApplicationDirectories applicationDirectories,
+                            @Named("${nexus.conan.upload.stagingExpiryHours:-24}") final int expiryHours)
+  {
+    this(applicationDirectories.getWorkDirectory("conan-uploads"), expiryHours);
+  }
+
+  @VisibleForTesting
+  ChunkedUploadStore(final File baseDirectory, final int expiryHours) {
+    checkArgument(expiryHours > 0, "expiryHours must be positive");
+    this.baseDirectory = checkNotNull(baseDirectory).toPath();
+    this.expiryMillis = TimeUnit.HOURS.toMillis(expiryHours);
+  }
+
+  /**
+   * @return how much of the upload has been received so far
+   */
+  public Progress status(final String repository, final String assetPath, final long total) throws IOException {
+    Lock lock = lock(repository, assetPath);
+    try {
+      Upload upload = load(directory(repository, assetPath));
+      return upload == null || upload.total != total ? new Progress(0, total) : upload.progress();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stages one chunk of an upload. The chunk must start where the content received so far ends, or at the start of
+   * a chunk already received in which case that chunk and those after it are replaced.
+   *
+   * @param contentMd5 optional base64 encoded MD5 of the chunk, as sent in the {@code Content-MD5} header
+   * @param sha1       optional SHA1 of the whole upload, checked once all chunks have been received
+   * @throws IllegalArgumentException when the chunk does not match its range or checksum
+   * @throws IllegalStateException    when the chunk does not line up with the content already received
+   */
+  public Progress write(final String repository,
+                        final String assetPath,
+                        final ContentRange range,
+                        final InputStream inputStream,
+                        @Nullable final String contentMd5,
+                        @Nullable final String sha1) throws IOException
+  {
+    checkNotNull(range);
+    checkArgument(range.hasContent(), "Content-Range has no content: %s", range);
+    purgeExpiredPeriodically();
+
+    Path directory = directory(repository, assetPath);
+    Lock lock = lock(repository, assetPath);
+    try {
+      checkNotCommitting(directory, assetPath);
+      Upload upload = load(directory);
+      if (upload == null || upload.total != range.getTotal()) {
+        if (range.getFirst() != 0) {
+          throw new IllegalStateException("Upload of " + assetPath + " must start at byte 0");
+        }
+        deleteDirectory(directory);
+        upload = new Upload(range.getTotal());
+      }
+      int index = upload.indexOf(range.getFirst());
+      if (index < 0) {
+        throw new IllegalStateException(
+            "Chunk at byte " + range.getFirst() + " does not line up with the " + upload.received() +
+                " bytes of " + assetPath + " already received");
+      }
+      Files.createDirectories(directory);
+
+      Chunk chunk = writeChunk(directory, range, inputStream, contentMd5);
+      for (Chunk replaced : upload.chunks.subList(index, upload.chunks.size())) {
+        if (replaced.start != chunk.start) {
+          Files.deleteIfExists(directory.resolve(replaced.fileName()));
+        }
+      }
+      upload.chunks.subList(index, upload.chunks.size()).clear();
+      upload.chunks.add(chunk);
+      if (sha1 != null) {
+        upload.sha1 = sha1;
+      }
+      store(directory, upload);
+      return upload.progress();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private Chunk writeChunk(final Path directory,
+                           final ContentRange range,
+                           final InputStream inputStream,
+                           @Nullable final String contentMd5) throws IOException
+  {
+    Path temp = Files.createTempFile(directory, "incoming", CHUNK_SUFFIX);
+    try {
+      HashingInputStream md5 = new HashingInputStream(MD5.function(), inputStream);
+      HashingInputStream sha1 = new HashingInputStream(SHA1.function(), md5);
+      long length = Files.copy(sha1, temp, REPLACE_EXISTING);
+      if (length != range.getLength()) {
+        throw new IllegalArgumentException(
+            "Chunk holds " + length + " bytes but Content-Range " + range + " expects " + range.getLength());
+      }
+      if (contentMd5 != null && !Base64.getEncoder().encodeToString(md5.hash().asBytes()).equals(contentMd5.trim())) {
+        throw new IllegalArgumentException("Chunk at byte " + range.getFirst() + " does not match its Content-MD5");
+      }
+      Chunk chunk = new Chunk(range.getFirst(), length, sha1.hash().toString());
+      Files.move(temp, directory.resolve(chunk.fileName()), REPLACE_EXISTING, ATOMIC_MOVE);
+      return chunk;
+    }
+    finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Opens the staged content of a complete upload. Each chunk is checked against its recorded SHA1 as it is read.
+   * Until the stream is closed the upload can neither be written to, discarded nor opened again.
+   *
+   * @throws IllegalStateException when the upload is not complete, a staged chunk is missing or the upload is open
+   * already
+   */
+  public InputStream open(final String repository, final String assetPath) throws IOException {
+    Path directory = directory(repository, assetPath);
+    Lock lock = lock(repository, assetPath);
+    try {
+      checkNotCommitting(directory, assetPath);
+      Upload upload = load(directory);
+      if (upload == null || !upload.progress().isComplete()) {
+        throw new IllegalStateException("Upload of " + assetPath + " is not complete");
+      }
+      for (Chunk chunk : upload.chunks) {
+        if (!Files.isRegularFile(directory.resolve(chunk.fileName()))) {
+          throw new IllegalStateException("Staged chunk at byte " + chunk.start + " missing for " + assetPath);
+        }
+      }
+      Iterator<Chunk> chunks = new ArrayList<>(upload.chunks).iterator();
+      committing.add(directory);
+      AtomicBoolean closed = new AtomicBoolean();
+      return new SequenceInputStream(new Enumeration<InputStream>()
+      {
+        @Override
+        public boolean hasMoreElements() {
+          return chunks.hasNext();
+        }
+
+        @Override
+        public InputStream nextElement() {
+          Chunk chunk = chunks.next();
+          try {
+            return new VerifyingInputStream(Files.newInputStream(directory.resolve(chunk.fileName())), chunk);
+          }
+          catch (IOException e) {
+            throw new IllegalStateException("Staged chunk missing for " + assetPath, e);
+          }
+        }
+      })
+      {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          }
+          finally {
+            if (closed.compareAndSet(false, true)) {
+              committed(repository, assetPath, directory);
+            }
+          }
+        }
+      };
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void committed(final String repository, final String assetPath, final Path directory) {
+    Lock lock = lock(repository, assetPath);
+    try {
+      committing.remove(directory);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private void checkNotCommitting(final Path directory, final String assetPath) {
+    if (committing.contains(directory)) {
+      throw new IllegalStateException("Upload of " + assetPath + " is being committed");
+    }
+  }
+
+  /**
+   * @return the SHA1 the client announced for the whole upload, if any
+   */
+  @Nullable
+  public String expectedSha1(final String repository, final String assetPath) throws IOException {
+    Lock lock = lock(repository, assetPath);
+    try {
+      Upload upload = load(directory(repository, assetPath));
+      return upload == null ? null : upload.sha1;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Discards a staged upload, unless it is being committed in which case it is left to the commit.
+   */
+  public void discard(final String repository, final String assetPath) throws IOException {
+    Path directory = directory(repository, assetPath);
+    Lock lock = lock(repository, assetPath);
+    try {
+      if (committing.contains(directory)) {
+        log.debug("Not discarding upload of {} while it is being committed", assetPath);
+        return;
+      }
+      deleteDirectory(directory);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Discards every staged upload of a repository.
+   */
+  public void discardAll(final String repository) throws IOException {
+    deleteDirectory(baseDirectory.resolve(repository));
+  }
+
+  /**
+   * Discards staged uploads which have not received a chunk within the expiry period.
+   */
+  public void purgeExpired() throws IOException {
+    if (!Files.isDirectory(baseDirectory)) {
+      return;
+    }
+    long cutoff = System.currentTimeMillis() - expiryMillis;
+    try (DirectoryStream<Path> repositories = Files.newDirectoryStream(baseDirectory)) {
+      for (Path repository : repositories) {
+        try (DirectoryStream<Path> uploads = Files.newDirectoryStream(repository)) {
+          for (Path upload : uploads) {
+            if (!committing.contains(upload) && Files.getLastModifiedTime(upload).toMillis() < cutoff) {
+              log.debug("Discarding expired upload {}", upload);
+              deleteDirectory(upload);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private void purgeExpiredPeriodically() {
+    long now = System.currentTimeMillis();
+    long last = lastPurge.get();
+    if (now - last >= PURGE_INTERVAL && lastPurge.compareAndSet(last, now)) {
+      try {
+        purgeExpired();
+      }
+      catch (IOException e) {
+        log.warn("Unable to discard expired uploads in {}", baseDirectory, e);
+      }
+    }
+  }
+
+  private Lock lock(final String repository, final String assetPath) {
+    Lock lock = locks.get(repository + ':' + assetPath);
+    lock.lock();
+    return lock;
+  }
+
+  private Path directory(final String repository, final String assetPath) {
+    return baseDirectory
+        .resolve(repository)
+        .resolve(SHA1.function().hashString(assetPath, StandardCharsets.UTF_8).toString());
+  }
+
+  @Nullable
+  private static Upload load(final Path directory) throws IOException {
+    Path metadata = directory.resolve(METADATA);
+    if (!Files.exists(metadata)) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(metadata)) {
+      properties.load(in);
+    }
+    Upload upload = new Upload(Long.parseLong(properties.getProperty(P_TOTAL)));
+    upload.sha1 = properties.getProperty(P_SHA1);
+    for (String chunk : Splitter.on(',').omitEmptyStrings().split(properties.getProperty(P_CHUNKS, ""))) {
+      upload.chunks.add(Chunk.parse(chunk));
+    }
+    return upload;
+  }
+
+  private static void store(final Path directory, final Upload upload) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(P_TOTAL, Long.toString(upload.total));
+    if (upload.sha1 != null) {
+      properties.setProperty(P_SHA1, upload.sha1);
+    }
+    properties.setProperty(P_CHUNKS, Joiner.on(',').join(upload.chunks));
+
+    Path temp = Files.createTempFile(directory, "upload", ".properties");
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        properties.store(out, null);
+      }
+      Files.move(temp, directory.resolve(METADATA), REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+    finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void deleteDirectory(final Path directory) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    List<Path> children = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      stream.forEach(children::add);
+    }
+    for (Path child : children) {
+      if (Files.isDirectory(child)) {
+        deleteDirectory(child);
+      }
+      else {
+        Files.deleteIfExists(child);
+      }
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  /**
+   * A parsed {@code Content-Range} request header, either {@code bytes first-last/total} or, to query progress
+   * without sending content, {@code bytes *}{@code /total}.
+   */
+  public static class ContentRange
+  {
+    private static final Pattern PATTERN = Pattern.compile("bytes\\s+(?:(\\d+)-(\\d+)|\\*)/(\\d+)");
+
+    private final long first;
+
+    private final long last;
+
+    private final long total;
+
+    private ContentRange(final long first, final long last, final long total) {
+      this.first = first;
+      this.last = last;
+      this.total = total;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the header is malformed or the range lies outside the total
+     */
+    public static ContentRange parse(final String header) {
+      Matcher matcher = PATTERN.matcher(checkNotNull(header).trim());
+      checkArgument(matcher.matches(), "Unsupported Content-Range: %s", header);
+      long total = Long.parseLong(matcher.group(3));
+      if (matcher.group(1) == null) {
+        return new ContentRange(-1, -1, total);
+      }
+      long first = Long.parseLong(matcher.group(1));
+      long last = Long.parseLong(matcher.group(2));
+      checkArgument(first <= last && last < total, "Invalid Content-Range: %s", header);
+      return new ContentRange(first, last, total);
+    }
+
+    /**
+     * @return false for a progress query
+     */
+    public boolean hasContent() {
+      return first >= 0;
+    }
+
+    public long getFirst() {
+      return first;
+    }
+
+    public long getLast() {
+      return last;
+    }
+
+    public long getLength() {
+      return last - first + 1;
+    }
+
+    public long getTotal() {
+      return total;
+    }
+
+    @Override
+    public String toString() {
+      return "bytes " + (hasContent() ? first + "-" + last : "*") + "/" + total;
+    }
+  }
+
+  /**
+   * How much of an upload has been received.
+   */
+  public static class Progress
+  {
+    private final long received;
+
+    private final long total;
+
+    Progress(final long received, final long total) {
+      this.received = received;
+      this.total = total;
+    }
+
+    public long getReceived() {
+      return received;
+    }
+
+    public long getTotal() {
+      return total;
+    }
+
+    public boolean isComplete() {
+      return received == total;
+    }
+
+    /**
+     * @return the value of the {@code Range} response header, or null when nothing has been received
+     */
+    @Nullable
+    public String toRangeHeader() {
+      return received == 0 ? null : "bytes=0-" + (received - 1);
+    }
+  }
+
+  private static class Upload
+  {
+    private final long total;
+
+    private String sha1;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    Upload(final long total) {
+      this.total = total;
+    }
+
+    long received() {
+      return chunks.isEmpty() ? 0 : chunks.get(chunks.size() - 1).end();
+    }
+
+    /**
+     * @return index of the chunk to replace by one starting at the given byte, or -1 when it does not line up
+     */
+    int indexOf(final long start) {
+      if (start == received()) {
+        return chunks.size();
+      }
+      for (int i = 0; i < chunks.size(); i++) {
+        if (chunks.get(i).start == start) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    Progress progress() {
+      return new Progress(received(), total);
+    }
+  }
+
+  private static class Chunk
+  {
+    private final long start;
+
+    private final long length;
+
+    private final String sha1;
+
+    Chunk(final long start, final long length, final String sha1) {
+      this.start = start;
+      this.length = length;
+      this.sha1 = sha1;
+    }
+
+    static Chunk parse(final String value) {
+      List<String> parts = Splitter.on(':').splitToList(value);
+      checkArgument(parts.size() == 3, "Invalid chunk: %s", value);
+      return new Chunk(Long.parseLong(parts.get(0)), Long.parseLong(parts.get(1)), parts.get(2));
+    }
+
+    long end() {
+      return start + length;
+    }
+
+    String fileName() {
+      return String.format("%020d%s", start, CHUNK_SUFFIX);
+    }
+
+    @Override
+    public String toString() {
+      return start + ":" + length + ":" + sha1;
+    }
+  }
+
+  /**
+   * Checks a staged chunk against its recorded length and SHA1 once it has been read to the end.
+   */
+  private static class VerifyingInputStream
+      extends FilterInputStream
+  {
+    private final Chunk chunk;
+
+    private final HashingInputStream hashing;
+
+    private long count;
+
+    private boolean verified;
+
+    VerifyingInputStream(final InputStream in, final Chunk chunk) {
+      this(new HashingInputStream(SHA1.function(), in), chunk);
+    }
+
+    private VerifyingInputStream(final HashingInputStream hashing, final Chunk chunk) {
+      super(hashing);
+      this.hashing = hashing;
+      this.chunk = chunk;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b == -1) {
+        verify();
+      }
+      else {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n == -1) {
+        verify();
+      }
+      else {
+        count += n;
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      throw new IOException("skip not supported");
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void verify() throws IOException {
+      if (!verified) {
+        verified = true;
+        HashCode hash = hashing.hash();
+        if (count != chunk.length || !hash.toString().equals(chunk.sha1)) {
+          throw new IOException("Staged chunk at byte " + chunk.start + " is corrupt");
+        }
+      }
+    }
+  }
+}
@@ -14,58 +14,76 @@ package org.sonatype.repository.conan.internal.hosted;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.validation.constraints.Min;
+import javax.validation.groups.Default;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.HashCode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.IOUtils;
 import org.apache.shiro.config.Ini;
+import org.joda.time.DateTime;
 import org.sonatype.nexus.blobstore.api.Blob;
 import org.sonatype.nexus.common.collect.AttributesMap;
 import org.sonatype.nexus.common.collect.NestedAttributesMap;
 import org.sonatype.nexus.repository.Facet.Exposed;
 import org.sonatype.nexus.repository.FacetSupport;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.repository.config.ConfigurationFacet;
 import org.sonatype.nexus.repository.http.HttpResponses;
 import org.sonatype.nexus.repository.storage.*;
 import org.sonatype.nexus.repository.transaction.TransactionalStoreBlob;
 import org.sonatype.nexus.repository.view.*;
-import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
-import org.sonatype.nexus.repository.view.payloads.StreamPayload;
-import org.sonatype.nexus.repository.view.payloads.StreamPayload.InputStreamSupplier;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
 import org.sonatype.nexus.repository.view.payloads.StringPayload;
 import org.sonatype.nexus.transaction.UnitOfWork;
 import org.sonatype.repository.conan.internal.AssetKind;
 import org.sonatype.repository.conan.internal.metadata.ConanCoords;
 import org.sonatype.repository.conan.internal.metadata.ConanInfo;
-import org.sonatype.repository.conan.internal.utils.ConanFacetUtils;
-
-import com.google.common.base.Supplier;
+import org.sonatype.repository.conan.internal.metadata.ConanMetadataCache;
+import org.sonatype.repository.conan.internal.metadata.ConanRevisions;
+import org.sonatype.repository.conan.internal.metrics.ConanMetrics;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace.Stage;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace.Timing;
+import org.sonatype.repository.conan.internal.utils.ConanHashing;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static java.util.Collections.singletonList;
+import static com.google.common.net.HttpHeaders.CONTENT_MD5;
+import static com.google.common.net.HttpHeaders.CONTENT_RANGE;
+import static com.google.common.net.HttpHeaders.RANGE;
+import static com.google.common.net.HttpHeaders.RETRY_AFTER;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA1;
+import static org.sonatype.nexus.repository.http.HttpStatus.ACCEPTED;
+import static org.sonatype.nexus.repository.http.HttpStatus.BAD_REQUEST;
+import static org.sonatype.nexus.repository.http.HttpStatus.CONFLICT;
+import static org.sonatype.nexus.repository.http.HttpStatus.CREATED;
 import static org.sonatype.nexus.repository.http.HttpStatus.OK;
+import static org.sonatype.nexus.repository.http.HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE;
+import static org.sonatype.nexus.repository.http.HttpStatus.SERVICE_UNAVAILABLE;
 import static org.sonatype.nexus.repository.storage.AssetEntityAdapter.P_ASSET_KIND;
-import static org.sonatype.nexus.repository.storage.ComponentEntityAdapter.P_GROUP;
-import static org.sonatype.nexus.repository.storage.ComponentEntityAdapter.P_VERSION;
-import static org.sonatype.nexus.repository.storage.MetadataNodeEntityAdapter.P_NAME;
 import static org.sonatype.nexus.repository.view.Content.maintainLastModified;
 import static org.sonatype.nexus.repository.view.ContentTypes.APPLICATION_JSON;
 import static org.sonatype.nexus.repository.view.Status.success;
+import static org.sonatype.repository.conan.internal.AssetKind.CONAN_EXPORT;
+import static org.sonatype.repository.conan.internal.AssetKind.CONAN_PACKAGE;
+import static org.sonatype.repository.conan.internal.AssetKind.CONAN_SOURCES;
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.GROUP;
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.PROJECT;
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.STATE;
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.VERSION;
-import static org.sonatype.repository.conan.internal.proxy.ConanProxyHelper.HASH_ALGORITHMS;
 import static org.sonatype.repository.conan.internal.proxy.ConanProxyHelper.findAsset;
 import static org.sonatype.repository.conan.internal.proxy.ConanProxyHelper.toContent;
 import static org.sonatype.repository.conan.internal.utils.ConanFacetUtils.findComponent;
+import static org.sonatype.repository.conan.internal.utils.ConanFacetUtils.findPackages;
+import static org.sonatype.repository.conan.internal.utils.ConanFacetUtils.findRecipes;
 
 /**
  * @since 0.0.2
@@ -74,13 +92,119 @@ import static org.sonatype.repository.conan.internal.utils.ConanFacetUtils.findC
 @Named
 public class ConanHostedFacet
         extends FacetSupport {
+    @VisibleForTesting
+    static final String CONFIG_KEY = "conan";
+
+    /**
+     * Limits applied to concurrent archive uploads, metadata uploads are never throttled
+     */
+    @VisibleForTesting
+    static class Config {
+        @Min(1)
+        public int maxConcurrentUploads = 8;
+
+        @Min(1)
+        public long maxUploadBytesInFlight = 8L * 1024 * 1024 * 1024;
+
+        @Min(0)
+        public int maxQueuedUploads = 32;
+
+        @Min(0)
+        public int uploadQueueTimeoutSeconds = 60;
+
+        @Min(0)
+        public int uploadRetryAfterSeconds = 30;
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{" +
+                    "maxConcurrentUploads=" + maxConcurrentUploads +
+                    ", maxUploadBytesInFlight=" + maxUploadBytesInFlight +
+                    ", maxQueuedUploads=" + maxQueuedUploads +
+                    ", uploadQueueTimeoutSeconds=" + uploadQueueTimeoutSeconds +
+                    ", uploadRetryAfterSeconds=" + uploadRetryAfterSeconds +
+                    '}';
+        }
+    }
+
+    private static final Set<AssetKind> ARCHIVES = EnumSet.of(CONAN_PACKAGE, CONAN_SOURCES, CONAN_EXPORT);
+
     private final UploadUrlManager uploadUrlManager;
 
+    private final ConanHashing conanHashing;
+
+    private final ChunkedUploadStore chunkedUploads;
+
+    private final ConanMetrics conanMetrics;
+
+    private final ConanMetadataCache metadataCache;
+
+    private ConanMetrics.RepositoryMetrics metrics;
+
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
+    private Config config;
+
+    private UploadAdmissionController uploadAdmission;
+
     @Inject
-    public ConanHostedFacet(final UploadUrlManager uploadUrlManager) {
+    public ConanHostedFacet(final UploadUrlManager uploadUrlManager,
+                            final ConanHashing conanHashing,
+                            final ChunkedUploadStore chunkedUploads,
+                            final ConanMetrics conanMetrics,
+                            final ConanMetadataCache metadataCache) {
         this.uploadUrlManager = uploadUrlManager;
+        this.conanHashing = checkNotNull(conanHashing);
+        this.chunkedUploads = checkNotNull(chunkedUploads);
+        this.conanMetrics = checkNotNull(conanMetrics);
+        this.metadataCache = checkNotNull(metadataCache);
+    }
+
+    @Override
+    protected void doValidate(final Configuration configuration) throws Exception {
+        facet(ConfigurationFacet.class).validateSection(configuration, CONFIG_KEY, Config.class,
+                Default.class, getRepository().getType().getValidationGroup());
+    }
+
+    @Override
+    protected void doConfigure(final Configuration configuration) throws Exception {
+        config = facet(ConfigurationFacet.class).readSection(configuration, CONFIG_KEY, Config.class);
+        if (uploadAdmission == null) {
+            uploadAdmission = new UploadAdmissionController(
+                    config.maxConcurrentUploads,
+                    config.maxUploadBytesInFlight,
+                    config.maxQueuedUploads,
+                    config.uploadQueueTimeoutSeconds,
+                    TimeUnit.SECONDS);
+        }
+        else {
+            // uploads in flight keep counting against the new limits
+            uploadAdmission.configure(
+                    config.maxConcurrentUploads,
+                    config.maxUploadBytesInFlight,
+                    config.maxQueuedUploads,
+                    config.uploadQueueTimeoutSeconds,
+                    TimeUnit.SECONDS);
+        }
+        log.debug("Config: {}", config);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        metrics = conanMetrics.forRepository(getRepository().getName());
+    }
+
+    @Override
+    protected void doDelete() throws Exception {
+        chunkedUploads.discardAll(getRepository().getName());
+        conanMetrics.remove(getRepository().getName());
+        metadataCache.invalidateAll(getRepository().getName());
+    }
+
+    @Override
+    protected void doDestroy() throws Exception {
+        config = null;
+        uploadAdmission = null;
     }
 
     /**
@@ -103,58 +227,235 @@ public class ConanHostedFacet
         checkNotNull(payload);
         checkNotNull(assetKind);
 
-        String savedJson = getSavedJson(assetPath, payload);
-        doPutArchive(assetPath + "/download_urls", coord, new StringPayload(savedJson, APPLICATION_JSON), assetKind);
-        String response = getResponseJson(savedJson);
+        ByteArrayOutputStream savedJson = new ByteArrayOutputStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try (InputStream inputStream = payload.openInputStream()) {
+            uploadUrlManager.convertKeys(assetPath + "/", getRepository().getUrl(), inputStream, savedJson, response);
+        }
+        doPutArchive(assetPath + "/download_urls", coord,
+                new BytesPayload(savedJson.toByteArray(), APPLICATION_JSON), assetKind);
 
         return new Response.Builder()
                 .status(success(OK))
-                .payload(new StringPayload(response, APPLICATION_JSON))
+                .payload(new BytesPayload(response.toByteArray(), APPLICATION_JSON))
                 .build();
     }
 
-    private String getResponseJson(final String savedJson) throws IOException {
-        String response;
-        try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(savedJson.getBytes())) {
-            response = uploadUrlManager.prefixToValues(getRepository().getUrl(), byteArrayInputStream);
+    public Response upload(final String assetPath,
+                           final ConanCoords coord,
+                           final Payload payload,
+                           final AssetKind assetKind) throws IOException {
+        checkNotNull(assetPath);
+        checkNotNull(coord);
+        checkNotNull(payload);
+        checkNotNull(assetKind);
+
+        if (ARCHIVES.contains(assetKind)) {
+            return uploadArchive(assetPath, coord, payload, assetKind);
         }
-        return response;
+
+        doPutArchive(assetPath, coord, payload, assetKind);
+
+        return new Response.Builder()
+                .status(success(OK))
+                .build();
     }
 
-    private String getSavedJson(final String assetPath, final Payload payload) throws IOException {
-        String savedJson;
-        try (InputStream inputStream = payload.openInputStream()) {
-            savedJson = uploadUrlManager.convertKeys(assetPath + "/", inputStream);
+    private Response uploadArchive(final String assetPath,
+                                   final ConanCoords coord,
+                                   final Payload payload,
+                                   final AssetKind assetKind) throws IOException {
+        UploadAdmissionController.Admission admission = admit(assetPath, payload.getSize());
+        if (admission == null) {
+            return tooManyUploads();
         }
-        return savedJson;
+
+        try (UploadAdmissionController.Admission ignored = admission) {
+            doPutArchive(assetPath, coord, payload, assetKind);
+        }
+
+        return new Response.Builder()
+                .status(success(OK))
+                .build();
     }
 
-    public Response upload(final String assetPath,
-                           final ConanCoords coord,
-                           final Payload payload,
-                           final AssetKind assetKind) throws IOException {
+    /**
+     * Stages one {@code Content-Range} chunk of an archive upload. Once every chunk has been received the archive
+     * is assembled from the staged chunks, checked against the {@code X-Checksum-Sha1} sent by the client and stored.
+     * A staged upload which turns out incomplete is discarded and answered with 409, so the client starts over.
+     *
+     * A chunk without content ({@code Content-Range: bytes *}{@code /total}) reports how much has been received, so an
+     * interrupted upload can resume from there.
+     *
+     * @return 200 once the archive is stored, otherwise 202 with a {@code Range} header covering the bytes received
+     */
+    public Response uploadChunk(final String assetPath,
+                                final ConanCoords coord,
+                                final Payload payload,
+                                final AssetKind assetKind,
+                                final Headers headers) throws IOException {
         checkNotNull(assetPath);
         checkNotNull(coord);
         checkNotNull(payload);
         checkNotNull(assetKind);
+        checkNotNull(headers);
 
-        doPutArchive(assetPath, coord, payload, assetKind);
+        if (!ARCHIVES.contains(assetKind)) {
+            return badRequest("Chunked uploads are only supported for archives");
+        }
+
+        ChunkedUploadStore.ContentRange range;
+        try {
+            range = ChunkedUploadStore.ContentRange.parse(headers.get(CONTENT_RANGE));
+        }
+        catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+
+        String repository = getRepository().getName();
+        ChunkedUploadStore.Progress progress = chunkedUploads.status(repository, assetPath, range.getTotal());
+        if (!range.hasContent()) {
+            return progress.isComplete() ? commitChunkedUpload(assetPath, coord, assetKind, range.getTotal())
+                    : uploadProgress(ACCEPTED, progress);
+        }
+        if (range.getFirst() > progress.getReceived()) {
+            return uploadProgress(REQUESTED_RANGE_NOT_SATISFIABLE, progress);
+        }
+
+        UploadAdmissionController.Admission admission = admit(assetPath, range.getLength());
+        if (admission == null) {
+            return tooManyUploads();
+        }
+        try (UploadAdmissionController.Admission ignored = admission;
+             InputStream inputStream = payload.openInputStream()) {
+            progress = chunkedUploads.write(repository, assetPath, range, inputStream,
+                    headers.get(CONTENT_MD5), headers.get(HostedHandlers.CLIENT_CHECKSUM));
+        }
+        catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+        catch (IllegalStateException e) {
+            log.debug("Rejecting chunk of {}: {}", assetPath, e.getMessage());
+            return uploadProgress(CONFLICT, chunkedUploads.status(repository, assetPath, range.getTotal()));
+        }
+
+        if (!progress.isComplete()) {
+            return uploadProgress(ACCEPTED, progress);
+        }
+        return commitChunkedUpload(assetPath, coord, assetKind, range.getTotal());
+    }
+
+    private Response commitChunkedUpload(final String assetPath,
+                                         final ConanCoords coord,
+                                         final AssetKind assetKind,
+                                         final long size) throws IOException {
+        UploadAdmissionController.Admission admission = admit(assetPath, size);
+        if (admission == null) {
+            return tooManyUploads();
+        }
+
+        String repository = getRepository().getName();
+        String expectedSha1 = chunkedUploads.expectedSha1(repository, assetPath);
+        StorageFacet storageFacet = facet(StorageFacet.class);
+        String mismatch = null;
+        try (UploadAdmissionController.Admission ignored = admission;
+             InputStream inputStream = chunkedUploads.open(repository, assetPath);
+             TempBlob tempBlob = conanHashing.createTempBlob(storageFacet, inputStream, size)) {
+            String sha1 = tempBlob.getHashes().get(SHA1).toString();
+            if (expectedSha1 != null && !expectedSha1.trim().equalsIgnoreCase(sha1)) {
+                mismatch = "Assembled upload has SHA1 " + sha1 + " but " + expectedSha1 + " was expected";
+            }
+            else {
+                storeArchive(coord, assetPath, tempBlob, assetKind);
+            }
+        }
+        catch (IllegalStateException e) {
+            log.debug("Discarding staged upload of {}: {}", assetPath, e.getMessage());
+            chunkedUploads.discard(repository, assetPath);
+            return uploadProgress(CONFLICT, chunkedUploads.status(repository, assetPath, size));
+        }
+        catch (IOException | RuntimeException e) {
+            log.warn("Discarding staged upload of {}", assetPath, e);
+            chunkedUploads.discard(repository, assetPath);
+            throw e;
+        }
+        // only once the staged content is closed, the upload cannot be discarded while it is being committed
+        chunkedUploads.discard(repository, assetPath);
+        if (mismatch != null) {
+            return badRequest(mismatch);
+        }
 
         return new Response.Builder()
                 .status(success(OK))
                 .build();
     }
 
+    private Response uploadProgress(final int status, final ChunkedUploadStore.Progress progress) {
+        Response.Builder builder = new Response.Builder()
+                .status(status == ACCEPTED ? success(ACCEPTED) : Status.failure(status));
+        String range = progress.toRangeHeader();
+        if (range != null) {
+            builder.header(RANGE, range);
+        }
+        return builder.build();
+    }
+
+    private static Response badRequest(final String message) {
+        return new Response.Builder()
+                .status(Status.failure(BAD_REQUEST, message))
+                .build();
+    }
+
+    @Nullable
+    private UploadAdmissionController.Admission admit(final String assetPath, final long size) {
+        try {
+            UploadAdmissionController.Admission admission = uploadAdmission.admit(size);
+            if (admission == null) {
+                log.debug("Rejecting upload of {}, {} uploads in progress and {} queued",
+                        assetPath, uploadAdmission.getActiveUploads(), uploadAdmission.getQueuedUploads());
+            }
+            return admission;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private Response tooManyUploads() {
+        return new Response.Builder()
+                .status(Status.failure(SERVICE_UNAVAILABLE, "Too many concurrent uploads"))
+                .header(RETRY_AFTER, Integer.toString(config.uploadRetryAfterSeconds))
+                .build();
+    }
+
     private void doPutArchive(final String assetPath,
                               final ConanCoords coord,
                               final Payload payload,
                               final AssetKind assetKind) throws IOException {
         StorageFacet storageFacet = facet(StorageFacet.class);
-        try (TempBlob tempBlob = storageFacet.createTempBlob(payload, ConanFacetUtils.HASH_ALGORITHMS)) {
-            doPutArchive(coord, assetPath, tempBlob, assetKind);
+        try (TempBlob tempBlob = conanHashing.createTempBlob(storageFacet, payload)) {
+            storeArchive(coord, assetPath, tempBlob, assetKind);
         }
     }
 
+    private void storeArchive(final ConanCoords coord,
+                              final String path,
+                              final TempBlob tempBlob,
+                              final AssetKind assetKind) throws IOException {
+        try (Timing ignored = RequestTrace.time(Stage.STORE)) {
+            doPutArchive(coord, path, tempBlob, assetKind);
+        }
+        catch (IOException | RuntimeException e) {
+            metrics.storeFailure(assetKind);
+            throw e;
+        }
+        finally {
+            metadataCache.invalidate(getRepository().getName(), path);
+        }
+        metrics.bytesIn(assetKind, tempBlob.getBlob().getMetrics().getContentSize());
+    }
+
     @TransactionalStoreBlob
     protected void doPutArchive(final ConanCoords coord,
                                 final String path,
@@ -194,18 +495,18 @@ public class ConanHostedFacet
 
     private Content saveAsset(final StorageTx tx,
                               final Asset asset,
-                              final Supplier<InputStream> contentSupplier) throws IOException {
-        return saveAsset(tx, asset, contentSupplier, null, null);
+                              final TempBlob tempBlob) throws IOException {
+        return saveAsset(tx, asset, tempBlob, null, null);
     }
 
     private Content saveAsset(final StorageTx tx,
                               final Asset asset,
-                              final Supplier<InputStream> contentSupplier,
+                              final TempBlob tempBlob,
                               final String contentType,
                               final AttributesMap contentAttributes) throws IOException {
         Content.applyToAsset(asset, maintainLastModified(asset, contentAttributes));
         AssetBlob assetBlob = tx.setBlob(
-                asset, asset.name(), contentSupplier, HASH_ALGORITHMS, null, contentType, false
+                asset, asset.name(), tempBlob, null, contentType, false
         );
 
         asset.markAsDownloaded();
@@ -213,6 +514,213 @@ public class ConanHostedFacet
         return toContent(asset, assetBlob.getBlob());
     }
 
+    /**
+     * Stores a file of a v2 recipe or package revision and makes that revision the latest of its revisions. Revisions
+     * are immutable: the same content stored again only records the revision, different content is refused.
+     *
+     * @param revisionsPath of the revisions of the recipe or package the file belongs to
+     * @param reference     of the recipe or package, see {@link ConanRevisions}
+     * @param revision      the file belongs to
+     * @return 201 once stored, or 404 to a checksum deploy of content which is not stored yet
+     */
+    public Response uploadRevisionFile(final Context context,
+                                       final String revisionsPath,
+                                       final String reference,
+                                       final String revision) throws IOException {
+        AssetKind assetKind = context.getAttributes().require(AssetKind.class);
+        ConanCoords coord = ConanCoords.fromContext(context);
+        String assetPath = context.getRequest().getPath();
+        Headers headers = context.getRequest().getHeaders();
+        Payload payload = context.getRequest().getPayload();
+
+        if (Boolean.parseBoolean(headers.get(HostedHandlers.CHECKSUM_DEPLOY))) {
+            String sha1 = headers.get(HostedHandlers.CLIENT_CHECKSUM);
+            if (sha1 == null || !sha1.trim().equalsIgnoreCase(storedSha1(assetPath))) {
+                return HttpResponses.notFound();
+            }
+        } else {
+            checkNotNull(payload);
+            UploadAdmissionController.Admission admission = null;
+            if (ARCHIVES.contains(assetKind)) {
+                admission = admit(assetPath, payload.getSize());
+                if (admission == null) {
+                    return tooManyUploads();
+                }
+            }
+            try (UploadAdmissionController.Admission ignored = admission;
+                 TempBlob tempBlob = conanHashing.createTempBlob(facet(StorageFacet.class), payload)) {
+                if (!storeRevisionFile(coord, assetPath, tempBlob, assetKind)) {
+                    return new Response.Builder()
+                            .status(Status.failure(CONFLICT, "Revision " + revision + " of " + reference
+                                    + " is immutable, " + assetPath + " differs"))
+                            .build();
+                }
+            }
+        }
+
+        updateRevisions(coord, revisionsPath, reference, revision);
+        return new Response.Builder()
+                .status(success(CREATED))
+                .build();
+    }
+
+    /**
+     * @return false when a different file is stored at the path already
+     */
+    private boolean storeRevisionFile(final ConanCoords coord,
+                                      final String path,
+                                      final TempBlob tempBlob,
+                                      final AssetKind assetKind) throws IOException {
+        boolean stored;
+        try (Timing ignored = RequestTrace.time(Stage.STORE)) {
+            stored = doPutRevisionFile(coord, path, tempBlob, assetKind);
+        }
+        catch (IOException | RuntimeException e) {
+            metrics.storeFailure(assetKind);
+            throw e;
+        }
+        finally {
+            metadataCache.invalidate(getRepository().getName(), path);
+        }
+        metrics.bytesIn(assetKind, tempBlob.getBlob().getMetrics().getContentSize());
+        return stored;
+    }
+
+    @TransactionalStoreBlob
+    protected boolean doPutRevisionFile(final ConanCoords coord,
+                                        final String path,
+                                        final TempBlob tempBlob,
+                                        final AssetKind assetKind) throws IOException {
+        StorageTx tx = UnitOfWork.currentTx();
+        Asset asset = findAsset(tx, tx.findBucket(getRepository()), path);
+        if (asset != null) {
+            return tempBlob.getHashes().get(SHA1).equals(asset.getChecksum(SHA1));
+        }
+        doPutArchive(coord, path, tempBlob, assetKind);
+        return true;
+    }
+
+    @Nullable
+    @TransactionalStoreBlob
+    protected String storedSha1(final String path) {
+        StorageTx tx = UnitOfWork.currentTx();
+        Asset asset = findAsset(tx, tx.findBucket(getRepository()), path);
+        HashCode sha1 = asset == null ? null : asset.getChecksum(SHA1);
+        return sha1 == null ? null : sha1.toString();
+    }
+
+    private void updateRevisions(final ConanCoords coord,
+                                 final String revisionsPath,
+                                 final String reference,
+                                 final String revision) throws IOException {
+        try {
+            doUpdateRevisions(coord, revisionsPath, reference, revision);
+        }
+        finally {
+            metadataCache.invalidate(getRepository().getName(), revisionsPath);
+        }
+    }
+
+    @TransactionalStoreBlob
+    protected void doUpdateRevisions(final ConanCoords coord,
+                                     final String revisionsPath,
+                                     final String reference,
+                                     final String revision) throws IOException {
+        StorageTx tx = UnitOfWork.currentTx();
+        Asset asset = findAsset(tx, tx.findBucket(getRepository()), revisionsPath);
+        byte[] revisions;
+        if (asset == null) {
+            revisions = ConanRevisions.makeLatest(null, reference, revision, DateTime.now());
+        } else {
+            try (InputStream inputStream = tx.requireBlob(asset.requireBlobRef()).getInputStream()) {
+                revisions = ConanRevisions.makeLatest(inputStream, reference, revision, DateTime.now());
+            }
+        }
+        if (revisions == null) {
+            return;
+        }
+        try (TempBlob tempBlob = conanHashing.createTempBlob(facet(StorageFacet.class),
+                new ByteArrayInputStream(revisions), revisions.length)) {
+            doPutArchive(coord, revisionsPath, tempBlob, AssetKind.REVISIONS);
+        }
+    }
+
+    /**
+     * Services the v2 latest endpoint of a recipe or package
+     */
+    public Response getLatest(final String revisionsPath) throws IOException {
+        Content revisions = doGet(revisionsPath);
+        if (revisions == null) {
+            return HttpResponses.notFound();
+        }
+        byte[] latest;
+        try (InputStream inputStream = revisions.openInputStream()) {
+            latest = ConanRevisions.latest(inputStream);
+        }
+        return latest == null ? HttpResponses.notFound() : HttpResponses.ok(new BytesPayload(latest, APPLICATION_JSON));
+    }
+
+    @Nullable
+    public String getLatestRevision(final String revisionsPath) throws IOException {
+        Content revisions = doGet(revisionsPath);
+        if (revisions == null) {
+            return null;
+        }
+        try (InputStream inputStream = revisions.openInputStream()) {
+            return ConanRevisions.latestRevision(inputStream);
+        }
+    }
+
+    /**
+     * Services the v2 files endpoint of a recipe or package revision, listing the files stored under its path
+     */
+    @TransactionalStoreBlob
+    public Response listRevisionFiles(final Context context) throws JsonProcessingException {
+        StorageTx tx = UnitOfWork.currentTx();
+        String prefix = context.getRequest().getPath() + "/";
+        Component component = findComponent(tx, getRepository(), ConanCoords.fromContext(context));
+
+        Map<String, Object> files = new TreeMap<>();
+        if (component != null) {
+            for (Asset asset : tx.browseAssets(component)) {
+                String name = asset.name();
+                if (name.startsWith(prefix) && name.indexOf('/', prefix.length()) < 0) {
+                    files.put(name.substring(prefix.length()), Collections.emptyMap());
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            return HttpResponses.notFound("Revision not found: " + context.getRequest().getPath());
+        }
+        return new Response.Builder()
+                .status(success(OK))
+                .payload(new BytesPayload(MAPPER.writeValueAsBytes(Collections.singletonMap("files", files)),
+                        APPLICATION_JSON))
+                .build();
+    }
+
+    /**
+     * Services the v2 search endpoint of a recipe revision with the conaninfo of the latest revision of each package
+     *
+     * @param recipeRevisionPath e.g. {@code /v2/conans/jsonformoderncpp/2.1.1/vthiery/stable/revisions/<rrev>}
+     */
+    @TransactionalStoreBlob
+    public Response searchRevision(final Context context, final String recipeRevisionPath) throws IOException {
+        StorageTx tx = UnitOfWork.currentTx();
+        ConanCoords coord = ConanCoords.fromContext(context);
+        Component component = findComponent(tx, getRepository(), coord);
+        if (component == null) {
+            return HttpResponses.notFound("Recipe not found: " + ConanCoords.getSpec(coord));
+        }
+
+        Map<String, ConanInfo> result = findPackages(tx, component, recipeRevisionPath + "/packages/",
+                "/files/conaninfo.txt");
+        return new Response.Builder()
+                .status(success(OK))
+                .payload(new BytesPayload(MAPPER.writeValueAsBytes(result), APPLICATION_JSON))
+                .build();
+    }
+
     /**
      * Services the download_urls endpoint for root and package data
      *
@@ -229,14 +737,9 @@ public class ConanHostedFacet
             return HttpResponses.notFound();
         }
 
-        String response;
-        try (InputStream inputStream = content.openInputStream()) {
-            response = uploadUrlManager.prefixToValues(getRepository().getUrl(), inputStream);
-        }
-
         return new Response.Builder()
                 .status(success(OK))
-                .payload(new StringPayload(response, APPLICATION_JSON))
+                .payload(uploadUrlManager.prefixToValues(getRepository().getUrl(), content))
                 .build();
     }
 
@@ -245,42 +748,11 @@ public class ConanHostedFacet
         Parameters parameters = context.getRequest().getParameters();
         log.info("[search] : {}", parameters);
 
-        StorageTx tx = UnitOfWork.currentTx();
-
-        String q = parameters.get("q").replace("*", "%");
-
-        Pattern pattern = Pattern.compile("(?<name>[^/@]*)(/(?<version>[^/@]*))?((@(?<group>[^/@]*))?(/(?<channel>[^/@]*))?)?");
-
-        Matcher matcher = pattern.matcher(q);
-        if (!matcher.matches()) {
+        List<String> matches = findRecipes(UnitOfWork.currentTx(), getRepository(), parameters.get("q"));
+        if (matches == null) {
             return HttpResponses.notFound();
         }
 
-        Query.Builder builder = Query.builder().where(P_NAME).like(matcher.group("name"));
-
-        appendQueryComponent(builder, matcher, "version");
-        appendQueryComponent(builder, matcher, "group");
-        String channel = matcher.group("channel");
-        Query query = builder.build();
-        Iterable<Component> components = tx.findComponents(
-                query,
-                singletonList(getRepository())
-        );
-
-        Collection matches = new ArrayList<String>();
-        components.forEach(c -> {
-            log.info("[search] : {}", c);
-            ConanCoords coord = ConanCoords.fromComponent(c);
-            if (channel != null) {
-                Object state = c.attributes().get(STATE);
-                if (state != null && state.equals(channel)) {
-                    matches.add(ConanCoords.getSpec(coord));
-                }
-            } else {
-                matches.add(ConanCoords.getSpec(coord));
-            }
-        });
-
         HashMap<String, Object> result = new HashMap<>();
         result.put("results", matches);
         String resultString = MAPPER.writeValueAsString(result);
@@ -290,40 +762,18 @@ public class ConanHostedFacet
                 .build();
     }
 
-    private void appendQueryComponent(Query.Builder builder, Matcher matcher, String group) {
-        if (matcher.group(group) != null) {
-            builder.and(group).like(matcher.group(group));
-        }
-    }
-
     @TransactionalStoreBlob
-    public Response searchUrl(final Context context) throws JsonProcessingException {
+    public Response searchUrl(final Context context) throws IOException {
         StorageTx tx = UnitOfWork.currentTx();
-        TokenMatcher.State state = context.getAttributes().require(TokenMatcher.State.class);
-        ConanCoords coord = ConanCoords.convertFromState(state);
+        ConanCoords coord = ConanCoords.fromContext(context);
         Component component = findComponent(tx, getRepository(), coord);
 
         if (component == null) {
             return HttpResponses.notFound("Recipe not found: " + ConanCoords.getSpec(coord));
         }
 
-        Iterable<Asset> assets = tx.browseAssets(component);
-
-        HashMap<String, Object> result = new HashMap<>();
-        for (Asset asset : assets) {
-            log.debug("[searchUrl]: {}", asset);
-            String name = asset.name();
-            if (name.endsWith("conaninfo.txt")) {
-                String sha = name.substring(name.length() - 54, name.length() - 14);
-
-                Blob blob = tx.requireBlob(asset.requireBlobRef());
-
-                BufferedReader reader = new BufferedReader(new InputStreamReader(blob.getInputStream()));
-                ConanInfo info = ConanInfo.load(reader);
-
-                result.put(sha, info);
-            }
-        }
+        Map<String, ConanInfo> result = findPackages(tx, component,
+                "/v1/conans/" + ConanCoords.getPath(coord) + "/packages/", "/conaninfo.txt");
 
         String resultString = MAPPER.writeValueAsString(result);
         log.debug("[searchUrl] : {}", resultString);
@@ -333,43 +783,61 @@ public class ConanHostedFacet
                 .build();
     }
 
-    public Response get(final Context context) {
+    /**
+     * Serves stored content as-is so that its attributes (last modified, hashes) remain available
+     * to the conditional request and partial fetch handlers
+     */
+    public Response get(final Context context) throws IOException {
         log.debug("Request {}", context.getRequest().getPath());
 
+        AssetKind assetKind = context.getAttributes().get(AssetKind.class);
         Content content = doGet(context.getRequest().getPath());
         if (content == null) {
+            metrics.miss(assetKind);
             return HttpResponses.notFound();
         }
 
-        return new Response.Builder()
-                .status(success(OK))
-                .payload(new StreamPayload(
-                        new InputStreamSupplier() {
-                            @Nonnull
-                            @Override
-                            public InputStream get() throws IOException {
-                                return content.openInputStream();
-                            }
-                        },
-                        content.getSize(),
-                        content.getContentType()))
-                .build();
+        metrics.hit(assetKind);
+        metrics.bytesOut(assetKind, content.getSize());
+        return HttpResponses.ok(content);
     }
 
+    /**
+     * Serves small content from the {@link ConanMetadataCache}, only reading storage on a miss
+     */
     @Nullable
-    @TransactionalStoreBlob
-    protected Content doGet(final String path) {
+    protected Content doGet(final String path) throws IOException {
         checkNotNull(path);
 
+        String repository = getRepository().getName();
+        Content cached = metadataCache.get(repository, path);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = metadataCache.stamp(repository, path);
+        Content content = doGetStored(path);
+        return content == null ? null : metadataCache.cache(repository, path, stamp, content);
+    }
+
+    @Nullable
+    @TransactionalStoreBlob
+    protected Content doGetStored(final String path) {
         StorageTx tx = UnitOfWork.currentTx();
 
-        Asset asset = findAsset(tx, tx.findBucket(getRepository()), path);
+        Asset asset;
+        try (Timing ignored = RequestTrace.time(Stage.QUERY)) {
+            asset = findAsset(tx, tx.findBucket(getRepository()), path);
+        }
         if (asset == null) {
             return null;
         }
         if (asset.markAsDownloaded()) {
             tx.saveAsset(asset);
         }
-        return toContent(asset, tx.requireBlob(asset.requireBlobRef()));
+        Blob blob;
+        try (Timing ignored = RequestTrace.time(Stage.BLOB)) {
+            blob = tx.requireBlob(asset.requireBlobRef());
+        }
+        return toContent(asset, blob);
     }
 }
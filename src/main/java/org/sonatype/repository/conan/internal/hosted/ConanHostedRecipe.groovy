@@ -22,18 +22,17 @@ import org.sonatype.nexus.repository.Repository
 import org.sonatype.nexus.repository.Type
 import org.sonatype.nexus.repository.types.HostedType
 import org.sonatype.nexus.repository.view.ConfigurableViewFacet
-import org.sonatype.nexus.repository.view.Context
 import org.sonatype.nexus.repository.view.Handler
 import org.sonatype.nexus.repository.view.Route
 import org.sonatype.nexus.repository.view.Route.Builder
 import org.sonatype.nexus.repository.view.Router
 import org.sonatype.nexus.repository.view.ViewFacet
 import org.sonatype.nexus.repository.view.handlers.BrowseUnsupportedHandler
-import org.sonatype.nexus.repository.view.matchers.ActionMatcher
-import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher
 import org.sonatype.repository.conan.internal.AssetKind
+import org.sonatype.repository.conan.internal.AssetKindHandler
 import org.sonatype.repository.conan.internal.ConanFormat
 import org.sonatype.repository.conan.internal.ConanRecipeSupport
+import org.sonatype.repository.conan.internal.route.ConanRouteIndex
 import org.sonatype.repository.conan.internal.security.token.ConanTokenFacet
 
 import com.google.inject.Provider
@@ -43,8 +42,6 @@ import static org.sonatype.nexus.repository.http.HttpMethods.GET
 import static org.sonatype.nexus.repository.http.HttpMethods.HEAD
 import static org.sonatype.nexus.repository.http.HttpMethods.POST
 import static org.sonatype.nexus.repository.http.HttpMethods.PUT
-import static org.sonatype.nexus.repository.view.matchers.logic.LogicMatchers.and
-import static org.sonatype.nexus.repository.view.matchers.logic.LogicMatchers.or
 import static org.sonatype.repository.conan.internal.AssetKind.CONAN_FILE
 import static org.sonatype.repository.conan.internal.AssetKind.CONAN_INFO
 import static org.sonatype.repository.conan.internal.AssetKind.CONAN_MANIFEST
@@ -53,7 +50,9 @@ import static org.sonatype.repository.conan.internal.AssetKind.CONAN_EXPORT
 
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.DIGEST
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.GROUP
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.PACKAGE_REVISION
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.PROJECT
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.RECIPE_REVISION
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.STATE
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.VERSION
 
@@ -122,6 +121,28 @@ class ConanHostedRecipe
 
     private static final GString DIGEST_URL = BASE_URL + "/digest"
 
+    private static final String PING_V2 = "/v2/ping"
+
+    private static final String CHECK_CREDENTIALS_URL_V2 = "/v2/users/check_credentials"
+
+    private static final String AUTHENTICATE_URL_V2 = "/v2/users/authenticate"
+
+    private static final String SEARCH_V2 = "/v2/conans/search"
+
+    private static final GString RECIPE_URL_V2 = "/v2/conans/{${PROJECT}}/{${VERSION}}/{${GROUP}}/{${STATE}}"
+
+    private static final String REVISIONS = "/revisions"
+
+    private static final GString RECIPE_REVISION_URL_V2 = RECIPE_URL_V2 + REVISIONS + "/{${RECIPE_REVISION}}"
+
+    private static final GString PACKAGE_URL_V2 = RECIPE_REVISION_URL_V2 + "/packages/{${DIGEST}}"
+
+    private static final GString PACKAGE_REVISION_URL_V2 = PACKAGE_URL_V2 + REVISIONS + "/{${PACKAGE_REVISION}}"
+
+    private static final String FILES = "/files"
+
+    private static final String LATEST = "/latest"
+
 
     @Inject
     Provider<ConanHostedFacet> hostedFacet
@@ -139,11 +160,6 @@ class ConanHostedRecipe
         super(type, format)
     }
 
-    Closure assetKindHandler = { Context context, AssetKind value ->
-        context.attributes.set(AssetKind, value)
-        return context.proceed()
-    }
-
     @Override
     void apply(@Nonnull final Repository repository) throws Exception {
         repository.attach(securityFacet.get())
@@ -159,24 +175,36 @@ class ConanHostedRecipe
 
     ViewFacet configure(final ConfigurableViewFacet facet) {
         Router.Builder builder = new Router.Builder()
+        ConanRouteIndex routes = new ConanRouteIndex()
+
+    createRoute(builder, uploadUrls(routes), AssetKind.DOWNLOAD_URL, hostedHandler.uploadUrl)
+    createRoute(builder, uploadManifest(routes), CONAN_MANIFEST, hostedHandler.uploadManifest)
+    createRoute(builder, uploadConanfile(routes), CONAN_FILE, hostedHandler.uploadConanFile)
+    createRoute(builder, uploadConaninfo(routes), CONAN_INFO, hostedHandler.uploadConanInfo)
+    createRoute(builder, uploadConanPackageZip(routes), CONAN_PACKAGE, hostedHandler.uploadConanPackage)
+    createRoute(builder, uploadConanSources(routes), AssetKind.CONAN_SOURCES, hostedHandler.uploadConanSources)
+    createRoute(builder, uploadConanExportZip(routes), CONAN_EXPORT, hostedHandler.uploadConanExport)
+
+    createRoute(builder, downloadUrls(routes), AssetKind.DOWNLOAD_URL, hostedHandler.downloadUrl)
+    createRoute(builder, downloadManifest(routes), CONAN_MANIFEST, hostedHandler.download)
+    createRoute(builder, downloadConanfile(routes), CONAN_FILE, hostedHandler.download)
+    createRoute(builder, downloadConaninfo(routes), CONAN_INFO, hostedHandler.download)
+    createRoute(builder, downloadConanTgz(CONAN_PACKAGE_ZIP_URL, routes), CONAN_PACKAGE, hostedHandler.download)
+    createRoute(builder, downloadConanTgz(CONAN_SOURCES_URL, routes), AssetKind.CONAN_SOURCES, hostedHandler.download)
+    createRoute(builder, downloadConanTgz(CONAN_EXPORT_ZIP_URL, routes), CONAN_EXPORT, hostedHandler.download)
+
+    List<AssetKind> revisionFileKinds =
+        [CONAN_FILE, CONAN_MANIFEST, CONAN_EXPORT, AssetKind.CONAN_SOURCES, CONAN_INFO, CONAN_PACKAGE]
+    revisionFileKinds.each { AssetKind kind ->
+      createRoute(builder, revisionFile([PUT], kind, routes), kind, hostedHandler.uploadRevisionFile)
+      createRoute(builder, revisionFile([HEAD, GET], kind, routes), kind, hostedHandler.downloadRevisionFile)
+    }
+    createRoute(builder, revisionFiles(routes), AssetKind.REVISIONS, hostedHandler.revisionFiles)
+    createRoute(builder, revisions(routes), AssetKind.REVISIONS, hostedHandler.download)
+    createRoute(builder, latest(routes), AssetKind.REVISIONS, hostedHandler.latest)
 
-    createRoute(builder, uploadUrls(), AssetKind.DOWNLOAD_URL, hostedHandler.uploadUrl)
-    createRoute(builder, uploadManifest(), CONAN_MANIFEST, hostedHandler.uploadManifest)
-    createRoute(builder, uploadConanfile(), CONAN_FILE, hostedHandler.uploadConanFile)
-    createRoute(builder, uploadConaninfo(), CONAN_INFO, hostedHandler.uploadConanInfo)
-    createRoute(builder, uploadConanPackageZip(), CONAN_PACKAGE, hostedHandler.uploadConanPackage)
-    createRoute(builder, uploadConanSources(), AssetKind.CONAN_SOURCES, hostedHandler.uploadConanSources)
-    createRoute(builder, uploadConanExportZip(), CONAN_EXPORT, hostedHandler.uploadConanExport)
-
-    createRoute(builder, downloadUrls(), AssetKind.DOWNLOAD_URL, hostedHandler.downloadUrl)
-    createRoute(builder, downloadManifest(), CONAN_MANIFEST, hostedHandler.download)
-    createRoute(builder, downloadConanfile(), CONAN_FILE, hostedHandler.download)
-    createRoute(builder, downloadConaninfo(), CONAN_INFO, hostedHandler.download)
-    createRoute(builder, downloadConanTgz(CONAN_PACKAGE_ZIP_URL), CONAN_PACKAGE, hostedHandler.download)
-    createRoute(builder, downloadConanTgz(CONAN_SOURCES_URL), AssetKind.CONAN_SOURCES, hostedHandler.download)
-    createRoute(builder, downloadConanTgz(CONAN_EXPORT_ZIP_URL), CONAN_EXPORT, hostedHandler.download)
-
-        builder.route(ping()
+        builder.route(ping(routes)
+                .handler(traceHandler)
                 .handler(timingHandler)
                 .handler(securityHandler)
                 .handler(exceptionHandler)
@@ -184,7 +212,8 @@ class ConanHostedRecipe
                 .handler(hostedHandler.ping)
                 .create())
 
-        builder.route(checkCredentials()
+        builder.route(checkCredentials(routes)
+                .handler(traceHandler)
                 .handler(timingHandler)
                 .handler(securityHandler)
                 .handler(exceptionHandler)
@@ -196,7 +225,8 @@ class ConanHostedRecipe
                 .handler(hostedHandler.checkCredentials)
                 .create())
 
-        builder.route(authenticate()
+        builder.route(authenticate(routes)
+                .handler(traceHandler)
                 .handler(timingHandler)
                 .handler(securityHandler)
                 .handler(exceptionHandler)
@@ -208,7 +238,8 @@ class ConanHostedRecipe
                 .handler(hostedHandler.authenticate)
                 .create())
 
-        builder.route(search()
+        builder.route(search(routes)
+                .handler(traceHandler)
                 .handler(timingHandler)
                 .handler(securityHandler)
                 .handler(exceptionHandler)
@@ -217,7 +248,8 @@ class ConanHostedRecipe
                 .handler(hostedHandler.search)
                 .create())
 
-        builder.route(searchUrl()
+        builder.route(searchUrl(routes)
+                .handler(traceHandler)
                 .handler(timingHandler)
                 .handler(securityHandler)
                 .handler(exceptionHandler)
@@ -226,6 +258,16 @@ class ConanHostedRecipe
                 .handler(hostedHandler.searchUrl)
                 .create())
 
+        builder.route(revisionSearch(routes)
+                .handler(traceHandler)
+                .handler(timingHandler)
+                .handler(securityHandler)
+                .handler(exceptionHandler)
+                .handler(handlerContributor)
+                .handler(unitOfWorkHandler)
+                .handler(hostedHandler.revisionSearch)
+                .create())
+
         builder.route(new Route.Builder()
                 .matcher(BrowseUnsupportedHandler.MATCHER)
                 .handler(browseUnsupportedHandler)
@@ -241,8 +283,9 @@ class ConanHostedRecipe
                                        AssetKind assetKind,
                                        Handler handler) {
         builder.route(matcher
+                .handler(traceHandler)
                 .handler(timingHandler)
-                .handler(assetKindHandler.rcurry(assetKind))
+                .handler(AssetKindHandler.assetKind(assetKind))
                 .handler(securityHandler)
                 .handler(exceptionHandler)
                 .handler(handlerContributor)
@@ -257,215 +300,143 @@ class ConanHostedRecipe
     /**
      * Matches on urls ending with upload_urls
      */
-    static Builder uploadUrls() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(POST),
-                        or(
-                                new TokenMatcher(UPLOAD_PACKAGE_URL),
-                                new TokenMatcher(UPLOAD_URL)
-                        )
-                )
-        )
+    static Builder uploadUrls(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([POST], UPLOAD_PACKAGE_URL, UPLOAD_URL))
     }
 
     /**
      * Matches on urls ending with conanfile.py
      */
-    static Builder uploadManifest() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(PUT),
-                        or(
-                                new TokenMatcher(CONAN_MANIFEST_PACKAGE_URL),
-                                new TokenMatcher(CONAN_MANIFEST_URL)
-                        )
-                )
-        )
+    static Builder uploadManifest(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([PUT], CONAN_MANIFEST_PACKAGE_URL, CONAN_MANIFEST_URL))
     }
 
     /**
      * Matches on urls ending with conanfile.py
      */
-    static Builder uploadConanfile() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(PUT),
-                        or(
-                                new TokenMatcher(CONAN_FILE_PACKAGE_URL),
-                                new TokenMatcher(CONAN_FILE_URL)
-                        )
-                )
-        )
+    static Builder uploadConanfile(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([PUT], CONAN_FILE_PACKAGE_URL, CONAN_FILE_URL))
     }
 
     /**
      * Matches on urls ending with conaninfo.txt
      */
-    static Builder uploadConaninfo() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(PUT),
-                        or(
-                                new TokenMatcher(CONAN_INFO_PACKAGE_URL),
-                                new TokenMatcher(CONAN_INFO_URL)
-                        )
-                )
-        )
+    static Builder uploadConaninfo(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([PUT], CONAN_INFO_PACKAGE_URL, CONAN_INFO_URL))
     }
 
     /**
      * Matches on urls ending with conanfile.py
      */
-    static Builder uploadConanPackageZip() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(PUT),
-                        new TokenMatcher(CONAN_PACKAGE_ZIP_URL)
-                )
-        )
+    static Builder uploadConanPackageZip(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([PUT], CONAN_PACKAGE_ZIP_URL))
     }
 
-    static Builder uploadConanSources() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(PUT),
-                        new TokenMatcher(CONAN_SOURCES_URL)
-                )
-        )
+    static Builder uploadConanSources(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([PUT], CONAN_SOURCES_URL))
     }
 
-    static Builder uploadConanExportZip() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(PUT),
-                        new TokenMatcher(CONAN_EXPORT_ZIP_URL)
-                )
-        )
+    static Builder uploadConanExportZip(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([PUT], CONAN_EXPORT_ZIP_URL))
     }
 
     /**
      * Matches on urls ending with upload_urls
      */
-    static Builder downloadUrls() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(HEAD, GET),
-                        or(
-                                new TokenMatcher(DOWNLOAD_PACKAGE_URL),
-                                new TokenMatcher(DOWNLOAD_URL),
-                                new TokenMatcher(DIGEST_URL)
-                        )
-                )
-        )
+    static Builder downloadUrls(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([HEAD, GET], DOWNLOAD_PACKAGE_URL, DOWNLOAD_URL, DIGEST_URL))
     }
 
     /**
      * Matches on urls ending with conanfile.py
      */
-    static Builder downloadManifest() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(HEAD, GET),
-                        or(
-                                new TokenMatcher(CONAN_MANIFEST_PACKAGE_URL),
-                                new TokenMatcher(CONAN_MANIFEST_URL)
-                        )
-                )
-        )
+    static Builder downloadManifest(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([HEAD, GET], CONAN_MANIFEST_PACKAGE_URL, CONAN_MANIFEST_URL))
     }
 
     /**
      * Matches on urls ending with conanfile.py
      */
-    static Builder downloadConanfile() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(HEAD, GET),
-                        or(
-                                new TokenMatcher(CONAN_FILE_PACKAGE_URL),
-                                new TokenMatcher(CONAN_FILE_URL)
-                        )
-                )
-        )
+    static Builder downloadConanfile(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([HEAD, GET], CONAN_FILE_PACKAGE_URL, CONAN_FILE_URL))
     }
 
-    static Builder downloadConaninfo() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(HEAD, GET),
-                        or(
-                                new TokenMatcher(CONAN_INFO_PACKAGE_URL),
-                                new TokenMatcher(CONAN_INFO_URL)
-                        )
-                )
-        )
+    static Builder downloadConaninfo(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([HEAD, GET], CONAN_INFO_PACKAGE_URL, CONAN_INFO_URL))
     }
 
 
-    static Builder downloadConanTgz(final String url) {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(HEAD, GET),
-                        new TokenMatcher(url)
-                )
-        )
+    static Builder downloadConanTgz(final String url, final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([HEAD, GET], url))
     }
 
     /**
      * Matches on ping endpoint
      */
-    static Builder ping() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(GET),
-                        new TokenMatcher(PING)
-                )
-        )
+    static Builder ping(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([GET], PING, PING_V2))
     }
 
     /**
      * Matches on authentication endpoint
      */
-    static Builder checkCredentials() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(GET),
-                        new TokenMatcher(CHECK_CREDENTIALS_URL)
-                )
-        )
+    static Builder checkCredentials(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([GET], CHECK_CREDENTIALS_URL, CHECK_CREDENTIALS_URL_V2))
     }
 
     /**
      * Matches on credential checking endpoint
      */
-    static Builder authenticate() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(GET),
-                        new TokenMatcher(AUTHENTICATE_URL)
-                )
-        )
+    static Builder authenticate(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([GET], AUTHENTICATE_URL, AUTHENTICATE_URL_V2))
     }
 
     /**
      * Matches on search endpoint
      */
-    static Builder search() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(GET),
-                        new TokenMatcher(SEARCH)
-                )
-        )
+    static Builder search(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([GET], SEARCH, SEARCH_V2))
     }
 
-    static Builder searchUrl() {
-        new Builder().matcher(
-                and(
-                        new ActionMatcher(GET),
-                        new TokenMatcher(SEARCH_URL)
-                )
-        )
+    static Builder searchUrl(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([GET], SEARCH_URL))
+    }
+
+    /**
+     * Matches on a file of a v2 recipe or package revision
+     */
+    static Builder revisionFile(final List<String> actions,
+                                final AssetKind kind,
+                                final ConanRouteIndex routes = new ConanRouteIndex()) {
+        String file = FILES + "/" + kind.filename
+        new Builder().matcher(routes.route(actions, PACKAGE_REVISION_URL_V2 + file, RECIPE_REVISION_URL_V2 + file))
+    }
+
+    /**
+     * Matches on the file listing of a v2 recipe or package revision
+     */
+    static Builder revisionFiles(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([GET], PACKAGE_REVISION_URL_V2 + FILES, RECIPE_REVISION_URL_V2 + FILES))
+    }
+
+    /**
+     * Matches on the revisions of a v2 recipe or package
+     */
+    static Builder revisions(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([HEAD, GET], PACKAGE_URL_V2 + REVISIONS, RECIPE_URL_V2 + REVISIONS))
+    }
+
+    /**
+     * Matches on the latest revision of a v2 recipe or package
+     */
+    static Builder latest(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([GET], PACKAGE_URL_V2 + LATEST, RECIPE_URL_V2 + LATEST))
+    }
+
+    /**
+     * Matches on the package search of a v2 recipe revision, or of its latest revision
+     */
+    static Builder revisionSearch(final ConanRouteIndex routes = new ConanRouteIndex()) {
+        new Builder().matcher(routes.route([GET], RECIPE_REVISION_URL_V2 + "/search", RECIPE_URL_V2 + "/search"))
     }
 }
@@ -13,6 +13,9 @@
 package org.sonatype.repository.conan.internal.hosted;
 
 import java.io.IOException;
+import java.util.Map;
+
+import javax.annotation.Nullable;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -25,16 +28,23 @@ import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
 import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher.State;
 import org.sonatype.nexus.repository.view.payloads.StringPayload;
 import org.sonatype.repository.conan.internal.AssetKind;
+import org.sonatype.repository.conan.internal.ServerCapabilitiesHandler;
 import org.sonatype.repository.conan.internal.metadata.ConanCoords;
 import org.sonatype.repository.conan.internal.security.token.ConanTokenFacet;
 
+import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
+import static com.google.common.net.HttpHeaders.CONTENT_RANGE;
 import static org.sonatype.nexus.repository.http.HttpStatus.NOT_FOUND;
 import static org.sonatype.nexus.repository.http.HttpStatus.OK;
 import static org.sonatype.nexus.repository.view.ContentTypes.APPLICATION_JSON;
 import static org.sonatype.nexus.repository.view.Status.success;
-import static org.sonatype.repository.conan.internal.metadata.ConanCoords.convertFromState;
+import static org.sonatype.repository.conan.internal.ServerCapabilitiesHandler.SERVER_CAPABILITIES;
+import static org.sonatype.repository.conan.internal.metadata.ConanCoords.fromContext;
 import static org.sonatype.repository.conan.internal.metadata.ConanCoords.getPath;
+import static org.sonatype.repository.conan.internal.metadata.ConanCoords.getSpec;
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.DIGEST;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.PACKAGE_REVISION;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.RECIPE_REVISION;
 
 /**
  * @since 0.0.2
@@ -45,12 +55,25 @@ public class HostedHandlers
         extends ComponentSupport {
     private static final String V1_CONANS = "/v1/conans/";
 
-    private static final String CLIENT_CHECKSUM = "X-Checksum-Sha1";
+    private static final String V2_CONANS = "/v2/conans/";
+
+    private static final String REVISIONS = "/revisions";
+
+    static final String CLIENT_CHECKSUM = "X-Checksum-Sha1";
+
+    /**
+     * Asks whether the file of {@link #CLIENT_CHECKSUM} is stored already, instead of uploading it
+     */
+    static final String CHECKSUM_DEPLOY = "X-Checksum-Deploy";
+
+    /**
+     * Revision files never change, so clients and caches may keep them for good
+     */
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
 
     final Handler uploadUrl = context -> {
-        State state = context.getAttributes().require(TokenMatcher.State.class);
         AssetKind assetKind = context.getAttributes().require(AssetKind.class);
-        ConanCoords coord = convertFromState(state);
+        ConanCoords coord = fromContext(context);
         String assetPath = getAssetPath(coord);
 
         return context.getRepository()
@@ -86,11 +109,16 @@ public class HostedHandlers
                     .build();
         }
 
-        State state = context.getAttributes().require(State.class);
         AssetKind assetKind = context.getAttributes().require(AssetKind.class);
-        ConanCoords coord = convertFromState(state);
+        ConanCoords coord = fromContext(context);
         String assetPath = getAssetPath(coord) + "/" + filename;
 
+        if (headers.contains(CONTENT_RANGE)) {
+            return context.getRepository()
+                    .facet(ConanHostedFacet.class)
+                    .uploadChunk(assetPath, coord, context.getRequest().getPayload(), assetKind, headers);
+        }
+
         return context.getRepository()
                 .facet(ConanHostedFacet.class)
                 .upload(assetPath, coord, context.getRequest().getPayload(), assetKind);
@@ -101,8 +129,7 @@ public class HostedHandlers
     }
 
     final Handler downloadUrl = context -> {
-        State state = context.getAttributes().require(State.class);
-        ConanCoords coord = convertFromState(state);
+        ConanCoords coord = fromContext(context);
         String path = getAssetPath(coord) + "/download_urls";
 
         return context.getRepository()
@@ -116,13 +143,102 @@ public class HostedHandlers
                     .get(context);
 
     /**
-     * Acknowledges a ping request
+     * Acknowledges a ping request, advertising revisions
      */
     final Handler ping = context -> {
         log.debug("pong");
-        return HttpResponses.ok();
+        return new Response.Builder()
+                .status(success(OK))
+                .header(SERVER_CAPABILITIES, ServerCapabilitiesHandler.REVISIONS)
+                .build();
+    };
+
+    /**
+     * Stores a file of a v2 recipe or package revision
+     */
+    final Handler uploadRevisionFile = context -> {
+        ConanCoords coord = fromContext(context);
+        Map<String, String> tokens = context.getAttributes().require(TokenMatcher.State.class).getTokens();
+        String recipeRevision = tokens.get(RECIPE_REVISION);
+        String revision = coord.getSha() == null ? recipeRevision : tokens.get(PACKAGE_REVISION);
+
+        return context.getRepository()
+                .facet(ConanHostedFacet.class)
+                .uploadRevisionFile(context, revisionsPath(coord, recipeRevision),
+                        revisionsReference(coord, recipeRevision), revision);
+    };
+
+    final Handler downloadRevisionFile = context -> {
+        Response response = download.handle(context);
+        if (!response.getStatus().isSuccessful()) {
+            return response;
+        }
+        return new Response.Builder()
+                .copy(response)
+                .header(CACHE_CONTROL, IMMUTABLE)
+                .build();
+    };
+
+    /**
+     * Services the v2 latest endpoint of a recipe or package
+     */
+    final Handler latest = context -> {
+        ConanCoords coord = fromContext(context);
+        String recipeRevision = context.getAttributes().require(TokenMatcher.State.class).getTokens()
+                .get(RECIPE_REVISION);
+
+        return context.getRepository()
+                .facet(ConanHostedFacet.class)
+                .getLatest(revisionsPath(coord, recipeRevision));
+    };
+
+    final Handler revisionFiles = context ->
+            context.getRepository()
+                    .facet(ConanHostedFacet.class)
+                    .listRevisionFiles(context);
+
+    /**
+     * Searches the packages of a recipe revision, or of the latest when none is given
+     */
+    final Handler revisionSearch = context -> {
+        ConanCoords coord = fromContext(context);
+        ConanHostedFacet facet = context.getRepository().facet(ConanHostedFacet.class);
+        String recipeRevision = context.getAttributes().require(TokenMatcher.State.class).getTokens()
+                .get(RECIPE_REVISION);
+        if (recipeRevision == null) {
+            recipeRevision = facet.getLatestRevision(revisionsPath(coord, null));
+            if (recipeRevision == null) {
+                return HttpResponses.notFound("Recipe not found: " + getSpec(coord));
+            }
+        }
+        return facet.searchRevision(context, recipePath(coord) + REVISIONS + "/" + recipeRevision);
     };
 
+    /**
+     * @return e.g. {@code /v2/conans/jsonformoderncpp/2.1.1/vthiery/stable}
+     */
+    private static String recipePath(final ConanCoords coord) {
+        return V2_CONANS + coord.getProject() + "/" + coord.getVersion() + "/" + coord.getGroup() + "/"
+                + coord.getChannel();
+    }
+
+    /**
+     * @return the path of the revisions of the recipe, or of the package when the coordinates have one
+     */
+    private static String revisionsPath(final ConanCoords coord, @Nullable final String recipeRevision) {
+        if (coord.getSha() == null) {
+            return recipePath(coord) + REVISIONS;
+        }
+        return recipePath(coord) + REVISIONS + "/" + recipeRevision + "/packages/" + coord.getSha() + REVISIONS;
+    }
+
+    private static String revisionsReference(final ConanCoords coord, final String recipeRevision) {
+        if (coord.getSha() == null) {
+            return getSpec(coord);
+        }
+        return getSpec(coord) + "#" + recipeRevision + ":" + coord.getSha();
+    }
+
     /**
      * Checks if there is a Bearer Authentication: token
      * otherwise returns 401
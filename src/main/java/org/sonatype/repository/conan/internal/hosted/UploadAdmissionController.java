@@ -0,0 +1,204 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.hosted;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits the number of archive uploads, and the bytes they carry, which a repository ingests at the same time.
+ *
+ * Uploads over the limits wait for capacity up to a bounded time, and are admitted in the order they arrived so that
+ * a large upload is not overtaken by smaller ones forever. Once the wait queue is full, or the wait times out, the
+ * upload is rejected so the client can retry later. The limits can be changed while uploads are in flight.
+ *
+ * @since 0.0.6
+ */
+public class UploadAdmissionController
+{
+  private final ReentrantLock lock = new ReentrantLock(true);
+
+  private final Condition released = lock.newCondition();
+
+  private int maxConcurrentUploads;
+
+  private long maxBytesInFlight;
+
+  private int maxQueuedUploads;
+
+  private long maxWaitNanos;
+
+  private int activeUploads;
+
+  private long bytesInFlight;
+
+  /**
+   * Uploads waiting for capacity, only the first of which may be admitted
+   */
+  private final Deque<Object> queue = new ArrayDeque<>();
+
+  public UploadAdmissionController(final int maxConcurrentUploads,
+                                   final long maxBytesInFlight,
+                                   final int maxQueuedUploads,
+                                   final long maxWait,
+                                   final TimeUnit unit)
+  {
+    configure(maxConcurrentUploads, maxBytesInFlight, maxQueuedUploads, maxWait, unit);
+  }
+
+  /**
+   * Applies new limits. Admitted uploads keep their capacity until closed, and queued uploads are admitted as soon as
+   * the new limits leave room for them.
+   */
+  public void configure(final int maxConcurrentUploads,
+                        final long maxBytesInFlight,
+                        final int maxQueuedUploads,
+                        final long maxWait,
+                        final TimeUnit unit)
+  {
+    checkArgument(maxConcurrentUploads > 0, "maxConcurrentUploads must be positive");
+    checkArgument(maxBytesInFlight > 0, "maxBytesInFlight must be positive");
+    checkArgument(maxQueuedUploads >= 0, "maxQueuedUploads must not be negative");
+    checkArgument(maxWait >= 0, "maxWait must not be negative");
+    lock.lock();
+    try {
+      this.maxConcurrentUploads = maxConcurrentUploads;
+      this.maxBytesInFlight = maxBytesInFlight;
+      this.maxQueuedUploads = maxQueuedUploads;
+      this.maxWaitNanos = unit.toNanos(maxWait);
+      released.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits for capacity to ingest an upload of the given size.
+   *
+   * A single upload larger than the byte limit is admitted once nothing else is in flight.
+   *
+   * @param size of the upload in bytes, or -1 when unknown in which case only a concurrent upload slot is taken
+   * @return the admission which must be closed once the upload has been stored, or null when rejected
+   */
+  @Nullable
+  public Admission admit(final long size) throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      long bytes = Math.min(Math.max(size, 0), maxBytesInFlight);
+      if (!queue.isEmpty() || !hasCapacity(bytes)) {
+        if (queue.size() >= maxQueuedUploads) {
+          return null;
+        }
+        Object waiter = new Object();
+        queue.addLast(waiter);
+        try {
+          long remaining = maxWaitNanos;
+          while (queue.peekFirst() != waiter || !hasCapacity(bytes)) {
+            if (remaining <= 0) {
+              return null;
+            }
+            remaining = released.awaitNanos(remaining);
+          }
+        }
+        finally {
+          queue.remove(waiter);
+          // the next in line may fit as well
+          released.signalAll();
+        }
+      }
+      activeUploads++;
+      bytesInFlight += bytes;
+      return new Admission(bytes);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean hasCapacity(final long bytes) {
+    return activeUploads < maxConcurrentUploads && bytesInFlight + bytes <= maxBytesInFlight;
+  }
+
+  private void release(final long bytes) {
+    lock.lock();
+    try {
+      activeUploads--;
+      bytesInFlight -= bytes;
+      released.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public int getActiveUploads() {
+    lock.lock();
+    try {
+      return activeUploads;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public long getBytesInFlight() {
+    lock.lock();
+    try {
+      return bytesInFlight;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  public int getQueuedUploads() {
+    lock.lock();
+    try {
+      return queue.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Capacity held by an admitted upload, given back on {@link #close()}
+   */
+  public class Admission
+      implements AutoCloseable
+  {
+    private final long bytes;
+
+    private boolean closed;
+
+    private Admission(final long bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (!closed) {
+        closed = true;
+        release(bytes);
+      }
+    }
+  }
+}
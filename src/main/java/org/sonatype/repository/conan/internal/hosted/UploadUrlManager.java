@@ -12,18 +12,20 @@
  */
 package org.sonatype.repository.conan.internal.hosted;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
 
 import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.payloads.StreamPayload;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.sonatype.nexus.repository.view.ContentTypes.APPLICATION_JSON;
+import static org.sonatype.repository.conan.internal.utils.JsonMapRewriter.rewrite;
+import static org.sonatype.repository.conan.internal.utils.JsonMapRewriter.rewriting;
+import static org.sonatype.repository.conan.internal.utils.JsonMapRewriter.target;
 
 /**
  * The {@link InputStream} is assumed to be 'Map<String, Integer>' where the key
@@ -35,7 +37,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 public class UploadUrlManager
     extends ComponentSupport
 {
-  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final byte[] EMPTY = "{}".getBytes(UTF_8);
 
   /**
    * The {@link InputStream} should be a 'Map<String, String>'
@@ -49,14 +51,15 @@ public class UploadUrlManager
    * @return json object for use as downnload_url endpoint without full hostname
    */
   public String convertKeys(final String path, final InputStream inputStream) {
-    Map<String, String> jsonParse = readJson(inputStream);
-    Map<String, String> jsonResponse = convertKeys(path, jsonParse);
-    return writejson(jsonResponse);
-  }
-
-  private Map<String, String> convertKeys(final String path, final Map<String, String> jsonParse) {
-    return jsonParse.entrySet().stream()
-        .collect(Collectors.toMap(Entry::getKey, e -> path + e.getKey()));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      rewrite(inputStream, target(out, (key, value) -> path + key));
+    }
+    catch (IOException e) {
+      log.error("Unable to convertKeys json", e);
+      reset(out);
+    }
+    return new String(out.toByteArray(), UTF_8);
   }
 
   /**
@@ -70,33 +73,65 @@ public class UploadUrlManager
    * @return json object for use as downnload_url endpoint with full hostname
    */
   public String prefixToValues(final String path, final InputStream inputStream) {
-    Map<String, String> jsonParse = readJson(inputStream);
-    Map<String, String> jsonResponse = prefixToValues(path, jsonParse);
-    return writejson(jsonResponse);
-  }
-
-  private Map<String, String> prefixToValues(final String path, final Map<String, String> jsonParse) {
-    return jsonParse.entrySet().stream()
-          .collect(Collectors.toMap(Entry::getKey, e -> path + e.getValue()));
-  }
-
-  private String writejson(final Map<String, String> jsonResponse) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
     try {
-      return MAPPER.writeValueAsString(jsonResponse);
+      rewrite(inputStream, target(out, (key, value) -> path + value));
     }
-    catch (JsonProcessingException e) {
-      log.error("Unable to write json object", e);
+    catch (IOException e) {
+      log.error("Unable to prefixToValues json", e);
+      reset(out);
     }
-    return null;
+    return new String(out.toByteArray(), UTF_8);
+  }
+
+  /**
+   * {@link #prefixToValues(String, InputStream)} of {@code payload} to be served, rewritten as it is written
+   */
+  public Payload prefixToValues(final String path, final Payload payload) {
+    return new StreamPayload(() -> {
+      InputStream in = payload.openInputStream();
+      try {
+        return rewriting(in, (key, value) -> path + value);
+      }
+      catch (IOException e) {
+        log.error("Unable to prefixToValues json", e);
+        in.close();
+        return new ByteArrayInputStream(EMPTY);
+      }
+    }, Payload.UNKNOWN_SIZE, APPLICATION_JSON);
   }
 
-  private Map<String, String> readJson(final InputStream inputStream) {
+  /**
+   * {@link #convertKeys(String, InputStream)} and {@link #prefixToValues(String, InputStream)} of its result, read
+   * from a single pass of the upload_urls request. Both are buffered, the first to be stored once complete and the
+   * second as the request is answered only after storing.
+   *
+   * @param path to prefix to the keys for the saved download_urls
+   * @param baseUrl to prefix to the saved values for the response
+   * @param saved receives the json object to store as download_urls
+   * @param response receives the json object to answer the upload_urls request with
+   */
+  public void convertKeys(final String path,
+                          final String baseUrl,
+                          final InputStream inputStream,
+                          final ByteArrayOutputStream saved,
+                          final ByteArrayOutputStream response)
+  {
+    String responsePath = baseUrl + path;
     try {
-      return MAPPER.readValue(inputStream, new TypeReference<Map<String, String>>(){});
+      rewrite(inputStream,
+          target(saved, (key, value) -> path + key),
+          target(response, (key, value) -> responsePath + key));
     }
     catch (IOException e) {
       log.error("Unable to convertKeys json", e);
+      reset(saved);
+      reset(response);
     }
-    return Collections.emptyMap();
+  }
+
+  private static void reset(final ByteArrayOutputStream out) {
+    out.reset();
+    out.write(EMPTY, 0, EMPTY.length);
   }
 }
@@ -16,6 +16,7 @@ import javax.annotation.Nullable;
 
 import org.sonatype.nexus.common.collect.NestedAttributesMap;
 import org.sonatype.nexus.repository.storage.Component;
+import org.sonatype.nexus.repository.view.Context;
 import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -32,6 +33,8 @@ import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.VERS
  */
 public class ConanCoords
 {
+  private static final String PACKAGES = "/packages/";
+
   final private String group;
 
   final private String project;
@@ -42,6 +45,10 @@ public class ConanCoords
 
   final private String sha;
 
+  private String path;
+
+  private String spec;
+
   public ConanCoords(final String group,
                      final String project,
                      final String version,
@@ -96,6 +103,20 @@ public class ConanCoords
     return sha;
   }
 
+  /**
+   * @return the coordinates of the request, parsed from its {@link TokenMatcher.State} once and then kept in the
+   * context for the other handlers and facets
+   */
+  public static ConanCoords fromContext(final Context context) {
+    TokenMatcher.State state = context.getAttributes().require(TokenMatcher.State.class);
+    Parsed parsed = context.getAttributes().get(Parsed.class);
+    if (parsed == null || parsed.state != state) {
+      parsed = new Parsed(state, convertFromState(state));
+      context.getAttributes().set(Parsed.class, parsed);
+    }
+    return parsed.coords;
+  }
+
   public static ConanCoords convertFromState(TokenMatcher.State state) {
     return new ConanCoords(
         state.getTokens().get(GROUP),
@@ -106,21 +127,50 @@ public class ConanCoords
     );
   }
 
+  /**
+   * @return e.g. {@code vthiery/jsonformoderncpp/2.1.1/stable/packages/<sha>}, built on first use
+   */
   public static String getPath(ConanCoords coord) {
-    return String.format("%s/%s/%s/%s%s",
-        coord.getGroup(),
-        coord.getProject(),
-        coord.getVersion(),
-        coord.getChannel(),
-        coord.getSha() == null ? "" : "/packages/" + coord.getSha());
+    String path = coord.path;
+    if (path == null) {
+      StringBuilder builder = new StringBuilder(coord.group.length() + coord.project.length() + coord.version.length()
+          + coord.channel.length() + 3 + (coord.sha == null ? 0 : PACKAGES.length() + coord.sha.length()));
+      builder.append(coord.group).append('/').append(coord.project).append('/').append(coord.version).append('/')
+          .append(coord.channel);
+      if (coord.sha != null) {
+        builder.append(PACKAGES).append(coord.sha);
+      }
+      path = builder.toString();
+      coord.path = path;
+    }
+    return path;
   }
 
+  /**
+   * @return e.g. {@code jsonformoderncpp/2.1.1@vthiery/stable}, built on first use
+   */
   public static String getSpec(ConanCoords coord) {
-    return String.format("%s/%s@%s/%s",
-            coord.getProject(),
-            coord.getVersion(),
-            coord.getGroup(),
-            coord.getChannel()
-    );
+    String spec = coord.spec;
+    if (spec == null) {
+      spec = new StringBuilder(coord.project.length() + coord.version.length() + coord.group.length()
+          + coord.channel.length() + 3)
+          .append(coord.project).append('/').append(coord.version).append('@').append(coord.group).append('/')
+          .append(coord.channel)
+          .toString();
+      coord.spec = spec;
+    }
+    return spec;
+  }
+
+  private static final class Parsed
+  {
+    private final TokenMatcher.State state;
+
+    private final ConanCoords coords;
+
+    private Parsed(final TokenMatcher.State state, final ConanCoords coords) {
+      this.state = state;
+      this.coords = coords;
+    }
   }
 }
@@ -12,13 +12,27 @@
  */
 package org.sonatype.repository.conan.internal.metadata;
 
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
 import org.sonatype.goodies.common.ComponentSupport;
 import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.common.event.EventAware;
 import org.sonatype.nexus.repository.storage.Asset;
+import org.sonatype.nexus.repository.storage.AssetEvent;
 import org.sonatype.nexus.repository.storage.Bucket;
 import org.sonatype.nexus.repository.storage.StorageTx;
 import org.sonatype.repository.conan.internal.AssetKind;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
 import com.google.common.hash.HashCode;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -27,11 +41,27 @@ import static org.sonatype.repository.conan.internal.proxy.ConanProxyHelper.find
 /**
  * Responsible for looking up the hashes to verify against
  *
+ * Parsed manifest entries are cached per recipe/package path so the files that follow a manifest
+ * can be verified without going back to the database. Entries are dropped when asset events report a manifest
+ * changed or was deleted, and when the repository is deleted.
+ *
  * @since 0.0.1
  */
+@Named
+@Singleton
 public class ConanHashVerifier
     extends ComponentSupport
+    implements EventAware
 {
+  private static final int MANIFEST_CACHE_SIZE = 1000;
+
+  private static final long MANIFEST_CACHE_EXPIRY_MINUTES = 10;
+
+  private final Cache<String, Map<String, Object>> manifests = CacheBuilder.newBuilder()
+      .maximumSize(MANIFEST_CACHE_SIZE)
+      .expireAfterAccess(MANIFEST_CACHE_EXPIRY_MINUTES, TimeUnit.MINUTES)
+      .build();
+
   /**
    * Retrieves the hash maps which are stored as key, value pairs within the conanmanifest file
    * @param tx
@@ -39,35 +69,85 @@ public class ConanHashVerifier
    * @param assetPath
    * @return hashcode of the file
    */
+  @Nullable
   public HashCode lookupHashFromAsset(final StorageTx tx, final Bucket bucket, final String assetPath) {
     checkNotNull(tx);
     checkNotNull(bucket);
     checkNotNull(assetPath);
 
-    AttributesMap attributes = getAttributes(tx, bucket, assetPath);
+    Map<String, Object> attributes = getAttributes(tx, bucket, assetPath);
 
     if(attributes != null) {
-      String filename = getFilenameFromPath(assetPath);
-      if (attributes.contains(filename)) {
-        return HashCode.fromString((String) attributes.get(filename));
+      Object hash = attributes.get(getFilenameFromPath(assetPath));
+      if (hash != null) {
+        return HashCode.fromString((String) hash);
       }
     }
     return null;
   }
 
-  private AttributesMap getAttributes(final StorageTx tx, final Bucket bucket, final String assetPath) {
-    String originalFilename = getFilenameFromPath(assetPath);
-    String manifestFile = assetPath.replace(originalFilename, AssetKind.CONAN_MANIFEST.getFilename());
-    Asset asset = findAsset(tx, bucket, manifestFile);
+  /**
+   * Caches the entries of a manifest once it has been committed, replacing those of any manifest previously stored at
+   * that path
+   * @param repository
+   * @param manifestPath
+   * @param entries as parsed by {@link ConanManifest#parse}
+   */
+  public void cacheManifest(final String repository, final String manifestPath, final AttributesMap entries) {
+    checkNotNull(repository);
+    checkNotNull(manifestPath);
+    checkNotNull(entries);
+
+    manifests.put(cacheKey(repository, getDirectoryFromPath(manifestPath)), ImmutableMap.copyOf(entries.backing()));
+  }
+
+  public void invalidateAll(final String repository) {
+    String prefix = cacheKey(repository, "");
+    manifests.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final AssetEvent event) {
+    Asset asset = event.getAsset();
+    if (asset != null && asset.name() != null
+        && getFilenameFromPath(asset.name()).equals(AssetKind.CONAN_MANIFEST.getFilename())) {
+      manifests.invalidate(cacheKey(event.getRepositoryName(), getDirectoryFromPath(asset.name())));
+    }
+  }
+
+  @Nullable
+  private Map<String, Object> getAttributes(final StorageTx tx, final Bucket bucket, final String assetPath) {
+    String directory = getDirectoryFromPath(assetPath);
+    String key = cacheKey(bucket.getRepositoryName(), directory);
+
+    Map<String, Object> cached = manifests.getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    Asset asset = findAsset(tx, bucket, directory + AssetKind.CONAN_MANIFEST.getFilename());
     if(asset == null) {
       return null;
     }
-    return asset.formatAttributes();
+    Map<String, Object> attributes = ImmutableMap.copyOf(asset.formatAttributes().backing());
+    manifests.put(key, attributes);
+    return attributes;
+  }
+
+  private static String cacheKey(final String repository, final String directory) {
+    return repository + ":" + directory;
+  }
+
+  /**
+   * @return the path up to and including the final '/'
+   */
+  private static String getDirectoryFromPath(final String assetPath) {
+    return assetPath.substring(0, assetPath.lastIndexOf('/') + 1);
   }
 
   private static String getFilenameFromPath(final String assetPath) {
-    String[] split = assetPath.split("/");
-    return split[split.length - 1];
+    return assetPath.substring(assetPath.lastIndexOf('/') + 1);
   }
 
   /**
@@ -26,4 +26,8 @@ public class ConanMetadata
   public final static String STATE = "state";
 
   public final static String DIGEST = "sha";
+
+  public final static String RECIPE_REVISION = "rrev";
+
+  public final static String PACKAGE_REVISION = "prev";
 }
@@ -0,0 +1,328 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.metadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.common.event.EventAware;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.repository.cache.CacheInfo;
+import org.sonatype.nexus.repository.storage.Asset;
+import org.sonatype.nexus.repository.storage.AssetEvent;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Payload;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import org.joda.time.DateTime;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.repository.view.Content.CONTENT_ETAG;
+import static org.sonatype.nexus.repository.view.Content.CONTENT_HASH_CODES_MAP;
+import static org.sonatype.nexus.repository.view.Content.CONTENT_LAST_MODIFIED;
+import static org.sonatype.nexus.repository.view.Content.T_CONTENT_HASH_CODES_MAP;
+
+/**
+ * Keeps the small files Conan clients fetch on every install (download_urls, conanmanifest.txt, conaninfo.txt,
+ * conanfile.py) in memory, so serving them needs neither a database query nor a blob store read.
+ *
+ * Entries hold the content with its last modified, etag, hashes and cache info, keyed by repository and asset path.
+ * Content larger than {@code nexus.conan.metadataCache.maxEntryBytes} is never cached and the total held is bounded
+ * by {@code nexus.conan.metadataCache.maxBytes}, 0 disabling the cache. With {@code nexus.conan.metadataCache.offHeap}
+ * the content is held in direct buffers, outside of the java heap.
+ *
+ * Facets invalidate a path once they have stored to it, other changes (deletes, cleanup, cache invalidation) are
+ * picked up from asset events. Entries also expire after {@code nexus.conan.metadataCache.expirySeconds}, well within
+ * the interval at which assets record being downloaded.
+ *
+ * @since 0.0.6
+ */
+@Named
+@Singleton
+public class ConanMetadataCache
+    extends ComponentSupport
+    implements EventAware
+{
+  private static final int STRIPES = 64;
+
+  private final boolean enabled;
+
+  private final int maxEntryBytes;
+
+  private final boolean offHeap;
+
+  private final Cache<String, Entry> entries;
+
+  /**
+   * Counts invalidations by stripe of key, so that content read from storage before an invalidation is not cached
+   * after it.
+   */
+  private final AtomicLongArray invalidations = new AtomicLongArray(STRIPES);
+
+  @Inject
+  public ConanMetadataCache(@Named("${nexus.conan.metadataCache.maxBytes:-67108864}") final long maxBytes,
+                            @Named("${nexus.conan.metadataCache.maxEntryBytes:-65536}") final int maxEntryBytes,
+                            @Named("${nexus.conan.metadataCache.offHeap:-false}") final boolean offHeap,
+                            @Named("${nexus.conan.metadataCache.expirySeconds:-3600}") final long expirySeconds)
+  {
+    checkArgument(maxBytes >= 0, "maxBytes must not be negative");
+    checkArgument(maxEntryBytes >= 0, "maxEntryBytes must not be negative");
+    checkArgument(expirySeconds > 0, "expirySeconds must be positive");
+    this.enabled = maxBytes > 0 && maxEntryBytes > 0;
+    this.maxEntryBytes = maxEntryBytes;
+    this.offHeap = offHeap;
+    this.entries = CacheBuilder.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher((String key, Entry entry) -> entry.weight())
+        .expireAfterWrite(expirySeconds, TimeUnit.SECONDS)
+        .build();
+    log.debug("Metadata cache of {} bytes, {} bytes per entry, off heap {}", maxBytes, maxEntryBytes, offHeap);
+  }
+
+  /**
+   * @return the cached content of {@code path}, null if it has to be read from storage
+   */
+  @Nullable
+  public Content get(final String repository, final String path) {
+    if (!enabled) {
+      return null;
+    }
+    Entry entry = entries.getIfPresent(key(repository, path));
+    return entry == null ? null : entry.toContent();
+  }
+
+  /**
+   * To be taken before reading {@code path} from storage and passed to {@link #cache}.
+   */
+  public long stamp(final String repository, final String path) {
+    return enabled ? invalidations.get(stripe(key(repository, path))) : 0;
+  }
+
+  /**
+   * Caches content read from storage, unless it is too large or {@code path} has been invalidated since
+   * {@code stamp} was taken.
+   *
+   * @return the content to serve, read into memory when it was cached, otherwise {@code content} itself
+   */
+  public Content cache(final String repository, final String path, final long stamp, final Content content)
+      throws IOException
+  {
+    checkNotNull(content);
+    long size = content.getSize();
+    if (!enabled || size < 0 || size > maxEntryBytes) {
+      return content;
+    }
+
+    Entry entry;
+    try (InputStream in = content.openInputStream()) {
+      entry = new Entry(buffer(ByteStreams.toByteArray(in)), content);
+    }
+
+    String key = key(repository, path);
+    int stripe = stripe(key);
+    if (invalidations.get(stripe) == stamp) {
+      entries.put(key, entry);
+      if (invalidations.get(stripe) != stamp) {
+        entries.invalidate(key);
+      }
+    }
+    return entry.toContent();
+  }
+
+  public void invalidate(final String repository, final String path) {
+    if (enabled) {
+      String key = key(repository, path);
+      invalidations.incrementAndGet(stripe(key));
+      entries.invalidate(key);
+    }
+  }
+
+  public void invalidateAll(final String repository) {
+    if (enabled) {
+      String prefix = key(repository, "");
+      for (int stripe = 0; stripe < STRIPES; stripe++) {
+        invalidations.incrementAndGet(stripe);
+      }
+      entries.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final AssetEvent event) {
+    Asset asset = event.getAsset();
+    if (asset != null && asset.name() != null) {
+      invalidate(event.getRepositoryName(), asset.name());
+    }
+  }
+
+  @VisibleForTesting
+  long size() {
+    return entries.size();
+  }
+
+  private ByteBuffer buffer(final byte[] bytes) {
+    if (!offHeap) {
+      return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes).flip();
+    return buffer.asReadOnlyBuffer();
+  }
+
+  private static String key(final String repository, final String path) {
+    return repository + ":" + path;
+  }
+
+  private static int stripe(final String key) {
+    return (key.hashCode() & Integer.MAX_VALUE) % STRIPES;
+  }
+
+  /**
+   * Content of an asset and the attributes the view handlers need to serve it.
+   */
+  private static final class Entry
+  {
+    private final ByteBuffer bytes;
+
+    private final String contentType;
+
+    private final DateTime lastModified;
+
+    private final String etag;
+
+    private final Map<HashAlgorithm, HashCode> hashes;
+
+    private final CacheInfo cacheInfo;
+
+    private Entry(final ByteBuffer bytes, final Content content) {
+      AttributesMap attributes = content.getAttributes();
+      this.bytes = bytes;
+      this.contentType = content.getContentType();
+      this.lastModified = attributes.get(CONTENT_LAST_MODIFIED, DateTime.class);
+      this.etag = attributes.get(CONTENT_ETAG, String.class);
+      Map<HashAlgorithm, HashCode> contentHashes = attributes.get(CONTENT_HASH_CODES_MAP, T_CONTENT_HASH_CODES_MAP);
+      this.hashes = contentHashes == null ? null : ImmutableMap.copyOf(contentHashes);
+      this.cacheInfo = attributes.get(CacheInfo.class);
+    }
+
+    private int weight() {
+      return bytes.capacity();
+    }
+
+    private Content toContent() {
+      Content content = new Content(new BufferPayload(bytes.duplicate(), contentType));
+      AttributesMap attributes = content.getAttributes();
+      if (lastModified != null) {
+        attributes.set(CONTENT_LAST_MODIFIED, lastModified);
+      }
+      if (etag != null) {
+        attributes.set(CONTENT_ETAG, etag);
+      }
+      if (hashes != null) {
+        attributes.set(CONTENT_HASH_CODES_MAP, hashes);
+      }
+      if (cacheInfo != null) {
+        attributes.set(CacheInfo.class, cacheInfo);
+      }
+      return content;
+    }
+  }
+
+  private static final class BufferPayload
+      implements Payload
+  {
+    private final ByteBuffer bytes;
+
+    private final String contentType;
+
+    private BufferPayload(final ByteBuffer bytes, final String contentType) {
+      this.bytes = bytes;
+      this.contentType = contentType;
+    }
+
+    @Override
+    public InputStream openInputStream() {
+      return new BufferInputStream(bytes.duplicate());
+    }
+
+    @Override
+    public long getSize() {
+      return bytes.remaining();
+    }
+
+    @Override
+    public String getContentType() {
+      return contentType;
+    }
+  }
+
+  private static final class BufferInputStream
+      extends InputStream
+  {
+    private final ByteBuffer bytes;
+
+    private BufferInputStream(final ByteBuffer bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    public int read() {
+      return bytes.hasRemaining() ? bytes.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!bytes.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(len, bytes.remaining());
+      bytes.get(b, off, count);
+      return count;
+    }
+
+    @Override
+    public long skip(final long n) {
+      int count = (int) Math.max(0, Math.min(n, bytes.remaining()));
+      bytes.position(bytes.position() + count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return bytes.remaining();
+    }
+  }
+}
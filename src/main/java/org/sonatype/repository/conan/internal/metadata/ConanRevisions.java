@@ -0,0 +1,107 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.metadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * The revisions of a recipe or package, newest first, as served by the v2 {@code revisions} endpoint:
+ *
+ * <pre>
+ * {"reference": "jsonformoderncpp/2.1.1@vthiery/stable",
+ *  "revisions": [{"revision": "b4bbc5f3...", "time": "2019-03-19T15:07:59.371Z"}]}
+ * </pre>
+ *
+ * The reference of a package is its recipe reference followed by {@code #recipe revision:package id}.
+ *
+ * @since 0.0.6
+ */
+public final class ConanRevisions
+{
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final String REFERENCE = "reference";
+
+  private static final String REVISIONS = "revisions";
+
+  private static final String REVISION = "revision";
+
+  private static final String TIME = "time";
+
+  private ConanRevisions() {
+    // static utility
+  }
+
+  /**
+   * @return the index with {@code revision} as its latest revision, or null when it is the latest already
+   */
+  @Nullable
+  public static byte[] makeLatest(@Nullable final InputStream index,
+                                  final String reference,
+                                  final String revision,
+                                  final DateTime time) throws IOException
+  {
+    ObjectNode root;
+    if (index == null) {
+      root = MAPPER.createObjectNode();
+      root.put(REFERENCE, reference);
+    }
+    else {
+      root = (ObjectNode) MAPPER.readTree(index);
+    }
+    ArrayNode revisions = root.withArray(REVISIONS);
+    if (revisions.size() > 0 && revision.equals(revisions.get(0).path(REVISION).asText())) {
+      return null;
+    }
+
+    for (Iterator<JsonNode> iterator = revisions.iterator(); iterator.hasNext(); ) {
+      if (revision.equals(iterator.next().path(REVISION).asText())) {
+        iterator.remove();
+      }
+    }
+    revisions.insertObject(0)
+        .put(REVISION, revision)
+        .put(TIME, time.withZone(DateTimeZone.UTC).toString());
+    return MAPPER.writeValueAsBytes(root);
+  }
+
+  /**
+   * @return the latest revision of the index and its time, as served by the v2 {@code latest} endpoint, or null when
+   * there is none
+   */
+  @Nullable
+  public static byte[] latest(final InputStream index) throws IOException {
+    JsonNode latest = MAPPER.readTree(index).path(REVISIONS).path(0);
+    return latest.isObject() ? MAPPER.writeValueAsBytes(latest) : null;
+  }
+
+  /**
+   * @return the latest revision of the index, or null when there is none
+   */
+  @Nullable
+  public static String latestRevision(final InputStream index) throws IOException {
+    JsonNode latest = MAPPER.readTree(index).path(REVISIONS).path(0).path(REVISION);
+    return latest.isTextual() ? latest.asText() : null;
+  }
+}
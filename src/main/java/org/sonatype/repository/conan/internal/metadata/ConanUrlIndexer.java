@@ -12,27 +12,27 @@
  */
 package org.sonatype.repository.conan.internal.metadata;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.sonatype.goodies.common.ComponentSupport;
-import org.sonatype.nexus.common.collect.AttributesMap;
 import org.sonatype.nexus.repository.Repository;
-import org.sonatype.nexus.repository.storage.TempBlob;
 import org.sonatype.nexus.repository.view.Content;
 import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.payloads.StreamPayload;
 import org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher;
+import org.sonatype.repository.conan.internal.utils.JsonMapRewriter;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.ByteStreams;
 
-import static java.util.Collections.emptyMap;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.sonatype.nexus.repository.view.ContentTypes.APPLICATION_JSON;
+import static org.sonatype.repository.conan.internal.utils.JsonMapRewriter.prettyRewriting;
 
 /**
  * download_url files contain absolute paths to each asset
@@ -46,46 +46,50 @@ import static java.util.Collections.emptyMap;
 public class ConanUrlIndexer
     extends ComponentSupport
 {
-  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final byte[] EMPTY = "{ }".getBytes(UTF_8);
 
   public String updateAbsoluteUrls(final Context context,
                                    final Content content,
                                    final Repository repository) throws IOException
   {
-    Map<String, URL> downloadUrlContents = readIndex(content.openInputStream());
-    Map<String, String> remappedContents = new HashMap<>();
-
-    ConanCoords coords = ConanMatcher.getCoords(context);
-
-    String path = ConanCoords.getPath(coords);
-
-    for (Map.Entry<String, URL> entry : downloadUrlContents.entrySet()) {
-      remappedContents.put(entry.getKey(), repository.getUrl() + "/" + path + "/" + entry.getKey());
+    try (InputStream in = updateAbsoluteUrlsPayload(context, content, repository).openInputStream()) {
+      return new String(ByteStreams.toByteArray(in), UTF_8);
     }
-
-    return MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(remappedContents);
   }
 
-
-  private Map<String, URL> readIndex(final InputStream stream) {
-    ObjectMapper objectMapper = new ObjectMapper();
-
-    TypeReference<HashMap<String, URL>> typeRef = new TypeReference<HashMap<String, URL>>() {};
-    try {
-      return objectMapper.readValue(stream, typeRef);
-    }
-    catch (IOException e) {
-      log.warn("Unable to read index for asset",  e);
-    }
-    return emptyMap();
+  /**
+   * {@link #updateAbsoluteUrls} as a payload to be served, which rewrites the index as it is written
+   */
+  public Payload updateAbsoluteUrlsPayload(final Context context,
+                                           final Content content,
+                                           final Repository repository)
+  {
+    ConanCoords coords = ConanMatcher.getCoords(context);
+    String prefix = repository.getUrl() + "/" + ConanCoords.getPath(coords) + "/";
+
+    return new StreamPayload(() -> {
+      InputStream in = content.openInputStream();
+      try {
+        return prettyRewriting(in, (key, value) -> prefix + key);
+      }
+      catch (IOException e) {
+        log.warn("Unable to read index for asset", e);
+        in.close();
+        return new ByteArrayInputStream(EMPTY);
+      }
+    }, Payload.UNKNOWN_SIZE, APPLICATION_JSON);
   }
 
+  /**
+   * Reads the index only as far as {@code find}, then closes it.
+   */
   public String findUrl(final InputStream inputStream, final String find) {
-    Map<String, URL> downloadUrlContents = readIndex(inputStream);
-    if(downloadUrlContents.containsKey(find)) {
-      return downloadUrlContents.get(find).toString();
+    try (InputStream in = inputStream) {
+      return JsonMapRewriter.find(in, find);
+    }
+    catch (IOException e) {
+      log.warn("Unable to read index for asset", e);
     }
     return null;
   }
 }
-
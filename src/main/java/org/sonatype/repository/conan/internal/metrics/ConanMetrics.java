@@ -0,0 +1,336 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.metrics;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.repository.conan.internal.AssetKind;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Per repository and {@link AssetKind} metrics of Conan repositories, registered in the shared "nexus" registry
+ * which backs the metrics exported by NXRM.
+ *
+ * Metrics are named {@code conan.<repository>.<asset_kind>.<metric>} where metric is one of
+ * {@value #HITS}, {@value #MISSES}, {@value #NEGATIVE_CACHE_HITS}, {@value #UPSTREAM}, {@value #BYTES_IN},
+ * {@value #BYTES_OUT} or {@value #STORE_FAILURES}. The bearer token a proxy holds for an authenticated remote is
+ * tracked by {@code conan.<repository>.upstreamToken.<metric>} where metric is one of {@value #TOKEN_AGE} (seconds,
+ * -1 without a token), {@value #TOKEN_REFRESHES} or {@value #TOKEN_FAILURES}. Fetches waiting on the upstream
+ * bulkhead of a proxy are tracked by {@code conan.<repository>.upstreamQueue.<lane>.<metric>} where metric is one of
+ * {@value #QUEUE_DEPTH}, {@value #QUEUE_WAIT} or {@value #QUEUE_REJECTIONS}.
+ *
+ * @since 0.0.6
+ */
+@Named
+@Singleton
+public class ConanMetrics
+    extends ComponentSupport
+{
+  static final String REGISTRY = "nexus";
+
+  static final String PREFIX = "conan";
+
+  static final String HITS = "hits";
+
+  static final String MISSES = "misses";
+
+  static final String NEGATIVE_CACHE_HITS = "negativeCacheHits";
+
+  static final String UPSTREAM = "upstream";
+
+  static final String BYTES_IN = "bytesIn";
+
+  static final String BYTES_OUT = "bytesOut";
+
+  static final String STORE_FAILURES = "storeFailures";
+
+  static final String UPSTREAM_TOKEN = "upstreamToken";
+
+  static final String TOKEN_AGE = "age";
+
+  static final String TOKEN_REFRESHES = "refreshes";
+
+  static final String TOKEN_FAILURES = "failures";
+
+  static final String UPSTREAM_QUEUE = "upstreamQueue";
+
+  static final String QUEUE_DEPTH = "depth";
+
+  static final String QUEUE_WAIT = "wait";
+
+  static final String QUEUE_REJECTIONS = "rejections";
+
+  private final MetricRegistry registry;
+
+  private final ConcurrentMap<String, RepositoryMetrics> repositories = new ConcurrentHashMap<>();
+
+  @Inject
+  public ConanMetrics() {
+    this(SharedMetricRegistries.getOrCreate(REGISTRY));
+  }
+
+  @VisibleForTesting
+  ConanMetrics(final MetricRegistry registry) {
+    this.registry = checkNotNull(registry);
+  }
+
+  /**
+   * @return the metrics of a repository, registering them on first use
+   */
+  public RepositoryMetrics forRepository(final String repositoryName) {
+    checkNotNull(repositoryName);
+    return repositories.computeIfAbsent(repositoryName, RepositoryMetrics::new);
+  }
+
+  /**
+   * Unregisters the metrics of a deleted repository, leaving those of repositories whose name it is a prefix of.
+   */
+  public void remove(final String repositoryName) {
+    RepositoryMetrics metrics = repositories.remove(repositoryName);
+    if (metrics != null) {
+      metrics.names.forEach(registry::remove);
+    }
+  }
+
+  private Meter meter(final Set<String> names, final String name) {
+    names.add(name);
+    return registry.meter(name);
+  }
+
+  private Timer timer(final Set<String> names, final String name) {
+    names.add(name);
+    return registry.timer(name);
+  }
+
+  /**
+   * Registers a gauge in place of any left in the shared registry by a previous instance, whose values it would
+   * otherwise keep reporting.
+   */
+  private void gauge(final Set<String> names, final String name, final Gauge<?> gauge) {
+    names.add(name);
+    registry.remove(name);
+    registry.register(name, gauge);
+  }
+
+  /**
+   * Metrics of one repository, the asset kind may be null for requests which do not resolve to one (such as ping
+   * or search) in which case nothing is recorded.
+   */
+  public class RepositoryMetrics
+  {
+    private final Map<AssetKind, KindMetrics> kinds = new EnumMap<>(AssetKind.class);
+
+    private final ConcurrentMap<String, LaneMetrics> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * Names of the metrics registered for the repository, unregistered when it is deleted
+     */
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+
+    private final String repositoryName;
+
+    private final Meter tokenRefreshes;
+
+    private final Meter tokenFailures;
+
+    private volatile long tokenIssuedNanos;
+
+    private volatile boolean hasToken;
+
+    private RepositoryMetrics(final String repositoryName) {
+      this.repositoryName = repositoryName;
+      for (AssetKind assetKind : AssetKind.values()) {
+        kinds.put(assetKind, new KindMetrics(names, repositoryName, assetKind));
+      }
+      String prefix = name(PREFIX, repositoryName, UPSTREAM_TOKEN);
+      tokenRefreshes = meter(names, name(prefix, TOKEN_REFRESHES));
+      tokenFailures = meter(names, name(prefix, TOKEN_FAILURES));
+      gauge(names, name(prefix, TOKEN_AGE), (Gauge<Long>) () -> hasToken ?
+          TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - tokenIssuedNanos) : -1L);
+    }
+
+    /**
+     * A bearer token was obtained from the remote, by the first login or after the previous one was rejected.
+     */
+    public void tokenRefreshed() {
+      tokenIssuedNanos = System.nanoTime();
+      hasToken = true;
+      tokenRefreshes.mark();
+    }
+
+    /**
+     * The remote did not hand out a bearer token, requests fall back to the credentials of the repository.
+     */
+    public void tokenFailed() {
+      hasToken = false;
+      tokenFailures.mark();
+    }
+
+    /**
+     * @return the metrics of a lane of the upstream bulkhead, registering them on first use
+     */
+    public LaneMetrics upstreamLane(final String lane) {
+      return lanes.computeIfAbsent(lane, name -> new LaneMetrics(names, repositoryName, name));
+    }
+
+    /**
+     * Content served from storage without going upstream.
+     */
+    public void hit(@Nullable final AssetKind assetKind) {
+      if (assetKind != null) {
+        kinds.get(assetKind).hits.mark();
+      }
+    }
+
+    /**
+     * Content which was not in storage, or was stale, and had to be fetched upstream.
+     */
+    public void miss(@Nullable final AssetKind assetKind) {
+      if (assetKind != null) {
+        kinds.get(assetKind).misses.mark();
+      }
+    }
+
+    public void negativeCacheHit(@Nullable final AssetKind assetKind) {
+      if (assetKind != null) {
+        kinds.get(assetKind).negativeCacheHits.mark();
+      }
+    }
+
+    /**
+     * @return a context to stop once the upstream fetch has completed, or null without an asset kind
+     */
+    @Nullable
+    public Timer.Context upstream(@Nullable final AssetKind assetKind) {
+      return assetKind == null ? null : kinds.get(assetKind).upstream.time();
+    }
+
+    /**
+     * Bytes received from clients or fetched upstream.
+     */
+    public void bytesIn(@Nullable final AssetKind assetKind, final long bytes) {
+      if (assetKind != null && bytes > 0) {
+        kinds.get(assetKind).bytesIn.mark(bytes);
+      }
+    }
+
+    /**
+     * Bytes served to clients.
+     */
+    public void bytesOut(@Nullable final AssetKind assetKind, final long bytes) {
+      if (assetKind != null && bytes > 0) {
+        kinds.get(assetKind).bytesOut.mark(bytes);
+      }
+    }
+
+    public void storeFailure(@Nullable final AssetKind assetKind) {
+      if (assetKind != null) {
+        kinds.get(assetKind).storeFailures.mark();
+      }
+    }
+  }
+
+  /**
+   * Fetches waiting in one lane of the upstream bulkhead of a proxy repository
+   */
+  public class LaneMetrics
+  {
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private final Timer waits;
+
+    private final Meter rejections;
+
+    private LaneMetrics(final Set<String> names, final String repositoryName, final String lane) {
+      String prefix = name(PREFIX, repositoryName, UPSTREAM_QUEUE, lane);
+      waits = timer(names, name(prefix, QUEUE_WAIT));
+      rejections = meter(names, name(prefix, QUEUE_REJECTIONS));
+      gauge(names, name(prefix, QUEUE_DEPTH), (Gauge<Integer>) depth::get);
+    }
+
+    /**
+     * A fetch started waiting for a slot.
+     */
+    public void queued() {
+      depth.incrementAndGet();
+    }
+
+    /**
+     * A fetch stopped waiting, admitted or not.
+     */
+    public void left(final long waitNanos, final boolean admitted) {
+      depth.decrementAndGet();
+      waits.update(waitNanos, TimeUnit.NANOSECONDS);
+      if (!admitted) {
+        rejections.mark();
+      }
+    }
+
+    /**
+     * A fetch was rejected without waiting, as the queue was full.
+     */
+    public void rejected() {
+      rejections.mark();
+    }
+  }
+
+  private class KindMetrics
+  {
+    private final Meter hits;
+
+    private final Meter misses;
+
+    private final Meter negativeCacheHits;
+
+    private final Timer upstream;
+
+    private final Meter bytesIn;
+
+    private final Meter bytesOut;
+
+    private final Meter storeFailures;
+
+    private KindMetrics(final Set<String> names, final String repositoryName, final AssetKind assetKind) {
+      String prefix = name(PREFIX, repositoryName, assetKind.name().toLowerCase(Locale.ENGLISH));
+      hits = meter(names, name(prefix, HITS));
+      misses = meter(names, name(prefix, MISSES));
+      negativeCacheHits = meter(names, name(prefix, NEGATIVE_CACHE_HITS));
+      upstream = timer(names, name(prefix, UPSTREAM));
+      bytesIn = meter(names, name(prefix, BYTES_IN));
+      bytesOut = meter(names, name(prefix, BYTES_OUT));
+      storeFailures = meter(names, name(prefix, STORE_FAILURES));
+    }
+  }
+}
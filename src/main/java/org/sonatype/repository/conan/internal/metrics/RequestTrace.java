@@ -0,0 +1,152 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Breakdown of the time spent by one Conan request in each {@link Stage}.
+ *
+ * A trace is bound to the request thread by {@link RequestTraceHandler} while the request is handled, the facets
+ * then wrap each stage in {@link #time(Stage)}. Outside of a traced request timing a stage costs a thread local
+ * lookup.
+ *
+ * @since 0.0.6
+ */
+public class RequestTrace
+{
+  public enum Stage
+  {
+    /**
+     * Component and asset queries
+     */
+    QUERY,
+    /**
+     * Opening stored blobs
+     */
+    BLOB,
+    /**
+     * Fetching content from the upstream repository
+     */
+    UPSTREAM,
+    /**
+     * Storing fetched or uploaded content
+     */
+    STORE,
+    /**
+     * Rewriting the urls of download_urls responses, which happens as they are streamed to the client
+     */
+    REWRITE,
+    /**
+     * Streaming the response payload to the client
+     */
+    WRITE
+  }
+
+  /**
+   * Times a stage, to be closed when the stage ends.
+   */
+  public interface Timing
+      extends AutoCloseable
+  {
+    @Override
+    void close();
+  }
+
+  private static final Timing NOOP = () -> { };
+
+  private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+  private final long start = System.nanoTime();
+
+  private final long[] stageNanos = new long[Stage.values().length];
+
+  private long totalNanos = -1;
+
+  /**
+   * Starts timing a stage of the request being handled on this thread, if it is traced.
+   */
+  public static Timing time(final Stage stage) {
+    RequestTrace trace = CURRENT.get();
+    return trace == null ? NOOP : trace.start(stage);
+  }
+
+  /**
+   * Binds the trace to the calling thread.
+   *
+   * @return the trace previously bound, to be restored with {@link #restore(RequestTrace)}
+   */
+  @Nullable
+  RequestTrace bind() {
+    RequestTrace previous = CURRENT.get();
+    CURRENT.set(this);
+    return previous;
+  }
+
+  static void restore(@Nullable final RequestTrace previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    }
+    else {
+      CURRENT.set(previous);
+    }
+  }
+
+  Timing start(final Stage stage) {
+    long stageStart = System.nanoTime();
+    return () -> add(stage, System.nanoTime() - stageStart);
+  }
+
+  @VisibleForTesting
+  synchronized void add(final Stage stage, final long nanos) {
+    stageNanos[stage.ordinal()] += nanos;
+  }
+
+  /**
+   * Marks the end of the request, only the first call counts.
+   */
+  synchronized void finish() {
+    if (totalNanos < 0) {
+      totalNanos = System.nanoTime() - start;
+    }
+  }
+
+  synchronized long getStageMillis(final Stage stage) {
+    return TimeUnit.NANOSECONDS.toMillis(stageNanos[stage.ordinal()]);
+  }
+
+  synchronized long getTotalMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(totalNanos < 0 ? System.nanoTime() - start : totalNanos);
+  }
+
+  /**
+   * @return e.g. {@code total=1530ms query=12ms upstream=1480ms write=31ms}, stages which took no time are left out
+   */
+  @Override
+  public synchronized String toString() {
+    StringBuilder builder = new StringBuilder("total=").append(getTotalMillis()).append("ms");
+    for (Stage stage : Stage.values()) {
+      long nanos = stageNanos[stage.ordinal()];
+      if (nanos > 0) {
+        builder.append(' ').append(stage.name().toLowerCase(Locale.ENGLISH)).append('=')
+            .append(TimeUnit.NANOSECONDS.toMillis(nanos)).append("ms");
+      }
+    }
+    return builder.toString();
+  }
+}
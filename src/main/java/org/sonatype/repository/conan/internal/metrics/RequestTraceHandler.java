@@ -0,0 +1,185 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.repository.conan.internal.AssetKind;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace.Stage;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace.Timing;
+
+import static org.sonatype.nexus.repository.http.HttpMethods.HEAD;
+
+/**
+ * Traces the stages of a Conan request, see {@link RequestTrace}. Any request taking at least
+ * {@code nexus.conan.trace.slowRequestMillis}, including the time taken to stream the response, is logged with its
+ * breakdown. Every breakdown is logged at TRACE level.
+ *
+ * Should be the first handler of a route so the trace covers the others.
+ *
+ * @since 0.0.6
+ */
+@Named
+@Singleton
+public class RequestTraceHandler
+    extends ComponentSupport
+    implements Handler
+{
+  private final long slowRequestMillis;
+
+  @Inject
+  public RequestTraceHandler(@Named("${nexus.conan.trace.slowRequestMillis:-10000}") final long slowRequestMillis) {
+    this.slowRequestMillis = slowRequestMillis;
+  }
+
+  @Nonnull
+  @Override
+  public Response handle(@Nonnull final Context context) throws Exception {
+    if (slowRequestMillis <= 0 && !log.isTraceEnabled()) {
+      return context.proceed();
+    }
+
+    RequestTrace trace = new RequestTrace();
+    RequestTrace previous = trace.bind();
+    Response response;
+    try {
+      response = context.proceed();
+    }
+    catch (Exception e) {
+      complete(context, trace);
+      throw e;
+    }
+    finally {
+      RequestTrace.restore(previous);
+    }
+
+    Payload payload = response.getPayload();
+    if (payload == null || HEAD.equals(context.getRequest().getAction())) {
+      complete(context, trace);
+      return response;
+    }
+    return new Response.Builder()
+        .copy(response)
+        .payload(traced(payload, () -> complete(context, trace), trace))
+        .build();
+  }
+
+  private void complete(final Context context, final RequestTrace trace) {
+    trace.finish();
+    if (slowRequestMillis > 0 && trace.getTotalMillis() >= slowRequestMillis) {
+      log.info("Slow request {} {} to {} ({}): {}", context.getRequest().getAction(), context.getRequest().getPath(),
+          context.getRepository().getName(), context.getAttributes().get(AssetKind.class), trace);
+    }
+    else if (log.isTraceEnabled()) {
+      log.trace("Request {} {} to {} ({}): {}", context.getRequest().getAction(), context.getRequest().getPath(),
+          context.getRepository().getName(), context.getAttributes().get(AssetKind.class), trace);
+    }
+  }
+
+  private static Payload traced(final Payload payload, final Runnable onComplete, final RequestTrace trace) {
+    TracedPayload traced = new TracedPayload(payload, onComplete, trace);
+    if (payload instanceof Content) {
+      // keep the last modified and etag attributes which are sent as headers
+      return new TracedContent(traced, ((Content) payload).getAttributes());
+    }
+    return traced;
+  }
+
+  /**
+   * Times the streaming of a response payload, completing the trace once it has been written.
+   */
+  private static class TracedPayload
+      implements Payload
+  {
+    private final Payload payload;
+
+    private final Runnable onComplete;
+
+    private final RequestTrace trace;
+
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    TracedPayload(final Payload payload, final Runnable onComplete, final RequestTrace trace) {
+      this.payload = payload;
+      this.onComplete = onComplete;
+      this.trace = trace;
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      Timing timing = trace.start(Stage.WRITE);
+      return new FilterInputStream(payload.openInputStream())
+      {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          }
+          finally {
+            timing.close();
+            complete();
+          }
+        }
+      };
+    }
+
+    @Override
+    public long getSize() {
+      return payload.getSize();
+    }
+
+    @Override
+    public String getContentType() {
+      return payload.getContentType();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        payload.close();
+      }
+      finally {
+        complete();
+      }
+    }
+
+    private void complete() {
+      if (completed.compareAndSet(false, true)) {
+        onComplete.run();
+      }
+    }
+  }
+
+  private static class TracedContent
+      extends Content
+  {
+    TracedContent(final Payload payload, final AttributesMap attributes) {
+      super(payload, attributes);
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.proxy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Stops calling an upstream which keeps failing, so that requests fail fast or are answered from storage instead of
+ * waiting out the timeouts of the http client.
+ *
+ * The breaker opens after {@code failureThreshold} calls in a row failed or took longer than {@code slowCallNanos}.
+ * While open no call is let through; once {@code openNanos} have passed it lets {@code halfOpenTrials} calls through
+ * at a time, closing when one succeeds and opening again when one fails. A threshold of 0 never opens.
+ *
+ * @since 0.0.6
+ */
+class CircuitBreaker
+    extends ComponentSupport
+{
+  enum State
+  {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String name;
+
+  private final int failureThreshold;
+
+  private final long slowCallNanos;
+
+  private final long openNanos;
+
+  private final int halfOpenTrials;
+
+  private State state = State.CLOSED;
+
+  private int failures;
+
+  private long openedAtNanos;
+
+  private int trials;
+
+  CircuitBreaker(final String name,
+                 final int failureThreshold,
+                 final long slowCallNanos,
+                 final long openNanos,
+                 final int halfOpenTrials)
+  {
+    checkArgument(failureThreshold >= 0, "failure threshold must not be negative");
+    checkArgument(halfOpenTrials > 0, "half open trials must be positive");
+    this.name = name;
+    this.failureThreshold = failureThreshold;
+    this.slowCallNanos = slowCallNanos;
+    this.openNanos = openNanos;
+    this.halfOpenTrials = halfOpenTrials;
+  }
+
+  /**
+   * @return true if a call may be made, which must then be reported to {@link #succeeded(long)},
+   * {@link #failed()} or {@link #released()}
+   */
+  synchronized boolean tryAcquire() {
+    if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+      log.info("Trying upstream {} again", name);
+      state = State.HALF_OPEN;
+      trials = 0;
+    }
+    if (state == State.OPEN || (state == State.HALF_OPEN && trials >= halfOpenTrials)) {
+      return false;
+    }
+    if (state == State.HALF_OPEN) {
+      trials++;
+    }
+    return true;
+  }
+
+  /**
+   * The call answered, it still counts as a failure when slower than {@code slowCallNanos}. Calls let through before
+   * the breaker opened and answering while it is open do not close it.
+   */
+  synchronized void succeeded(final long elapsedNanos) {
+    if (state == State.OPEN) {
+      return;
+    }
+    if (slowCallNanos > 0 && elapsedNanos > slowCallNanos) {
+      failed();
+      return;
+    }
+    if (state == State.HALF_OPEN) {
+      log.info("Upstream {} recovered", name);
+    }
+    state = State.CLOSED;
+    failures = 0;
+  }
+
+  synchronized void failed() {
+    if (state == State.HALF_OPEN) {
+      open();
+    }
+    else if (state == State.CLOSED && failureThreshold > 0 && ++failures >= failureThreshold) {
+      open();
+    }
+  }
+
+  /**
+   * The call was abandoned without an outcome, e.g. when another mirror answered first.
+   */
+  synchronized void released() {
+    if (state == State.HALF_OPEN && trials > 0) {
+      trials--;
+    }
+  }
+
+  @VisibleForTesting
+  synchronized State getState() {
+    return state;
+  }
+
+  private void open() {
+    log.warn("Upstream {} failed {} times, not calling it for {}s", name, Math.max(failures, 1),
+        TimeUnit.NANOSECONDS.toSeconds(openNanos));
+    state = State.OPEN;
+    openedAtNanos = System.nanoTime();
+    failures = 0;
+  }
+}
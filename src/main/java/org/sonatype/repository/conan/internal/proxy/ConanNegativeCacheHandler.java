@@ -0,0 +1,52 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.proxy;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.repository.cache.NegativeCacheHandler;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.Status;
+import org.sonatype.repository.conan.internal.AssetKind;
+import org.sonatype.repository.conan.internal.metrics.ConanMetrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Records the requests answered from the negative cache in {@link ConanMetrics}.
+ *
+ * @since 0.0.6
+ */
+@Named
+@Singleton
+public class ConanNegativeCacheHandler
+    extends NegativeCacheHandler
+{
+  private final ConanMetrics conanMetrics;
+
+  @Inject
+  public ConanNegativeCacheHandler(final ConanMetrics conanMetrics) {
+    this.conanMetrics = checkNotNull(conanMetrics);
+  }
+
+  @Override
+  protected Response buildResponse(final Status status, @Nonnull final Context context) {
+    conanMetrics.forRepository(context.getRepository().getName())
+        .negativeCacheHit(context.getAttributes().get(AssetKind.class));
+    return super.buildResponse(status, context);
+  }
+}
@@ -14,19 +14,40 @@ package org.sonatype.repository.conan.internal.proxy;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.groups.Default;
 
 import org.sonatype.nexus.blobstore.api.Blob;
 import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.common.collect.NestedAttributesMap;
 import org.sonatype.nexus.repository.cache.CacheController;
 import org.sonatype.nexus.repository.cache.CacheInfo;
 import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.repository.config.ConfigurationFacet;
+import org.sonatype.nexus.repository.http.HttpResponses;
+import org.sonatype.nexus.repository.httpclient.HttpClientFacet;
+import org.sonatype.nexus.repository.httpclient.RemoteConnectionStatusType;
 import org.sonatype.nexus.repository.proxy.ProxyFacetSupport;
+import org.sonatype.nexus.repository.proxy.ProxyServiceException;
 import org.sonatype.nexus.repository.storage.Asset;
 import org.sonatype.nexus.repository.storage.AssetBlob;
 import org.sonatype.nexus.repository.storage.Bucket;
@@ -37,51 +58,298 @@ import org.sonatype.nexus.repository.storage.TempBlob;
 import org.sonatype.nexus.repository.transaction.TransactionalStoreBlob;
 import org.sonatype.nexus.repository.transaction.TransactionalTouchBlob;
 import org.sonatype.nexus.repository.view.Content;
-import org.sonatype.nexus.repository.view.ContentTypes;
 import org.sonatype.nexus.repository.view.Context;
 import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
 import org.sonatype.nexus.repository.view.payloads.BlobPayload;
-import org.sonatype.nexus.repository.view.payloads.StringPayload;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+import org.sonatype.nexus.security.UserIdHelper;
 import org.sonatype.nexus.transaction.UnitOfWork;
 import org.sonatype.repository.conan.internal.AssetKind;
 import org.sonatype.repository.conan.internal.metadata.ConanCoords;
 import org.sonatype.repository.conan.internal.metadata.ConanHashVerifier;
+import org.sonatype.repository.conan.internal.metadata.ConanInfo;
 import org.sonatype.repository.conan.internal.metadata.ConanManifest;
+import org.sonatype.repository.conan.internal.metadata.ConanMetadataCache;
+import org.sonatype.repository.conan.internal.metadata.ConanRevisions;
 import org.sonatype.repository.conan.internal.metadata.ConanUrlIndexer;
+import org.sonatype.repository.conan.internal.metrics.ConanMetrics;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace.Stage;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace.Timing;
 import org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher;
+import org.sonatype.repository.conan.internal.utils.ConanHashing;
 
-import com.google.common.base.Supplier;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
+import com.google.common.net.UrlEscapers;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.sonatype.nexus.common.hash.HashAlgorithm.MD5;
+import static org.sonatype.nexus.repository.http.HttpStatus.NOT_FOUND;
+import static org.sonatype.nexus.repository.http.HttpStatus.OK;
+import static org.sonatype.nexus.repository.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.sonatype.nexus.repository.httpclient.RemoteConnectionStatusType.AUTO_BLOCKED_UNAVAILABLE;
+import static org.sonatype.nexus.repository.httpclient.RemoteConnectionStatusType.BLOCKED;
 import static org.sonatype.nexus.repository.storage.AssetEntityAdapter.P_ASSET_KIND;
 import static org.sonatype.nexus.repository.view.Content.maintainLastModified;
+import static org.sonatype.nexus.repository.view.ContentTypes.APPLICATION_JSON;
+import static org.sonatype.repository.conan.internal.ServerCapabilitiesHandler.SERVER_CAPABILITIES;
+import static org.sonatype.repository.conan.internal.AssetKind.CONAN_EXPORT;
 import static org.sonatype.repository.conan.internal.AssetKind.CONAN_PACKAGE;
+import static org.sonatype.repository.conan.internal.AssetKind.CONAN_SOURCES;
 import static org.sonatype.repository.conan.internal.AssetKind.DOWNLOAD_URL;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.GROUP;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.PROJECT;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.RECIPE_REVISION;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.STATE;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.VERSION;
 import static org.sonatype.repository.conan.internal.proxy.ConanProxyHelper.HASH_ALGORITHMS;
 import static org.sonatype.repository.conan.internal.proxy.ConanProxyHelper.buildAssetPath;
-import static org.sonatype.repository.conan.internal.proxy.ConanProxyHelper.buildAssetPathFromCoords;
 import static org.sonatype.repository.conan.internal.proxy.ConanProxyHelper.findAsset;
 import static org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher.getCoords;
+import static org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher.isRevisionPinned;
+import static org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher.isV2;
+import static org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher.matcherState;
 import static org.sonatype.repository.conan.internal.utils.ConanFacetUtils.findComponent;
+import static org.sonatype.repository.conan.internal.utils.ConanFacetUtils.findPackages;
+import static org.sonatype.repository.conan.internal.utils.ConanFacetUtils.findRecipes;
 
 /**
+ * Fetches from the remote url of the repository, and when {@code mirrorUrls} are configured spreads the fetches
+ * over them as {@link UpstreamMirrors}. Hedged requests to a second mirror run on at most
+ * {@code nexus.conan.proxy.mirrors.threads} threads per repository, and wait at least
+ * {@code nexus.conan.proxy.mirrors.minHedgeDelayMillis}.
+ *
+ * Upstream calls made for a request must answer within {@code nexus.conan.proxy.deadlineSeconds} of the request
+ * reaching the repository, the timeout of the Conan client, after which the client has given up on the answer. Each
+ * upstream has a {@link CircuitBreaker} configured by the {@code nexus.conan.proxy.circuitBreaker} properties.
+ *
+ * Fetches go through an {@link UpstreamBulkhead} limiting how many run at the same time. Requests with the
+ * {@value #PRIORITY} header set to {@value #BACKGROUND}, such as those of prefetch jobs, and requests of the
+ * {@code backgroundUsers} fetch in the background lanes.
+ *
  * @since 0.0.1
  */
 @Named
 public class ConanProxyFacet
     extends ProxyFacetSupport
 {
+  @VisibleForTesting
+  static final String CONFIG_KEY = "conan";
+
+  /**
+   * Request header marking a request whose fetches can wait behind those of developers
+   */
+  public static final String PRIORITY = "X-Conan-Priority";
+
+  public static final String BACKGROUND = "background";
+
+  /**
+   * Equivalent upstream mirrors of the remote url, and the limits of concurrent fetches from it
+   */
+  @VisibleForTesting
+  static class Config
+  {
+    @NotNull
+    public List<String> mirrorUrls = new ArrayList<>();
+
+    @Min(0)
+    @Max(99)
+    public int hedgePercentile = 95;
+
+    @Min(1)
+    public int maxConcurrentFetches = 32;
+
+    @Min(0)
+    public int maxQueuedFetches = 256;
+
+    @Min(0)
+    public int fetchQueueTimeoutSeconds = 30;
+
+    @Min(1)
+    @Max(100)
+    public int backgroundFetchPercent = 50;
+
+    @NotNull
+    public List<String> backgroundUsers = new ArrayList<>();
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "{" +
+          "mirrorUrls=" + mirrorUrls +
+          ", hedgePercentile=" + hedgePercentile +
+          ", maxConcurrentFetches=" + maxConcurrentFetches +
+          ", maxQueuedFetches=" + maxQueuedFetches +
+          ", fetchQueueTimeoutSeconds=" + fetchQueueTimeoutSeconds +
+          ", backgroundFetchPercent=" + backgroundFetchPercent +
+          ", backgroundUsers=" + backgroundUsers +
+          '}';
+    }
+  }
+
+  private static final Set<AssetKind> ARCHIVES = EnumSet.of(CONAN_PACKAGE, CONAN_SOURCES, CONAN_EXPORT);
+
+  /**
+   * Context attribute marking a request which went upstream, as opposed to being served from storage
+   */
+  private static final String FETCHED_UPSTREAM = ConanProxyFacet.class.getName() + ".fetchedUpstream";
+
+  /**
+   * Context attribute holding the {@link System#nanoTime()} by which upstream calls for the request must answer
+   */
+  private static final String DEADLINE = ConanProxyFacet.class.getName() + ".deadline";
+
+  /**
+   * Never finds content stale, for v2 revisions which are named by the hash of their content and so never change
+   * upstream; invalidating the caches of the repository leaves them cached
+   */
+  private static final CacheController IMMUTABLE = new CacheController(-1, null);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
   private final ConanHashVerifier hashVerifier;
 
   private final ConanUrlIndexer conanUrlIndexer;
 
+  private final ConanHashing conanHashing;
+
+  private final ConanMetrics conanMetrics;
+
+  private final ConanMetadataCache metadataCache;
+
+  private final long searchMaxAgeNanos;
+
+  private final long searchNotFoundMaxAgeNanos;
+
+  private final long capabilitiesMaxAgeNanos;
+
+  private final long capabilitiesRetryNanos;
+
+  /**
+   * Server capabilities the remote answered its last ping with, empty while it never answered one, null until it
+   * was first pinged
+   */
+  @Nullable
+  private volatile CachedCapabilities capabilities;
+
+  /**
+   * Search responses by url, kept past their max age to answer with when the remote cannot
+   */
+  private final Cache<String, CachedSearch> searches;
+
+  private final boolean upstreamTokens;
+
+  private final long upstreamTokenRetryNanos;
+
+  private final long minHedgeDelayMillis;
+
+  private final ThreadPoolExecutor mirrorExecutor;
+
+  private final ScheduledThreadPoolExecutor deadlineScheduler;
+
+  private final long deadlineNanos;
+
+  private final int breakerFailureThreshold;
+
+  private final long breakerSlowCallNanos;
+
+  private final long breakerOpenNanos;
+
+  private final int breakerHalfOpenTrials;
+
+  private Config config;
+
+  private ConanMetrics.RepositoryMetrics metrics;
+
+  /**
+   * The remote and its mirrors, null while stopped
+   */
+  @Nullable
+  private volatile UpstreamMirrors mirrors;
+
+  /**
+   * Limits the fetches from the remote, null while stopped
+   */
+  @Nullable
+  private volatile UpstreamBulkhead bulkhead;
+
+  /**
+   * Bearer token login to the remote, null when the repository has no credentials for it
+   */
+  @Nullable
+  private volatile UpstreamTokenSession tokenSession;
+
   @Inject
   public ConanProxyFacet(final ConanUrlIndexer conanUrlIndexer,
-                         final ConanHashVerifier hashVerifier) {
+                         final ConanHashVerifier hashVerifier,
+                         final ConanHashing conanHashing,
+                         final ConanMetrics conanMetrics,
+                         final ConanMetadataCache metadataCache,
+                         @Named("${nexus.conan.proxy.search.maxAgeSeconds:-60}") final int searchMaxAge,
+                         @Named("${nexus.conan.proxy.search.notFoundMaxAgeSeconds:-30}") final int searchNotFoundMaxAge,
+                         @Named("${nexus.conan.proxy.search.maxEntries:-1000}") final int searchMaxEntries,
+                         @Named("${nexus.conan.proxy.capabilities.maxAgeSeconds:-300}") final int capabilitiesMaxAge,
+                         @Named("${nexus.conan.proxy.capabilities.retrySeconds:-30}") final int capabilitiesRetry,
+                         @Named("${nexus.conan.proxy.upstreamToken:-true}") final boolean upstreamTokens,
+                         @Named("${nexus.conan.proxy.upstreamToken.retrySeconds:-300}") final int upstreamTokenRetry,
+                         @Named("${nexus.conan.proxy.mirrors.threads:-16}") final int mirrorThreads,
+                         @Named("${nexus.conan.proxy.mirrors.minHedgeDelayMillis:-20}") final long minHedgeDelay,
+                         @Named("${nexus.conan.proxy.deadlineSeconds:-60}") final int deadline,
+                         @Named("${nexus.conan.proxy.circuitBreaker.failureThreshold:-5}") final int failureThreshold,
+                         @Named("${nexus.conan.proxy.circuitBreaker.slowCallMillis:-20000}") final long slowCall,
+                         @Named("${nexus.conan.proxy.circuitBreaker.openSeconds:-30}") final int open,
+                         @Named("${nexus.conan.proxy.circuitBreaker.halfOpenTrials:-1}") final int halfOpenTrials) {
+    checkArgument(mirrorThreads > 0, "mirror threads must be positive");
+    checkArgument(deadline >= 0, "deadline must not be negative");
+    checkArgument(open > 0, "circuit breaker open time must be positive");
+    checkArgument(searchMaxAge >= 0, "search max age must not be negative");
+    checkArgument(searchNotFoundMaxAge >= 0, "search not found max age must not be negative");
+    checkArgument(capabilitiesMaxAge >= 0, "capabilities max age must not be negative");
+    checkArgument(capabilitiesRetry >= 0, "capabilities retry must not be negative");
+    checkArgument(upstreamTokenRetry >= 0, "upstream token retry must not be negative");
     this.conanUrlIndexer = conanUrlIndexer;
     this.hashVerifier = hashVerifier;
+    this.conanHashing = checkNotNull(conanHashing);
+    this.conanMetrics = checkNotNull(conanMetrics);
+    this.metadataCache = checkNotNull(metadataCache);
+    this.searchMaxAgeNanos = TimeUnit.SECONDS.toNanos(searchMaxAge);
+    this.searchNotFoundMaxAgeNanos = TimeUnit.SECONDS.toNanos(searchNotFoundMaxAge);
+    this.capabilitiesMaxAgeNanos = TimeUnit.SECONDS.toNanos(capabilitiesMaxAge);
+    this.capabilitiesRetryNanos = TimeUnit.SECONDS.toNanos(capabilitiesRetry);
+    this.searches = CacheBuilder.newBuilder().maximumSize(searchMaxEntries).build();
+    this.upstreamTokens = upstreamTokens;
+    this.upstreamTokenRetryNanos = TimeUnit.SECONDS.toNanos(upstreamTokenRetry);
+    this.minHedgeDelayMillis = minHedgeDelay;
+    this.mirrorExecutor = new ThreadPoolExecutor(0, mirrorThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+        new ThreadFactoryBuilder().setNameFormat("conan-mirror-%d").setDaemon(true).build());
+    this.deadlineScheduler = new ScheduledThreadPoolExecutor(1,
+        new ThreadFactoryBuilder().setNameFormat("conan-deadline-%d").setDaemon(true).build());
+    this.deadlineScheduler.setRemoveOnCancelPolicy(true);
+    this.deadlineScheduler.setKeepAliveTime(60L, TimeUnit.SECONDS);
+    this.deadlineScheduler.allowCoreThreadTimeOut(true);
+    this.deadlineNanos = TimeUnit.SECONDS.toNanos(deadline);
+    this.breakerFailureThreshold = failureThreshold;
+    this.breakerSlowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCall);
+    this.breakerOpenNanos = TimeUnit.SECONDS.toNanos(open);
+    this.breakerHalfOpenTrials = halfOpenTrials;
   }
 
   // HACK: Workaround for known CGLIB issue, forces an Import-Package for org.sonatype.nexus.repository.config
@@ -89,84 +357,526 @@ public class ConanProxyFacet
   protected void doValidate(final Configuration configuration) throws Exception {
     log.error("doValidate with config {}", configuration);
     super.doValidate(configuration);
+    facet(ConfigurationFacet.class).validateSection(configuration, CONFIG_KEY, Config.class,
+        Default.class, getRepository().getType().getValidationGroup());
+    for (String mirrorUrl : facet(ConfigurationFacet.class)
+        .readSection(configuration, CONFIG_KEY, Config.class).mirrorUrls) {
+      URI uri = URI.create(mirrorUrl);
+      checkArgument(uri.isAbsolute() && uri.getScheme().startsWith("http"), "Invalid mirror url: %s", mirrorUrl);
+    }
+  }
+
+  @Override
+  protected void doConfigure(final Configuration configuration) throws Exception {
+    super.doConfigure(configuration);
+    config = facet(ConfigurationFacet.class).readSection(configuration, CONFIG_KEY, Config.class);
+    log.debug("Config: {}", config);
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    super.doStart();
+    metrics = conanMetrics.forRepository(getRepository().getName());
+    Header basicAuth = upstreamTokens ? facet(HttpClientFacet.class).createBasicAuthHeader() : null;
+    tokenSession = basicAuth == null ? null :
+        new UpstreamTokenSession(getRemoteUrl(), basicAuth, metrics, upstreamTokenRetryNanos);
+    List<URI> urls = new ArrayList<>();
+    urls.add(getRemoteUrl());
+    config.mirrorUrls.forEach(mirrorUrl -> urls.add(URI.create(mirrorUrl)));
+    mirrors = new UpstreamMirrors(urls, config.hedgePercentile, minHedgeDelayMillis, mirrorExecutor,
+        deadlineScheduler, url -> new CircuitBreaker(getRepository().getName() + " " + url, breakerFailureThreshold,
+        breakerSlowCallNanos, breakerOpenNanos, breakerHalfOpenTrials));
+    bulkhead = new UpstreamBulkhead(
+        config.maxConcurrentFetches,
+        Math.max(1, config.maxConcurrentFetches * config.backgroundFetchPercent / 100),
+        config.maxQueuedFetches,
+        config.fetchQueueTimeoutSeconds,
+        TimeUnit.SECONDS,
+        lane -> metrics.upstreamLane(lane.getMetricName()));
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    tokenSession = null;
+    mirrors = null;
+    bulkhead = null;
+    super.doStop();
+  }
+
+  @Override
+  protected void doDestroy() throws Exception {
+    super.doDestroy();
+    config = null;
+    mirrorExecutor.shutdown();
+    deadlineScheduler.shutdown();
+  }
+
+  @Override
+  protected void doDelete() throws Exception {
+    super.doDelete();
+    conanMetrics.remove(getRepository().getName());
+    metadataCache.invalidateAll(getRepository().getName());
+    hashVerifier.invalidateAll(getRepository().getName());
+    searches.invalidateAll();
+    capabilities = null;
+  }
+
+  @Override
+  public void invalidateProxyCaches() {
+    super.invalidateProxyCaches();
+    searches.invalidateAll();
+    capabilities = null;
+  }
+
+  /**
+   * Acknowledges a ping with the server capabilities of the remote, so that clients only use the v2 revisions API
+   * through this repository when the remote offers it. The remote is pinged at most every
+   * {@code nexus.conan.proxy.capabilities.maxAgeSeconds}, its last answer is kept while it cannot be reached, and
+   * without one no capabilities are advertised. A failed ping is only retried after
+   * {@code nexus.conan.proxy.capabilities.retrySeconds}, so that clients are not held up by a remote which is down.
+   */
+  public Response ping(final Context context) {
+    CachedCapabilities cached = capabilities;
+    if (cached == null || !cached.isFresh()) {
+      startDeadline(context);
+      String fetched = fetchCapabilities(context);
+      if (fetched != null) {
+        cached = new CachedCapabilities(fetched, System.nanoTime() + capabilitiesMaxAgeNanos);
+      }
+      else {
+        cached = new CachedCapabilities(cached == null ? "" : cached.value, System.nanoTime() + capabilitiesRetryNanos);
+      }
+      capabilities = cached;
+    }
+    if (cached.value.isEmpty()) {
+      return HttpResponses.ok();
+    }
+    return new Response.Builder()
+        .copy(HttpResponses.ok())
+        .header(SERVER_CAPABILITIES, cached.value)
+        .build();
+  }
+
+  /**
+   * @return the server capabilities the remote answered a ping with, empty without any, null when it is blocked or
+   * did not answer successfully
+   */
+  @Nullable
+  private String fetchCapabilities(final Context context) {
+    HttpClientFacet httpClientFacet = facet(HttpClientFacet.class);
+    RemoteConnectionStatusType status = httpClientFacet.getStatus().getType();
+    if (status == BLOCKED || status == AUTO_BLOCKED_UNAVAILABLE) {
+      return null;
+    }
+
+    HttpGet request = new HttpGet(getRemoteUrl().resolve(ConanMatcher.PING));
+    HttpResponse response = null;
+    try (UpstreamBulkhead.Admission admission = admit(context, null);
+         Timing ignored = RequestTrace.time(Stage.UPSTREAM)) {
+      response = execute(context, httpClientFacet.getHttpClient(), request);
+      if (response.getStatusLine().getStatusCode() != OK) {
+        log.debug("Ping of {} failed upstream: {}", getRepository().getName(), response.getStatusLine());
+        return null;
+      }
+      Header header = response.getFirstHeader(SERVER_CAPABILITIES);
+      return header == null ? "" : header.getValue();
+    }
+    catch (IOException | ProxyServiceException e) {
+      log.debug("Ping of {} failed upstream", getRepository().getName(), e);
+      return null;
+    }
+    finally {
+      HttpClientUtils.closeQuietly(response);
+    }
+  }
+
+  /**
+   * Services the recipe and package searches. Responses of the remote are cached for
+   * {@code nexus.conan.proxy.search.maxAgeSeconds}, not found ones for
+   * {@code nexus.conan.proxy.search.notFoundMaxAgeSeconds}. When the remote is blocked or fails the last response
+   * is served however old, and without one the search is answered from the recipes and packages stored here.
+   */
+  public Response search(final Context context) throws IOException {
+    String url = searchUrl(context.getRequest());
+    CachedSearch cached = searches.getIfPresent(url);
+    if (cached != null && cached.isFresh()) {
+      return cached.toResponse();
+    }
+
+    startDeadline(context);
+    CachedSearch fetched = fetchSearch(context, url);
+    if (fetched != null) {
+      searches.put(url, fetched);
+      return fetched.toResponse();
+    }
+    if (cached != null) {
+      log.debug("Serving stale search {} of {}", url, getRepository().getName());
+      return cached.toResponse();
+    }
+    log.debug("Searching {} of {} locally", url, getRepository().getName());
+    return searchStored(context);
+  }
+
+  private static String searchUrl(final Request request) {
+    StringBuilder url = new StringBuilder(request.getPath());
+    char separator = '?';
+    for (Entry<String, String> parameter : request.getParameters()) {
+      url.append(separator)
+          .append(UrlEscapers.urlFormParameterEscaper().escape(parameter.getKey()))
+          .append('=')
+          .append(UrlEscapers.urlFormParameterEscaper().escape(parameter.getValue()));
+      separator = '&';
+    }
+    return url.toString();
+  }
+
+  /**
+   * @return the response of the remote, null when it is blocked or does not answer with found or not found
+   */
+  @Nullable
+  private CachedSearch fetchSearch(final Context context, final String url) {
+    HttpClientFacet httpClientFacet = facet(HttpClientFacet.class);
+    RemoteConnectionStatusType status = httpClientFacet.getStatus().getType();
+    if (status == BLOCKED || status == AUTO_BLOCKED_UNAVAILABLE) {
+      return null;
+    }
+
+    HttpGet request = new HttpGet(getRemoteUrl().resolve(url));
+    HttpResponse response = null;
+    try (UpstreamBulkhead.Admission admission = admit(context, null);
+         Timing ignored = RequestTrace.time(Stage.UPSTREAM)) {
+      response = execute(context, httpClientFacet.getHttpClient(), request);
+      int statusCode = response.getStatusLine().getStatusCode();
+      if (statusCode == OK) {
+        byte[] body = response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+        return new CachedSearch(OK, body, System.nanoTime() + searchMaxAgeNanos);
+      }
+      if (statusCode == NOT_FOUND) {
+        return new CachedSearch(NOT_FOUND, null, System.nanoTime() + searchNotFoundMaxAgeNanos);
+      }
+      log.debug("Search {} of {} failed upstream: {}", url, getRepository().getName(), response.getStatusLine());
+      return null;
+    }
+    catch (IOException | ProxyServiceException e) {
+      log.debug("Search {} of {} failed upstream", url, getRepository().getName(), e);
+      return null;
+    }
+    finally {
+      HttpClientUtils.closeQuietly(response);
+    }
+  }
+
+  /**
+   * Answers a search from the recipes and the conaninfo of the packages stored in this repository
+   */
+  @TransactionalTouchBlob
+  protected Response searchStored(final Context context) throws IOException {
+    StorageTx tx = UnitOfWork.currentTx();
+
+    String q = context.getRequest().getParameters().get("q");
+    String path = context.getRequest().getPath();
+    if (path.equals(ConanMatcher.SEARCH) || path.equals(ConanMatcher.SEARCH_V2)) {
+      List<String> results = q == null ? null : findRecipes(tx, getRepository(), q);
+      return results == null ? HttpResponses.notFound() : json(ImmutableMap.of("results", results));
+    }
+
+    ConanCoords coords = getCoords(context);
+    Component component = findComponent(tx, getRepository(), coords);
+    if (component == null) {
+      return HttpResponses.notFound("Recipe not found: " + ConanCoords.getSpec(coords));
+    }
+    if (!isV2(context)) {
+      return json(findPackages(tx, component, ConanCoords.getPath(coords) + "/packages/", "/conaninfo.txt"));
+    }
+
+    String recipePath = "/v2/conans/" + coords.getProject() + "/" + coords.getVersion() + "/" + coords.getGroup() + "/"
+        + coords.getChannel();
+    String recipeRevision = matcherState(context).getTokens().get(RECIPE_REVISION);
+    if (recipeRevision == null) {
+      Asset revisions = findAsset(tx, tx.findBucket(getRepository()), recipePath + "/revisions");
+      if (revisions != null) {
+        try (InputStream in = tx.requireBlob(revisions.requireBlobRef()).getInputStream()) {
+          recipeRevision = ConanRevisions.latestRevision(in);
+        }
+      }
+      if (recipeRevision == null) {
+        return HttpResponses.notFound("No revisions of " + ConanCoords.getSpec(coords));
+      }
+    }
+    Map<String, ConanInfo> packages = findPackages(tx, component,
+        recipePath + "/revisions/" + recipeRevision + "/packages/", "/files/conaninfo.txt");
+    return json(packages);
+  }
+
+  private static Response json(final Object value) throws IOException {
+    return HttpResponses.ok(new BytesPayload(MAPPER.writeValueAsBytes(value), APPLICATION_JSON));
+  }
+
+  @Nullable
+  @Override
+  public Content get(final Context context) throws IOException {
+    startDeadline(context);
+    Content content;
+    try {
+      content = super.get(context);
+    }
+    finally {
+      endFetch(context);
+    }
+    if (content != null) {
+      AssetKind assetKind = context.getAttributes().get(AssetKind.class);
+      if (!context.getAttributes().contains(FETCHED_UPSTREAM)) {
+        metrics.hit(assetKind);
+      }
+      metrics.bytesOut(assetKind, content.getSize());
+    }
+    return content;
+  }
+
+  @Nullable
+  @Override
+  protected Content fetch(final String url, final Context context, @Nullable final Content stale) throws IOException {
+    AssetKind assetKind = context.getAttributes().get(AssetKind.class);
+    context.getAttributes().set(FETCHED_UPSTREAM, Boolean.TRUE);
+    metrics.miss(assetKind);
+    UpstreamBulkhead.Admission admission = admit(context, assetKind);
+    if (admission != null) {
+      context.getAttributes().set(UpstreamBulkhead.Admission.class, admission);
+    }
+    Timer.Context timer = metrics.upstream(assetKind);
+    if (timer != null) {
+      context.getAttributes().set(Timer.Context.class, timer);
+    }
+    Content content = null;
+    try (Timing ignored = RequestTrace.time(Stage.UPSTREAM)) {
+      content = super.fetch(url, context, stale);
+      return content;
+    }
+    finally {
+      // unless storing is left to read the body from the remote
+      if (content == null || content == stale) {
+        endFetch(context);
+      }
+    }
+  }
+
+  /**
+   * Ends the fetch of the request once the body of what it fetched was read from the remote, or failed to be,
+   * stopping its upstream timer and freeing its fetch slot.
+   */
+  private static void endFetch(final Context context) {
+    Timer.Context timer = (Timer.Context) context.getAttributes().remove(Timer.Context.class);
+    if (timer != null) {
+      timer.stop();
+    }
+    UpstreamBulkhead.Admission admission =
+        (UpstreamBulkhead.Admission) context.getAttributes().remove(UpstreamBulkhead.Admission.class);
+    if (admission != null) {
+      admission.close();
+    }
+  }
+
+  /**
+   * The body fetched for the request was read from the remote into {@code tempBlob}.
+   */
+  private void downloaded(final Context context, final AssetKind assetKind, final TempBlob tempBlob) {
+    metrics.bytesIn(assetKind, tempBlob.getBlob().getMetrics().getContentSize());
+    endFetch(context);
+  }
+
+  /**
+   * Upstream calls made for the request have to answer within {@code nexus.conan.proxy.deadlineSeconds} from now
+   */
+  private void startDeadline(final Context context) {
+    if (deadlineNanos > 0 && !context.getAttributes().contains(DEADLINE)) {
+      context.getAttributes().set(DEADLINE, System.nanoTime() + deadlineNanos);
+    }
+  }
+
+  /**
+   * @return nanoseconds left until the deadline of the request, {@link UpstreamMirrors#NO_DEADLINE} without one
+   */
+  private static long budgetNanos(final Context context) {
+    Long deadline = context.getAttributes().get(DEADLINE, Long.class);
+    return deadline == null ? UpstreamMirrors.NO_DEADLINE : deadline - System.nanoTime();
+  }
+
+  /**
+   * Waits for the {@link UpstreamBulkhead} to let a fetch of {@code assetKind} through, searches having none.
+   *
+   * @return the admission to close once the fetch completed, null while stopped
+   * @throws ProxyServiceException when the fetch was rejected, so that stale content is served if there is some
+   */
+  @Nullable
+  private UpstreamBulkhead.Admission admit(final Context context, @Nullable final AssetKind assetKind)
+      throws IOException
+  {
+    UpstreamBulkhead limit = bulkhead;
+    if (limit == null) {
+      return null;
+    }
+    UpstreamBulkhead.Lane lane = UpstreamBulkhead.Lane.of(ARCHIVES.contains(assetKind), isBackground(context));
+    UpstreamBulkhead.Admission admission;
+    try {
+      admission = limit.admit(lane, budgetNanos(context));
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting to fetch " + context.getRequest().getPath(), e);
+    }
+    if (admission == null) {
+      log.debug("Rejecting fetch of {} in lane {}, {} fetches in progress and {} queued",
+          context.getRequest().getPath(), lane, limit.getActiveFetches(), limit.getQueuedFetches());
+      throw new ProxyServiceException(
+          new BasicHttpResponse(HttpVersion.HTTP_1_1, SERVICE_UNAVAILABLE, "Too many concurrent fetches"));
+    }
+    return admission;
+  }
+
+  private boolean isBackground(final Context context) {
+    return BACKGROUND.equalsIgnoreCase(context.getRequest().getHeaders().get(PRIORITY))
+        || (!config.backgroundUsers.isEmpty() && config.backgroundUsers.contains(UserIdHelper.get()));
+  }
+
+  @Override
+  protected HttpResponse execute(final Context context, final HttpClient client, final HttpRequestBase request)
+      throws IOException
+  {
+    UpstreamMirrors upstream = mirrors;
+    if (upstream == null) {
+      return send(client, request, true);
+    }
+    return upstream.execute(request, (mirrorRequest, primary) -> send(client, mirrorRequest, primary),
+        budgetNanos(context));
+  }
+
+  /**
+   * Sends the bearer token of the {@link UpstreamTokenSession} to the remote url when there is one, the credentials
+   * of the repository are sent by the client otherwise
+   */
+  private HttpResponse send(final HttpClient client, final HttpRequestBase request, final boolean primary)
+      throws IOException
+  {
+    UpstreamTokenSession session = tokenSession;
+    return session == null || !primary ? client.execute(request) : session.execute(client, request);
   }
 
   @Nullable
   @Override
   protected Content getCachedContent(final Context context) throws IOException {
     AssetKind assetKind = context.getAttributes().require(AssetKind.class);
-    Content content = getAsset(buildAssetPath(context));
+    Content content = getCachedAsset(buildAssetPath(context));
 
     if(content != null && assetKind.equals(DOWNLOAD_URL)) {
-      return new Content(
-          new StringPayload(
-              conanUrlIndexer.updateAbsoluteUrls(context, content, getRepository()),
-              ContentTypes.APPLICATION_JSON)
-      );
+      return rewriteUrls(context, content);
     }
     return content;
   }
 
+  private Content rewriteUrls(final Context context, final Content content) {
+    return new Content(conanUrlIndexer.updateAbsoluteUrlsPayload(context, content, getRepository()));
+  }
+
+  /**
+   * Serves small content from the {@link ConanMetadataCache}, only reading storage on a miss
+   */
+  @Nullable
+  private Content getCachedAsset(final String name) throws IOException {
+    String repository = getRepository().getName();
+    Content cached = metadataCache.get(repository, name);
+    if (cached != null) {
+      return cached;
+    }
+    long stamp = metadataCache.stamp(repository, name);
+    Content content = getAsset(name);
+    return content == null ? null : metadataCache.cache(repository, name, stamp, content);
+  }
+
   @TransactionalTouchBlob
   @Nullable
   protected Content getAsset(final String name) {
     StorageTx tx = UnitOfWork.currentTx();
 
-    Asset asset = findAsset(tx, tx.findBucket(getRepository()), name);
+    Asset asset;
+    try (Timing ignored = RequestTrace.time(Stage.QUERY)) {
+      asset = findAsset(tx, tx.findBucket(getRepository()), name);
+    }
     if (asset == null) {
       return null;
     }
     if (asset.markAsDownloaded()) {
       tx.saveAsset(asset);
     }
-    return toContent(asset, tx.requireBlob(asset.requireBlobRef()));
+    Blob blob;
+    try (Timing ignored = RequestTrace.time(Stage.BLOB)) {
+      blob = tx.requireBlob(asset.requireBlobRef());
+    }
+    return toContent(asset, blob);
   }
 
   @Override
   protected Content store(final Context context, final Content content) throws IOException {
-    if (context.getRequest().getPath().equals(ConanMatcher.PING)) {
-      return content;
-    }
-
     AssetKind assetKind = context.getAttributes().require(AssetKind.class);
 
     ConanCoords conanCoords = getCoords(context);
-    if (assetKind.equals(CONAN_PACKAGE)) {
-      return putPackage(content, conanCoords, assetKind);
+    String assetPath = buildAssetPath(context);
+    Content stored;
+    try (Timing ignored = RequestTrace.time(Stage.STORE)) {
+      if (assetKind.equals(CONAN_PACKAGE)) {
+        stored = putPackage(context, content, conanCoords, assetPath);
+      }
+      else {
+        stored = putMetadata(context, content, assetKind, conanCoords, assetPath);
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      metrics.storeFailure(assetKind);
+      throw e;
     }
-    return putMetadata(context, content, assetKind, conanCoords);
+    finally {
+      endFetch(context);
+      metadataCache.invalidate(getRepository().getName(), assetPath);
+    }
+    if (stored == null) {
+      metrics.storeFailure(assetKind);
+    }
+    return stored;
   }
 
-  private Content putPackage(final Content content,
+  private Content putPackage(final Context context,
+                             final Content content,
                              final ConanCoords coords,
-                             final AssetKind assetKind) throws IOException {
+                             final String assetPath) throws IOException {
     StorageFacet storageFacet = facet(StorageFacet.class);
-    try (TempBlob tempBlob = storageFacet.createTempBlob(content.openInputStream(), HASH_ALGORITHMS)) {
-      return doPutPackage(tempBlob, content, coords, assetKind);
+    try (TempBlob tempBlob = conanHashing.createTempBlob(storageFacet, content)) {
+      downloaded(context, CONAN_PACKAGE, tempBlob);
+      return doPutPackage(tempBlob, content, coords, assetPath);
     }
   }
 
   private Content putMetadata(final Context context,
                               final Content content,
                               final AssetKind assetKind,
-                              final ConanCoords coords)
+                              final ConanCoords coords,
+                              final String assetPath)
       throws IOException
   {
     StorageFacet storageFacet = facet(StorageFacet.class);
-    try (TempBlob tempBlob = storageFacet.createTempBlob(content.openInputStream(), HASH_ALGORITHMS)) {
+    try (TempBlob tempBlob = conanHashing.createTempBlob(storageFacet, content)) {
+      downloaded(context, assetKind, tempBlob);
       AttributesMap attributesMap;
       switch (assetKind) {
         case DOWNLOAD_URL:
-          Content saveMetadata = doSaveMetadata(tempBlob, content, assetKind, new AttributesMap(), coords);
+          Content saveMetadata = doSaveMetadata(tempBlob, content, assetKind, new AttributesMap(), coords, assetPath);
 
-          return new Content(
-              new StringPayload(
-                  conanUrlIndexer.updateAbsoluteUrls(context, saveMetadata, getRepository()),
-                  ContentTypes.APPLICATION_JSON)
-          );
+          return rewriteUrls(context, saveMetadata);
         case CONAN_MANIFEST:
           attributesMap = ConanManifest.parse(tempBlob);
-          break;
+          Content manifest = doSaveMetadata(tempBlob, content, assetKind, attributesMap, coords, assetPath);
+          if (manifest != null) {
+            hashVerifier.cacheManifest(getRepository().getName(), assetPath, attributesMap);
+          }
+          return manifest;
         case CONAN_FILE:
           //TODO: Parse file to get license information and description, email, group etc
           attributesMap = new AttributesMap();
@@ -175,7 +885,7 @@ public class ConanProxyFacet
           attributesMap = new AttributesMap();
           break;
       }
-      return doSaveMetadata(tempBlob, content, assetKind, attributesMap, coords);
+      return doSaveMetadata(tempBlob, content, assetKind, attributesMap, coords, assetPath);
     }
   }
 
@@ -190,10 +900,16 @@ public class ConanProxyFacet
                                          final ConanCoords coords) {
     Component component = findComponent(tx, getRepository(), coords);
     if(component == null) {
+      Map<String, Object> attributes = new HashMap<>();
+      attributes.put(GROUP, coords.getGroup());
+      attributes.put(PROJECT, coords.getProject());
+      attributes.put(VERSION, coords.getVersion());
+      attributes.put(STATE, coords.getChannel());
       component = tx.createComponent(bucket, getRepository().getFormat())
           .group(coords.getGroup())
           .name(coords.getProject())
-          .version(coords.getVersion());
+          .version(coords.getVersion())
+          .attributes(new NestedAttributesMap("metadata", attributes));
     }
     tx.saveComponent(component);
     return component;
@@ -203,13 +919,12 @@ public class ConanProxyFacet
   protected Content doPutPackage(final TempBlob tempBlob,
                                  final Payload content,
                                  final ConanCoords coords,
-                                 final AssetKind assetKind) throws IOException
+                                 final String assetPath) throws IOException
   {
     StorageTx tx = UnitOfWork.currentTx();
     Bucket bucket = tx.findBucket(getRepository());
     Component component = getOrCreateComponent(tx, bucket, coords);
 
-    String assetPath = buildAssetPathFromCoords(coords, assetKind);
     Asset asset = findAsset(tx, bucket, assetPath);
     if (asset == null) {
       asset = tx.createAsset(bucket, component);
@@ -224,24 +939,24 @@ public class ConanProxyFacet
                                    final Payload payload,
                                    final AssetKind assetKind,
                                    final AttributesMap attributesMap,
-                                   final ConanCoords coords) throws IOException
+                                   final ConanCoords coords,
+                                   final String assetPath) throws IOException
   {
     HashCode hash = null;
     StorageTx tx = UnitOfWork.currentTx();
     Bucket bucket = tx.findBucket(getRepository());
     Component component = getOrCreateComponent(tx, bucket, coords);
 
-    String assetPath = buildAssetPathFromCoords(coords, assetKind);
     Asset asset = findAsset(tx, bucket, assetPath);
     if (asset == null) {
       asset = tx.createAsset(bucket, component);
       asset.name(assetPath);
       asset.formatAttributes().set(P_ASSET_KIND, assetKind.name());
-      for (Entry<String, Object> entry : attributesMap) {
-        asset.formatAttributes().set(entry.getKey(), entry.getValue());
-      }
       hash = hashVerifier.lookupHashFromAsset(tx, bucket, assetPath);
     }
+    for (Entry<String, Object> entry : attributesMap) {
+      asset.formatAttributes().set(entry.getKey(), entry.getValue());
+    }
     return saveAsset(tx, asset, metadataContent, payload, hash);
   }
 
@@ -252,7 +967,7 @@ public class ConanProxyFacet
    */
   private Content saveAsset(final StorageTx tx,
                                    final Asset asset,
-                                   final Supplier<InputStream> contentSupplier,
+                                   final TempBlob tempBlob,
                                    final Payload payload,
                                    final HashCode hash) throws IOException
   {
@@ -262,7 +977,7 @@ public class ConanProxyFacet
       contentAttributes = ((Content) payload).getAttributes();
       contentType = payload.getContentType();
     }
-    return saveAsset(tx, asset, contentSupplier, contentType, contentAttributes, hash);
+    return saveAsset(tx, asset, tempBlob, contentType, contentAttributes, hash);
   }
 
   /**
@@ -272,14 +987,14 @@ public class ConanProxyFacet
    */
   private Content saveAsset(final StorageTx tx,
                                    final Asset asset,
-                                   final Supplier<InputStream> contentSupplier,
+                                   final TempBlob tempBlob,
                                    final String contentType,
                                    final AttributesMap contentAttributes,
                                    final HashCode hash) throws IOException
   {
     Content.applyToAsset(asset, maintainLastModified(asset, contentAttributes));
     AssetBlob assetBlob = tx.setBlob(
-        asset, asset.name(), contentSupplier, HASH_ALGORITHMS, null, contentType, false
+        asset, asset.name(), tempBlob, null, contentType, false
     );
 
     if(!hashVerifier.verify(hash, assetBlob.getHashes().get(MD5))) {
@@ -299,7 +1014,8 @@ public class ConanProxyFacet
   protected String getUrl(@Nonnull final Context context) {
     AssetKind assetKind = context.getAttributes().require(AssetKind.class);
 
-    if(DOWNLOAD_URL.equals(assetKind)) {
+    // download_urls and every v2 request are fetched from the same path upstream
+    if(DOWNLOAD_URL.equals(assetKind) || isV2(context)) {
       return context.getRequest().getPath();
     }
 
@@ -307,7 +1023,7 @@ public class ConanProxyFacet
 
     // Find the original download_url
     ConanCoords coords = ConanMatcher.getCoords(context);
-    String download_urls = String.format("%s/%s", ConanCoords.getPath(coords), "download_urls");
+    String download_urls = ConanCoords.getPath(coords) + "/download_urls";
     return getUrlFromDownloadAsset(download_urls, assetKind.getFilename());
   }
 
@@ -315,17 +1031,71 @@ public class ConanProxyFacet
   protected String getUrlFromDownloadAsset(final String download_urls, final String find) {
     StorageTx tx = UnitOfWork.currentTx();
 
-    Asset asset = findAsset(tx, tx.findBucket(getRepository()), download_urls);
-    if (asset == null) {
-      return null;
+    try (Timing ignored = RequestTrace.time(Stage.QUERY)) {
+      Asset asset = findAsset(tx, tx.findBucket(getRepository()), download_urls);
+      if (asset == null) {
+        return null;
+      }
+      return conanUrlIndexer.findUrl(tx.requireBlob(asset.blobRef()).getInputStream(), find);
     }
-    return conanUrlIndexer.findUrl(tx.requireBlob(asset.blobRef()).getInputStream(), find);
   }
 
   @Nonnull
   @Override
   protected CacheController getCacheController(@Nonnull final Context context) {
+    if (isRevisionPinned(context)) {
+      return IMMUTABLE;
+    }
     final AssetKind assetKind = context.getAttributes().require(AssetKind.class);
     return checkNotNull(cacheControllerHolder.get(assetKind.getCacheType()));
   }
+
+  /**
+   * The server capabilities of the remote
+   */
+  private static final class CachedCapabilities
+  {
+    private final String value;
+
+    private final long freshUntilNanos;
+
+    private CachedCapabilities(final String value, final long freshUntilNanos) {
+      this.value = value;
+      this.freshUntilNanos = freshUntilNanos;
+    }
+
+    private boolean isFresh() {
+      return System.nanoTime() - freshUntilNanos < 0;
+    }
+  }
+
+  /**
+   * A search response of the remote
+   */
+  private static final class CachedSearch
+  {
+    private final int status;
+
+    @Nullable
+    private final byte[] body;
+
+    private final long freshUntilNanos;
+
+    private CachedSearch(final int status, @Nullable final byte[] body, final long freshUntilNanos) {
+      this.status = status;
+      this.body = body;
+      this.freshUntilNanos = freshUntilNanos;
+    }
+
+    private boolean isFresh() {
+      return System.nanoTime() - freshUntilNanos < 0;
+    }
+
+    private Response toResponse() {
+      if (status != OK) {
+        return HttpResponses.notFound();
+      }
+      return HttpResponses.ok(new BytesPayload(body, APPLICATION_JSON));
+    }
+  }
 }
@@ -25,28 +25,44 @@ import org.sonatype.repository.conan.internal.metadata.ConanCoords
 
 import com.google.common.collect.ImmutableList
 
+import groovy.transform.CompileStatic
+
 import static org.sonatype.nexus.common.hash.HashAlgorithm.MD5
 import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA1
 import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256
 import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA512
 import static org.sonatype.nexus.repository.storage.MetadataNodeEntityAdapter.P_NAME
 import static org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher.getCoords
+import static org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher.isV2
 
 /**
  * @since 0.0.1
  */
+@CompileStatic
 class ConanProxyHelper
 {
+  /**
+   * Every algorithm that may have been recorded against an asset; new blobs are hashed as configured in
+   * {@link org.sonatype.repository.conan.internal.utils.ConanHashing}
+   */
   public static final List<HashAlgorithm> HASH_ALGORITHMS = ImmutableList.of(SHA256, SHA1, SHA512, MD5)
 
+  /**
+   * @return the path of the asset of the request, which for the v2 API is the request path itself
+   */
   static String buildAssetPath(final Context context) {
+    if (isV2(context)) {
+      return context.getRequest().getPath()
+    }
     AssetKind assetKind = context.getAttributes().require(AssetKind.class)
     ConanCoords conanCoords = getCoords(context)
     return buildAssetPathFromCoords(conanCoords, assetKind)
   }
 
   static String buildAssetPathFromCoords(ConanCoords conanCoords, AssetKind assetKind) {
-    ConanCoords.getPath(conanCoords) + "/" + assetKind.getFilename()
+    String path = ConanCoords.getPath(conanCoords)
+    String filename = assetKind.getFilename()
+    return new StringBuilder(path.length() + 1 + filename.length()).append(path).append('/').append(filename).toString()
   }
 
   static Asset findAsset(final StorageTx tx, final Bucket bucket, final String assetName) {
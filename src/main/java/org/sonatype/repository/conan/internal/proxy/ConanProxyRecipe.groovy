@@ -23,7 +23,6 @@ import org.sonatype.nexus.repository.Type
 import org.sonatype.nexus.repository.proxy.ProxyHandler
 import org.sonatype.nexus.repository.types.ProxyType
 import org.sonatype.nexus.repository.view.ConfigurableViewFacet
-import org.sonatype.nexus.repository.view.Context
 import org.sonatype.nexus.repository.view.Route
 import org.sonatype.nexus.repository.view.Router
 import org.sonatype.nexus.repository.view.ViewFacet
@@ -32,15 +31,20 @@ import org.sonatype.repository.conan.internal.AssetKind
 import org.sonatype.repository.conan.internal.ConanFormat
 import org.sonatype.repository.conan.internal.ConanRecipeSupport
 import org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher
+import org.sonatype.repository.conan.internal.security.token.ConanTokenFacet
 
 import com.google.inject.Provider
 
 import static org.sonatype.nexus.repository.http.HttpHandlers.notFound
+import static org.sonatype.repository.conan.internal.AssetKind.CONAN_EXPORT
 import static org.sonatype.repository.conan.internal.AssetKind.CONAN_FILE
 import static org.sonatype.repository.conan.internal.AssetKind.CONAN_INFO
 import static org.sonatype.repository.conan.internal.AssetKind.CONAN_MANIFEST
 import static org.sonatype.repository.conan.internal.AssetKind.CONAN_PACKAGE
+import static org.sonatype.repository.conan.internal.AssetKind.CONAN_SOURCES
 import static org.sonatype.repository.conan.internal.AssetKind.DOWNLOAD_URL
+import static org.sonatype.repository.conan.internal.AssetKind.REVISIONS
+import static org.sonatype.repository.conan.internal.AssetKindHandler.assetKind
 
 /**
  * @since 0.0.1
@@ -58,20 +62,25 @@ class ConanProxyRecipe
   @Inject
   ProxyHandler proxyHandler
 
+  @Inject
+  ConanProxySearchHandler searchHandler
+
+  @Inject
+  ProxyHandlers proxyHandlers
+
+  @Inject
+  Provider<ConanTokenFacet> tokenFacet
+
   @Inject
   protected ConanProxyRecipe(@Named(ProxyType.NAME) final Type type,
                              @Named(ConanFormat.NAME) final Format format) {
     super(type, format)
   }
 
-  Closure assetKindHandler = { Context context, AssetKind value ->
-    context.attributes.set(AssetKind, value)
-    return context.proceed()
-  }
-
   @Override
   void apply(@Nonnull final Repository repository) throws Exception {
     repository.attach(securityFacet.get())
+    repository.attach(tokenFacet.get())
     repository.attach(configure(viewFacet.get(), new ConanMatcher()))
     repository.attach(httpClientFacet.get())
     repository.attach(negativeCacheFacet.get())
@@ -87,9 +96,20 @@ class ConanProxyRecipe
   ViewFacet configure(ConfigurableViewFacet facet, ConanMatcher matcher) {
     Router.Builder builder = new Router.Builder()
 
+    // v2 routes go first, the v1 file patterns matching any path ending with the file name
+    List<AssetKind> revisionFileKinds =
+        [CONAN_FILE, CONAN_MANIFEST, CONAN_EXPORT, CONAN_SOURCES, CONAN_INFO, CONAN_PACKAGE]
+    revisionFileKinds.each { AssetKind kind ->
+      builder.route(proxyRoute(matcher.revisionFile(kind), kind))
+    }
+    builder.route(proxyRoute(matcher.revisionFiles(), REVISIONS))
+    builder.route(proxyRoute(matcher.revisions(), REVISIONS))
+    builder.route(proxyRoute(matcher.latest(), REVISIONS))
+
     builder.route(matcher.downloadUrls()
+        .handler(traceHandler)
         .handler(timingHandler)
-        .handler(assetKindHandler.rcurry(DOWNLOAD_URL))
+        .handler(assetKind(DOWNLOAD_URL))
         .handler(securityHandler)
         .handler(exceptionHandler)
         .handler(handlerContributor)
@@ -101,8 +121,9 @@ class ConanProxyRecipe
         .create())
 
     builder.route(matcher.conanManifest()
+        .handler(traceHandler)
         .handler(timingHandler)
-        .handler(assetKindHandler.rcurry(CONAN_MANIFEST))
+        .handler(assetKind(CONAN_MANIFEST))
         .handler(securityHandler)
         .handler(exceptionHandler)
         .handler(handlerContributor)
@@ -114,8 +135,9 @@ class ConanProxyRecipe
         .create())
 
     builder.route(matcher.conanFile()
+        .handler(traceHandler)
         .handler(timingHandler)
-        .handler(assetKindHandler.rcurry(CONAN_FILE))
+        .handler(assetKind(CONAN_FILE))
         .handler(securityHandler)
         .handler(exceptionHandler)
         .handler(handlerContributor)
@@ -127,8 +149,9 @@ class ConanProxyRecipe
         .create())
 
     builder.route(matcher.conanInfo()
+        .handler(traceHandler)
         .handler(timingHandler)
-        .handler(assetKindHandler.rcurry(CONAN_INFO))
+        .handler(assetKind(CONAN_INFO))
         .handler(securityHandler)
         .handler(exceptionHandler)
         .handler(handlerContributor)
@@ -140,8 +163,9 @@ class ConanProxyRecipe
         .create())
 
     builder.route(matcher.conanPackage()
+        .handler(traceHandler)
         .handler(timingHandler)
-        .handler(assetKindHandler.rcurry(CONAN_PACKAGE))
+        .handler(assetKind(CONAN_PACKAGE))
         .handler(securityHandler)
         .handler(exceptionHandler)
         .handler(handlerContributor)
@@ -152,12 +176,51 @@ class ConanProxyRecipe
         .handler(proxyHandler)
         .create())
 
+    builder.route(matcher.search()
+        .handler(traceHandler)
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(unitOfWorkHandler)
+        .handler(searchHandler)
+        .create())
+
+    builder.route(matcher.searchUrl()
+        .handler(traceHandler)
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(unitOfWorkHandler)
+        .handler(searchHandler)
+        .create())
+
     builder.route(matcher.ping()
+        .handler(traceHandler)
         .handler(timingHandler)
         .handler(securityHandler)
         .handler(exceptionHandler)
         .handler(handlerContributor)
-        .handler(proxyHandler)
+        .handler(proxyHandlers.ping)
+        .create())
+
+    builder.route(matcher.checkCredentials()
+        .handler(traceHandler)
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(proxyHandlers.checkCredentials)
+        .create())
+
+    builder.route(matcher.authenticate()
+        .handler(traceHandler)
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(proxyHandlers.authenticate)
         .create())
 
     builder.route(new Route.Builder()
@@ -169,4 +232,20 @@ class ConanProxyRecipe
     facet.configure(builder.create())
     return facet
   }
+
+  private Route proxyRoute(final Route.Builder route, final AssetKind kind) {
+    return route
+        .handler(traceHandler)
+        .handler(timingHandler)
+        .handler(assetKind(kind))
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(negativeCacheHandler)
+        .handler(partialFetchHandler)
+        .handler(contentHeadersHandler)
+        .handler(unitOfWorkHandler)
+        .handler(proxyHandler)
+        .create()
+  }
 }
@@ -0,0 +1,47 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.proxy;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.repository.conan.internal.security.token.ConanTokenFacet;
+
+/**
+ * Answers the endpoints a Conan client calls before any download locally, so that they neither wait on nor fail
+ * with the remote; its availability is tracked by the http client of the repository as for any download.
+ *
+ * @since 0.0.6
+ */
+@Named
+@Singleton
+public class ProxyHandlers
+    extends ComponentSupport
+{
+  /**
+   * Acknowledges a ping with the server capabilities of the remote
+   */
+  final Handler ping = context -> context.getRepository().facet(ConanProxyFacet.class).ping(context);
+
+  /**
+   * Answers the name of the user authenticated by the request, or 401
+   */
+  final Handler checkCredentials = context -> context.getRepository().facet(ConanTokenFacet.class).user(context);
+
+  /**
+   * Answers a token for the user authenticated by the request, or 401
+   */
+  final Handler authenticate = context -> context.getRepository().facet(ConanTokenFacet.class).login(context);
+}
@@ -0,0 +1,308 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.proxy;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.repository.conan.internal.metrics.ConanMetrics.LaneMetrics;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Limits the number of fetches a proxy repository makes from its upstream at the same time, so that a burst of
+ * downloads cannot exhaust the rate limit of the remote nor starve the developers waiting on it.
+ *
+ * Fetches over the limit wait in one of the {@link Lane}s, and a fetch slot which frees up goes to the longest
+ * waiting fetch of the first lane with one. Background fetches hold at most {@code maxBackgroundFetches} of the
+ * slots, leaving the rest to interactive ones. Once {@code maxQueuedFetches} wait, or the wait times out, the fetch
+ * is rejected.
+ *
+ * @since 0.0.6
+ */
+class UpstreamBulkhead
+{
+  /**
+   * Lanes of waiting fetches, in the order they are given free slots
+   */
+  enum Lane
+  {
+    METADATA("metadata", false),
+    ARCHIVES("archives", false),
+    BACKGROUND_METADATA("backgroundMetadata", true),
+    BACKGROUND_ARCHIVES("backgroundArchives", true);
+
+    private final String metricName;
+
+    private final boolean background;
+
+    Lane(final String metricName, final boolean background) {
+      this.metricName = metricName;
+      this.background = background;
+    }
+
+    static Lane of(final boolean archive, final boolean background) {
+      if (background) {
+        return archive ? BACKGROUND_ARCHIVES : BACKGROUND_METADATA;
+      }
+      return archive ? ARCHIVES : METADATA;
+    }
+
+    String getMetricName() {
+      return metricName;
+    }
+  }
+
+  private final int maxConcurrentFetches;
+
+  private final int maxBackgroundFetches;
+
+  private final int maxQueuedFetches;
+
+  private final long maxWaitNanos;
+
+  private final Map<Lane, LaneMetrics> metrics;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Map<Lane, Deque<Waiter>> waiting = new EnumMap<>(Lane.class);
+
+  private int activeFetches;
+
+  private int backgroundFetches;
+
+  private int queuedFetches;
+
+  /**
+   * @param metrics gives the metrics of each lane
+   */
+  UpstreamBulkhead(final int maxConcurrentFetches,
+                   final int maxBackgroundFetches,
+                   final int maxQueuedFetches,
+                   final long maxWait,
+                   final TimeUnit unit,
+                   final Function<Lane, LaneMetrics> metrics)
+  {
+    checkArgument(maxConcurrentFetches > 0, "maxConcurrentFetches must be positive");
+    checkArgument(maxBackgroundFetches > 0, "maxBackgroundFetches must be positive");
+    checkArgument(maxQueuedFetches >= 0, "maxQueuedFetches must not be negative");
+    checkArgument(maxWait >= 0, "maxWait must not be negative");
+    this.maxConcurrentFetches = maxConcurrentFetches;
+    this.maxBackgroundFetches = Math.min(maxBackgroundFetches, maxConcurrentFetches);
+    this.maxQueuedFetches = maxQueuedFetches;
+    this.maxWaitNanos = unit.toNanos(maxWait);
+    this.metrics = new EnumMap<>(Lane.class);
+    for (Lane lane : Lane.values()) {
+      this.metrics.put(lane, checkNotNull(metrics.apply(lane)));
+      waiting.put(lane, new ArrayDeque<>());
+    }
+  }
+
+  /**
+   * Waits for a fetch slot in {@code lane}.
+   *
+   * @param budgetNanos left to the request, the fetch waits no longer than that
+   * @return the admission which must be closed once the fetch completed, or null when rejected
+   */
+  @Nullable
+  Admission admit(final Lane lane, final long budgetNanos) throws InterruptedException {
+    LaneMetrics laneMetrics = metrics.get(lane);
+    Waiter waiter;
+    lock.lockInterruptibly();
+    try {
+      if (!hasWaitersAhead(lane) && hasCapacity(lane)) {
+        start(lane);
+        return new Admission(lane);
+      }
+      if (queuedFetches >= maxQueuedFetches) {
+        laneMetrics.rejected();
+        return null;
+      }
+      waiter = new Waiter(lock.newCondition());
+      waiting.get(lane).add(waiter);
+      queuedFetches++;
+      laneMetrics.queued();
+
+      long start = System.nanoTime();
+      long remaining = Math.min(maxWaitNanos, budgetNanos);
+      try {
+        while (!waiter.admitted && remaining > 0) {
+          remaining = waiter.condition.awaitNanos(remaining);
+        }
+      }
+      catch (InterruptedException e) {
+        if (waiter.admitted) {
+          finish(lane);
+        }
+        else {
+          leave(lane, waiter);
+        }
+        laneMetrics.left(System.nanoTime() - start, false);
+        throw e;
+      }
+      if (!waiter.admitted) {
+        leave(lane, waiter);
+      }
+      laneMetrics.left(System.nanoTime() - start, waiter.admitted);
+      return waiter.admitted ? new Admission(lane) : null;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean hasWaitersAhead(final Lane lane) {
+    for (Lane ahead : Lane.values()) {
+      if (!waiting.get(ahead).isEmpty()) {
+        return true;
+      }
+      if (ahead == lane) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private boolean hasCapacity(final Lane lane) {
+    return activeFetches < maxConcurrentFetches && (!lane.background || backgroundFetches < maxBackgroundFetches);
+  }
+
+  private void start(final Lane lane) {
+    activeFetches++;
+    if (lane.background) {
+      backgroundFetches++;
+    }
+  }
+
+  /**
+   * Gives up waiting, which may let the lanes behind it through
+   */
+  private void leave(final Lane lane, final Waiter waiter) {
+    waiting.get(lane).remove(waiter);
+    queuedFetches--;
+    dispatch();
+  }
+
+  private void finish(final Lane lane) {
+    activeFetches--;
+    if (lane.background) {
+      backgroundFetches--;
+    }
+    dispatch();
+  }
+
+  /**
+   * Hands free slots to the waiters of the first lanes
+   */
+  private void dispatch() {
+    for (Lane lane : Lane.values()) {
+      Deque<Waiter> waiters = waiting.get(lane);
+      while (!waiters.isEmpty() && hasCapacity(lane)) {
+        Waiter waiter = waiters.poll();
+        queuedFetches--;
+        start(lane);
+        waiter.admitted = true;
+        waiter.condition.signal();
+      }
+      if (!waiters.isEmpty() && !lane.background) {
+        return;
+      }
+    }
+  }
+
+  private void release(final Lane lane) {
+    lock.lock();
+    try {
+      finish(lane);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  int getActiveFetches() {
+    lock.lock();
+    try {
+      return activeFetches;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  int getQueuedFetches() {
+    lock.lock();
+    try {
+      return queuedFetches;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @VisibleForTesting
+  int getQueuedFetches(final Lane lane) {
+    lock.lock();
+    try {
+      return waiting.get(lane).size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  private static final class Waiter
+  {
+    private final Condition condition;
+
+    private boolean admitted;
+
+    private Waiter(final Condition condition) {
+      this.condition = condition;
+    }
+  }
+
+  /**
+   * Fetch slot held by an admitted fetch, given back on {@link #close()}
+   */
+  class Admission
+      implements AutoCloseable
+  {
+    private final Lane lane;
+
+    private boolean closed;
+
+    private Admission(final Lane lane) {
+      this.lane = lane;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (!closed) {
+        closed = true;
+        release(lane);
+      }
+    }
+  }
+}
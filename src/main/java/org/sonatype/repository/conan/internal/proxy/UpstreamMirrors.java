@@ -0,0 +1,533 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.proxy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.repository.proxy.ProxyServiceException;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.message.BasicHttpResponse;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.repository.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Makes the upstream calls of a proxy repository, spreading them over equivalent upstream mirrors when there are
+ * any, the remote url of the repository being the first of them.
+ *
+ * Mirrors are tried fastest first, ranked by their median latency, and mirrors which failed within the last
+ * {@value #FAILURE_PENALTY_SECONDS} seconds rank behind those which did not. When the first mirror has not answered
+ * within the {@code hedgePercentile} of its latency the same request is sent to the next mirror as well; whichever
+ * answers first is used and the other request is aborted. A mirror failing, by an error or a 5xx or 429 response,
+ * fails over to the next one not yet asked. Only GET and HEAD requests to one of the mirrors are spread, the rest go
+ * to the url they name.
+ *
+ * Every mirror has a {@link CircuitBreaker}, requests to urls of no mirror count against that of the remote url. A
+ * mirror whose breaker is open is skipped, and with all of them open the call fails at once. A call still waiting
+ * on the upstream when its budget runs out is aborted. Both fail with a {@link ProxyServiceException}, so that the
+ * proxy answers with stale content when it has some and with 503 otherwise.
+ *
+ * @since 0.0.6
+ */
+class UpstreamMirrors
+    extends ComponentSupport
+{
+  private static final int TOO_MANY_REQUESTS = 429;
+
+  private static final int GATEWAY_TIMEOUT = 504;
+
+  /**
+   * Latencies recorded before the percentile of a mirror is trusted to hedge on
+   */
+  @VisibleForTesting
+  static final int MIN_SAMPLES = 20;
+
+  /**
+   * Budget of calls which are not bounded by a deadline
+   */
+  static final long NO_DEADLINE = Long.MAX_VALUE;
+
+  private static final long RANK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final long FAILURE_PENALTY_SECONDS = 30;
+
+  /**
+   * Sends a request to a mirror, {@code primary} when it goes to the remote url of the repository
+   */
+  interface Sender
+  {
+    HttpResponse send(HttpRequestBase request, boolean primary) throws IOException;
+  }
+
+  private final List<Mirror> mirrors;
+
+  private final double hedgeQuantile;
+
+  private final long minHedgeDelayMillis;
+
+  private final Executor executor;
+
+  private final ScheduledExecutorService scheduler;
+
+  private volatile List<Mirror> ranked;
+
+  private volatile long rankedAtNanos;
+
+  /**
+   * @param urls            the remote url of the repository followed by its mirrors
+   * @param hedgePercentile of the latency of the first mirror after which the second is asked, 0 to never hedge
+   * @param breakers        creates the circuit breaker of each url
+   */
+  UpstreamMirrors(final List<URI> urls,
+                  final double hedgePercentile,
+                  final long minHedgeDelayMillis,
+                  final Executor executor,
+                  final ScheduledExecutorService scheduler,
+                  final Function<String, CircuitBreaker> breakers)
+  {
+    checkArgument(!urls.isEmpty(), "at least the remote url is required");
+    checkArgument(hedgePercentile >= 0 && hedgePercentile < 100, "hedge percentile must be in [0, 100)");
+    this.mirrors = new ArrayList<>();
+    for (URI url : urls) {
+      String base = baseUrl(url);
+      mirrors.add(new Mirror(mirrors.size(), base, breakers.apply(base)));
+    }
+    this.hedgeQuantile = hedgePercentile / 100;
+    this.minHedgeDelayMillis = minHedgeDelayMillis;
+    this.executor = checkNotNull(executor);
+    this.scheduler = checkNotNull(scheduler);
+    this.ranked = mirrors;
+  }
+
+  /**
+   * Executes {@code request} against the mirrors.
+   *
+   * @param budgetNanos time left to answer the request in, {@link #NO_DEADLINE} for no bound
+   * @return the first good response, or the response of the last mirror to fail
+   * @throws IOException           of the last mirror to fail when none responded
+   * @throws ProxyServiceException when every mirror to ask is open, or the budget ran out
+   */
+  HttpResponse execute(final HttpRequestBase request, final Sender sender, final long budgetNanos)
+      throws IOException
+  {
+    if (budgetNanos <= 0) {
+      throw unavailable(GATEWAY_TIMEOUT, "No time left to call upstream");
+    }
+    String url = request.getURI().toString();
+    Mirror origin = mirrors.stream().filter(mirror -> url.startsWith(mirror.url)).findFirst().orElse(null);
+    boolean idempotent = request instanceof HttpGet || request instanceof HttpHead;
+    boolean spread = mirrors.size() > 1 && origin != null && idempotent;
+    List<Mirror> order = spread ? rank() : Collections.singletonList(origin == null ? mirrors.get(0) : origin);
+    String path = origin == null ? url : url.substring(origin.url.length());
+
+    boolean bounded = budgetNanos != NO_DEADLINE;
+    long deadlineNanos = bounded ? System.nanoTime() + budgetNanos : 0;
+    BlockingQueue<Attempt> completed = new LinkedBlockingQueue<>();
+    List<Attempt> attempts = new CopyOnWriteArrayList<>();
+    ScheduledFuture<?> timeout = bounded ?
+        scheduler.schedule(() -> attempts.forEach(Attempt::timeout), budgetNanos, TimeUnit.NANOSECONDS) : null;
+    try {
+      Attempt failed = null;
+      int next = 0;
+      int inFlight = 0;
+      long hedgeDelay = -1;
+      while (next < order.size() && inFlight == 0) {
+        Attempt attempt =
+            start(order.get(next++), request, spread ? path : null, origin != null, sender, completed, attempts);
+        if (attempt.rejected) {
+          failed = attempt;
+        }
+        else {
+          inFlight++;
+          hedgeDelay = hedgeDelayMillis(order.get(0));
+        }
+      }
+
+      while (inFlight > 0) {
+        long waitMillis = bounded ? TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()) : Long.MAX_VALUE;
+        boolean hedging = hedgeDelay >= 0 && next < order.size() && hedgeDelay < waitMillis;
+        Attempt attempt = completed.poll(hedging ? hedgeDelay : waitMillis, TimeUnit.MILLISECONDS);
+        if (attempt == null && hedging) {
+          hedgeDelay = -1;
+          log.debug("Hedging {} to {}", path, order.get(next).url);
+          Attempt hedge = start(order.get(next++), request, path, true, sender, completed, attempts);
+          if (!hedge.rejected) {
+            inFlight++;
+          }
+          continue;
+        }
+        if (attempt == null) {
+          attempts.forEach(Attempt::timeout);
+          throw unavailable(GATEWAY_TIMEOUT, "Upstream did not answer " + path + " in time");
+        }
+        hedgeDelay = -1;
+        inFlight--;
+
+        if (attempt.isGood()) {
+          return take(attempt, path);
+        }
+        rankedAtNanos = 0;
+        log.debug("Mirror {} failed {}", attempt.mirror.url, path, attempt.error);
+        if (failed != null) {
+          failed.discard();
+        }
+        failed = attempt;
+        while (inFlight == 0 && next < order.size()) {
+          Attempt failover = start(order.get(next++), request, path, true, sender, completed, attempts);
+          if (!failover.rejected) {
+            inFlight++;
+          }
+        }
+      }
+
+      if (failed == null || failed.rejected) {
+        throw unavailable(SERVICE_UNAVAILABLE, "Upstream is unavailable, not calling it for " + path);
+      }
+      if (failed.error != null) {
+        throw failed.error;
+      }
+      return take(failed, path);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted fetching " + path, e);
+    }
+    finally {
+      if (timeout != null) {
+        timeout.cancel(false);
+      }
+      attempts.forEach(Attempt::discard);
+    }
+  }
+
+  private static HttpResponse take(final Attempt attempt, final String path) {
+    if (!attempt.take()) {
+      throw unavailable(GATEWAY_TIMEOUT, "Upstream did not answer " + path + " in time");
+    }
+    return attempt.response;
+  }
+
+  /**
+   * Sends the request to {@code mirror} on the executor, or on the calling thread when it has no thread to spare or
+   * the request is not spread over the mirrors.
+   *
+   * @param path     of the request below the mirror url, null to send the request itself
+   * @param attempts of the call, which the attempt joins before it is sent so that the deadline reaches it
+   */
+  private Attempt start(final Mirror mirror,
+                        final HttpRequestBase original,
+                        @Nullable final String path,
+                        final boolean measured,
+                        final Sender sender,
+                        final BlockingQueue<Attempt> completed,
+                        final List<Attempt> attempts)
+  {
+    HttpRequestBase request = original;
+    if (path != null) {
+      request = original instanceof HttpHead ? new HttpHead() : new HttpGet();
+      request.setURI(URI.create(mirror.url + path));
+      request.setHeaders(original.getAllHeaders());
+      request.setConfig(original.getConfig());
+    }
+    boolean primary = mirror.index == 0 && (path != null || measured);
+    Attempt attempt = new Attempt(mirror, request, primary, measured, sender, completed);
+    attempts.add(attempt);
+    if (!mirror.breaker.tryAcquire()) {
+      attempt.rejected = true;
+      return attempt;
+    }
+    if (path == null) {
+      attempt.run();
+      return attempt;
+    }
+    try {
+      executor.execute(attempt);
+    }
+    catch (RejectedExecutionException e) {
+      attempt.run();
+    }
+    return attempt;
+  }
+
+  /**
+   * @return milliseconds to wait on {@code mirror} before hedging, -1 to not hedge
+   */
+  private long hedgeDelayMillis(final Mirror mirror) {
+    if (hedgeQuantile <= 0 || mirror.latency.getCount() < MIN_SAMPLES) {
+      return -1;
+    }
+    double nanos = mirror.latency.getSnapshot().getValue(hedgeQuantile);
+    return Math.max(minHedgeDelayMillis, TimeUnit.NANOSECONDS.toMillis((long) nanos));
+  }
+
+  /**
+   * @return the mirrors in the order to try them, ranked at most once per second unless a mirror failed
+   */
+  @VisibleForTesting
+  List<Mirror> rank() {
+    long now = System.nanoTime();
+    if (now - rankedAtNanos < RANK_INTERVAL_NANOS && rankedAtNanos != 0) {
+      return ranked;
+    }
+    List<Mirror> order = new ArrayList<>(mirrors);
+    order.sort(Comparator.comparing((Mirror mirror) -> mirror.failedSince(now, FAILURE_PENALTY_SECONDS))
+        .thenComparingDouble(Mirror::median)
+        .thenComparingInt(mirror -> mirror.index));
+    ranked = order;
+    rankedAtNanos = now;
+    return order;
+  }
+
+  @VisibleForTesting
+  CircuitBreaker breaker(final int index) {
+    return mirrors.get(index).breaker;
+  }
+
+  private static ProxyServiceException unavailable(final int status, final String reason) {
+    return new ProxyServiceException(new BasicHttpResponse(HttpVersion.HTTP_1_1, status, reason));
+  }
+
+  private static String baseUrl(final URI url) {
+    String base = url.toString();
+    return base.endsWith("/") ? base : base + "/";
+  }
+
+  @VisibleForTesting
+  static final class Mirror
+  {
+    final int index;
+
+    final String url;
+
+    private final CircuitBreaker breaker;
+
+    private final Histogram latency = new Histogram(new ExponentiallyDecayingReservoir());
+
+    private volatile boolean failed;
+
+    private volatile long failedAtNanos;
+
+    private Mirror(final int index, final String url, final CircuitBreaker breaker) {
+      this.index = index;
+      this.url = url;
+      this.breaker = checkNotNull(breaker);
+    }
+
+    private void succeeded(final long elapsedNanos) {
+      latency.update(elapsedNanos);
+      failed = false;
+    }
+
+    private void failed() {
+      failedAtNanos = System.nanoTime();
+      failed = true;
+    }
+
+    private boolean failedSince(final long nowNanos, final long seconds) {
+      return failed && nowNanos - failedAtNanos < TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    /**
+     * Mirrors not measured yet rank by their position
+     */
+    private double median() {
+      return latency.getCount() == 0 ? 0 : latency.getSnapshot().getMedian();
+    }
+  }
+
+  /**
+   * A request to one mirror, which completes into the queue of the request it was started for
+   */
+  private static final class Attempt
+      implements Runnable
+  {
+    private final Mirror mirror;
+
+    private final HttpRequestBase request;
+
+    private final boolean primary;
+
+    /**
+     * Whether the outcome ranks the mirror, false for urls of no mirror
+     */
+    private final boolean measured;
+
+    private final Sender sender;
+
+    private final BlockingQueue<Attempt> completed;
+
+    /**
+     * Set when the circuit breaker of the mirror did not let the request through
+     */
+    private boolean rejected;
+
+    @Nullable
+    private HttpResponse response;
+
+    @Nullable
+    private IOException error;
+
+    /**
+     * Set when the response was handed to the caller, which then owns it
+     */
+    private boolean taken;
+
+    private boolean discarded;
+
+    private boolean timedOut;
+
+    private Attempt(final Mirror mirror,
+                    final HttpRequestBase request,
+                    final boolean primary,
+                    final boolean measured,
+                    final Sender sender,
+                    final BlockingQueue<Attempt> completed)
+    {
+      this.mirror = mirror;
+      this.request = request;
+      this.primary = primary;
+      this.measured = measured;
+      this.sender = sender;
+      this.completed = completed;
+    }
+
+    @Override
+    public void run() {
+      long start = System.nanoTime();
+      HttpResponse result = null;
+      IOException failure = null;
+      boolean sent = !request.isAborted();
+      try {
+        if (sent) {
+          result = sender.send(request, primary);
+        }
+      }
+      catch (IOException e) {
+        failure = e;
+      }
+      catch (RuntimeException e) {
+        failure = new IOException(e);
+      }
+      long elapsedNanos = System.nanoTime() - start;
+
+      boolean abandoned;
+      boolean late;
+      synchronized (this) {
+        response = result;
+        error = failure;
+        abandoned = discarded;
+        late = timedOut;
+      }
+      if (abandoned) {
+        HttpClientUtils.closeQuietly(result);
+        if (late && sent) {
+          mirror.breaker.failed();
+        }
+        else {
+          mirror.breaker.released();
+        }
+        return;
+      }
+      if (isGood()) {
+        mirror.breaker.succeeded(elapsedNanos);
+        if (measured) {
+          mirror.succeeded(elapsedNanos);
+        }
+      }
+      else {
+        mirror.breaker.failed();
+        if (measured) {
+          mirror.failed();
+        }
+      }
+      completed.add(this);
+    }
+
+    private synchronized boolean isGood() {
+      if (response == null) {
+        return false;
+      }
+      int status = response.getStatusLine().getStatusCode();
+      return status < 500 && status != TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * The budget of the call ran out, the mirror is failed unless it already answered
+     */
+    private void timeout() {
+      synchronized (this) {
+        timedOut = true;
+      }
+      discard();
+    }
+
+    /**
+     * Hands the response to the caller, unless the attempt was discarded meanwhile
+     */
+    private synchronized boolean take() {
+      if (discarded) {
+        return false;
+      }
+      taken = true;
+      return true;
+    }
+
+    /**
+     * Aborts the request unless its response was taken, closing the response once there is one
+     */
+    private void discard() {
+      HttpResponse toClose;
+      boolean running;
+      synchronized (this) {
+        if (taken || rejected) {
+          return;
+        }
+        running = !discarded && response == null && error == null;
+        discarded = true;
+        toClose = response;
+        response = null;
+      }
+      if (running) {
+        request.abort();
+      }
+      HttpClientUtils.closeQuietly(toClose);
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.proxy;
+
+import java.io.IOException;
+import java.net.URI;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.repository.conan.internal.metrics.ConanMetrics.RepositoryMetrics;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.HttpClientUtils;
+import org.apache.http.util.EntityUtils;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.sonatype.nexus.repository.http.HttpStatus.OK;
+import static org.sonatype.nexus.repository.http.HttpStatus.UNAUTHORIZED;
+
+/**
+ * Logs in to an authenticated Conan remote once through {@code v1/users/authenticate} and sends the bearer token it
+ * hands out with every request, so that the remote checks the password of the repository once instead of per file.
+ *
+ * The token is shared by all threads fetching from the remote. When the remote rejects it, one thread logs in again
+ * while the others wait for and reuse the new token. When the remote does not hand out tokens requests carry the
+ * credentials of the repository as before, and login is not retried for {@code retryNanos}.
+ *
+ * @since 0.0.6
+ */
+class UpstreamTokenSession
+    extends ComponentSupport
+{
+  private static final String BEARER = "Bearer ";
+
+  private final URI authenticateUrl;
+
+  private final Header basicAuth;
+
+  private final RepositoryMetrics metrics;
+
+  private final long retryNanos;
+
+  private final Object lock = new Object();
+
+  @Nullable
+  private volatile String token;
+
+  private volatile long retryAfterNanos;
+
+  private volatile boolean failed;
+
+  UpstreamTokenSession(final URI remoteUrl,
+                       final Header basicAuth,
+                       final RepositoryMetrics metrics,
+                       final long retryNanos)
+  {
+    this.authenticateUrl = remoteUrl.resolve("v1/users/authenticate");
+    this.basicAuth = checkNotNull(basicAuth);
+    this.metrics = checkNotNull(metrics);
+    this.retryNanos = retryNanos;
+  }
+
+  /**
+   * Executes {@code request} with the bearer token, logging in again and retrying once if the remote rejects it.
+   */
+  HttpResponse execute(final HttpClient httpClient, final HttpRequestBase request) throws IOException {
+    String current = token(httpClient);
+    if (current == null) {
+      return httpClient.execute(request);
+    }
+    request.setHeader(HttpHeaders.AUTHORIZATION, BEARER + current);
+    HttpResponse response = httpClient.execute(request);
+    if (response.getStatusLine().getStatusCode() != UNAUTHORIZED) {
+      return response;
+    }
+
+    HttpClientUtils.closeQuietly(response);
+    request.reset();
+    String refreshed = refresh(httpClient, current);
+    if (refreshed == null) {
+      request.removeHeaders(HttpHeaders.AUTHORIZATION);
+    }
+    else {
+      request.setHeader(HttpHeaders.AUTHORIZATION, BEARER + refreshed);
+    }
+    return httpClient.execute(request);
+  }
+
+  /**
+   * @return the token to send, logging in if there is none, null when the remote does not hand one out
+   */
+  @Nullable
+  String token(final HttpClient httpClient) {
+    String current = token;
+    if (current != null || isBackingOff()) {
+      return current;
+    }
+    synchronized (lock) {
+      return token != null || isBackingOff() ? token : login(httpClient);
+    }
+  }
+
+  /**
+   * Replaces a token the remote rejected, unless another thread already did.
+   *
+   * @return the token to retry with, null when the remote does not hand out a new one
+   */
+  @Nullable
+  String refresh(final HttpClient httpClient, final String rejected) {
+    synchronized (lock) {
+      if (token != null && !token.equals(rejected)) {
+        return token;
+      }
+      token = null;
+      return login(httpClient);
+    }
+  }
+
+  private boolean isBackingOff() {
+    return failed && System.nanoTime() - retryAfterNanos < 0;
+  }
+
+  @Nullable
+  private String login(final HttpClient httpClient) {
+    HttpGet request = new HttpGet(authenticateUrl);
+    request.setHeader(basicAuth);
+    HttpResponse response = null;
+    try {
+      response = httpClient.execute(request);
+      if (response.getStatusLine().getStatusCode() == OK && response.getEntity() != null) {
+        String body = EntityUtils.toString(response.getEntity(), UTF_8).trim();
+        if (!body.isEmpty()) {
+          token = body;
+          failed = false;
+          metrics.tokenRefreshed();
+          log.debug("Logged in to {}", authenticateUrl);
+          return body;
+        }
+      }
+      log.debug("No token from {}: {}", authenticateUrl, response.getStatusLine());
+    }
+    catch (IOException e) {
+      log.debug("No token from {}", authenticateUrl, e);
+    }
+    finally {
+      HttpClientUtils.closeQuietly(response);
+    }
+    retryAfterNanos = System.nanoTime() + retryNanos;
+    failed = true;
+    metrics.tokenFailed();
+    return null;
+  }
+}
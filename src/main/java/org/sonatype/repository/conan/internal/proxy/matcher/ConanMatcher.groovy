@@ -6,7 +6,11 @@ import org.sonatype.nexus.repository.view.matchers.ActionMatcher
 import org.sonatype.nexus.repository.view.matchers.LiteralMatcher
 import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher
 import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher.State
+import org.sonatype.repository.conan.internal.AssetKind
 import org.sonatype.repository.conan.internal.metadata.ConanCoords
+import org.sonatype.repository.conan.internal.route.ConanRouteIndex
+
+import groovy.transform.CompileStatic
 
 import static com.google.common.base.Preconditions.checkNotNull
 import static org.sonatype.nexus.repository.http.HttpMethods.GET
@@ -15,40 +19,66 @@ import static org.sonatype.nexus.repository.view.matchers.logic.LogicMatchers.an
 import static org.sonatype.nexus.repository.view.matchers.logic.LogicMatchers.or
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.DIGEST
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.GROUP
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.PACKAGE_REVISION
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.PROJECT
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.RECIPE_REVISION
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.STATE
 import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.VERSION
 
+@CompileStatic
 class ConanMatcher
 {
   public static final String PING = "/v1/ping"
 
+  public static final String PING_V2 = "/v2/ping"
+
+  public static final String CHECK_CREDENTIALS = "/v1/users/check_credentials"
+
+  public static final String CHECK_CREDENTIALS_V2 = "/v2/users/check_credentials"
+
+  public static final String AUTHENTICATE = "/v1/users/authenticate"
+
+  public static final String AUTHENTICATE_V2 = "/v2/users/authenticate"
+
+  public static final String V2 = "/v2/"
+
+  public static final String SEARCH = "/v1/conans/search"
+
+  public static final String SEARCH_V2 = "/v2/conans/search"
+
+  protected static String SEARCH_URL = "/v1/conans/{${PROJECT}}/{${VERSION}}/{${GROUP}}/{${STATE}}/search"
+
+  protected static String RECIPE_V2 = "/v2/conans/{${PROJECT}}/{${VERSION}}/{${GROUP}}/{${STATE}}"
+
+  protected static String RECIPE_REVISION_V2 = "${RECIPE_V2}/revisions/{${RECIPE_REVISION}}"
+
+  protected static String PACKAGE_V2 = "${RECIPE_REVISION_V2}/packages/{${DIGEST}}"
+
+  protected static String PACKAGE_REVISION_V2 = "${PACKAGE_V2}/revisions/{${PACKAGE_REVISION}}"
+
   protected static String DOWNLOAD_FORM = "{${PROJECT}:.+}/{${VERSION}:.+}/{${GROUP}:.+}/{${STATE}:.+}"
 
   protected static String STANDARD_FORM = "{${GROUP}:.+}/{${PROJECT}:.+}/{${VERSION}:.+}/{${STATE}:.+}"
 
+  /**
+   * Routes of one repository, to be registered in the order they are added to its router
+   */
+  private final ConanRouteIndex routes = new ConanRouteIndex()
+
   /**
    * Matches on urls ending with download_urls
    * @return matcher for initial and package download_urls endpoints
    */
   Builder downloadUrls() {
-    return new Builder().matcher(
-        and(
-            new ActionMatcher(GET, HEAD),
-            or(
-                downloadUrlsPackagesMatcher(),
-                downloadUrlsMatcher()
-            )
-        )
-    )
+    return new Builder().matcher(routes.route([GET, HEAD], downloadUrlsPackagesPattern(), downloadUrlsPattern()))
   }
 
-  private static TokenMatcher downloadUrlsMatcher() {
-    return new TokenMatcher("{path:.*}/${DOWNLOAD_FORM}/download_urls")
+  private static String downloadUrlsPattern() {
+    return "{path:.*}/${DOWNLOAD_FORM}/download_urls"
   }
 
-  private static TokenMatcher downloadUrlsPackagesMatcher() {
-    return new TokenMatcher("{path:.*}/${DOWNLOAD_FORM}/packages/{sha:.+}/download_urls")
+  private static String downloadUrlsPackagesPattern() {
+    return "{path:.*}/${DOWNLOAD_FORM}/packages/{sha:.+}/download_urls"
   }
 
   /**
@@ -56,23 +86,15 @@ class ConanMatcher
    * @return matcher for initial and package conanmanifest.txt
    */
   Builder conanManifest() {
-    new Builder().matcher(
-        and(
-            new ActionMatcher(GET, HEAD),
-            or(
-                conanManifestPackagesMatcher(),
-                conanManifestMatcher()
-            )
-        )
-    )
+    new Builder().matcher(routes.route([GET, HEAD], conanManifestPackagesPattern(), conanManifestPattern()))
   }
 
-  private static TokenMatcher conanManifestMatcher() {
-    new TokenMatcher("/${STANDARD_FORM}/conanmanifest.txt")
+  private static String conanManifestPattern() {
+    "/${STANDARD_FORM}/conanmanifest.txt"
   }
 
-  private static TokenMatcher conanManifestPackagesMatcher() {
-    new TokenMatcher("/${STANDARD_FORM}/packages/{sha:.+}/conanmanifest.txt")
+  private static String conanManifestPackagesPattern() {
+    "/${STANDARD_FORM}/packages/{sha:.+}/conanmanifest.txt"
   }
 
   /**
@@ -80,16 +102,11 @@ class ConanMatcher
    * @return matcher for conanfile.py
    */
   Builder conanFile() {
-    new Builder().matcher(
-        and(
-            new ActionMatcher(GET, HEAD),
-            conanFileMatcher()
-        )
-    )
+    new Builder().matcher(routes.route([GET, HEAD], conanFilePattern()))
   }
 
-  private static TokenMatcher conanFileMatcher() {
-    new TokenMatcher("/${STANDARD_FORM}/conanfile.py")
+  private static String conanFilePattern() {
+    "/${STANDARD_FORM}/conanfile.py"
   }
 
   /**
@@ -97,16 +114,11 @@ class ConanMatcher
    * @return matcher for conaninfo.txt
    */
   Builder conanInfo() {
-    new Builder().matcher(
-        and(
-            new ActionMatcher(GET, HEAD),
-            conanInfoMatcher()
-        )
-    )
+    new Builder().matcher(routes.route([GET, HEAD], conanInfoPattern()))
   }
 
-  private static TokenMatcher conanInfoMatcher() {
-    new TokenMatcher("/${STANDARD_FORM}/packages/{sha:.+}/conaninfo.txt")
+  private static String conanInfoPattern() {
+    "/${STANDARD_FORM}/packages/{sha:.+}/conaninfo.txt"
   }
 
   /**
@@ -114,28 +126,90 @@ class ConanMatcher
    * @return matcher for conan_package.tgz
    */
   Builder conanPackage() {
+    new Builder().matcher(routes.route([GET, HEAD], conanPackagePattern()))
+  }
+
+  /**
+   * Matches on a file of a v2 recipe or package revision
+   */
+  Builder revisionFile(final AssetKind assetKind) {
+    String file = "/files/" + assetKind.filename
+    new Builder().matcher(routes.route([GET, HEAD], PACKAGE_REVISION_V2 + file, RECIPE_REVISION_V2 + file))
+  }
+
+  /**
+   * Matches on the file listing of a v2 recipe or package revision
+   */
+  Builder revisionFiles() {
+    new Builder().matcher(routes.route([GET, HEAD], PACKAGE_REVISION_V2 + "/files", RECIPE_REVISION_V2 + "/files"))
+  }
+
+  /**
+   * Matches on the revisions of a v2 recipe or package
+   */
+  Builder revisions() {
+    new Builder().matcher(routes.route([GET, HEAD], PACKAGE_V2 + "/revisions", RECIPE_V2 + "/revisions"))
+  }
+
+  /**
+   * Matches on the latest revision of a v2 recipe or package
+   */
+  Builder latest() {
+    new Builder().matcher(routes.route([GET, HEAD], PACKAGE_V2 + "/latest", RECIPE_V2 + "/latest"))
+  }
+
+  /**
+   * Matches on the recipe search
+   */
+  Builder search() {
+    new Builder().matcher(routes.route([GET], SEARCH, SEARCH_V2))
+  }
+
+  /**
+   * Matches on the package search of a recipe, or of a v2 recipe revision
+   */
+  Builder searchUrl() {
+    new Builder().matcher(routes.route([GET], RECIPE_REVISION_V2 + "/search", RECIPE_V2 + "/search", SEARCH_URL))
+  }
+
+  /**
+   * Matches on ping endpoint
+   */
+  static Builder ping() {
     new Builder().matcher(
         and(
-            new ActionMatcher(GET, HEAD),
-            conanPackageMatcher()
+            new ActionMatcher(GET),
+            or(new LiteralMatcher(PING), new LiteralMatcher(PING_V2))
         )
     )
   }
 
   /**
-   * Matches on ping endpoint
+   * Matches on the check credentials endpoint
    */
-  static Builder ping() {
+  static Builder checkCredentials() {
+    new Builder().matcher(
+        and(
+            new ActionMatcher(GET),
+            or(new LiteralMatcher(CHECK_CREDENTIALS), new LiteralMatcher(CHECK_CREDENTIALS_V2))
+        )
+    )
+  }
+
+  /**
+   * Matches on the authenticate endpoint
+   */
+  static Builder authenticate() {
     new Builder().matcher(
         and(
             new ActionMatcher(GET),
-            new LiteralMatcher(PING)
+            or(new LiteralMatcher(AUTHENTICATE), new LiteralMatcher(AUTHENTICATE_V2))
         )
     )
   }
 
-  private static TokenMatcher conanPackageMatcher() {
-    new TokenMatcher("/${STANDARD_FORM}/packages/{sha:.+}/conan_package.tgz")
+  private static String conanPackagePattern() {
+    "/${STANDARD_FORM}/packages/{sha:.+}/conan_package.tgz"
   }
 
   static String match(final TokenMatcher.State state, final String name) {
@@ -144,8 +218,20 @@ class ConanMatcher
   }
 
   static ConanCoords getCoords(final Context context) {
-    State state = matcherState(context)
-    return new ConanCoords(group(state), project(state), version(state), channel(state), sha(state))
+    return ConanCoords.fromContext(context)
+  }
+
+  static boolean isV2(final Context context) {
+    return context.getRequest().getPath().startsWith(V2)
+  }
+
+  /**
+   * @return whether the request is for a v2 recipe revision or package revision, which being named by the hash of
+   * its content never changes
+   */
+  static boolean isRevisionPinned(final Context context) {
+    Map<String, String> tokens = matcherState(context).getTokens()
+    return tokens.get(RECIPE_REVISION) != null && (tokens.get(DIGEST) == null || tokens.get(PACKAGE_REVISION) != null)
   }
 
   static TokenMatcher.State matcherState(final Context context) {
@@ -0,0 +1,472 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Matcher;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.matchers.ActionMatcher;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.sonatype.nexus.repository.view.matchers.logic.LogicMatchers.and;
+import static org.sonatype.nexus.repository.view.matchers.logic.LogicMatchers.or;
+
+/**
+ * Routes Conan requests by their HTTP method and last path segment instead of trying the {@link TokenMatcher} of
+ * every route in turn.
+ *
+ * Each route is registered with its methods and token patterns and gets an {@link IndexedMatcher}. The first of these
+ * matchers asked about a request looks up, once for all routes of the index, the patterns of the request method whose
+ * last segment is the last segment of the request path and matches them segment by segment against the path. Only
+ * the matcher of the route owning the first matching pattern then matches, with the same {@link TokenMatcher.State} a
+ * {@link TokenMatcher} would have set.
+ *
+ * Patterns are indexed when made of whole segments that are either literals, {@code {name}} variables,
+ * {@code {name:.+}} variables, or a leading {@code {name:.*}} prefix. Others are always matched by their
+ * {@link TokenMatcher}, and so are indexed patterns with {@code .+} or {@code .*} variables when the path does not
+ * split into one segment per variable, so that routing is the same as trying each route in turn.
+ *
+ * Routes must be registered in the order they are added to the router.
+ *
+ * @since 0.0.6
+ */
+public class ConanRouteIndex
+{
+  private static final Pattern VARIABLE = Pattern.compile("\\{(\\w+)(?::(.*))?}");
+
+  private static final String ANY_SEGMENTS = ".+";
+
+  private static final String PREFIX = ".*";
+
+  private static final Entry[] NO_ENTRIES = new Entry[0];
+
+  private final List<Entry> entries = new ArrayList<>();
+
+  /**
+   * The patterns of each method
+   */
+  private volatile Map<String, Table> tables = ImmutableMap.of();
+
+  /**
+   * Registers a route matching requests with one of the given methods and a path matching one of the patterns, tried
+   * in the given order.
+   */
+  public synchronized IndexedMatcher route(final Collection<String> actions, final String... patterns) {
+    checkArgument(!actions.isEmpty(), "No actions");
+    checkArgument(patterns.length > 0, "No patterns");
+
+    IndexedMatcher route = new IndexedMatcher(this, actions, patterns);
+    for (String pattern : patterns) {
+      entries.add(new Entry(route, entries.size(), pattern));
+    }
+
+    Set<String> allActions = new HashSet<>();
+    entries.forEach(entry -> allActions.addAll(entry.route.actions));
+    ImmutableMap.Builder<String, Table> byAction = ImmutableMap.builder();
+    for (String action : allActions) {
+      byAction.put(action, new Table(entries.stream()
+          .filter(entry -> entry.route.actions.contains(action))
+          .collect(Collectors.toList())));
+    }
+    tables = byAction.build();
+    return route;
+  }
+
+  private Lookup lookup(final Context context) {
+    Request request = context.getRequest();
+    Lookup lookup = context.getAttributes().get(Lookup.class);
+    if (lookup != null && lookup.index == this && lookup.request == request) {
+      return lookup;
+    }
+
+    lookup = find(context, request);
+    context.getAttributes().set(Lookup.class, lookup);
+    return lookup;
+  }
+
+  private Lookup find(final Context context, final Request request) {
+    Table table = tables.get(request.getAction());
+    if (table == null) {
+      return new Lookup(this, request, null, null);
+    }
+
+    Path path = new Path(request.getPath());
+    for (Entry entry : table.candidates(path)) {
+      TokenMatcher.State state = path.hasLineTerminator ? null : entry.match(path);
+      if (state == null && (path.hasLineTerminator || !entry.exact) && entry.mayMatch(path)) {
+        state = entry.tokenMatcher.matches(context) ? context.getAttributes().require(TokenMatcher.State.class) : null;
+      }
+      if (state != null) {
+        return new Lookup(this, request, entry, state);
+      }
+    }
+    return new Lookup(this, request, null, null);
+  }
+
+  /**
+   * Matches requests routed to its route by the index.
+   */
+  public static final class IndexedMatcher
+      implements Matcher
+  {
+    private final ConanRouteIndex index;
+
+    private final Set<String> actions;
+
+    private final Matcher sequentialMatcher;
+
+    private IndexedMatcher(final ConanRouteIndex index, final Collection<String> actions, final String... patterns) {
+      this.index = index;
+      this.actions = ImmutableSet.copyOf(actions);
+
+      Matcher[] tokenMatchers = Arrays.stream(patterns).map(TokenMatcher::new).toArray(Matcher[]::new);
+      this.sequentialMatcher = and(
+          new ActionMatcher(actions.toArray(new String[0])),
+          tokenMatchers.length == 1 ? tokenMatchers[0] : or(tokenMatchers));
+    }
+
+    @Override
+    public boolean matches(final Context context) {
+      Lookup lookup = index.lookup(context);
+      if (lookup.entry == null || lookup.entry.route != this) {
+        return false;
+      }
+      context.getAttributes().set(TokenMatcher.State.class, lookup.state);
+      return true;
+    }
+
+    /**
+     * @return the matcher trying the patterns of this route in turn, as routes did before the index
+     */
+    public Matcher getSequentialMatcher() {
+      return sequentialMatcher;
+    }
+  }
+
+  /**
+   * The patterns of one method by the last segment of the paths they match.
+   */
+  private static final class Table
+  {
+    private final Map<String, Entry[]> byLastSegment;
+
+    private final Entry[] unindexed;
+
+    private final Entry[] all;
+
+    private Table(final List<Entry> entries) {
+      Map<String, List<Entry>> indexed = new HashMap<>();
+      List<Entry> others = new ArrayList<>();
+      for (Entry entry : entries) {
+        if (entry.indexed) {
+          indexed.computeIfAbsent(entry.segments[entry.segments.length - 1], key -> new ArrayList<>()).add(entry);
+        }
+        else {
+          others.add(entry);
+        }
+      }
+
+      ImmutableMap.Builder<String, Entry[]> builder = ImmutableMap.builder();
+      indexed.forEach((segment, list) -> {
+        list.addAll(others);
+        list.sort(Comparator.comparingInt(entry -> entry.order));
+        builder.put(segment, list.toArray(NO_ENTRIES));
+      });
+      this.byLastSegment = builder.build();
+      this.unindexed = others.toArray(NO_ENTRIES);
+      this.all = entries.toArray(NO_ENTRIES);
+    }
+
+    /**
+     * Regular expressions do not match line terminators with {@code .} but segments may hold them, so these rare
+     * paths are matched by the token matchers of all patterns.
+     */
+    private Entry[] candidates(final Path path) {
+      return path.hasLineTerminator ? all : byLastSegment.getOrDefault(path.last(), unindexed);
+    }
+  }
+
+  private static final class Entry
+  {
+    private final IndexedMatcher route;
+
+    private final int order;
+
+    private final String pattern;
+
+    private final TokenMatcher tokenMatcher;
+
+    /**
+     * The literal of each pattern segment, or null for variables.
+     */
+    private String[] segments;
+
+    /**
+     * The variable name of each pattern segment, or null for literals.
+     */
+    private String[] names;
+
+    /**
+     * Whether the first segment is a prefix of any number of path segments.
+     */
+    private boolean prefix;
+
+    /**
+     * Whether a failed segment match means the pattern does not match, as when all variables match a single segment.
+     */
+    private boolean exact = true;
+
+    private boolean indexed;
+
+    private Entry(final IndexedMatcher route, final int order, final String pattern) {
+      this.route = route;
+      this.order = order;
+      this.pattern = pattern;
+      this.tokenMatcher = new TokenMatcher(pattern);
+      this.indexed = parse(pattern);
+      if (!indexed) {
+        exact = false;
+      }
+    }
+
+    private boolean parse(final String pattern) {
+      if (pattern.indexOf('\\') >= 0) {
+        return false;
+      }
+      String[] pieces = pattern.split("/", -1);
+      segments = new String[pieces.length];
+      names = new String[pieces.length];
+      Set<String> seen = new HashSet<>();
+      for (int i = 0; i < pieces.length; i++) {
+        java.util.regex.Matcher variable = VARIABLE.matcher(pieces[i]);
+        if (variable.matches()) {
+          String regex = variable.group(2);
+          if (!seen.add(variable.group(1))) {
+            return false;
+          }
+          else if (ANY_SEGMENTS.equals(regex)) {
+            exact = false;
+          }
+          else if (PREFIX.equals(regex) && i == 0 && pieces.length > 1) {
+            exact = false;
+            prefix = true;
+          }
+          else if (regex != null) {
+            return false;
+          }
+          names[i] = variable.group(1);
+        }
+        else if (pieces[i].indexOf('{') >= 0 || pieces[i].indexOf('}') >= 0) {
+          return false;
+        }
+        else {
+          segments[i] = pieces[i];
+        }
+      }
+      String last = segments[segments.length - 1];
+      return last != null && !last.isEmpty();
+    }
+
+    /**
+     * @return the state of matching the path segment by segment, null if it does not match that way
+     */
+    @Nullable
+    private TokenMatcher.State match(final Path path) {
+      if (!indexed) {
+        return null;
+      }
+      int offset = prefix ? path.count - segments.length + 1 : 0;
+      if (prefix ? offset < 1 : path.count != segments.length) {
+        return null;
+      }
+
+      for (int i = prefix ? 1 : 0; i < segments.length; i++) {
+        int segment = offset + i - (prefix ? 1 : 0);
+        if (segments[i] != null ? !path.is(segment, segments[i]) : path.isEmpty(segment)) {
+          return null;
+        }
+      }
+
+      Map<String, String> tokens = new HashMap<>();
+      if (prefix) {
+        tokens.put(names[0], path.before(offset));
+      }
+      for (int i = prefix ? 1 : 0; i < segments.length; i++) {
+        if (names[i] != null) {
+          tokens.put(names[i], path.segment(offset + i - (prefix ? 1 : 0)));
+        }
+      }
+      return new MatchedState(pattern, tokens);
+    }
+
+    /**
+     * @return false when the path cannot match, having too few segments or missing a literal segment
+     */
+    private boolean mayMatch(final Path path) {
+      if (!indexed) {
+        return true;
+      }
+      if (path.count < segments.length) {
+        return false;
+      }
+      for (String literal : segments) {
+        if (literal != null && !literal.isEmpty() && !path.contains(literal)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A request path split at each slash, without copying the segments.
+   */
+  private static final class Path
+  {
+    private final String path;
+
+    private final int[] starts;
+
+    private final int count;
+
+    private final boolean hasLineTerminator;
+
+    private Path(final String path) {
+      this.path = path;
+      int slashes = 0;
+      boolean lineTerminator = false;
+      for (int i = 0; i < path.length(); i++) {
+        char c = path.charAt(i);
+        if (c == '/') {
+          slashes++;
+        }
+        else if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+          lineTerminator = true;
+        }
+      }
+      this.hasLineTerminator = lineTerminator;
+      this.count = slashes + 1;
+      this.starts = new int[count];
+      for (int i = 0, segment = 1; i < path.length(); i++) {
+        if (path.charAt(i) == '/') {
+          starts[segment++] = i + 1;
+        }
+      }
+    }
+
+    private int end(final int segment) {
+      return segment + 1 < count ? starts[segment + 1] - 1 : path.length();
+    }
+
+    private boolean isEmpty(final int segment) {
+      return end(segment) == starts[segment];
+    }
+
+    private boolean is(final int segment, final String literal) {
+      int start = starts[segment];
+      return end(segment) - start == literal.length() && path.regionMatches(start, literal, 0, literal.length());
+    }
+
+    private boolean contains(final String literal) {
+      for (int i = 0; i < count; i++) {
+        if (is(i, literal)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private String segment(final int segment) {
+      return path.substring(starts[segment], end(segment));
+    }
+
+    /**
+     * @return the path before the slash preceding the segment
+     */
+    private String before(final int segment) {
+      return path.substring(0, starts[segment] - 1);
+    }
+
+    private String last() {
+      return segment(count - 1);
+    }
+  }
+
+  private static final class MatchedState
+      implements TokenMatcher.State
+  {
+    private final String pattern;
+
+    private final Map<String, String> tokens;
+
+    private MatchedState(final String pattern, final Map<String, String> tokens) {
+      this.pattern = pattern;
+      this.tokens = tokens;
+    }
+
+    @Override
+    public String pattern() {
+      return pattern;
+    }
+
+    @Override
+    public Map<String, String> getTokens() {
+      return tokens;
+    }
+  }
+
+  /**
+   * The route of a request, kept in the context so that the index is searched once per request.
+   */
+  private static final class Lookup
+  {
+    private final ConanRouteIndex index;
+
+    private final Request request;
+
+    @Nullable
+    private final Entry entry;
+
+    @Nullable
+    private final TokenMatcher.State state;
+
+    private Lookup(final ConanRouteIndex index,
+                   final Request request,
+                   @Nullable final Entry entry,
+                   @Nullable final TokenMatcher.State state)
+    {
+      this.index = index;
+      this.request = request;
+      this.entry = entry;
+      this.state = state;
+    }
+  }
+}
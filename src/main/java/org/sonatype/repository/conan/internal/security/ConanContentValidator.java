@@ -2,6 +2,7 @@ package org.sonatype.repository.conan.internal.security;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -10,16 +11,23 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.sonatype.nexus.mime.MimeRulesSource;
+import org.sonatype.nexus.repository.InvalidContentException;
 import org.sonatype.nexus.repository.storage.ContentValidator;
 import org.sonatype.nexus.repository.storage.DefaultContentValidator;
 import org.sonatype.nexus.repository.view.ContentTypes;
+import org.sonatype.repository.conan.internal.AssetKind;
 import org.sonatype.repository.conan.internal.ConanFormat;
 
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
+ * Every file of a Conan repository is one of the {@link AssetKind}s, its content type is known from its name. Those
+ * files are not sniffed: only archives are checked for the gzip magic bytes, and only under strict validation.
+ * Anything else is left to the {@link DefaultContentValidator}.
+ *
  * @since 0.0.2
  */
 @Named(ConanFormat.NAME)
@@ -27,7 +35,19 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class ConanContentValidator
     implements ContentValidator
 {
-  private static final String X_PYTHON = "text/x-python";
+  private static final int GZIP_MAGIC_1 = 0x1f;
+
+  private static final int GZIP_MAGIC_2 = 0x8b;
+
+  private static final Map<String, String> CONTENT_TYPES;
+
+  static {
+    ImmutableMap.Builder<String, String> contentTypes = ImmutableMap.builder();
+    for (AssetKind assetKind : AssetKind.values()) {
+      contentTypes.put(assetKind.getFilename(), assetKind.getContentType());
+    }
+    CONTENT_TYPES = contentTypes.build();
+  }
 
   private final DefaultContentValidator defaultContentValidator;
 
@@ -44,16 +64,29 @@ public class ConanContentValidator
                                      @Nullable final String contentName,
                                      @Nullable final String declaredContentType) throws IOException
   {
-    if (contentName != null) {
-      if (contentName.endsWith(".tgz")) {
-        return ContentTypes.APPLICATION_GZIP;
-      }
-      else if (contentName.endsWith("/conanfile.py")) {
-        return X_PYTHON;
+    String contentType = contentName == null ? null : CONTENT_TYPES.get(filename(contentName));
+    if (contentType == null) {
+      return defaultContentValidator.determineContentType(
+          strictContentTypeValidation, contentSupplier, mimeRulesSource, contentName, declaredContentType
+      );
+    }
+    if (strictContentTypeValidation && ContentTypes.APPLICATION_GZIP.equals(contentType)) {
+      checkGzip(contentSupplier, contentName);
+    }
+    return contentType;
+  }
+
+  private static String filename(final String contentName) {
+    return contentName.substring(contentName.lastIndexOf('/') + 1);
+  }
+
+  private static void checkGzip(final Supplier<InputStream> contentSupplier, final String contentName)
+      throws IOException
+  {
+    try (InputStream in = contentSupplier.get()) {
+      if (in.read() != GZIP_MAGIC_1 || in.read() != GZIP_MAGIC_2) {
+        throw new InvalidContentException("Content of " + contentName + " is not gzip compressed");
       }
     }
-    return defaultContentValidator.determineContentType(
-        strictContentTypeValidation, contentSupplier, mimeRulesSource, contentName, declaredContentType
-    );
   }
 }
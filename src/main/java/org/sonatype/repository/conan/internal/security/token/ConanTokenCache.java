@@ -0,0 +1,156 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.security.token;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.event.EventAware;
+import org.sonatype.nexus.security.UserPrincipalsExpired;
+import org.sonatype.nexus.security.user.UserEvent;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import org.apache.shiro.subject.PrincipalCollection;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Remembers the Conan tokens validated by {@link ConanTokenRealm} and handed out by {@link ConanTokenManager}, so
+ * that neither authenticating a request nor a repeated {@code conan user} reads the api key store.
+ *
+ * Both directions are held: token to principals for the realm, principals to token for login. Entries of a user are
+ * dropped when the user is updated (e.g. disabled), deleted or its principals expire, and when its token is deleted.
+ * Everything else, such as a status change in an external user source, is bounded by
+ * {@code nexus.conan.token.cache.expirySeconds}. {@code nexus.conan.token.cache.maxEntries} of 0 disables the cache.
+ *
+ * @since 0.0.6
+ */
+@Named
+@Singleton
+public class ConanTokenCache
+    extends ComponentSupport
+    implements EventAware
+{
+  private final boolean enabled;
+
+  private final Cache<String, PrincipalCollection> principals;
+
+  private final Cache<PrincipalCollection, String> tokens;
+
+  @Inject
+  public ConanTokenCache(@Named("${nexus.conan.token.cache.maxEntries:-10000}") final long maxEntries,
+                         @Named("${nexus.conan.token.cache.expirySeconds:-300}") final long expirySeconds)
+  {
+    checkArgument(maxEntries >= 0, "maxEntries must not be negative");
+    checkArgument(expirySeconds > 0, "expirySeconds must be positive");
+    this.enabled = maxEntries > 0;
+    this.principals = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(expirySeconds, TimeUnit.SECONDS)
+        .build();
+    this.tokens = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(expirySeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  /**
+   * @return the principals {@code token} was last validated for, null if it has to be looked up
+   */
+  @Nullable
+  public PrincipalCollection getPrincipals(final String token) {
+    return enabled ? principals.getIfPresent(token) : null;
+  }
+
+  /**
+   * @return the token last handed out to {@code principals}, null if it has to be looked up
+   */
+  @Nullable
+  public String getToken(final PrincipalCollection principals) {
+    return enabled ? tokens.getIfPresent(principals) : null;
+  }
+
+  public void putPrincipals(final String token, final PrincipalCollection principals) {
+    if (enabled) {
+      this.principals.put(checkNotNull(token), checkNotNull(principals));
+    }
+  }
+
+  public void putToken(final PrincipalCollection principals, final String token) {
+    if (enabled) {
+      tokens.put(checkNotNull(principals), checkNotNull(token));
+    }
+  }
+
+  /**
+   * Drops the entries of the user named by the primary principal of {@code principals}.
+   */
+  public void invalidate(final PrincipalCollection principals) {
+    Object primary = principals.getPrimaryPrincipal();
+    if (primary != null) {
+      invalidate(primary.toString());
+    }
+  }
+
+  public void invalidate(final String userId) {
+    if (enabled) {
+      principals.asMap().values().removeIf(value -> isUser(value, userId));
+      tokens.asMap().keySet().removeIf(key -> isUser(key, userId));
+      log.debug("Invalidated cached Conan tokens of {}", userId);
+    }
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final UserEvent event) {
+    if (event.getUser() != null) {
+      invalidate(event.getUser().getUserId());
+    }
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final UserPrincipalsExpired event) {
+    if (event.getUserId() != null) {
+      invalidate(event.getUserId());
+    }
+    else {
+      invalidateAll();
+    }
+  }
+
+  public void invalidateAll() {
+    principals.invalidateAll();
+    tokens.invalidateAll();
+  }
+
+  @VisibleForTesting
+  long size() {
+    return principals.size() + tokens.size();
+  }
+
+  private static boolean isUser(final PrincipalCollection principals, final String userId) {
+    return Objects.equals(String.valueOf(principals.getPrimaryPrincipal()), userId);
+  }
+}
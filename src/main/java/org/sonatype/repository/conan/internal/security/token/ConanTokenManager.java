@@ -23,6 +23,7 @@ import org.sonatype.nexus.security.token.BearerTokenManager;
 import org.apache.shiro.subject.PrincipalCollection;
 import org.apache.shiro.subject.Subject;
 
+import static com.google.common.base.Preconditions.checkNotNull;
 import static org.sonatype.nexus.security.anonymous.AnonymousHelper.isAnonymous;
 
 /**
@@ -33,27 +34,46 @@ import static org.sonatype.nexus.security.anonymous.AnonymousHelper.isAnonymous;
 public class ConanTokenManager
     extends BearerTokenManager
 {
+  private final ConanTokenCache tokenCache;
+
   @Inject
   public ConanTokenManager(final ApiKeyStore apiKeyStore,
-                           final SecurityHelper securityHelper)
+                           final SecurityHelper securityHelper,
+                           final ConanTokenCache tokenCache)
   {
     super(apiKeyStore, securityHelper, ConanToken.NAME);
+    this.tokenCache = checkNotNull(tokenCache);
   }
 
   /**
    * Verifies passed in principal/credentials combo, and creates (if not already exists) a npm token mapped to given
-   * principal and returns the newly created token.
+   * principal and returns the newly created token. The token last handed out to the principal is returned from the
+   * {@link ConanTokenCache} without reading the api key store.
    */
   public String login() {
     Subject subject = securityHelper.subject();
     boolean authenticated = subject.getPrincipal() != null && subject.isAuthenticated();
     if (authenticated || isAnonymous(subject)) {
       PrincipalCollection principals = subject.getPrincipals();
-      return super.createToken(principals);
+      String token = tokenCache.getToken(principals);
+      if (token == null) {
+        token = super.createToken(principals);
+        tokenCache.putToken(principals, token);
+      }
+      return token;
     }
     return null;
   }
 
+  @Override
+  public boolean deleteToken() {
+    PrincipalCollection principals = securityHelper.subject().getPrincipals();
+    if (principals != null) {
+      tokenCache.invalidate(principals);
+    }
+    return super.deleteToken();
+  }
+
   public String user() {
     Subject subject = securityHelper.subject();
     boolean authenticated = subject.getPrincipal() != null && subject.isAuthenticated();
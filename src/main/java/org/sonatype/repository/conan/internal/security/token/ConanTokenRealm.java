@@ -17,12 +17,26 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.sonatype.nexus.security.UserPrincipalsHelper;
+import org.sonatype.nexus.security.authc.NexusApiKeyAuthenticationToken;
 import org.sonatype.nexus.security.authc.apikey.ApiKeyStore;
 import org.sonatype.nexus.security.token.BearerTokenRealm;
+import org.sonatype.nexus.security.user.UserNotFoundException;
+import org.sonatype.nexus.security.user.UserStatus;
 
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.SimpleAuthenticationInfo;
+import org.apache.shiro.subject.PrincipalCollection;
 import org.eclipse.sisu.Description;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
+ * Tokens validated against the api key store are remembered in the {@link ConanTokenCache}, so that requests
+ * carrying them authenticate without reading the api key store. The status of the user is still checked on every
+ * request. A token deleted from the api key store other than by {@link ConanTokenManager} or the deletion of its
+ * user, such as when all api keys are reset, stays valid for up to {@code nexus.conan.token.cache.expirySeconds}.
+ *
  * @since 0.0.2
  */
 @Named
@@ -31,9 +45,47 @@ import org.eclipse.sisu.Description;
 public class ConanTokenRealm
     extends BearerTokenRealm
 {
+  private final UserPrincipalsHelper principalsHelper;
+
+  private final ConanTokenCache tokenCache;
+
   @Inject
-  public ConanTokenRealm(final ApiKeyStore keyStore, final UserPrincipalsHelper principalsHelper) {
+  public ConanTokenRealm(final ApiKeyStore keyStore,
+                         final UserPrincipalsHelper principalsHelper,
+                         final ConanTokenCache tokenCache)
+  {
     super(keyStore, principalsHelper, ConanToken.NAME);
+    this.principalsHelper = checkNotNull(principalsHelper);
+    this.tokenCache = checkNotNull(tokenCache);
+  }
+
+  @Override
+  protected AuthenticationInfo doGetAuthenticationInfo(final AuthenticationToken token) {
+    String key = new String((char[]) token.getCredentials());
+    PrincipalCollection principals = tokenCache.getPrincipals(key);
+    if (principals != null) {
+      if (isActive(principals)) {
+        ((NexusApiKeyAuthenticationToken) token).setPrincipal(principals.getPrimaryPrincipal());
+        return new SimpleAuthenticationInfo(principals, token.getCredentials());
+      }
+      // let the api key store decide, which also drops the tokens of users which are gone
+      tokenCache.invalidate(principals);
+    }
+    AuthenticationInfo info = super.doGetAuthenticationInfo(token);
+    if (info != null) {
+      tokenCache.putPrincipals(key, info.getPrincipals());
+    }
+    return info;
+  }
+
+  private boolean isActive(final PrincipalCollection principals) {
+    try {
+      return UserStatus.active.equals(principalsHelper.getUserStatus(principals));
+    }
+    catch (UserNotFoundException e) {
+      // logged by the api key store lookup which follows
+      return false;
+    }
   }
 
   @Override
@@ -1,6 +1,7 @@
 package org.sonatype.repository.conan.internal.ui;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.inject.Named;
@@ -23,6 +24,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class ConanBrowseNodeGenerator
     extends ComponentPathBrowseNodeGenerator
 {
+  private static final String V2_CONANS = "/v2/conans/";
+
   public ConanBrowseNodeGenerator() {
     super();
   }
@@ -38,6 +41,10 @@ public class ConanBrowseNodeGenerator
 
   public List<String> assetSegment(final String path) {
     String[] split = path.split("/");
+    if (path.startsWith(V2_CONANS)) {
+      // the channel and everything below it, e.g. stable/revisions/<rrev>/files/conanfile.py
+      return ImmutableList.copyOf(Arrays.copyOfRange(split, 6, split.length));
+    }
     if(path.contains("packages")) {
       return ImmutableList.of(split[split.length-4], split[split.length-2], split[split.length-1]);
     }
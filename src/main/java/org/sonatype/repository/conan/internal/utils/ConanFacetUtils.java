@@ -12,23 +12,30 @@
  */
 package org.sonatype.repository.conan.internal.utils;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 
-import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.blobstore.api.Blob;
 import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.storage.Asset;
 import org.sonatype.nexus.repository.storage.Component;
 import org.sonatype.nexus.repository.storage.Query;
 import org.sonatype.nexus.repository.storage.StorageTx;
 import org.sonatype.repository.conan.internal.metadata.ConanCoords;
+import org.sonatype.repository.conan.internal.metadata.ConanInfo;
 
-import com.google.common.collect.ImmutableList;
-
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.singletonList;
-import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA1;
-import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256;
 import static org.sonatype.nexus.repository.storage.ComponentEntityAdapter.P_GROUP;
 import static org.sonatype.nexus.repository.storage.ComponentEntityAdapter.P_VERSION;
 import static org.sonatype.nexus.repository.storage.MetadataNodeEntityAdapter.P_NAME;
@@ -39,7 +46,8 @@ import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.STAT
  */
 public class ConanFacetUtils
 {
-  public static final List<HashAlgorithm> HASH_ALGORITHMS = ImmutableList.of(SHA1, SHA256);
+  private static final Pattern SEARCH_QUERY =
+      Pattern.compile("(?<name>[^/@]*)(/(?<version>[^/@]*))?((@(?<group>[^/@]*))?(/(?<channel>[^/@]*))?)?");
 
   /**
    * Find a component by its name and tag (version)
@@ -70,4 +78,76 @@ public class ConanFacetUtils
     }
     return null;
   }
+
+  /**
+   * Find the recipes matching a search query, e.g. {@code json*} or {@code jsonformoderncpp/2.*@vthiery/stable}
+   *
+   * @return the reference of each recipe found, or null when the query is not a reference
+   */
+  @Nullable
+  public static List<String> findRecipes(final StorageTx tx, final Repository repository, final String q) {
+    Matcher matcher = SEARCH_QUERY.matcher(q.replace("*", "%"));
+    if (!matcher.matches()) {
+      return null;
+    }
+
+    Query.Builder builder = Query.builder().where(P_NAME).like(matcher.group("name"));
+    appendQueryComponent(builder, matcher, "version");
+    appendQueryComponent(builder, matcher, "group");
+    String channel = matcher.group("channel");
+
+    List<String> matches = new ArrayList<>();
+    for (Component component : tx.findComponents(builder.build(), singletonList(repository))) {
+      if (channel == null || channel.equals(component.attributes().get(STATE))) {
+        matches.add(ConanCoords.getSpec(ConanCoords.fromComponent(component)));
+      }
+    }
+    return matches;
+  }
+
+  private static void appendQueryComponent(final Query.Builder builder, final Matcher matcher, final String group) {
+    if (matcher.group(group) != null) {
+      builder.and(group).like(matcher.group(group));
+    }
+  }
+
+  /**
+   * Find the conaninfo of each package of a recipe, stored as {@code <prefix><package id><suffix>} or, for the
+   * revisions of a package, as {@code <prefix><package id>/revisions/<prev><suffix>} of which the most recently
+   * stored is taken
+   *
+   * @param suffix starting with {@code /}
+   * @return the conaninfo by package id
+   */
+  public static Map<String, ConanInfo> findPackages(final StorageTx tx,
+                                                    final Component component,
+                                                    final String prefix,
+                                                    final String suffix) throws IOException
+  {
+    Map<String, Asset> latest = new HashMap<>();
+    for (Asset asset : tx.browseAssets(component)) {
+      String name = asset.name();
+      if (name.length() > prefix.length() + suffix.length() && name.startsWith(prefix) && name.endsWith(suffix)) {
+        String packageId = name.substring(prefix.length(), name.indexOf('/', prefix.length()));
+        Asset current = latest.get(packageId);
+        if (current == null || isNewer(asset, current)) {
+          latest.put(packageId, asset);
+        }
+      }
+    }
+
+    Map<String, ConanInfo> result = new HashMap<>();
+    for (Map.Entry<String, Asset> entry : latest.entrySet()) {
+      Blob blob = tx.requireBlob(entry.getValue().requireBlobRef());
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(blob.getInputStream(), UTF_8))) {
+        result.put(entry.getKey(), ConanInfo.load(reader));
+      }
+    }
+    return result;
+  }
+
+  private static boolean isNewer(final Asset asset, final Asset than) {
+    return asset.blobCreated() != null
+        && (than.blobCreated() == null || asset.blobCreated().isAfter(than.blobCreated()));
+  }
 }
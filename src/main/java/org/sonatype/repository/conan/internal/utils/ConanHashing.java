@@ -0,0 +1,138 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.repository.storage.StorageFacet;
+import org.sonatype.nexus.repository.storage.TempBlob;
+import org.sonatype.nexus.repository.view.Payload;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.MD5;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA1;
+
+/**
+ * Hashing pipeline shared by the hosted and proxy facets.
+ *
+ * The content is read once. Small content is hashed on the calling thread; content of at least
+ * {@code nexus.conan.hashing.parallelThreshold} bytes has each digest computed on its own core.
+ *
+ * SHA1 (used for ETags and client checksums) and MD5 (used by conan manifests) are always computed, further
+ * algorithms can be added through {@code nexus.conan.hashing.algorithms}.
+ *
+ * @since 0.0.6
+ */
+@Named
+@Singleton
+public class ConanHashing
+    extends ComponentSupport
+{
+  private final List<HashAlgorithm> algorithms;
+
+  private final long parallelThreshold;
+
+  private final int bufferSize;
+
+  private final int readAheadBuffers;
+
+  private final ExecutorService executor;
+
+  @Inject
+  public ConanHashing(@Named("${nexus.conan.hashing.algorithms:-sha1,sha256,md5}") final String algorithms,
+                      @Named("${nexus.conan.hashing.parallelThreshold:-8388608}") final long parallelThreshold,
+                      @Named("${nexus.conan.hashing.bufferSize:-1048576}") final int bufferSize,
+                      @Named("${nexus.conan.hashing.readAheadBuffers:-4}") final int readAheadBuffers)
+  {
+    checkArgument(bufferSize > 0, "bufferSize must be positive");
+    checkArgument(readAheadBuffers > 0, "readAheadBuffers must be positive");
+    this.algorithms = parseAlgorithms(algorithms);
+    this.parallelThreshold = parallelThreshold;
+    this.bufferSize = bufferSize;
+    this.readAheadBuffers = readAheadBuffers;
+    this.executor = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(),
+        new ThreadFactoryBuilder().setNameFormat("conan-hashing-%d").setDaemon(true).build());
+    log.debug("Hashing with {}, in parallel from {} bytes", this.algorithms, parallelThreshold);
+  }
+
+  static List<HashAlgorithm> parseAlgorithms(final String algorithms) {
+    Set<HashAlgorithm> result = new LinkedHashSet<>();
+    result.add(SHA1);
+    result.add(MD5);
+    for (String name : Splitter.on(',').trimResults().omitEmptyStrings().split(algorithms)) {
+      result.add(HashAlgorithm.getHashAlgorithm(name.toLowerCase())
+          .orElseThrow(() -> new IllegalArgumentException("Unknown hash algorithm: " + name)));
+    }
+    return ImmutableList.copyOf(result);
+  }
+
+  /**
+   * @return the hash algorithms computed for every blob
+   */
+  public List<HashAlgorithm> getAlgorithms() {
+    return algorithms;
+  }
+
+  public TempBlob createTempBlob(final StorageFacet storageFacet, final Payload payload) throws IOException {
+    checkNotNull(payload);
+    try (InputStream inputStream = payload.openInputStream()) {
+      return createTempBlob(storageFacet, inputStream, payload.getSize());
+    }
+  }
+
+  /**
+   * @param size of the content, or -1 when unknown
+   */
+  public TempBlob createTempBlob(final StorageFacet storageFacet,
+                                 final InputStream inputStream,
+                                 final long size)
+  {
+    checkNotNull(storageFacet);
+    checkNotNull(inputStream);
+
+    if (size < parallelThreshold || algorithms.size() < 2) {
+      return storageFacet.createTempBlob(inputStream, algorithms);
+    }
+
+    // the storage facet still creates the blob, it is only left no hashes of its own to compute
+    ParallelHashingInputStream hashingStream =
+        new ParallelHashingInputStream(algorithms, inputStream, executor, bufferSize, readAheadBuffers);
+    TempBlob created = storageFacet.createTempBlob(hashingStream, Collections.emptyList());
+    try {
+      return new TempBlob(created.getBlob(), hashingStream.hashes(), true, storageFacet.blobStore());
+    }
+    catch (RuntimeException e) {
+      created.close();
+      throw e;
+    }
+  }
+}
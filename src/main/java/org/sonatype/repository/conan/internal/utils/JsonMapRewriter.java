@@ -0,0 +1,306 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.repository.conan.internal.metrics.RequestTrace;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace.Stage;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace.Timing;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Rewrites the flat json objects of download_urls and upload_urls on the token stream, in a single pass.
+ *
+ * Entries are read one at a time and each {@link Target} is written as it is read, so neither the parsed object nor
+ * an intermediate map is held in memory, whatever the number of files listed. The order of entries is kept.
+ * Responses are rewritten by {@link #rewriting(InputStream, ValueMapper)} as they are written to the client instead.
+ *
+ * @since 0.0.6
+ */
+public final class JsonMapRewriter
+{
+  private static final JsonFactory FACTORY = configure(new JsonFactory());
+
+  private JsonMapRewriter() {
+    // no instances
+  }
+
+  /**
+   * The value written for an entry of the input object.
+   */
+  @FunctionalInterface
+  public interface ValueMapper
+  {
+    @Nullable
+    String map(String key, @Nullable String value);
+  }
+
+  /**
+   * An output object and how its values are derived from the input entries.
+   */
+  public static final class Target
+  {
+    private final OutputStream out;
+
+    private final ValueMapper mapper;
+
+    private final boolean pretty;
+
+    private Target(final OutputStream out, final ValueMapper mapper, final boolean pretty) {
+      this.out = checkNotNull(out);
+      this.mapper = checkNotNull(mapper);
+      this.pretty = pretty;
+    }
+  }
+
+  public static Target target(final OutputStream out, final ValueMapper mapper) {
+    return new Target(out, mapper, false);
+  }
+
+  public static Target prettyTarget(final OutputStream out, final ValueMapper mapper) {
+    return new Target(out, mapper, true);
+  }
+
+  /**
+   * Reads the object from {@code in} and writes every target from the same pass. The streams are left open.
+   *
+   * @throws JsonParseException if the input is not an object of scalar values
+   */
+  public static void rewrite(final InputStream in, final Target... targets) throws IOException {
+    JsonGenerator[] generators = new JsonGenerator[targets.length];
+    try (JsonParser parser = open(in)) {
+      for (int i = 0; i < targets.length; i++) {
+        generators[i] = FACTORY.createGenerator(targets[i].out, JsonEncoding.UTF8);
+        if (targets[i].pretty) {
+          generators[i].useDefaultPrettyPrinter();
+        }
+        generators[i].writeStartObject();
+      }
+
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String key = parser.getCurrentName();
+        String value = nextValue(parser);
+        for (int i = 0; i < targets.length; i++) {
+          generators[i].writeFieldName(key);
+          generators[i].writeString(targets[i].mapper.map(key, value));
+        }
+      }
+      checkEnd(parser);
+
+      for (JsonGenerator generator : generators) {
+        generator.writeEndObject();
+      }
+    }
+    finally {
+      for (JsonGenerator generator : generators) {
+        if (generator != null) {
+          generator.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * The object read from {@code in} with the values of {@code mapper}, rewritten as the returned stream is read so
+   * that a response is written without being held in memory. Only the start of the object is read right away, and
+   * closing the returned stream closes {@code in}.
+   *
+   * @throws JsonParseException if the input does not start an object, entries which are not scalar values fail
+   * the read which reaches them
+   */
+  public static InputStream rewriting(final InputStream in, final ValueMapper mapper) throws IOException {
+    return new RewritingInputStream(in, mapper, false);
+  }
+
+  /**
+   * {@link #rewriting(InputStream, ValueMapper)} with an indented output object.
+   */
+  public static InputStream prettyRewriting(final InputStream in, final ValueMapper mapper) throws IOException {
+    return new RewritingInputStream(in, mapper, true);
+  }
+
+  /**
+   * Reads the object from {@code in} until {@code key} is found. The stream is left open.
+   *
+   * @return the value of {@code key}, null if absent
+   * @throws JsonParseException if the input is not an object of scalar values
+   */
+  @Nullable
+  public static String find(final InputStream in, final String key) throws IOException {
+    try (JsonParser parser = open(in)) {
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        boolean found = key.equals(parser.getCurrentName());
+        String value = nextValue(parser);
+        if (found) {
+          return value;
+        }
+      }
+      checkEnd(parser);
+      return null;
+    }
+  }
+
+  private static JsonFactory configure(final JsonFactory factory) {
+    return factory
+        .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  }
+
+  private static JsonParser open(final InputStream in) throws IOException {
+    JsonParser parser = FACTORY.createParser(in);
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      parser.close();
+      throw new JsonParseException(parser, "Expected a json object");
+    }
+    return parser;
+  }
+
+  @Nullable
+  private static String nextValue(final JsonParser parser) throws IOException {
+    JsonToken token = parser.nextToken();
+    if (token == null || !token.isScalarValue()) {
+      throw new JsonParseException(parser, "Expected a scalar value of " + parser.getCurrentName());
+    }
+    return token == JsonToken.VALUE_NULL ? null : parser.getText();
+  }
+
+  private static void checkEnd(final JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.END_OBJECT) {
+      throw new JsonParseException(parser, "Expected the end of the json object");
+    }
+  }
+
+  /**
+   * Rewrites the entries of the input into a buffer of about {@link #CHUNK} bytes whenever the previous one was read.
+   */
+  private static final class RewritingInputStream
+      extends InputStream
+  {
+    private static final int CHUNK = 8192;
+
+    private final InputStream in;
+
+    private final ValueMapper mapper;
+
+    private final JsonParser parser;
+
+    private final Buffer buffer = new Buffer();
+
+    private final JsonGenerator generator;
+
+    private int position;
+
+    private boolean ended;
+
+    private RewritingInputStream(final InputStream in, final ValueMapper mapper, final boolean pretty)
+        throws IOException
+    {
+      this.in = checkNotNull(in);
+      this.mapper = checkNotNull(mapper);
+      this.parser = open(in);
+      this.generator = FACTORY.createGenerator(buffer, JsonEncoding.UTF8);
+      if (pretty) {
+        generator.useDefaultPrettyPrinter();
+      }
+      generator.writeStartObject();
+    }
+
+    @Override
+    public int read() throws IOException {
+      return fill() ? buffer.bytes()[position++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int read = Math.min(len, buffer.size() - position);
+      System.arraycopy(buffer.bytes(), position, b, off, read);
+      position += read;
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return buffer.size() - position;
+    }
+
+    /**
+     * @return false once the whole object was read
+     */
+    private boolean fill() throws IOException {
+      if (position < buffer.size()) {
+        return true;
+      }
+      buffer.reset();
+      position = 0;
+      try (Timing ignored = RequestTrace.time(Stage.REWRITE)) {
+        while (!ended && buffer.size() < CHUNK) {
+          if (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            String value = nextValue(parser);
+            generator.writeFieldName(key);
+            generator.writeString(mapper.map(key, value));
+          }
+          else {
+            checkEnd(parser);
+            generator.writeEndObject();
+            ended = true;
+          }
+          generator.flush();
+        }
+      }
+      return buffer.size() > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        parser.close();
+        generator.close();
+      }
+      finally {
+        in.close();
+      }
+    }
+  }
+
+  /**
+   * Gives the stream its bytes without copying them
+   */
+  private static final class Buffer
+      extends ByteArrayOutputStream
+  {
+    private byte[] bytes() {
+      return buf;
+    }
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2017-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.conan.internal.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * An input stream which computes several digests of the content passing through it, each on its own lane of the
+ * given {@link Executor}.
+ *
+ * Content is copied into a small pool of read-ahead buffers which are shared by all digests; a buffer is returned to
+ * the pool once every digest has consumed it, so the reader is only held up when all buffers are still in use.
+ *
+ * @since 0.0.6
+ */
+public class ParallelHashingInputStream
+    extends FilterInputStream
+{
+  private final Executor executor;
+
+  private final List<HashAlgorithm> algorithms = new ArrayList<>();
+
+  private final List<Hasher> hashers = new ArrayList<>();
+
+  private final List<CompletableFuture<Void>> lanes = new ArrayList<>();
+
+  private final BlockingQueue<byte[]> buffers;
+
+  private byte[] current;
+
+  private int position;
+
+  private long count;
+
+  private Map<HashAlgorithm, HashCode> hashes;
+
+  public ParallelHashingInputStream(final Iterable<HashAlgorithm> algorithms,
+                                    final InputStream inputStream,
+                                    final Executor executor,
+                                    final int bufferSize,
+                                    final int readAheadBuffers)
+  {
+    super(checkNotNull(inputStream));
+    this.executor = checkNotNull(executor);
+    checkArgument(bufferSize > 0);
+    checkArgument(readAheadBuffers > 0);
+
+    for (HashAlgorithm algorithm : algorithms) {
+      this.algorithms.add(algorithm);
+      this.hashers.add(algorithm.function().newHasher());
+      this.lanes.add(CompletableFuture.completedFuture(null));
+    }
+    this.buffers = new ArrayBlockingQueue<>(readAheadBuffers);
+    for (int i = 0; i < readAheadBuffers; i++) {
+      buffers.add(new byte[bufferSize]);
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = in.read();
+    if (b != -1) {
+      ensureBuffer();
+      current[position++] = (byte) b;
+      count++;
+      dispatchIfFull();
+    }
+    return b;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    int numRead = in.read(b, off, len);
+    int copied = 0;
+    while (copied < numRead) {
+      ensureBuffer();
+      int chunk = Math.min(numRead - copied, current.length - position);
+      System.arraycopy(b, off + copied, current, position, chunk);
+      position += chunk;
+      copied += chunk;
+      dispatchIfFull();
+    }
+    if (numRead > 0) {
+      count += numRead;
+    }
+    return numRead;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public void mark(final int readlimit) {
+    // no-op
+  }
+
+  @Override
+  public void reset() throws IOException {
+    throw new IOException("reset not supported");
+  }
+
+  /**
+   * Waits for all digests to catch up with the content read so far and returns them. May only be called once the
+   * content has been fully read.
+   */
+  public Map<HashAlgorithm, HashCode> hashes() {
+    if (hashes == null) {
+      if (current != null && position > 0) {
+        dispatch();
+      }
+      try {
+        CompletableFuture.allOf(lanes.toArray(new CompletableFuture[lanes.size()])).join();
+      }
+      catch (CompletionException e) {
+        throw new IllegalStateException("Unable to compute hashes", e.getCause());
+      }
+      Map<HashAlgorithm, HashCode> result = new LinkedHashMap<>();
+      for (int i = 0; i < algorithms.size(); i++) {
+        result.put(algorithms.get(i), hashers.get(i).hash());
+      }
+      hashes = result;
+    }
+    return hashes;
+  }
+
+  /**
+   * @return the number of bytes read so far
+   */
+  public long count() {
+    return count;
+  }
+
+  private void ensureBuffer() throws IOException {
+    checkState(hashes == null, "Hashes already computed");
+    if (current == null) {
+      try {
+        current = buffers.take();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for a hashing buffer");
+      }
+      position = 0;
+    }
+  }
+
+  private void dispatchIfFull() {
+    if (position == current.length) {
+      dispatch();
+    }
+  }
+
+  private void dispatch() {
+    final byte[] buffer = current;
+    final int length = position;
+    final AtomicInteger remaining = new AtomicInteger(hashers.size());
+    current = null;
+    position = 0;
+
+    if (hashers.isEmpty()) {
+      buffers.add(buffer);
+      return;
+    }
+    for (int i = 0; i < hashers.size(); i++) {
+      final Hasher hasher = hashers.get(i);
+      lanes.set(i, lanes.get(i).handleAsync((ignored, failure) -> {
+        try {
+          if (failure != null) {
+            throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+          }
+          hasher.putBytes(buffer, 0, length);
+          return null;
+        }
+        finally {
+          // buffers are recycled even when a lane has failed so the reader is never left waiting
+          if (remaining.decrementAndGet() == 0) {
+            buffers.add(buffer);
+          }
+        }
+      }, executor));
+    }
+  }
+}
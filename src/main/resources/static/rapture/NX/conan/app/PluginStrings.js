@@ -26,6 +26,30 @@ Ext.define('NX.conan.app.PluginStrings', {
 
   keys: {
     Repository_Facet_ConanFacet_Title: 'Conan Settings',
+    Repository_Facet_ConanFacet_MaxConcurrentUploads_FieldLabel: 'Maximum concurrent uploads',
+    Repository_Facet_ConanFacet_MaxConcurrentUploads_HelpText: 'Package, source and export archives stored at the same time',
+    Repository_Facet_ConanFacet_MaxUploadBytesInFlight_FieldLabel: 'Maximum upload bytes in flight',
+    Repository_Facet_ConanFacet_MaxUploadBytesInFlight_HelpText: 'Combined size of the archives being stored at the same time',
+    Repository_Facet_ConanFacet_MaxQueuedUploads_FieldLabel: 'Maximum queued uploads',
+    Repository_Facet_ConanFacet_MaxQueuedUploads_HelpText: 'Archive uploads waiting for capacity before new uploads are refused',
+    Repository_Facet_ConanFacet_UploadQueueTimeout_FieldLabel: 'Upload queue timeout (seconds)',
+    Repository_Facet_ConanFacet_UploadQueueTimeout_HelpText: 'How long a queued upload waits for capacity',
+    Repository_Facet_ConanFacet_UploadRetryAfter_FieldLabel: 'Retry-After (seconds)',
+    Repository_Facet_ConanFacet_UploadRetryAfter_HelpText: 'Delay suggested to clients whose upload was refused',
+    Repository_Facet_ConanFacet_MirrorUrls_FieldLabel: 'Mirror URLs',
+    Repository_Facet_ConanFacet_MirrorUrls_HelpText: 'Equivalent remotes to fetch from as well, the fastest being asked first',
+    Repository_Facet_ConanFacet_HedgePercentile_FieldLabel: 'Hedge percentile',
+    Repository_Facet_ConanFacet_HedgePercentile_HelpText: 'Latency percentile of a mirror after which the next one is asked too, 0 to never ask two',
+    Repository_Facet_ConanFacet_MaxConcurrentFetches_FieldLabel: 'Maximum concurrent fetches',
+    Repository_Facet_ConanFacet_MaxConcurrentFetches_HelpText: 'Requests made to the remote at the same time',
+    Repository_Facet_ConanFacet_MaxQueuedFetches_FieldLabel: 'Maximum queued fetches',
+    Repository_Facet_ConanFacet_MaxQueuedFetches_HelpText: 'Fetches waiting for capacity before new fetches are refused',
+    Repository_Facet_ConanFacet_FetchQueueTimeout_FieldLabel: 'Fetch queue timeout (seconds)',
+    Repository_Facet_ConanFacet_FetchQueueTimeout_HelpText: 'How long a queued fetch waits for capacity',
+    Repository_Facet_ConanFacet_BackgroundFetchPercent_FieldLabel: 'Background fetch share (%)',
+    Repository_Facet_ConanFacet_BackgroundFetchPercent_HelpText: 'Share of the concurrent fetches background requests may hold',
+    Repository_Facet_ConanFacet_BackgroundUsers_FieldLabel: 'Background users',
+    Repository_Facet_ConanFacet_BackgroundUsers_HelpText: 'Users, such as those of CI jobs, whose fetches wait behind those of other users',
     SearchConan_Group: 'Conan Repositories',
     SearchConan_License_FieldLabel: 'License',
     SearchConan_Text: 'Conan',
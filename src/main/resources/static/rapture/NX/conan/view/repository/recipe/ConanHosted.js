@@ -20,7 +20,8 @@ Ext.define('NX.conan.view.repository.recipe.ConanHosted', {
   alias: 'widget.nx-coreui-repository-conan-hosted',
   requires: [
     'NX.coreui.view.repository.facet.StorageFacet',
-    'NX.coreui.view.repository.facet.StorageFacetHosted'
+    'NX.coreui.view.repository.facet.StorageFacetHosted',
+    'NX.I18n'
   ],
 
   /**
@@ -31,7 +32,54 @@ Ext.define('NX.conan.view.repository.recipe.ConanHosted', {
 
     me.items = [
       {xtype: 'nx-coreui-repository-storage-facet'},
-      {xtype: 'nx-coreui-repository-storage-hosted-facet', writePolicy: 'ALLOW'}
+      {xtype: 'nx-coreui-repository-storage-hosted-facet', writePolicy: 'ALLOW'},
+      {
+        xtype: 'nx-optionalfieldset',
+        title: NX.I18n.get('Repository_Facet_ConanFacet_Title'),
+        checkboxToggle: false,
+        defaults: {
+          xtype: 'numberfield',
+          allowDecimals: false,
+          allowBlank: true
+        },
+        items: [
+          {
+            name: 'attributes.conan.maxConcurrentUploads',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_MaxConcurrentUploads_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_MaxConcurrentUploads_HelpText'),
+            minValue: 1,
+            value: 8
+          },
+          {
+            name: 'attributes.conan.maxUploadBytesInFlight',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_MaxUploadBytesInFlight_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_MaxUploadBytesInFlight_HelpText'),
+            minValue: 1,
+            value: 8589934592
+          },
+          {
+            name: 'attributes.conan.maxQueuedUploads',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_MaxQueuedUploads_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_MaxQueuedUploads_HelpText'),
+            minValue: 0,
+            value: 32
+          },
+          {
+            name: 'attributes.conan.uploadQueueTimeoutSeconds',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_UploadQueueTimeout_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_UploadQueueTimeout_HelpText'),
+            minValue: 0,
+            value: 60
+          },
+          {
+            name: 'attributes.conan.uploadRetryAfterSeconds',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_UploadRetryAfter_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_UploadRetryAfter_HelpText'),
+            minValue: 0,
+            value: 30
+          }
+        ]
+      }
     ];
 
     me.callParent();
@@ -22,7 +22,8 @@ Ext.define('NX.conan.view.repository.recipe.ConanProxy', {
     'NX.coreui.view.repository.facet.ProxyFacet',
     'NX.coreui.view.repository.facet.StorageFacet',
     'NX.coreui.view.repository.facet.HttpClientFacet',
-    'NX.coreui.view.repository.facet.NegativeCacheFacet'
+    'NX.coreui.view.repository.facet.NegativeCacheFacet',
+    'NX.I18n'
   ],
 
   /**
@@ -35,7 +36,88 @@ Ext.define('NX.conan.view.repository.recipe.ConanProxy', {
       {xtype: 'nx-coreui-repository-proxy-facet'},
       {xtype: 'nx-coreui-repository-storage-facet'},
       {xtype: 'nx-coreui-repository-negativecache-facet'},
-      {xtype: 'nx-coreui-repository-httpclient-facet'}
+      {xtype: 'nx-coreui-repository-httpclient-facet'},
+      {
+        xtype: 'nx-optionalfieldset',
+        title: NX.I18n.get('Repository_Facet_ConanFacet_Title'),
+        checkboxToggle: false,
+        items: [
+          {
+            xtype: 'nx-valueset',
+            name: 'attributes.conan.mirrorUrls',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_MirrorUrls_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_MirrorUrls_HelpText'),
+            input: {
+              xtype: 'nx-url'
+            },
+            allowBlank: true,
+            sorted: false
+          },
+          {
+            xtype: 'numberfield',
+            name: 'attributes.conan.hedgePercentile',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_HedgePercentile_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_HedgePercentile_HelpText'),
+            allowDecimals: false,
+            allowBlank: true,
+            minValue: 0,
+            maxValue: 99,
+            value: 95
+          },
+          {
+            xtype: 'numberfield',
+            name: 'attributes.conan.maxConcurrentFetches',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_MaxConcurrentFetches_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_MaxConcurrentFetches_HelpText'),
+            allowDecimals: false,
+            allowBlank: true,
+            minValue: 1,
+            value: 32
+          },
+          {
+            xtype: 'numberfield',
+            name: 'attributes.conan.maxQueuedFetches',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_MaxQueuedFetches_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_MaxQueuedFetches_HelpText'),
+            allowDecimals: false,
+            allowBlank: true,
+            minValue: 0,
+            value: 256
+          },
+          {
+            xtype: 'numberfield',
+            name: 'attributes.conan.fetchQueueTimeoutSeconds',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_FetchQueueTimeout_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_FetchQueueTimeout_HelpText'),
+            allowDecimals: false,
+            allowBlank: true,
+            minValue: 0,
+            value: 30
+          },
+          {
+            xtype: 'numberfield',
+            name: 'attributes.conan.backgroundFetchPercent',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_BackgroundFetchPercent_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_BackgroundFetchPercent_HelpText'),
+            allowDecimals: false,
+            allowBlank: true,
+            minValue: 1,
+            maxValue: 100,
+            value: 50
+          },
+          {
+            xtype: 'nx-valueset',
+            name: 'attributes.conan.backgroundUsers',
+            fieldLabel: NX.I18n.get('Repository_Facet_ConanFacet_BackgroundUsers_FieldLabel'),
+            helpText: NX.I18n.get('Repository_Facet_ConanFacet_BackgroundUsers_HelpText'),
+            input: {
+              xtype: 'textfield'
+            },
+            allowBlank: true,
+            sorted: true
+          }
+        ]
+      }
     ];
 
     me.callParent();
@@ -0,0 +1,262 @@
+package org.sonatype.repository.conan.internal.group;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.common.app.BaseUrlHolder;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.group.GroupFacet;
+import org.sonatype.nexus.repository.http.HttpResponses;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.ViewFacet;
+import org.sonatype.nexus.repository.view.payloads.StringPayload;
+
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonatype.nexus.repository.http.HttpMethods.GET;
+import static org.sonatype.nexus.repository.http.HttpStatus.NOT_FOUND;
+import static org.sonatype.nexus.repository.view.ContentTypes.APPLICATION_JSON;
+
+public class ConanGroupHandlerTest
+    extends TestSupport
+{
+  private static final String DOWNLOAD_URLS = "/v1/conans/jsonformoderncpp/2.1.1/vthiery/stable/download_urls";
+
+  private static final String CONANFILE = "/v1/conans/vthiery/jsonformoderncpp/2.1.1/stable/conanfile.py";
+
+  private static final String CONAN_EXPORT = "/v1/conans/vthiery/jsonformoderncpp/2.1.1/stable/conan_export.tgz";
+
+  @Mock
+  private Repository group;
+
+  @Mock
+  private GroupFacet groupFacet;
+
+  private final ConanGroupHandler underTest = new ConanGroupHandler(4);
+
+  @Before
+  public void setUp() {
+    when(group.getName()).thenReturn("conan-group");
+    when(group.getUrl()).thenReturn("http://localhost/repository/conan-group");
+    when(group.facet(GroupFacet.class)).thenReturn(groupFacet);
+  }
+
+  @After
+  public void tearDown() {
+    BaseUrlHolder.unset();
+  }
+
+  @Test
+  public void highestPriorityHitWins() throws Exception {
+    members(
+        member("hosted", request -> HttpResponses.notFound()),
+        member("mirror", request -> {
+          Thread.sleep(100);
+          return ok("mirror");
+        }),
+        member("center", request -> ok("center")));
+
+    assertThat(body(get(CONANFILE)), is("mirror"));
+  }
+
+  @Test
+  public void membersAreAskedInParallel() throws Exception {
+    CountDownLatch lowerPriorityAsked = new CountDownLatch(1);
+    members(
+        member("hosted", request -> lowerPriorityAsked.await(5, TimeUnit.SECONDS) ? ok("hosted") : null),
+        member("center", request -> {
+          lowerPriorityAsked.countDown();
+          return ok("center");
+        }));
+
+    assertThat(body(get(CONANFILE)), is("hosted"));
+  }
+
+  @Test
+  public void membersAreAskedInTurnWithoutThreads() throws Exception {
+    Repository center = member("center", request -> ok("center"));
+    members(member("hosted", request -> ok("hosted")), center);
+
+    assertThat(body(new ConanGroupHandler(0).handle(context(CONANFILE))), is("hosted"));
+    verify(center.facet(ViewFacet.class), never()).dispatch(any(Request.class), any(Context.class));
+  }
+
+  @Test
+  public void archivesAreAskedInTurn() throws Exception {
+    Repository center = member("center", request -> ok("center"));
+    members(member("hosted", request -> {
+      Thread.sleep(100);
+      return ok("hosted");
+    }), center);
+
+    assertThat(body(get(CONAN_EXPORT)), is("hosted"));
+    verify(center.facet(ViewFacet.class), never()).dispatch(any(Request.class), any(Context.class));
+  }
+
+  @Test
+  public void losingResponsesAreClosed() throws Exception {
+    CountDownLatch answered = new CountDownLatch(1);
+    CountDownLatch closed = new CountDownLatch(1);
+    members(
+        member("hosted", request -> answered.await(5, TimeUnit.SECONDS) ? ok("hosted") : null),
+        member("center", request -> {
+          answered.countDown();
+          return HttpResponses.ok(new StringPayload("center", APPLICATION_JSON)
+          {
+            @Override
+            public void close() {
+              closed.countDown();
+            }
+          });
+        }));
+
+    assertThat(body(get(CONANFILE)), is("hosted"));
+    assertThat(closed.await(5, TimeUnit.SECONDS), is(true));
+  }
+
+  @Test
+  public void membersSeeTheBaseUrlOfTheRequest() throws Exception {
+    Semaphore centerAsked = new Semaphore(0);
+    List<String> baseUrls = new CopyOnWriteArrayList<>();
+    members(
+        member("hosted", request -> centerAsked.tryAcquire(5, TimeUnit.SECONDS) ? HttpResponses.notFound() : null),
+        member("center", request -> {
+          baseUrls.add(BaseUrlHolder.get());
+          centerAsked.release();
+          return ok("center");
+        }));
+
+    BaseUrlHolder.set("http://first");
+    assertThat(body(get(CONANFILE)), is("center"));
+    BaseUrlHolder.set("http://second");
+    assertThat(body(get(CONANFILE)), is("center"));
+
+    assertThat(baseUrls, contains("http://first", "http://second"));
+    assertThat(BaseUrlHolder.get(), is("http://second"));
+  }
+
+  @Test
+  public void failingMembersAreSkipped() throws Exception {
+    members(
+        member("mirror", request -> {
+          throw new IllegalStateException("remote unavailable");
+        }),
+        member("center", request -> ok("center")));
+
+    assertThat(body(get(CONANFILE)), is("center"));
+  }
+
+  @Test
+  public void notFoundWhenNoMemberHasIt() throws Exception {
+    members(member("hosted", request -> HttpResponses.notFound()), member("center", request -> HttpResponses.notFound()));
+
+    assertThat(get(CONANFILE).getStatus().getCode(), is(NOT_FOUND));
+  }
+
+  @Test
+  public void memberIsAskedOnce() throws Exception {
+    AtomicInteger asked = new AtomicInteger();
+    Repository hosted = member("hosted", request -> {
+      asked.incrementAndGet();
+      return HttpResponses.notFound();
+    });
+    members(hosted, hosted);
+
+    get(CONANFILE);
+    assertThat(asked.get(), is(1));
+  }
+
+  @Test
+  public void downloadUrlsPointAtTheGroup() throws Exception {
+    members(
+        member("hosted", request -> HttpResponses.notFound()),
+        member("center", request -> ok("{\"conanfile.py\":"
+            + "\"http://localhost/repository/center/vthiery/jsonformoderncpp/2.1.1/stable/conanfile.py\","
+            + "\"conan_export.tgz\":\"https://elsewhere/conan_export.tgz\"}")));
+
+    assertThat(body(get(DOWNLOAD_URLS)), is("{\"conanfile.py\":"
+        + "\"http://localhost/repository/conan-group/vthiery/jsonformoderncpp/2.1.1/stable/conanfile.py\","
+        + "\"conan_export.tgz\":\"https://elsewhere/conan_export.tgz\"}"));
+  }
+
+  @Test
+  public void searchResultsAreMerged() throws Exception {
+    members(
+        member("hosted", request -> ok("{\"results\":[\"zlib/1.2.11@internal/stable\",\"jsonformoderncpp/2.1.1@vthiery/stable\"]}")),
+        member("proxy", request -> HttpResponses.notFound()),
+        member("center", request -> ok("{\"results\":[\"jsonformoderncpp/2.1.1@vthiery/stable\",\"zlib/1.2.11@conan/stable\"]}")));
+
+    assertThat(body(get(ConanGroupHandler.SEARCH)), is("{\"results\":[\"zlib/1.2.11@internal/stable\","
+        + "\"jsonformoderncpp/2.1.1@vthiery/stable\",\"zlib/1.2.11@conan/stable\"]}"));
+  }
+
+  @Test
+  public void v2SearchResultsAreMerged() throws Exception {
+    members(
+        member("hosted", request -> ok("{\"results\":[\"zlib/1.2.11@internal/stable\"]}")),
+        member("center", request -> ok("{\"results\":[\"zlib/1.2.11@conan/stable\"]}")));
+
+    assertThat(body(get(ConanGroupHandler.SEARCH_V2)),
+        is("{\"results\":[\"zlib/1.2.11@internal/stable\",\"zlib/1.2.11@conan/stable\"]}"));
+  }
+
+  private interface Dispatch
+  {
+    Response dispatch(Request request) throws Exception;
+  }
+
+  private Repository member(final String name, final Dispatch dispatch) throws Exception {
+    Repository member = mock(Repository.class);
+    ViewFacet viewFacet = mock(ViewFacet.class);
+    when(member.getName()).thenReturn(name);
+    when(member.getUrl()).thenReturn("http://localhost/repository/" + name);
+    when(member.facet(ViewFacet.class)).thenReturn(viewFacet);
+    when(viewFacet.dispatch(any(Request.class), any(Context.class)))
+        .thenAnswer(invocation -> dispatch.dispatch((Request) invocation.getArguments()[0]));
+    return member;
+  }
+
+  private void members(final Repository... members) {
+    when(groupFacet.members()).thenReturn(Arrays.asList(members));
+  }
+
+  private Response get(final String path) throws Exception {
+    return underTest.handle(context(path));
+  }
+
+  private Context context(final String path) {
+    return new Context(group, new Request.Builder().action(GET).path(path).build());
+  }
+
+  private static Response ok(final String body) {
+    return HttpResponses.ok(new StringPayload(body, APPLICATION_JSON));
+  }
+
+  private static String body(final Response response) throws Exception {
+    try (InputStream in = response.getPayload().openInputStream()) {
+      return new String(ByteStreams.toByteArray(in), UTF_8);
+    }
+  }
+}
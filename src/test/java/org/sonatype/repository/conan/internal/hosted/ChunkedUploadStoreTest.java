@@ -0,0 +1,213 @@
+package org.sonatype.repository.conan.internal.hosted;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.stream.Stream;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.repository.conan.internal.hosted.ChunkedUploadStore.ContentRange;
+import org.sonatype.repository.conan.internal.hosted.ChunkedUploadStore.Progress;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.MD5;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ChunkedUploadStoreTest
+    extends TestSupport
+{
+  private static final String REPOSITORY = "conan-hosted";
+
+  private static final String PATH = "/v1/conans/jsonformoderncpp/2.1.1/vthiery/stable/conan_sources.tgz";
+
+  private static final byte[] CONTENT = "0123456789abcdefghij".getBytes(UTF_8);
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private ChunkedUploadStore underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    underTest = new ChunkedUploadStore(temp.newFolder(), 24);
+  }
+
+  @Test
+  public void chunksAreAssembledInOrder() throws Exception {
+    write("bytes 0-9/20", 0, 10);
+    Progress progress = write("bytes 10-19/20", 10, 10);
+
+    assertThat(progress.isComplete(), is(true));
+    assertThat(read(), is(CONTENT));
+  }
+
+  @Test
+  public void progressSurvivesANewStoreInstance() throws Exception {
+    write("bytes 0-9/20", 0, 10);
+
+    ChunkedUploadStore restarted = new ChunkedUploadStore(temp.getRoot().listFiles()[0], 24);
+    Progress progress = restarted.status(REPOSITORY, PATH, 20);
+
+    assertThat(progress.getReceived(), is(10L));
+    assertThat(progress.toRangeHeader(), is("bytes=0-9"));
+  }
+
+  @Test
+  public void resentChunkReplacesThoseAfterIt() throws Exception {
+    write("bytes 0-4/20", 0, 5);
+    write("bytes 5-9/20", 5, 5);
+    Progress progress = write("bytes 5-14/20", 5, 10);
+
+    assertThat(progress.getReceived(), is(15L));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void chunkMustLineUp() throws Exception {
+    write("bytes 0-9/20", 0, 10);
+    write("bytes 3-12/20", 3, 10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void chunkMustMatchItsRange() throws Exception {
+    underTest.write(REPOSITORY, PATH, ContentRange.parse("bytes 0-9/20"), new ByteArrayInputStream(CONTENT, 0, 5),
+        null, null);
+  }
+
+  @Test
+  public void chunkIsCheckedAgainstContentMd5() throws Exception {
+    String md5 = Base64.getEncoder().encodeToString(MD5.function().hashBytes(CONTENT, 0, 10).asBytes());
+    underTest.write(REPOSITORY, PATH, ContentRange.parse("bytes 0-9/20"), new ByteArrayInputStream(CONTENT, 0, 10),
+        md5, null);
+
+    try {
+      underTest.write(REPOSITORY, PATH, ContentRange.parse("bytes 10-19/20"),
+          new ByteArrayInputStream(CONTENT, 10, 10), md5, null);
+    }
+    catch (IllegalArgumentException e) {
+      assertThat(underTest.status(REPOSITORY, PATH, 20).getReceived(), is(10L));
+      return;
+    }
+    throw new AssertionError("Content-MD5 mismatch was accepted");
+  }
+
+  @Test(expected = IOException.class)
+  public void corruptStagedChunkIsDetected() throws Exception {
+    write("bytes 0-9/20", 0, 10);
+    write("bytes 10-19/20", 10, 10);
+
+    try (Stream<Path> files = Files.walk(temp.getRoot().toPath())) {
+      Path chunk = files.filter(path -> path.toString().endsWith("00000000000000000010.chunk")).findFirst().get();
+      Files.write(chunk, "XXXXXXXXXX".getBytes(UTF_8));
+    }
+    read();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void missingStagedChunkIsDetectedBeforeReading() throws Exception {
+    write("bytes 0-9/20", 0, 10);
+    write("bytes 10-19/20", 10, 10);
+
+    try (Stream<Path> files = Files.walk(temp.getRoot().toPath())) {
+      Files.delete(files.filter(path -> path.toString().endsWith("00000000000000000010.chunk")).findFirst().get());
+    }
+    underTest.open(REPOSITORY, PATH);
+  }
+
+  @Test
+  public void differentTotalStartsAFreshUpload() throws Exception {
+    write("bytes 0-9/20", 0, 10);
+
+    assertThat(underTest.status(REPOSITORY, PATH, 30).getReceived(), is(0L));
+    assertThat(write("bytes 0-4/30", 0, 5).getReceived(), is(5L));
+  }
+
+  @Test
+  public void discardRemovesStagedUpload() throws Exception {
+    write("bytes 0-9/20", 0, 10);
+
+    underTest.discard(REPOSITORY, PATH);
+
+    assertThat(underTest.status(REPOSITORY, PATH, 20).getReceived(), is(0L));
+    assertThat(underTest.expectedSha1(REPOSITORY, PATH), is(nullValue()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void writeIsRejectedWhileTheUploadIsCommitted() throws Exception {
+    write("bytes 0-9/20", 0, 10);
+    write("bytes 10-19/20", 10, 10);
+
+    try (InputStream ignored = underTest.open(REPOSITORY, PATH)) {
+      write("bytes 10-19/20", 10, 10);
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void uploadIsNotOpenedTwice() throws Exception {
+    write("bytes 0-9/20", 0, 10);
+    write("bytes 10-19/20", 10, 10);
+
+    try (InputStream ignored = underTest.open(REPOSITORY, PATH)) {
+      underTest.open(REPOSITORY, PATH);
+    }
+  }
+
+  @Test
+  public void discardLeavesAnUploadBeingCommitted() throws Exception {
+    write("bytes 0-9/20", 0, 10);
+    write("bytes 10-19/20", 10, 10);
+
+    try (InputStream in = underTest.open(REPOSITORY, PATH)) {
+      underTest.discard(REPOSITORY, PATH);
+
+      assertThat(ByteStreams.toByteArray(in), is(CONTENT));
+    }
+  }
+
+  @Test
+  public void closedUploadCanBeChangedAgain() throws Exception {
+    write("bytes 0-9/20", 0, 10);
+    write("bytes 10-19/20", 10, 10);
+    read();
+
+    assertThat(write("bytes 10-19/20", 10, 10).isComplete(), is(true));
+    underTest.discard(REPOSITORY, PATH);
+    assertThat(underTest.status(REPOSITORY, PATH, 20).getReceived(), is(0L));
+  }
+
+  @Test
+  public void contentRangeIsParsed() {
+    ContentRange range = ContentRange.parse("bytes 10-19/20");
+    assertThat(range.getFirst(), is(10L));
+    assertThat(range.getLength(), is(10L));
+    assertThat(range.getTotal(), is(20L));
+
+    assertThat(ContentRange.parse("bytes */20").hasContent(), is(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void contentRangeBeyondTotalIsRejected() {
+    ContentRange.parse("bytes 10-20/20");
+  }
+
+  private Progress write(final String contentRange, final int offset, final int length) throws IOException {
+    return underTest.write(REPOSITORY, PATH, ContentRange.parse(contentRange),
+        new ByteArrayInputStream(CONTENT, offset, length), null, null);
+  }
+
+  private byte[] read() throws IOException {
+    try (InputStream in = underTest.open(REPOSITORY, PATH)) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+}
@@ -16,8 +16,15 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 import static org.sonatype.goodies.testsupport.hamcrest.DiffMatchers.equalTo;
+import static java.util.Collections.singletonList;
+import static org.sonatype.nexus.repository.http.HttpMethods.GET;
 import static org.sonatype.nexus.repository.http.HttpMethods.POST;
 import static org.sonatype.nexus.repository.http.HttpMethods.PUT;
+import static org.sonatype.repository.conan.internal.AssetKind.CONAN_FILE;
+import static org.sonatype.repository.conan.internal.AssetKind.CONAN_PACKAGE;
+import static org.sonatype.repository.conan.internal.hosted.ConanHostedRecipe.latest;
+import static org.sonatype.repository.conan.internal.hosted.ConanHostedRecipe.revisionFile;
+import static org.sonatype.repository.conan.internal.hosted.ConanHostedRecipe.revisionFiles;
 import static org.sonatype.repository.conan.internal.hosted.ConanHostedRecipe.uploadConanPackageZip;
 import static org.sonatype.repository.conan.internal.hosted.ConanHostedRecipe.uploadConanfile;
 import static org.sonatype.repository.conan.internal.hosted.ConanHostedRecipe.uploadConaninfo;
@@ -146,4 +153,59 @@ public class ConanHostedRecipeTest
     assertThat(matcherState.getTokens().get("version"), is(equalTo("2.1.1")));
     assertThat(matcherState.getTokens().get("sha"), is(equalTo("5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9")));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void canMatchOnRecipeRevisionFile() {
+    when(request.getAction()).thenReturn(PUT);
+    when(request.getPath()).thenReturn(
+        "/v2/conans/project/2.1.1/group/stable/revisions/b4bbc5f3ce4e43d1b10ea28a8c4b3d5a/files/conanfile.py");
+
+    assertTrue(revisionFile(singletonList(PUT), CONAN_FILE).handler(handler).create().getMatcher().matches(context));
+    TokenMatcher.State matcherState = attributesMap.require(TokenMatcher.State.class);
+    assertThat(matcherState.getTokens().get("group"), is(equalTo("group")));
+    assertThat(matcherState.getTokens().get("project"), is(equalTo("project")));
+    assertThat(matcherState.getTokens().get("version"), is(equalTo("2.1.1")));
+    assertThat(matcherState.getTokens().get("state"), is(equalTo("stable")));
+    assertThat(matcherState.getTokens().get("rrev"), is(equalTo("b4bbc5f3ce4e43d1b10ea28a8c4b3d5a")));
+    assertThat(matcherState.getTokens().get("sha"), is(equalTo(null)));
+  }
+
+  @Test
+  public void canMatchOnPackageRevisionFile() {
+    when(request.getAction()).thenReturn(GET);
+    when(request.getPath()).thenReturn("/v2/conans/project/2.1.1/group/stable"
+        + "/revisions/b4bbc5f3ce4e43d1b10ea28a8c4b3d5a"
+        + "/packages/5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9/revisions/0c7e5d2b43ed2d1a9c33f2b4c4c02b20"
+        + "/files/conan_package.tgz");
+
+    assertTrue(revisionFile(singletonList(GET), CONAN_PACKAGE).handler(handler).create().getMatcher()
+        .matches(context));
+    TokenMatcher.State matcherState = attributesMap.require(TokenMatcher.State.class);
+    assertThat(matcherState.getTokens().get("rrev"), is(equalTo("b4bbc5f3ce4e43d1b10ea28a8c4b3d5a")));
+    assertThat(matcherState.getTokens().get("sha"), is(equalTo("5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9")));
+    assertThat(matcherState.getTokens().get("prev"), is(equalTo("0c7e5d2b43ed2d1a9c33f2b4c4c02b20")));
+  }
+
+  @Test
+  public void canMatchOnLatestRevision() {
+    when(request.getAction()).thenReturn(GET);
+    when(request.getPath()).thenReturn("/v2/conans/project/2.1.1/group/stable/latest");
+
+    assertTrue(latest().handler(handler).create().getMatcher().matches(context));
+    TokenMatcher.State matcherState = attributesMap.require(TokenMatcher.State.class);
+    assertThat(matcherState.getTokens().get("project"), is(equalTo("project")));
+    assertThat(matcherState.getTokens().get("rrev"), is(equalTo(null)));
+  }
+
+  @Test
+  public void canMatchOnRevisionFiles() {
+    when(request.getAction()).thenReturn(GET);
+    when(request.getPath()).thenReturn("/v2/conans/project/2.1.1/group/stable"
+        + "/revisions/b4bbc5f3ce4e43d1b10ea28a8c4b3d5a"
+        + "/packages/5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9/revisions/0c7e5d2b43ed2d1a9c33f2b4c4c02b20/files");
+
+    assertTrue(revisionFiles().handler(handler).create().getMatcher().matches(context));
+    TokenMatcher.State matcherState = attributesMap.require(TokenMatcher.State.class);
+    assertThat(matcherState.getTokens().get("prev"), is(equalTo("0c7e5d2b43ed2d1a9c33f2b4c4c02b20")));
+  }
+}
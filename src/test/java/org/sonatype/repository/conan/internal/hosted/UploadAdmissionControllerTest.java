@@ -0,0 +1,136 @@
+package org.sonatype.repository.conan.internal.hosted;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.repository.conan.internal.hosted.UploadAdmissionController.Admission;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class UploadAdmissionControllerTest
+    extends TestSupport
+{
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void closingAnAdmissionReleasesCapacity() throws Exception {
+    UploadAdmissionController underTest = new UploadAdmissionController(2, 100, 0, 0, TimeUnit.SECONDS);
+
+    Admission first = underTest.admit(40);
+    Admission second = underTest.admit(40);
+    assertThat(underTest.getActiveUploads(), is(2));
+    assertThat(underTest.getBytesInFlight(), is(80L));
+    assertThat(underTest.admit(1), is(nullValue()));
+
+    first.close();
+    first.close();
+    assertThat(underTest.getActiveUploads(), is(1));
+    assertThat(underTest.getBytesInFlight(), is(40L));
+
+    second.close();
+    assertThat(underTest.getBytesInFlight(), is(0L));
+  }
+
+  @Test
+  public void bytesInFlightAreCapped() throws Exception {
+    UploadAdmissionController underTest = new UploadAdmissionController(10, 100, 0, 0, TimeUnit.SECONDS);
+
+    Admission admission = underTest.admit(60);
+    assertThat(underTest.admit(60), is(nullValue()));
+    assertThat(underTest.admit(-1), is(notNullValue()));
+    admission.close();
+
+    // an upload larger than the limit is admitted on its own
+    assertThat(underTest.admit(1000), is(notNullValue()));
+    assertThat(underTest.getBytesInFlight(), is(100L));
+  }
+
+  @Test
+  public void queuedUploadIsAdmittedOnRelease() throws Exception {
+    UploadAdmissionController underTest = new UploadAdmissionController(1, 100, 1, 30, TimeUnit.SECONDS);
+    Admission first = underTest.admit(10);
+
+    Future<Admission> queued = executor.submit(() -> underTest.admit(10));
+    while (underTest.getQueuedUploads() == 0) {
+      Thread.sleep(5);
+    }
+    assertThat("queue is full", underTest.admit(10), is(nullValue()));
+
+    first.close();
+    assertThat(queued.get(30, TimeUnit.SECONDS), is(notNullValue()));
+    assertThat(underTest.getQueuedUploads(), is(0));
+    assertThat(underTest.getActiveUploads(), is(1));
+  }
+
+  @Test
+  public void queuedUploadsAreNotOvertaken() throws Exception {
+    UploadAdmissionController underTest = new UploadAdmissionController(10, 100, 2, 30, TimeUnit.SECONDS);
+    Admission first = underTest.admit(60);
+
+    Future<Admission> large = executor.submit(() -> underTest.admit(80));
+    while (underTest.getQueuedUploads() == 0) {
+      Thread.sleep(5);
+    }
+    Future<Admission> small = executor.submit(() -> underTest.admit(10));
+    while (underTest.getQueuedUploads() == 1) {
+      Thread.sleep(5);
+    }
+    assertThat("new arrivals queue behind", underTest.admit(10), is(nullValue()));
+    assertThat(underTest.getBytesInFlight(), is(60L));
+
+    first.close();
+    assertThat(large.get(30, TimeUnit.SECONDS), is(notNullValue()));
+    assertThat(small.get(30, TimeUnit.SECONDS), is(notNullValue()));
+    assertThat(underTest.getBytesInFlight(), is(90L));
+  }
+
+  @Test
+  public void queuedUploadTimesOut() throws Exception {
+    UploadAdmissionController underTest = new UploadAdmissionController(1, 100, 1, 50, TimeUnit.MILLISECONDS);
+    underTest.admit(10);
+
+    CountDownLatch started = new CountDownLatch(1);
+    Future<Admission> queued = executor.submit(() -> {
+      started.countDown();
+      return underTest.admit(10);
+    });
+    started.await();
+
+    assertThat(queued.get(30, TimeUnit.SECONDS), is(nullValue()));
+    assertThat(underTest.getQueuedUploads(), is(0));
+  }
+
+  @Test
+  public void reconfiguredLimitsApplyToUploadsInFlight() throws Exception {
+    UploadAdmissionController underTest = new UploadAdmissionController(1, 100, 1, 30, TimeUnit.SECONDS);
+    Admission first = underTest.admit(10);
+
+    Future<Admission> queued = executor.submit(() -> underTest.admit(10));
+    while (underTest.getQueuedUploads() == 0) {
+      Thread.sleep(5);
+    }
+    underTest.configure(2, 100, 1, 30, TimeUnit.SECONDS);
+    assertThat(queued.get(30, TimeUnit.SECONDS), is(notNullValue()));
+
+    underTest.configure(1, 100, 0, 0, TimeUnit.SECONDS);
+    assertThat(underTest.admit(10), is(nullValue()));
+    first.close();
+    assertThat(underTest.getActiveUploads(), is(1));
+    assertThat(underTest.getBytesInFlight(), is(10L));
+  }
+}
@@ -1,6 +1,7 @@
 package org.sonatype.repository.conan.internal.hosted
 
 import org.sonatype.goodies.testsupport.TestSupport
+import org.sonatype.nexus.repository.view.payloads.StringPayload
 
 import org.junit.Before
 import org.junit.Test
@@ -50,4 +51,25 @@ class UploadUrlManagerTest
 
     assert actualResponse == expectedResponse
   }
+
+  @Test
+  void whenPayloadThenStreamsValuesAsUrlDestinations() throws Exception {
+    String testJson = '{' +
+        '"manifest.txt":"/v1/conans/group/version/project/exports/manifest.txt"' +
+        '}'
+
+    def payload = underTest.prefixToValues("http://localhost:9300", new StringPayload(testJson, 'application/json'))
+
+    assert payload.size == -1
+    assert payload.openInputStream().text == '{' +
+        '"manifest.txt":"http://localhost:9300/v1/conans/group/version/project/exports/manifest.txt"' +
+        '}'
+  }
+
+  @Test
+  void whenPayloadIsNotJsonThenStreamsEmptyObject() throws Exception {
+    def payload = underTest.prefixToValues("http://localhost:9300", new StringPayload('nope', 'application/json'))
+
+    assert payload.openInputStream().text == '{}'
+  }
 }
@@ -0,0 +1,75 @@
+package org.sonatype.repository.conan.internal.metadata;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConanCoordsTest
+    extends TestSupport
+{
+  private static final String SHA = "5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9";
+
+  @Mock
+  private Context context;
+
+  private AttributesMap attributes;
+
+  @Before
+  public void setUp() {
+    attributes = new AttributesMap();
+    when(context.getAttributes()).thenReturn(attributes);
+  }
+
+  @Test
+  public void pathAndSpec() {
+    ConanCoords recipe = new ConanCoords("vthiery", "jsonformoderncpp", "2.1.1", "stable", null);
+    ConanCoords binary = new ConanCoords("vthiery", "jsonformoderncpp", "2.1.1", "stable", SHA);
+
+    assertThat(ConanCoords.getPath(recipe), is("vthiery/jsonformoderncpp/2.1.1/stable"));
+    assertThat(ConanCoords.getPath(binary), is("vthiery/jsonformoderncpp/2.1.1/stable/packages/" + SHA));
+    assertThat(ConanCoords.getSpec(binary), is("jsonformoderncpp/2.1.1@vthiery/stable"));
+  }
+
+  @Test
+  public void parsedOncePerState() {
+    attributes.set(TokenMatcher.State.class, state(SHA));
+
+    ConanCoords coords = ConanCoords.fromContext(context);
+    assertThat(coords.getSha(), is(SHA));
+    assertThat(ConanCoords.fromContext(context), is(sameInstance(coords)));
+
+    attributes.set(TokenMatcher.State.class, state(null));
+    ConanCoords other = ConanCoords.fromContext(context);
+    assertThat(other, is(not(sameInstance(coords))));
+    assertThat(ConanCoords.getPath(other), is("vthiery/jsonformoderncpp/2.1.1/stable"));
+  }
+
+  private static TokenMatcher.State state(final String sha) {
+    Map<String, String> tokens = new HashMap<>();
+    tokens.put(ConanMetadata.GROUP, "vthiery");
+    tokens.put(ConanMetadata.PROJECT, "jsonformoderncpp");
+    tokens.put(ConanMetadata.VERSION, "2.1.1");
+    tokens.put(ConanMetadata.STATE, "stable");
+    if (sha != null) {
+      tokens.put(ConanMetadata.DIGEST, sha);
+    }
+    TokenMatcher.State state = mock(TokenMatcher.State.class);
+    when(state.getTokens()).thenReturn(tokens);
+    return state;
+  }
+}
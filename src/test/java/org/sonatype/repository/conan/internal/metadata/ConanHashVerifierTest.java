@@ -0,0 +1,153 @@
+package org.sonatype.repository.conan.internal.metadata;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.common.collect.NestedAttributesMap;
+import org.sonatype.nexus.repository.storage.Asset;
+import org.sonatype.nexus.repository.storage.AssetEvent;
+import org.sonatype.nexus.repository.storage.Bucket;
+import org.sonatype.nexus.repository.storage.StorageTx;
+
+import com.google.common.hash.HashCode;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.sonatype.nexus.repository.storage.MetadataNodeEntityAdapter.P_NAME;
+
+public class ConanHashVerifierTest
+    extends TestSupport
+{
+  private static final String PACKAGE_PATH =
+      "vthiery/jsonformoderncpp/2.1.1/stable/packages/5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9/";
+
+  private static final String REPOSITORY = "conan-proxy";
+
+  private static final String CONANINFO_MD5 = "9fd53df6571335b5080891a9b40e66b2";
+
+  @Mock
+  StorageTx tx;
+
+  @Mock
+  Bucket bucket;
+
+  @Mock
+  Asset manifest;
+
+  ConanHashVerifier underTest;
+
+  @Before
+  public void setUp() {
+    when(bucket.getRepositoryName()).thenReturn(REPOSITORY);
+    underTest = new ConanHashVerifier();
+  }
+
+  @Test
+  public void cachedManifestIsUsedWithoutDatabaseLookup() {
+    AttributesMap entries = new AttributesMap();
+    entries.set("conaninfo.txt", CONANINFO_MD5);
+    underTest.cacheManifest(REPOSITORY, PACKAGE_PATH + "conanmanifest.txt", entries);
+
+    HashCode hash = underTest.lookupHashFromAsset(tx, bucket, PACKAGE_PATH + "conaninfo.txt");
+
+    assertThat(hash, is(HashCode.fromString(CONANINFO_MD5)));
+    verifyZeroInteractions(tx);
+  }
+
+  @Test
+  public void manifestIsLookedUpOnceThenCached() {
+    AttributesMap formatAttributes = new AttributesMap();
+    formatAttributes.set("conaninfo.txt", CONANINFO_MD5);
+    when(manifest.formatAttributes()).thenReturn(new NestedAttributesMap("conan",
+        formatAttributes.backing()));
+    when(tx.findAssetWithProperty(eq(P_NAME), eq(PACKAGE_PATH + "conanmanifest.txt"), any(Bucket.class)))
+        .thenReturn(manifest);
+
+    assertThat(underTest.lookupHashFromAsset(tx, bucket, PACKAGE_PATH + "conaninfo.txt"),
+        is(HashCode.fromString(CONANINFO_MD5)));
+    assertThat(underTest.lookupHashFromAsset(tx, bucket, PACKAGE_PATH + "conan_package.tgz"), is(nullValue()));
+
+    verify(tx, times(1)).findAssetWithProperty(eq(P_NAME), eq(PACKAGE_PATH + "conanmanifest.txt"), any(Bucket.class));
+  }
+
+  @Test
+  public void manifestPathOnlyReplacesTheFilename() {
+    String path = "conaninfo.txt/project/1.0/stable/conaninfo.txt";
+
+    underTest.lookupHashFromAsset(tx, bucket, path);
+
+    verify(tx).findAssetWithProperty(eq(P_NAME), eq("conaninfo.txt/project/1.0/stable/conanmanifest.txt"),
+        any(Bucket.class));
+  }
+
+  @Test
+  public void replacingManifestReplacesCachedEntries() {
+    AttributesMap original = new AttributesMap();
+    original.set("conaninfo.txt", CONANINFO_MD5);
+    underTest.cacheManifest(REPOSITORY, PACKAGE_PATH + "conanmanifest.txt", original);
+
+    String replacementMd5 = "9ea8083ad1c71182fa64ca0378bade18";
+    AttributesMap replacement = new AttributesMap();
+    replacement.set("conaninfo.txt", replacementMd5);
+    underTest.cacheManifest(REPOSITORY, PACKAGE_PATH + "conanmanifest.txt", replacement);
+
+    assertThat(underTest.lookupHashFromAsset(tx, bucket, PACKAGE_PATH + "conaninfo.txt"),
+        is(HashCode.fromString(replacementMd5)));
+  }
+
+  @Test
+  public void manifestEventDropsCachedEntries() {
+    cacheConaninfo();
+    Asset changed = mock(Asset.class);
+    when(changed.name()).thenReturn(PACKAGE_PATH + "conanmanifest.txt");
+    AssetEvent event = mock(AssetEvent.class);
+    when(event.getRepositoryName()).thenReturn(REPOSITORY);
+    when(event.getAsset()).thenReturn(changed);
+
+    underTest.on(event);
+
+    assertThat(underTest.lookupHashFromAsset(tx, bucket, PACKAGE_PATH + "conaninfo.txt"), is(nullValue()));
+    verify(tx).findAssetWithProperty(eq(P_NAME), eq(PACKAGE_PATH + "conanmanifest.txt"), any(Bucket.class));
+  }
+
+  @Test
+  public void otherEventsKeepCachedEntries() {
+    cacheConaninfo();
+    Asset changed = mock(Asset.class);
+    when(changed.name()).thenReturn(PACKAGE_PATH + "conaninfo.txt");
+    AssetEvent event = mock(AssetEvent.class);
+    when(event.getRepositoryName()).thenReturn(REPOSITORY);
+    when(event.getAsset()).thenReturn(changed);
+
+    underTest.on(event);
+
+    assertThat(underTest.lookupHashFromAsset(tx, bucket, PACKAGE_PATH + "conaninfo.txt"),
+        is(HashCode.fromString(CONANINFO_MD5)));
+    verifyZeroInteractions(tx);
+  }
+
+  @Test
+  public void deletedRepositoryDropsCachedEntries() {
+    cacheConaninfo();
+
+    underTest.invalidateAll(REPOSITORY);
+
+    assertThat(underTest.lookupHashFromAsset(tx, bucket, PACKAGE_PATH + "conaninfo.txt"), is(nullValue()));
+  }
+
+  private void cacheConaninfo() {
+    AttributesMap entries = new AttributesMap();
+    entries.set("conaninfo.txt", CONANINFO_MD5);
+    underTest.cacheManifest(REPOSITORY, PACKAGE_PATH + "conanmanifest.txt", entries);
+  }
+}
@@ -0,0 +1,154 @@
+package org.sonatype.repository.conan.internal.metadata;
+
+import java.io.InputStream;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.repository.cache.CacheInfo;
+import org.sonatype.nexus.repository.storage.Asset;
+import org.sonatype.nexus.repository.storage.AssetEvent;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.sonatype.nexus.repository.view.Content.CONTENT_ETAG;
+import static org.sonatype.nexus.repository.view.Content.CONTENT_HASH_CODES_MAP;
+import static org.sonatype.nexus.repository.view.Content.CONTENT_LAST_MODIFIED;
+
+public class ConanMetadataCacheTest
+    extends TestSupport
+{
+  private static final String REPOSITORY = "conan-hosted";
+
+  private static final String PATH = "vthiery/jsonformoderncpp/2.1.1/stable/conanmanifest.txt";
+
+  private static final DateTime LAST_MODIFIED = new DateTime(1500296716000L);
+
+  private static final HashCode SHA1 = HashCode.fromString("0123456789abcdef0123456789abcdef01234567");
+
+  private final ConanMetadataCache underTest = new ConanMetadataCache(1024, 64, false, 60);
+
+  @Test
+  public void servesCachedContentWithItsAttributes() throws Exception {
+    long stamp = underTest.stamp(REPOSITORY, PATH);
+    Content served = underTest.cache(REPOSITORY, PATH, stamp, content("1500296716\n"));
+    assertContent(served, "1500296716\n");
+
+    Content cached = underTest.get(REPOSITORY, PATH);
+    assertContent(cached, "1500296716\n");
+    assertContent(underTest.get(REPOSITORY, PATH), "1500296716\n");
+    assertThat(underTest.get("conan-proxy", PATH), is(nullValue()));
+  }
+
+  @Test
+  public void servesOffHeapContent() throws Exception {
+    ConanMetadataCache offHeap = new ConanMetadataCache(1024, 64, true, 60);
+    offHeap.cache(REPOSITORY, PATH, offHeap.stamp(REPOSITORY, PATH), content("1500296716\n"));
+
+    assertContent(offHeap.get(REPOSITORY, PATH), "1500296716\n");
+  }
+
+  @Test
+  public void largeContentIsNotCached() throws Exception {
+    Content large = content(new String(new char[65]).replace('\0', 'x'));
+
+    assertThat(underTest.cache(REPOSITORY, PATH, underTest.stamp(REPOSITORY, PATH), large), is(sameInstance(large)));
+    assertThat(underTest.get(REPOSITORY, PATH), is(nullValue()));
+  }
+
+  @Test
+  public void disabledWithoutBytes() throws Exception {
+    ConanMetadataCache disabled = new ConanMetadataCache(0, 64, false, 60);
+    Content content = content("1500296716\n");
+
+    assertThat(disabled.cache(REPOSITORY, PATH, disabled.stamp(REPOSITORY, PATH), content), is(sameInstance(content)));
+    assertThat(disabled.get(REPOSITORY, PATH), is(nullValue()));
+  }
+
+  @Test
+  public void contentReadBeforeInvalidationIsNotCached() throws Exception {
+    long stamp = underTest.stamp(REPOSITORY, PATH);
+    underTest.invalidate(REPOSITORY, PATH);
+
+    assertContent(underTest.cache(REPOSITORY, PATH, stamp, content("stale")), "stale");
+    assertThat(underTest.get(REPOSITORY, PATH), is(nullValue()));
+  }
+
+  @Test
+  public void invalidatesOnStore() throws Exception {
+    underTest.cache(REPOSITORY, PATH, underTest.stamp(REPOSITORY, PATH), content("1500296716\n"));
+    underTest.invalidate(REPOSITORY, PATH);
+
+    assertThat(underTest.get(REPOSITORY, PATH), is(nullValue()));
+  }
+
+  @Test
+  public void invalidatesOnAssetEvent() throws Exception {
+    underTest.cache(REPOSITORY, PATH, underTest.stamp(REPOSITORY, PATH), content("1500296716\n"));
+    Asset asset = mock(Asset.class);
+    when(asset.name()).thenReturn(PATH);
+    AssetEvent event = mock(AssetEvent.class);
+    when(event.getRepositoryName()).thenReturn(REPOSITORY);
+    when(event.getAsset()).thenReturn(asset);
+
+    underTest.on(event);
+
+    assertThat(underTest.get(REPOSITORY, PATH), is(nullValue()));
+  }
+
+  @Test
+  public void invalidatesRepository() throws Exception {
+    underTest.cache(REPOSITORY, PATH, underTest.stamp(REPOSITORY, PATH), content("1500296716\n"));
+    underTest.cache("conan-proxy", PATH, underTest.stamp("conan-proxy", PATH), content("1500296716\n"));
+
+    underTest.invalidateAll(REPOSITORY);
+
+    assertThat(underTest.get(REPOSITORY, PATH), is(nullValue()));
+    assertThat(underTest.get("conan-proxy", PATH), is(notNullValue()));
+  }
+
+  @Test
+  public void boundedByBytes() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      String path = "file" + i;
+      underTest.cache(REPOSITORY, path, underTest.stamp(REPOSITORY, path), content("0123456789012345678901234567890"));
+    }
+
+    assertThat(underTest.size() * 31 <= 1024, is(true));
+  }
+
+  private static Content content(final String text) {
+    Content content = new Content(new BytesPayload(text.getBytes(UTF_8), "text/plain"));
+    content.getAttributes().set(CONTENT_LAST_MODIFIED, LAST_MODIFIED);
+    content.getAttributes().set(CONTENT_ETAG, "etag");
+    content.getAttributes().set(CONTENT_HASH_CODES_MAP, ImmutableMap.of(HashAlgorithm.SHA1, SHA1));
+    content.getAttributes().set(CacheInfo.class, new CacheInfo(LAST_MODIFIED, "token"));
+    return content;
+  }
+
+  private static void assertContent(final Content content, final String text) throws Exception {
+    assertThat(content, is(notNullValue()));
+    try (InputStream in = content.openInputStream()) {
+      assertThat(new String(ByteStreams.toByteArray(in), UTF_8), is(text));
+    }
+    assertThat(content.getSize(), is((long) text.getBytes(UTF_8).length));
+    assertThat(content.getContentType(), is("text/plain"));
+    assertThat(content.getAttributes().get(CONTENT_LAST_MODIFIED), is(LAST_MODIFIED));
+    assertThat(content.getAttributes().get(CONTENT_ETAG), is("etag"));
+    assertThat(content.getAttributes().get(CONTENT_HASH_CODES_MAP), is(ImmutableMap.of(HashAlgorithm.SHA1, SHA1)));
+    assertThat(content.getAttributes().get(CacheInfo.class).getCacheToken(), is("token"));
+  }
+}
@@ -0,0 +1,78 @@
+package org.sonatype.repository.conan.internal.metadata;
+
+import java.io.ByteArrayInputStream;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ConanRevisionsTest
+    extends TestSupport
+{
+  private static final String REFERENCE = "jsonformoderncpp/2.1.1@vthiery/stable";
+
+  private static final DateTime FIRST = new DateTime(2019, 3, 19, 15, 7, 59, 371, DateTimeZone.UTC);
+
+  private static final DateTime SECOND = FIRST.plusHours(1);
+
+  @Test
+  public void firstRevisionCreatesTheIndex() throws Exception {
+    assertThat(string(ConanRevisions.makeLatest(null, REFERENCE, "rev1", FIRST)),
+        is("{\"reference\":\"jsonformoderncpp/2.1.1@vthiery/stable\","
+            + "\"revisions\":[{\"revision\":\"rev1\",\"time\":\"2019-03-19T15:07:59.371Z\"}]}"));
+  }
+
+  @Test
+  public void newRevisionIsLatest() throws Exception {
+    byte[] index = ConanRevisions.makeLatest(null, REFERENCE, "rev1", FIRST);
+    index = ConanRevisions.makeLatest(stream(index), REFERENCE, "rev2", SECOND);
+
+    assertThat(string(index), is("{\"reference\":\"jsonformoderncpp/2.1.1@vthiery/stable\",\"revisions\":["
+        + "{\"revision\":\"rev2\",\"time\":\"2019-03-19T16:07:59.371Z\"},"
+        + "{\"revision\":\"rev1\",\"time\":\"2019-03-19T15:07:59.371Z\"}]}"));
+    assertThat(string(ConanRevisions.latest(stream(index))),
+        is("{\"revision\":\"rev2\",\"time\":\"2019-03-19T16:07:59.371Z\"}"));
+    assertThat(ConanRevisions.latestRevision(stream(index)), is("rev2"));
+  }
+
+  @Test
+  public void latestRevisionIsNotRewritten() throws Exception {
+    byte[] index = ConanRevisions.makeLatest(null, REFERENCE, "rev1", FIRST);
+
+    assertThat(ConanRevisions.makeLatest(stream(index), REFERENCE, "rev1", SECOND), is(nullValue()));
+  }
+
+  @Test
+  public void olderRevisionMovesToTheTop() throws Exception {
+    byte[] index = ConanRevisions.makeLatest(null, REFERENCE, "rev1", FIRST);
+    index = ConanRevisions.makeLatest(stream(index), REFERENCE, "rev2", FIRST);
+    index = ConanRevisions.makeLatest(stream(index), REFERENCE, "rev1", SECOND);
+
+    assertThat(string(index), is("{\"reference\":\"jsonformoderncpp/2.1.1@vthiery/stable\",\"revisions\":["
+        + "{\"revision\":\"rev1\",\"time\":\"2019-03-19T16:07:59.371Z\"},"
+        + "{\"revision\":\"rev2\",\"time\":\"2019-03-19T15:07:59.371Z\"}]}"));
+  }
+
+  @Test
+  public void emptyIndexHasNoLatest() throws Exception {
+    byte[] index = "{\"reference\":\"jsonformoderncpp/2.1.1@vthiery/stable\",\"revisions\":[]}".getBytes(UTF_8);
+
+    assertThat(ConanRevisions.latest(stream(index)), is(nullValue()));
+    assertThat(ConanRevisions.latestRevision(stream(index)), is(nullValue()));
+  }
+
+  private static ByteArrayInputStream stream(final byte[] bytes) {
+    return new ByteArrayInputStream(bytes);
+  }
+
+  private static String string(final byte[] bytes) {
+    return new String(bytes, UTF_8);
+  }
+}
@@ -0,0 +1,139 @@
+package org.sonatype.repository.conan.internal.metrics;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.repository.conan.internal.metrics.ConanMetrics.RepositoryMetrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.sonatype.repository.conan.internal.AssetKind.CONAN_PACKAGE;
+import static org.sonatype.repository.conan.internal.AssetKind.DOWNLOAD_URL;
+
+public class ConanMetricsTest
+    extends TestSupport
+{
+  private MetricRegistry registry;
+
+  private ConanMetrics underTest;
+
+  @Before
+  public void setUp() {
+    registry = new MetricRegistry();
+    underTest = new ConanMetrics(registry);
+  }
+
+  @Test
+  public void metricsAreRecordedPerRepositoryAndAssetKind() {
+    RepositoryMetrics metrics = underTest.forRepository("conan-proxy");
+
+    metrics.hit(CONAN_PACKAGE);
+    metrics.hit(CONAN_PACKAGE);
+    metrics.miss(DOWNLOAD_URL);
+    metrics.negativeCacheHit(CONAN_PACKAGE);
+    metrics.bytesOut(CONAN_PACKAGE, 1024);
+    metrics.bytesIn(CONAN_PACKAGE, -1);
+    metrics.upstream(DOWNLOAD_URL).stop();
+
+    assertThat(registry.meter("conan.conan-proxy.conan_package.hits").getCount(), is(2L));
+    assertThat(registry.meter("conan.conan-proxy.conan_package.misses").getCount(), is(0L));
+    assertThat(registry.meter("conan.conan-proxy.download_url.misses").getCount(), is(1L));
+    assertThat(registry.meter("conan.conan-proxy.conan_package.negativeCacheHits").getCount(), is(1L));
+    assertThat(registry.meter("conan.conan-proxy.conan_package.bytesOut").getCount(), is(1024L));
+    assertThat(registry.meter("conan.conan-proxy.conan_package.bytesIn").getCount(), is(0L));
+    assertThat(registry.timer("conan.conan-proxy.download_url.upstream").getCount(), is(1L));
+  }
+
+  @Test
+  public void requestsWithoutAssetKindAreIgnored() {
+    RepositoryMetrics metrics = underTest.forRepository("conan-proxy");
+
+    metrics.hit(null);
+    metrics.storeFailure(null);
+
+    assertThat(metrics.upstream(null), is(nullValue()));
+  }
+
+  @Test
+  public void upstreamTokenIsTracked() {
+    RepositoryMetrics metrics = underTest.forRepository("conan-proxy");
+    Gauge<?> age = registry.getGauges().get("conan.conan-proxy.upstreamToken.age");
+
+    assertThat(age.getValue(), is(-1L));
+    metrics.tokenRefreshed();
+    assertThat(age.getValue(), is(0L));
+    metrics.tokenFailed();
+
+    assertThat(age.getValue(), is(-1L));
+    assertThat(registry.meter("conan.conan-proxy.upstreamToken.refreshes").getCount(), is(1L));
+    assertThat(registry.meter("conan.conan-proxy.upstreamToken.failures").getCount(), is(1L));
+  }
+
+  @Test
+  public void upstreamTokenAgeIsReplacedWhenRegisteredAgain() {
+    underTest.forRepository("conan-proxy").tokenRefreshed();
+
+    new ConanMetrics(registry).forRepository("conan-proxy");
+
+    assertThat(registry.getGauges().get("conan.conan-proxy.upstreamToken.age").getValue(), is(-1L));
+  }
+
+  @Test
+  public void upstreamQueueIsTracked() {
+    ConanMetrics.LaneMetrics lane = underTest.forRepository("conan-proxy").upstreamLane("archives");
+    Gauge<?> depth = registry.getGauges().get("conan.conan-proxy.upstreamQueue.archives.depth");
+
+    lane.queued();
+    lane.queued();
+    assertThat(depth.getValue(), is(2));
+    lane.left(1000, true);
+    lane.left(2000, false);
+    lane.rejected();
+
+    assertThat(depth.getValue(), is(0));
+    assertThat(underTest.forRepository("conan-proxy").upstreamLane("archives"), is(lane));
+    assertThat(registry.timer("conan.conan-proxy.upstreamQueue.archives.wait").getCount(), is(2L));
+    assertThat(registry.meter("conan.conan-proxy.upstreamQueue.archives.rejections").getCount(), is(2L));
+  }
+
+  @Test
+  public void upstreamQueueDepthIsReplacedWhenRegisteredAgain() {
+    underTest.forRepository("conan-proxy").upstreamLane("archives").queued();
+
+    new ConanMetrics(registry).forRepository("conan-proxy").upstreamLane("archives");
+
+    assertThat(registry.getGauges().get("conan.conan-proxy.upstreamQueue.archives.depth").getValue(), is(0));
+  }
+
+  @Test
+  public void removingARepositoryUnregistersOnlyItsMetrics() {
+    underTest.forRepository("conan-proxy").hit(CONAN_PACKAGE);
+    underTest.forRepository("conan-proxy-mirror").hit(CONAN_PACKAGE);
+
+    underTest.remove("conan-proxy");
+
+    assertThat(registry.getNames().stream().filter(name -> name.startsWith("conan.conan-proxy.")).count(), is(0L));
+    assertThat(registry.getNames(), not(empty()));
+    assertThat(underTest.forRepository("conan-proxy-mirror"), is(underTest.forRepository("conan-proxy-mirror")));
+  }
+
+  @Test
+  public void removingARepositoryKeepsThoseItsNameIsAPrefixOf() {
+    underTest.forRepository("conan").upstreamLane("archives");
+    underTest.forRepository("conan.center").hit(CONAN_PACKAGE);
+
+    underTest.remove("conan");
+
+    assertThat(registry.getNames().contains("conan.conan.conan_package.hits"), is(false));
+    assertThat(registry.getNames().contains("conan.conan.upstreamToken.age"), is(false));
+    assertThat(registry.getNames().contains("conan.conan.upstreamQueue.archives.depth"), is(false));
+    assertThat(registry.meter("conan.conan.center.conan_package.hits").getCount(), is(1L));
+    assertThat(registry.getGauges().containsKey("conan.conan.center.upstreamToken.age"), is(true));
+  }
+}
@@ -0,0 +1,65 @@
+package org.sonatype.repository.conan.internal.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace.Stage;
+import org.sonatype.repository.conan.internal.metrics.RequestTrace.Timing;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class RequestTraceTest
+    extends TestSupport
+{
+  @Test
+  public void stagesAreTimedWhileBound() throws Exception {
+    RequestTrace trace = new RequestTrace();
+    RequestTrace previous = trace.bind();
+    try {
+      try (Timing ignored = RequestTrace.time(Stage.UPSTREAM)) {
+        Thread.sleep(20);
+      }
+    }
+    finally {
+      RequestTrace.restore(previous);
+    }
+
+    try (Timing ignored = RequestTrace.time(Stage.QUERY)) {
+      Thread.sleep(20);
+    }
+
+    assertThat(trace.getStageMillis(Stage.UPSTREAM) >= 20, is(true));
+    assertThat(trace.getStageMillis(Stage.QUERY), is(0L));
+  }
+
+  @Test
+  public void breakdownListsOnlyStagesWhichTookTime() {
+    RequestTrace trace = new RequestTrace();
+    trace.add(Stage.QUERY, TimeUnit.MILLISECONDS.toNanos(12));
+    trace.add(Stage.WRITE, TimeUnit.MILLISECONDS.toNanos(31));
+    trace.finish();
+
+    String breakdown = trace.toString();
+
+    assertThat(breakdown, containsString("query=12ms"));
+    assertThat(breakdown, containsString("write=31ms"));
+    assertThat(breakdown, not(containsString("upstream")));
+  }
+
+  @Test
+  public void totalIsFixedOnceFinished() throws Exception {
+    RequestTrace trace = new RequestTrace();
+    trace.finish();
+    long total = trace.getTotalMillis();
+
+    Thread.sleep(20);
+    trace.finish();
+
+    assertThat(trace.getTotalMillis(), is(total));
+  }
+}
@@ -0,0 +1,99 @@
+package org.sonatype.repository.conan.internal.proxy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.repository.conan.internal.proxy.CircuitBreaker.State;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class CircuitBreakerTest
+    extends TestSupport
+{
+  private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+
+  @Test
+  public void opensAfterFailuresInARow() {
+    CircuitBreaker underTest = new CircuitBreaker("remote", 2, 0, HOUR, 1);
+
+    call(underTest).failed();
+    call(underTest).succeeded(0);
+    call(underTest).failed();
+    assertThat(underTest.getState(), is(State.CLOSED));
+    call(underTest).failed();
+
+    assertThat(underTest.getState(), is(State.OPEN));
+    assertThat(underTest.tryAcquire(), is(false));
+  }
+
+  @Test
+  public void slowCallsCountAsFailures() {
+    CircuitBreaker underTest = new CircuitBreaker("remote", 2, 100, HOUR, 1);
+
+    call(underTest).succeeded(100);
+    assertThat(underTest.getState(), is(State.CLOSED));
+    call(underTest).succeeded(101);
+    call(underTest).succeeded(101);
+
+    assertThat(underTest.getState(), is(State.OPEN));
+  }
+
+  @Test
+  public void lateSuccessLeavesTheBreakerOpen() {
+    CircuitBreaker underTest = new CircuitBreaker("remote", 1, 0, HOUR, 1);
+    CircuitBreaker late = call(underTest);
+
+    call(underTest).failed();
+    late.succeeded(0);
+
+    assertThat(underTest.getState(), is(State.OPEN));
+    assertThat(underTest.tryAcquire(), is(false));
+  }
+
+  @Test
+  public void halfOpenLetsTrialsThroughAndClosesWhenOneSucceeds() {
+    CircuitBreaker underTest = new CircuitBreaker("remote", 1, 0, 0, 1);
+    call(underTest).failed();
+
+    assertThat(underTest.tryAcquire(), is(true));
+    assertThat(underTest.getState(), is(State.HALF_OPEN));
+    assertThat(underTest.tryAcquire(), is(false));
+    underTest.succeeded(0);
+
+    assertThat(underTest.getState(), is(State.CLOSED));
+    assertThat(underTest.tryAcquire(), is(true));
+  }
+
+  @Test
+  public void failedTrialOpensAgain() {
+    CircuitBreaker underTest = new CircuitBreaker("remote", 3, 0, 0, 1);
+    for (int i = 0; i < 3; i++) {
+      call(underTest).failed();
+    }
+
+    call(underTest).failed();
+
+    assertThat(underTest.getState(), is(State.OPEN));
+  }
+
+  @Test
+  public void releasedTrialLetsAnotherThrough() {
+    CircuitBreaker underTest = new CircuitBreaker("remote", 1, 0, 0, 1);
+    call(underTest).failed();
+
+    assertThat(underTest.tryAcquire(), is(true));
+    assertThat(underTest.tryAcquire(), is(false));
+    underTest.released();
+
+    assertThat(underTest.tryAcquire(), is(true));
+    assertThat(underTest.getState(), is(State.HALF_OPEN));
+  }
+
+  private static CircuitBreaker call(final CircuitBreaker breaker) {
+    assertThat(breaker.tryAcquire(), is(true));
+    return breaker;
+  }
+}
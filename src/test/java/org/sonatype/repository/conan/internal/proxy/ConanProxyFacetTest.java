@@ -0,0 +1,431 @@
+package org.sonatype.repository.conan.internal.proxy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobMetrics;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.repository.config.ConfigurationFacet;
+import org.sonatype.nexus.repository.http.HttpResponses;
+import org.sonatype.nexus.repository.httpclient.HttpClientFacet;
+import org.sonatype.nexus.repository.httpclient.RemoteConnectionStatus;
+import org.sonatype.nexus.repository.proxy.ProxyFacetSupport;
+import org.sonatype.nexus.repository.storage.StorageFacet;
+import org.sonatype.nexus.repository.storage.TempBlob;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Payload;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+import org.sonatype.nexus.repository.view.payloads.StringPayload;
+import org.sonatype.repository.conan.internal.AssetKind;
+import org.sonatype.repository.conan.internal.metadata.ConanCoords;
+import org.sonatype.repository.conan.internal.metadata.ConanHashVerifier;
+import org.sonatype.repository.conan.internal.metadata.ConanMetadataCache;
+import org.sonatype.repository.conan.internal.metadata.ConanUrlIndexer;
+import org.sonatype.repository.conan.internal.metrics.ConanMetrics;
+import org.sonatype.repository.conan.internal.utils.ConanHashing;
+
+import com.codahale.metrics.Timer;
+import com.google.common.io.ByteStreams;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonatype.nexus.repository.http.HttpMethods.GET;
+import static org.sonatype.nexus.repository.http.HttpStatus.NOT_FOUND;
+import static org.sonatype.nexus.repository.http.HttpStatus.OK;
+import static org.sonatype.nexus.repository.httpclient.RemoteConnectionStatusType.BLOCKED;
+import static org.sonatype.nexus.repository.httpclient.RemoteConnectionStatusType.READY;
+import static org.sonatype.nexus.repository.view.ContentTypes.APPLICATION_JSON;
+import static org.sonatype.repository.conan.internal.AssetKind.CONAN_PACKAGE;
+import static org.sonatype.repository.conan.internal.ServerCapabilitiesHandler.SERVER_CAPABILITIES;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.DIGEST;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.GROUP;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.PROJECT;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.STATE;
+import static org.sonatype.repository.conan.internal.metadata.ConanMetadata.VERSION;
+
+public class ConanProxyFacetTest
+    extends TestSupport
+{
+  private static final String PING = "http://remote/v1/ping";
+
+  private static final String SEARCH = "http://remote/v1/conans/search?q=zlib";
+
+  private static final String RESULTS = "{\"results\":[\"zlib/1.2.11@conan/stable\"]}";
+
+  private static final String STORED = "{\"results\":[\"zlib/1.2.11@internal/stable\"]}";
+
+  private static final String PACKAGE = "/v2/conans/zlib/1.2.11/conan/stable/packages/abc/conan_package.tgz";
+
+  @Mock
+  private Repository repository;
+
+  @Mock
+  private HttpClientFacet httpClientFacet;
+
+  @Mock
+  private ConfigurationFacet configurationFacet;
+
+  @Mock
+  private ConanHashing conanHashing;
+
+  @Mock
+  private ConanMetrics conanMetrics;
+
+  @Mock
+  private ConanMetrics.RepositoryMetrics repositoryMetrics;
+
+  @Mock
+  private ConanMetrics.LaneMetrics laneMetrics;
+
+  private final List<String> sent = new CopyOnWriteArrayList<>();
+
+  private final List<Object> answers = new CopyOnWriteArrayList<>();
+
+  @Before
+  public void setUp() {
+    when(repository.getName()).thenReturn("conan-proxy");
+    when(repository.facet(HttpClientFacet.class)).thenReturn(httpClientFacet);
+    when(httpClientFacet.getStatus()).thenReturn(new RemoteConnectionStatus(READY));
+  }
+
+  @Test
+  public void pingForwardsTheCapabilitiesOfTheRemote() throws Exception {
+    ConanProxyFacet underTest = facet(300, 30);
+    answers.add(ping("revisions"));
+
+    assertThat(underTest.ping(context("/v1/ping")).getHeaders().get(SERVER_CAPABILITIES), is("revisions"));
+    assertThat(underTest.ping(context("/v2/ping")).getHeaders().get(SERVER_CAPABILITIES), is("revisions"));
+    assertThat(sent, contains(PING));
+  }
+
+  @Test
+  public void pingAdvertisesNothingTheRemoteDoesNot() throws Exception {
+    ConanProxyFacet underTest = facet(300, 30);
+    answers.add(ping(null));
+
+    Response response = underTest.ping(context("/v1/ping"));
+
+    assertThat(response.getStatus().isSuccessful(), is(true));
+    assertThat(response.getHeaders().get(SERVER_CAPABILITIES), is(nullValue()));
+  }
+
+  @Test
+  public void pingKeepsTheLastCapabilitiesWhileTheRemoteFails() throws Exception {
+    ConanProxyFacet underTest = facet(0, 0);
+    answers.add(new IOException("connection refused"));
+    answers.add(ping("revisions"));
+    answers.add(new BasicHttpResponse(HttpVersion.HTTP_1_1, 502, "Bad Gateway"));
+
+    assertThat(underTest.ping(context("/v1/ping")).getHeaders().get(SERVER_CAPABILITIES), is(nullValue()));
+    assertThat(underTest.ping(context("/v1/ping")).getHeaders().get(SERVER_CAPABILITIES), is("revisions"));
+    assertThat(underTest.ping(context("/v1/ping")).getHeaders().get(SERVER_CAPABILITIES), is("revisions"));
+    assertThat(sent, contains(PING, PING, PING));
+  }
+
+  @Test
+  public void failedPingIsNotRetriedBeforeItsOwnExpiry() throws Exception {
+    ConanProxyFacet underTest = facet(0, 300);
+    answers.add(ping("revisions"));
+    answers.add(new IOException("connection refused"));
+
+    assertThat(underTest.ping(context("/v1/ping")).getHeaders().get(SERVER_CAPABILITIES), is("revisions"));
+    assertThat(underTest.ping(context("/v1/ping")).getHeaders().get(SERVER_CAPABILITIES), is("revisions"));
+    assertThat(underTest.ping(context("/v1/ping")).getHeaders().get(SERVER_CAPABILITIES), is("revisions"));
+    assertThat(sent, contains(PING, PING));
+  }
+
+  @Test
+  public void searchIsAnsweredFromTheCacheWhileFresh() throws Exception {
+    ConanProxyFacet underTest = facet(300, 300, 300);
+    answers.add(found(RESULTS));
+
+    assertThat(body(underTest.search(search())), is(RESULTS));
+    assertThat(body(underTest.search(search())), is(RESULTS));
+    assertThat(sent, contains(SEARCH));
+  }
+
+  @Test
+  public void notFoundSearchIsCachedForItsOwnMaxAge() throws Exception {
+    ConanProxyFacet underTest = facet(300, 0, 300);
+    answers.add(new BasicHttpResponse(HttpVersion.HTTP_1_1, NOT_FOUND, "Not Found"));
+    answers.add(found(RESULTS));
+
+    assertThat(underTest.search(search()).getStatus().getCode(), is(NOT_FOUND));
+    assertThat(body(underTest.search(search())), is(RESULTS));
+    assertThat(body(underTest.search(search())), is(RESULTS));
+    assertThat(sent, contains(SEARCH, SEARCH));
+  }
+
+  @Test
+  public void staleSearchIsServedWhenTheRemoteFails() throws Exception {
+    ConanProxyFacet underTest = facet(0, 0, 300);
+    answers.add(found(RESULTS));
+    answers.add(new IOException("connection refused"));
+    answers.add(new BasicHttpResponse(HttpVersion.HTTP_1_1, 502, "Bad Gateway"));
+
+    assertThat(body(underTest.search(search())), is(RESULTS));
+    assertThat(body(underTest.search(search())), is(RESULTS));
+    assertThat(body(underTest.search(search())), is(RESULTS));
+    assertThat(sent, contains(SEARCH, SEARCH, SEARCH));
+  }
+
+  @Test
+  public void searchFallsBackToStoredRecipesWithoutAResponse() throws Exception {
+    ConanProxyFacet underTest = facet(300, 300, 300);
+    answers.add(new IOException("connection refused"));
+
+    assertThat(body(underTest.search(search())), is(STORED));
+    assertThat(sent, contains(SEARCH));
+  }
+
+  @Test
+  public void blockedRemoteIsNotSearched() throws Exception {
+    ConanProxyFacet underTest = facet(300, 300, 300);
+    when(httpClientFacet.getStatus()).thenReturn(new RemoteConnectionStatus(BLOCKED));
+
+    assertThat(body(underTest.search(search())), is(STORED));
+    assertThat(sent, is(empty()));
+  }
+
+  @Test
+  public void fetchKeepsItsSlotUntilTheBodyIsStored() throws Exception {
+    ConanProxyFacet underTest = started(facet(300, 30));
+    answers.add(found("first"));
+    answers.add(found("second"));
+    CountDownLatch storing = new CountDownLatch(1);
+    CountDownLatch stored = new CountDownLatch(1);
+    when(conanHashing.createTempBlob(any(StorageFacet.class), any(Payload.class))).thenAnswer(invocation -> {
+      storing.countDown();
+      stored.await(5, SECONDS);
+      return tempBlob((Payload) invocation.getArguments()[1]);
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Content> first = executor.submit(() -> underTest.get(archive()));
+      assertThat(storing.await(5, SECONDS), is(true));
+      Future<Content> second = executor.submit(() -> underTest.get(archive()));
+      verify(laneMetrics, timeout(5000)).queued();
+      assertThat(sent, contains("http://remote" + PACKAGE));
+
+      stored.countDown();
+      assertThat(first.get(5, SECONDS), is(notNullValue()));
+      assertThat(second.get(5, SECONDS), is(notNullValue()));
+      assertThat(sent, contains("http://remote" + PACKAGE, "http://remote" + PACKAGE));
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void upstreamIsMeasuredUntilTheBodyIsStored() throws Exception {
+    ConanProxyFacet underTest = started(facet(300, 30));
+    HttpResponse chunked = new BasicHttpResponse(HttpVersion.HTTP_1_1, OK, "OK");
+    chunked.setEntity(new InputStreamEntity(new ByteArrayInputStream(new byte[42]), -1));
+    answers.add(chunked);
+    Timer.Context timer = mock(Timer.Context.class);
+    when(repositoryMetrics.upstream(CONAN_PACKAGE)).thenReturn(timer);
+    when(conanHashing.createTempBlob(any(StorageFacet.class), any(Payload.class))).thenAnswer(invocation -> {
+      verify(timer, never()).stop();
+      return tempBlob((Payload) invocation.getArguments()[1]);
+    });
+
+    assertThat(underTest.get(archive()), is(notNullValue()));
+
+    verify(timer).stop();
+    verify(repositoryMetrics).bytesIn(CONAN_PACKAGE, 42);
+  }
+
+  private ConanProxyFacet facet(final int capabilitiesMaxAge, final int capabilitiesRetry) throws Exception {
+    return facet(60, 30, capabilitiesMaxAge, capabilitiesRetry);
+  }
+
+  private ConanProxyFacet facet(final int searchMaxAge,
+                                final int searchNotFoundMaxAge,
+                                final int capabilitiesMaxAge) throws Exception
+  {
+    return facet(searchMaxAge, searchNotFoundMaxAge, capabilitiesMaxAge, 30);
+  }
+
+  private ConanProxyFacet facet(final int searchMaxAge,
+                                final int searchNotFoundMaxAge,
+                                final int capabilitiesMaxAge,
+                                final int capabilitiesRetry) throws Exception
+  {
+    ConanProxyFacet facet = new ConanProxyFacet(mock(ConanUrlIndexer.class), mock(ConanHashVerifier.class),
+        conanHashing, conanMetrics, mock(ConanMetadataCache.class), searchMaxAge,
+        searchNotFoundMaxAge, 1000, capabilitiesMaxAge, capabilitiesRetry, false, 300, 1, 20, 60, 5, 20000, 30, 1)
+    {
+      @Override
+      public URI getRemoteUrl() {
+        return URI.create("http://remote/");
+      }
+
+      @Override
+      protected HttpResponse execute(final Context context, final HttpClient client, final HttpRequestBase request)
+          throws IOException
+      {
+        sent.add(request.getURI().toString());
+        Object answer = answers.remove(0);
+        if (answer instanceof IOException) {
+          throw (IOException) answer;
+        }
+        return (HttpResponse) answer;
+      }
+
+      @Override
+      protected Response searchStored(final Context context) {
+        return HttpResponses.ok(new StringPayload(STORED, APPLICATION_JSON));
+      }
+
+      @Override
+      protected Content getCachedContent(final Context context) {
+        return null;
+      }
+
+      @Override
+      protected Content doPutPackage(final TempBlob tempBlob,
+                                     final Payload content,
+                                     final ConanCoords coords,
+                                     final String assetPath)
+      {
+        return new Content(new StringPayload(assetPath, "application/gzip"));
+      }
+    };
+    facet.attach(repository);
+    return facet;
+  }
+
+  /**
+   * Configures and starts {@code facet} for fetching, one fetch at a time
+   */
+  private ConanProxyFacet started(final ConanProxyFacet facet) throws Exception {
+    ProxyFacetSupport.Config proxyConfig = new ProxyFacetSupport.Config();
+    proxyConfig.remoteUrl = URI.create("http://remote/");
+    proxyConfig.contentMaxAge = 1440;
+    proxyConfig.metadataMaxAge = 1440;
+    ConanProxyFacet.Config config = new ConanProxyFacet.Config();
+    config.maxConcurrentFetches = 1;
+    when(repository.facet(ConfigurationFacet.class)).thenReturn(configurationFacet);
+    when(configurationFacet.readSection(any(Configuration.class), eq("proxy"), eq(ProxyFacetSupport.Config.class)))
+        .thenReturn(proxyConfig);
+    when(configurationFacet.readSection(any(Configuration.class), eq("conan"), eq(ConanProxyFacet.Config.class)))
+        .thenReturn(config);
+    when(conanMetrics.forRepository("conan-proxy")).thenReturn(repositoryMetrics);
+    when(repositoryMetrics.upstreamLane(any(String.class))).thenReturn(laneMetrics);
+
+    facet.doConfigure(mock(Configuration.class));
+    facet.doStart();
+    return facet;
+  }
+
+  /**
+   * @return a temp blob of the body of {@code payload}, which is read to its end like storing it would
+   */
+  private static TempBlob tempBlob(final Payload payload) throws IOException {
+    long size;
+    try (InputStream in = payload.openInputStream()) {
+      size = ByteStreams.toByteArray(in).length;
+    }
+    Blob blob = mock(Blob.class);
+    when(blob.getMetrics()).thenReturn(new BlobMetrics(DateTime.now(), "sha1", size));
+    TempBlob tempBlob = mock(TempBlob.class);
+    when(tempBlob.getBlob()).thenReturn(blob);
+    return tempBlob;
+  }
+
+  private Context archive() {
+    Map<String, String> tokens = new HashMap<>();
+    tokens.put(GROUP, "conan");
+    tokens.put(PROJECT, "zlib");
+    tokens.put(VERSION, "1.2.11");
+    tokens.put(STATE, "stable");
+    tokens.put(DIGEST, "abc");
+    Context context = new Context(repository, new Request.Builder().action(GET).path(PACKAGE).build());
+    context.getAttributes().set(AssetKind.class, CONAN_PACKAGE);
+    context.getAttributes().set(TokenMatcher.State.class, new TokenMatcher.State()
+    {
+      @Override
+      public String pattern() {
+        return PACKAGE;
+      }
+
+      @Override
+      public Map<String, String> getTokens() {
+        return tokens;
+      }
+    });
+    return context;
+  }
+
+  private Context context(final String path) {
+    return new Context(repository, new Request.Builder().action(GET).path(path).build());
+  }
+
+  private Context search() {
+    return new Context(repository,
+        new Request.Builder().action(GET).path("/v1/conans/search").parameter("q", "zlib").build());
+  }
+
+  private static HttpResponse found(final String body) {
+    HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, OK, "OK");
+    response.setEntity(new StringEntity(body, UTF_8));
+    return response;
+  }
+
+  private static String body(final Response response) throws IOException {
+    assertThat(response.getStatus().getCode(), is(OK));
+    try (InputStream in = response.getPayload().openInputStream()) {
+      return new String(ByteStreams.toByteArray(in), UTF_8);
+    }
+  }
+
+  private static HttpResponse ping(final String capabilities) {
+    HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+    if (capabilities != null) {
+      response.addHeader(SERVER_CAPABILITIES, capabilities);
+    }
+    return response;
+  }
+}
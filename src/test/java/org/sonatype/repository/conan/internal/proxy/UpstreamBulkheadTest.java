@@ -0,0 +1,131 @@
+package org.sonatype.repository.conan.internal.proxy;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.repository.conan.internal.metrics.ConanMetrics.LaneMetrics;
+import org.sonatype.repository.conan.internal.proxy.UpstreamBulkhead.Admission;
+import org.sonatype.repository.conan.internal.proxy.UpstreamBulkhead.Lane;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.sonatype.repository.conan.internal.proxy.UpstreamBulkhead.Lane.ARCHIVES;
+import static org.sonatype.repository.conan.internal.proxy.UpstreamBulkhead.Lane.BACKGROUND_ARCHIVES;
+import static org.sonatype.repository.conan.internal.proxy.UpstreamBulkhead.Lane.BACKGROUND_METADATA;
+import static org.sonatype.repository.conan.internal.proxy.UpstreamBulkhead.Lane.METADATA;
+
+public class UpstreamBulkheadTest
+    extends TestSupport
+{
+  private static final long NO_DEADLINE = UpstreamMirrors.NO_DEADLINE;
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  private final Map<Lane, LaneMetrics> metrics = new EnumMap<>(Lane.class);
+
+  @Before
+  public void setUp() {
+    for (Lane lane : Lane.values()) {
+      metrics.put(lane, mock(LaneMetrics.class));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void rejectsFetchesOnceTheQueueIsFull() throws Exception {
+    UpstreamBulkhead underTest = bulkhead(1, 1, 0, 0);
+
+    Admission admission = underTest.admit(METADATA, NO_DEADLINE);
+    assertThat(admission, is(notNullValue()));
+    assertThat(underTest.admit(METADATA, NO_DEADLINE), is(nullValue()));
+    verify(metrics.get(METADATA)).rejected();
+
+    admission.close();
+    admission.close();
+    assertThat(underTest.getActiveFetches(), is(0));
+    assertThat(underTest.admit(ARCHIVES, NO_DEADLINE), is(notNullValue()));
+  }
+
+  @Test
+  public void queuedFetchesTimeOutWithinTheBudget() throws Exception {
+    UpstreamBulkhead underTest = bulkhead(1, 1, 1, 60);
+    underTest.admit(METADATA, NO_DEADLINE);
+
+    long start = System.nanoTime();
+    assertThat(underTest.admit(METADATA, TimeUnit.MILLISECONDS.toNanos(50)), is(nullValue()));
+
+    assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5, is(true));
+    assertThat(underTest.getQueuedFetches(), is(0));
+    verify(metrics.get(METADATA)).queued();
+    verify(metrics.get(METADATA)).left(anyLong(), eq(false));
+  }
+
+  @Test
+  public void freedSlotsGoToTheFirstLaneWaiting() throws Exception {
+    UpstreamBulkhead underTest = bulkhead(1, 1, 10, 60);
+    Admission admission = underTest.admit(METADATA, NO_DEADLINE);
+
+    Future<Admission> background = admitLater(underTest, BACKGROUND_METADATA);
+    awaitQueued(underTest, BACKGROUND_METADATA);
+    Future<Admission> archive = admitLater(underTest, ARCHIVES);
+    awaitQueued(underTest, ARCHIVES);
+    Future<Admission> metadata = admitLater(underTest, METADATA);
+    awaitQueued(underTest, METADATA);
+
+    admission.close();
+    metadata.get(5, TimeUnit.SECONDS).close();
+    archive.get(5, TimeUnit.SECONDS).close();
+    assertThat(background.get(5, TimeUnit.SECONDS), is(notNullValue()));
+    verify(metrics.get(METADATA)).left(anyLong(), eq(true));
+  }
+
+  @Test
+  public void backgroundFetchesLeaveSlotsToInteractiveOnes() throws Exception {
+    UpstreamBulkhead underTest = bulkhead(2, 1, 10, 0);
+
+    assertThat(underTest.admit(BACKGROUND_ARCHIVES, NO_DEADLINE), is(notNullValue()));
+    assertThat(underTest.admit(BACKGROUND_METADATA, NO_DEADLINE), is(nullValue()));
+    assertThat(underTest.admit(ARCHIVES, NO_DEADLINE), is(notNullValue()));
+    assertThat(underTest.getActiveFetches(), is(2));
+  }
+
+  private UpstreamBulkhead bulkhead(final int maxConcurrent,
+                                    final int maxBackground,
+                                    final int maxQueued,
+                                    final int maxWaitSeconds)
+  {
+    return new UpstreamBulkhead(maxConcurrent, maxBackground, maxQueued, maxWaitSeconds, TimeUnit.SECONDS,
+        metrics::get);
+  }
+
+  private Future<Admission> admitLater(final UpstreamBulkhead underTest, final Lane lane) {
+    return executor.submit(() -> underTest.admit(lane, NO_DEADLINE));
+  }
+
+  private static void awaitQueued(final UpstreamBulkhead underTest, final Lane lane) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (underTest.getQueuedFetches(lane) == 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(underTest.getQueuedFetches(lane), is(1));
+  }
+}
@@ -0,0 +1,223 @@
+package org.sonatype.repository.conan.internal.proxy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.repository.proxy.ProxyServiceException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class UpstreamMirrorsTest
+    extends TestSupport
+{
+  private static final List<URI> URLS = Arrays.asList(
+      URI.create("http://primary/"), URI.create("http://mirror-a"), URI.create("http://mirror-b/"));
+
+  private final List<String> sent = new CopyOnWriteArrayList<>();
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private ExecutorService executor;
+
+  private ScheduledExecutorService scheduler;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newCachedThreadPool();
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void failsOverOnErrorsAndServerFailures() throws Exception {
+    UpstreamMirrors underTest = mirrors(URLS, 0);
+
+    HttpResponse response = underTest.execute(new HttpGet("http://primary/v1/conans/a/download_urls"),
+        (request, primary) -> {
+          String url = request.getURI().toString();
+          sent.add(url + (primary ? " primary" : ""));
+          if (url.startsWith("http://primary/")) {
+            throw new IOException("connection refused");
+          }
+          return response(url.startsWith("http://mirror-a/") ? 503 : 200);
+        }, UpstreamMirrors.NO_DEADLINE);
+
+    assertThat(response.getStatusLine().getStatusCode(), is(200));
+    assertThat(sent, contains(
+        "http://primary/v1/conans/a/download_urls primary",
+        "http://mirror-a/v1/conans/a/download_urls",
+        "http://mirror-b/v1/conans/a/download_urls"));
+    assertThat(urls(underTest.rank()), contains("http://mirror-b/", "http://primary/", "http://mirror-a/"));
+  }
+
+  @Test
+  public void answersWithTheLastFailureWhenAllMirrorsFail() throws Exception {
+    UpstreamMirrors underTest = mirrors(URLS, 0);
+
+    HttpResponse response = underTest.execute(new HttpGet("http://primary/v1/conans/a/download_urls"),
+        (request, primary) -> response(502), UpstreamMirrors.NO_DEADLINE);
+
+    assertThat(response.getStatusLine().getStatusCode(), is(502));
+  }
+
+  @Test
+  public void hedgesToTheNextMirrorWhenTheFirstIsSlow() throws Exception {
+    UpstreamMirrors underTest = mirrors(URLS.subList(0, 2), 90);
+    for (int i = 0; i < UpstreamMirrors.MIN_SAMPLES; i++) {
+      underTest.execute(new HttpGet("http://primary/warm"), (request, primary) -> response(200),
+          UpstreamMirrors.NO_DEADLINE);
+    }
+
+    long start = System.nanoTime();
+    HttpResponse response = underTest.execute(new HttpGet("http://primary/v1/conans/a/download_urls"),
+        (request, primary) -> {
+          sent.add(request.getURI().toString());
+          if (primary) {
+            awaitRelease();
+            return response(500);
+          }
+          return response(200);
+        }, UpstreamMirrors.NO_DEADLINE);
+
+    assertThat(response.getStatusLine().getStatusCode(), is(200));
+    assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5, is(true));
+    assertThat(sent, contains(
+        "http://primary/v1/conans/a/download_urls",
+        "http://mirror-a/v1/conans/a/download_urls"));
+  }
+
+  @Test
+  public void sendsOtherRequestsAsTheyAre() throws Exception {
+    UpstreamMirrors underTest = mirrors(URLS, 0);
+    UpstreamMirrors.Sender sender = (request, primary) -> {
+      sent.add(request.getMethod() + " " + request.getURI() + (primary ? " primary" : ""));
+      return response(500);
+    };
+
+    underTest.execute(new HttpPost("http://primary/v1/users/authenticate"), sender, UpstreamMirrors.NO_DEADLINE);
+    underTest.execute(new HttpGet("https://cdn/files/conan_package.tgz"), sender, UpstreamMirrors.NO_DEADLINE);
+
+    assertThat(sent, contains(
+        "POST http://primary/v1/users/authenticate primary",
+        "GET https://cdn/files/conan_package.tgz"));
+  }
+
+  @Test
+  public void skipsMirrorsWhoseBreakerIsOpenAndFailsFastWhenAllAre() throws Exception {
+    UpstreamMirrors underTest = mirrors(URLS.subList(0, 2), 0);
+    AtomicInteger calls = new AtomicInteger();
+    UpstreamMirrors.Sender sender = (request, primary) -> {
+      calls.incrementAndGet();
+      sent.add(request.getURI().toString());
+      if (primary) {
+        throw new IOException("connection refused");
+      }
+      return response(502);
+    };
+
+    for (int i = 0; i < 2; i++) {
+      underTest.execute(new HttpGet("http://primary/v1/conans/a/download_urls"), sender, UpstreamMirrors.NO_DEADLINE);
+    }
+    assertThat(underTest.breaker(0).getState(), is(CircuitBreaker.State.OPEN));
+    assertThat(underTest.breaker(1).getState(), is(CircuitBreaker.State.OPEN));
+    assertThat(calls.get(), is(4));
+
+    try {
+      underTest.execute(new HttpGet("http://primary/v1/conans/a/download_urls"), sender, UpstreamMirrors.NO_DEADLINE);
+      fail();
+    }
+    catch (ProxyServiceException e) {
+      assertThat(e.getHttpResponse().getStatusLine().getStatusCode(), is(503));
+    }
+    assertThat(calls.get(), is(4));
+  }
+
+  @Test
+  public void abortsCallsWhenTheBudgetRunsOut() throws Exception {
+    UpstreamMirrors underTest = mirrors(URLS.subList(0, 1), 0);
+
+    long start = System.nanoTime();
+    try {
+      underTest.execute(new HttpGet("http://primary/v1/conans/a/download_urls"), (request, primary) -> {
+        while (!request.isAborted()) {
+          sleep();
+        }
+        throw new IOException("aborted");
+      }, TimeUnit.MILLISECONDS.toNanos(100));
+      fail();
+    }
+    catch (ProxyServiceException e) {
+      assertThat(e.getHttpResponse().getStatusLine().getStatusCode(), is(504));
+    }
+    assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5, is(true));
+
+    try {
+      underTest.execute(new HttpGet("http://primary/v1/conans/a/download_urls"),
+          (request, primary) -> response(200), 0);
+      fail();
+    }
+    catch (ProxyServiceException e) {
+      assertThat(e.getHttpResponse().getStatusLine().getStatusCode(), is(504));
+    }
+  }
+
+  private UpstreamMirrors mirrors(final List<URI> urls, final double hedgePercentile) {
+    return new UpstreamMirrors(urls, hedgePercentile, 0, executor, scheduler,
+        url -> new CircuitBreaker(url, 2, 0, TimeUnit.MINUTES.toNanos(1), 1));
+  }
+
+  private static void sleep() throws IOException {
+    try {
+      Thread.sleep(10);
+    }
+    catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void awaitRelease() throws IOException {
+    try {
+      release.await(10, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static HttpResponse response(final int status) {
+    return new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "");
+  }
+
+  private static List<String> urls(final List<UpstreamMirrors.Mirror> mirrors) {
+    return mirrors.stream().map(mirror -> mirror.url).collect(Collectors.toList());
+  }
+}
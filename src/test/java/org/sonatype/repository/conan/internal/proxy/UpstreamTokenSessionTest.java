@@ -0,0 +1,118 @@
+package org.sonatype.repository.conan.internal.proxy;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.repository.conan.internal.metrics.ConanMetrics.RepositoryMetrics;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UpstreamTokenSessionTest
+    extends TestSupport
+{
+  private static final String AUTHENTICATE = "http://remote/v1/users/authenticate";
+
+  @Mock
+  private HttpClient httpClient;
+
+  @Mock
+  private RepositoryMetrics metrics;
+
+  private final List<String> sent = new ArrayList<>();
+
+  private final List<String> tokens = new ArrayList<>();
+
+  private String validToken;
+
+  private UpstreamTokenSession underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    when(httpClient.execute(any(HttpUriRequest.class))).thenAnswer(invocation -> {
+      HttpUriRequest request = (HttpUriRequest) invocation.getArguments()[0];
+      String authorization = request.containsHeader(HttpHeaders.AUTHORIZATION) ?
+          request.getFirstHeader(HttpHeaders.AUTHORIZATION).getValue() : null;
+      sent.add(request.getURI() + " " + authorization);
+      if (request.getURI().toString().equals(AUTHENTICATE)) {
+        if (tokens.isEmpty()) {
+          return new BasicHttpResponse(HttpVersion.HTTP_1_1, 500, "Error");
+        }
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        validToken = tokens.remove(0);
+        response.setEntity(new StringEntity(validToken + "\n"));
+        return response;
+      }
+      boolean valid = authorization == null || authorization.equals("Bearer " + validToken);
+      return new BasicHttpResponse(HttpVersion.HTTP_1_1, valid ? 200 : 401, valid ? "OK" : "Unauthorized");
+    });
+    underTest = new UpstreamTokenSession(URI.create("http://remote/"), new BasicHeader(HttpHeaders.AUTHORIZATION,
+        "Basic dXNlcjpwYXNz"), metrics, 60_000_000_000L);
+  }
+
+  @Test
+  public void logsInOnceForAllRequests() throws Exception {
+    tokens.add("token-1");
+
+    underTest.execute(httpClient, new HttpGet("http://remote/v1/conans/a"));
+    underTest.execute(httpClient, new HttpGet("http://remote/v1/conans/b"));
+
+    assertThat(sent, contains(
+        AUTHENTICATE + " Basic dXNlcjpwYXNz",
+        "http://remote/v1/conans/a Bearer token-1",
+        "http://remote/v1/conans/b Bearer token-1"));
+    verify(metrics).tokenRefreshed();
+  }
+
+  @Test
+  public void rejectedTokenIsRefreshedOnce() throws Exception {
+    tokens.add("token-1");
+    tokens.add("token-2");
+    underTest.execute(httpClient, new HttpGet("http://remote/v1/conans/a"));
+    validToken = "expired";
+
+    HttpResponse response = underTest.execute(httpClient, new HttpGet("http://remote/v1/conans/b"));
+
+    assertThat(response.getStatusLine().getStatusCode(), is(200));
+    assertThat(sent.subList(2, sent.size()), contains(
+        "http://remote/v1/conans/b Bearer token-1",
+        AUTHENTICATE + " Basic dXNlcjpwYXNz",
+        "http://remote/v1/conans/b Bearer token-2"));
+    assertThat(underTest.refresh(httpClient, "token-1"), is("token-2"));
+    verify(metrics, times(2)).tokenRefreshed();
+  }
+
+  @Test
+  public void fallsBackToCredentialsWithoutRetryingLogin() throws Exception {
+    underTest.execute(httpClient, new HttpGet("http://remote/v1/conans/a"));
+    underTest.execute(httpClient, new HttpGet("http://remote/v1/conans/b"));
+
+    assertThat(sent, contains(
+        AUTHENTICATE + " Basic dXNlcjpwYXNz",
+        "http://remote/v1/conans/a null",
+        "http://remote/v1/conans/b null"));
+    assertThat(underTest.token(httpClient), is(nullValue()));
+    verify(metrics).tokenFailed();
+  }
+}
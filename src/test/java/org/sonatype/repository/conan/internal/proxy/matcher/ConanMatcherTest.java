@@ -7,19 +7,19 @@ import org.sonatype.nexus.repository.view.Context;
 import org.sonatype.nexus.repository.view.Handler;
 import org.sonatype.nexus.repository.view.Request;
 import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+import org.sonatype.repository.conan.internal.AssetKind;
 
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mock;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
-@Ignore
 public class ConanMatcherTest
     extends TestSupport
 {
@@ -115,4 +115,55 @@ public class ConanMatcherTest
     assertThat(matcherState.getTokens().get("project"), is(equalTo("jsonformoderncpp")));
     assertThat(matcherState.getTokens().get("version"), is(equalTo("2.1.1")));
   }
+
+  @Test
+  public void canMatchOnRevisionFile() {
+    when(request.getPath()).thenReturn("/v2/conans/jsonformoderncpp/2.1.1/vthiery/stable/revisions/"
+        + "f5fe4ba5a0ad49a2bd4f2a4fd5fbc9c7/files/conanfile.py");
+    assertTrue(underTest.revisionFile(AssetKind.CONAN_FILE).handler(handler).create().getMatcher().matches(context));
+    TokenMatcher.State matcherState = attributesMap.require(TokenMatcher.State.class);
+    assertThat(matcherState.getTokens().get("group"), is(equalTo("vthiery")));
+    assertThat(matcherState.getTokens().get("project"), is(equalTo("jsonformoderncpp")));
+    assertThat(matcherState.getTokens().get("version"), is(equalTo("2.1.1")));
+    assertThat(matcherState.getTokens().get("rrev"), is(equalTo("f5fe4ba5a0ad49a2bd4f2a4fd5fbc9c7")));
+    assertTrue(ConanMatcher.isRevisionPinned(context));
+  }
+
+  @Test
+  public void canMatchOnPackageRevisionFile() {
+    when(request.getPath()).thenReturn("/v2/conans/jsonformoderncpp/2.1.1/vthiery/stable/revisions/"
+        + "f5fe4ba5a0ad49a2bd4f2a4fd5fbc9c7/packages/5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9/revisions/"
+        + "4d8e3bf8bb1b4ee8b4ba1e2f0a7c4f6d/files/conan_package.tgz");
+    assertTrue(underTest.revisionFile(AssetKind.CONAN_PACKAGE).handler(handler).create().getMatcher()
+        .matches(context));
+    TokenMatcher.State matcherState = attributesMap.require(TokenMatcher.State.class);
+    assertThat(matcherState.getTokens().get("sha"), is(equalTo("5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9")));
+    assertThat(matcherState.getTokens().get("prev"), is(equalTo("4d8e3bf8bb1b4ee8b4ba1e2f0a7c4f6d")));
+    assertTrue(ConanMatcher.isRevisionPinned(context));
+  }
+
+  @Test
+  public void latestIsNotRevisionPinned() {
+    when(request.getPath()).thenReturn("/v2/conans/jsonformoderncpp/2.1.1/vthiery/stable/latest");
+    assertTrue(underTest.latest().handler(handler).create().getMatcher().matches(context));
+    assertFalse(ConanMatcher.isRevisionPinned(context));
+  }
+
+  @Test
+  public void packageRevisionsAreNotRevisionPinned() {
+    when(request.getPath()).thenReturn("/v2/conans/jsonformoderncpp/2.1.1/vthiery/stable/revisions/"
+        + "f5fe4ba5a0ad49a2bd4f2a4fd5fbc9c7/packages/5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9/revisions");
+    assertTrue(underTest.revisions().handler(handler).create().getMatcher().matches(context));
+    assertFalse(ConanMatcher.isRevisionPinned(context));
+  }
+
+  @Test
+  public void canMatchOnUserEndpoints() {
+    when(request.getPath()).thenReturn("/v2/users/authenticate");
+    assertTrue(ConanMatcher.authenticate().handler(handler).create().getMatcher().matches(context));
+    assertFalse(ConanMatcher.checkCredentials().handler(handler).create().getMatcher().matches(context));
+
+    when(request.getPath()).thenReturn("/v1/users/check_credentials");
+    assertTrue(ConanMatcher.checkCredentials().handler(handler).create().getMatcher().matches(context));
+  }
 }
@@ -0,0 +1,195 @@
+package org.sonatype.repository.conan.internal.route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Matcher;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Route.Builder;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+import org.sonatype.repository.conan.internal.hosted.ConanHostedRecipe;
+import org.sonatype.repository.conan.internal.proxy.matcher.ConanMatcher;
+import org.sonatype.repository.conan.internal.route.ConanRouteIndex.IndexedMatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConanRouteIndexTest
+    extends TestSupport
+{
+  private static final String SHA = "5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9";
+
+  private static final List<String> ACTIONS = Arrays.asList("GET", "HEAD", "PUT", "POST", "DELETE");
+
+  private static final List<String> RECIPES = Arrays.asList(
+      "/v1/conans/jsonformoderncpp/2.1.1/vthiery/stable",
+      "/vthiery/jsonformoderncpp/2.1.1/stable",
+      "/v1/conans/vthiery/jsonformoderncpp/2.1.1",
+      "/extra/v1/conans/jsonformoderncpp/2.1.1/vthiery/stable",
+      "/v1/conans/json//2.1.1/vthiery/stable",
+      "/v1/conans/jsonformoderncpp/2.1.1/vthiery/",
+      "v1/conans/jsonformoderncpp/2.1.1/vthiery/stable",
+      "/conans/packages/2.1.1/vthiery/stable",
+      "",
+      "/v1");
+
+  private static final List<String> FILES = Arrays.asList(
+      "upload_urls", "download_urls", "digest", "search", "conanmanifest.txt", "conanfile.py", "conaninfo.txt",
+      "conan_package.tgz", "conan_sources.tgz", "conan_export.tgz", "ping", "", "unknown");
+
+  private static final List<String> LITERALS = Arrays.asList(
+      "/v1/ping", "/v1/users/check_credentials", "/v1/users/authenticate", "/v1/conans/search", "/", "",
+      "/v1/ping/", "//v1/ping", "/v1/conans/a/b/c/d\n/download_urls", "/a\n/b/c/d/e/conanfile.py");
+
+  @Mock
+  private Handler handler;
+
+  private List<Matcher> hostedRoutes;
+
+  private List<Matcher> proxyRoutes;
+
+  @Before
+  public void setUp() {
+    ConanRouteIndex routes = new ConanRouteIndex();
+    hostedRoutes = new ArrayList<>();
+    hostedRoutes.add(matcher(ConanHostedRecipe.uploadUrls(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.uploadManifest(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.uploadConanfile(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.uploadConaninfo(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.uploadConanPackageZip(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.uploadConanSources(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.uploadConanExportZip(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.downloadUrls(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.downloadManifest(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.downloadConanfile(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.downloadConaninfo(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.downloadConanTgz(
+        "/v1/conans/{group}/{project}/{version}/{state}/packages/{digest}/conan_package.tgz", routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.downloadConanTgz(
+        "/v1/conans/{group}/{project}/{version}/{state}/conan_sources.tgz", routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.ping(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.checkCredentials(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.authenticate(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.search(routes)));
+    hostedRoutes.add(matcher(ConanHostedRecipe.searchUrl(routes)));
+
+    ConanMatcher conanMatcher = new ConanMatcher();
+    proxyRoutes = new ArrayList<>();
+    proxyRoutes.add(matcher(conanMatcher.downloadUrls()));
+    proxyRoutes.add(matcher(conanMatcher.conanManifest()));
+    proxyRoutes.add(matcher(conanMatcher.conanFile()));
+    proxyRoutes.add(matcher(conanMatcher.conanInfo()));
+    proxyRoutes.add(matcher(conanMatcher.conanPackage()));
+  }
+
+  @Test
+  public void routesLikeSequentialMatching() {
+    List<String> paths = new ArrayList<>(LITERALS);
+    for (String recipe : RECIPES) {
+      for (String file : FILES) {
+        paths.add(recipe + "/" + file);
+        paths.add(recipe + "/packages/" + SHA + "/" + file);
+        paths.add(recipe + "/packages/" + file);
+        paths.add("/prefix" + recipe + "/packages/" + SHA + "/" + file);
+      }
+    }
+
+    for (String action : ACTIONS) {
+      for (String path : paths) {
+        assertSameRoute(hostedRoutes, action, path);
+        assertSameRoute(proxyRoutes, action, path);
+      }
+    }
+  }
+
+  @Test
+  public void matchesPrefixAndSegments() {
+    Context context = context("GET", "/a/b/v1/conans/project/1.0/group/stable/packages/" + SHA + "/download_urls");
+
+    assertThat(route(proxyRoutes, context), is(0));
+    TokenMatcher.State state = context.getAttributes().require(TokenMatcher.State.class);
+    assertThat(state.getTokens().get("path"), is("/a/b/v1/conans"));
+    assertThat(state.getTokens().get("project"), is("project"));
+    assertThat(state.getTokens().get("sha"), is(SHA));
+  }
+
+  @Test
+  public void unindexedPatternsAreMatchedInOrder() {
+    ConanRouteIndex routes = new ConanRouteIndex();
+    Matcher versioned = routes.route(singletonList("GET"), "/{name}/{version:[0-9]+}/file");
+    Matcher any = routes.route(singletonList("GET"), "/{name}/{version}/file");
+
+    Context numbered = context("GET", "/lib/12/file");
+    assertThat(any.matches(numbered), is(false));
+    assertThat(versioned.matches(numbered), is(true));
+
+    Context named = context("GET", "/lib/latest/file");
+    assertThat(versioned.matches(named), is(false));
+    assertThat(any.matches(named), is(true));
+    assertThat(named.getAttributes().require(TokenMatcher.State.class).getTokens().get("version"), is("latest"));
+  }
+
+  private void assertSameRoute(final List<Matcher> routes, final String action, final String path) {
+    Context indexed = context(action, path);
+    Context sequential = context(action, path);
+    String request = action + " " + path;
+
+    int route = route(routes, indexed);
+    assertThat(request, route, is(sequentialRoute(routes, sequential)));
+    if (route < 0) {
+      assertThat(request, indexed.getAttributes().get(TokenMatcher.State.class), is(nullValue()));
+    }
+    else {
+      TokenMatcher.State expected = sequential.getAttributes().require(TokenMatcher.State.class);
+      TokenMatcher.State actual = indexed.getAttributes().require(TokenMatcher.State.class);
+      assertThat(request, actual.pattern(), is(expected.pattern()));
+      assertThat(request, actual.getTokens(), is(expected.getTokens()));
+    }
+  }
+
+  private static int route(final List<Matcher> routes, final Context context) {
+    for (int i = 0; i < routes.size(); i++) {
+      if (routes.get(i).matches(context)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int sequentialRoute(final List<Matcher> routes, final Context context) {
+    for (int i = 0; i < routes.size(); i++) {
+      if (((IndexedMatcher) routes.get(i)).getSequentialMatcher().matches(context)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private Matcher matcher(final Builder builder) {
+    return builder.handler(handler).create().getMatcher();
+  }
+
+  private static Context context(final String action, final String path) {
+    Request request = mock(Request.class);
+    when(request.getAction()).thenReturn(action);
+    when(request.getPath()).thenReturn(path);
+    Context context = mock(Context.class);
+    AttributesMap attributes = new AttributesMap();
+    when(context.getRequest()).thenReturn(request);
+    when(context.getAttributes()).thenReturn(attributes);
+    return context;
+  }
+}
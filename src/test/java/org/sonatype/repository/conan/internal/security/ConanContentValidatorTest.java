@@ -1,11 +1,16 @@
 package org.sonatype.repository.conan.internal.security;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.sonatype.nexus.mime.MimeRulesSource;
 import org.sonatype.nexus.mime.internal.DefaultMimeSupport;
+import org.sonatype.nexus.repository.InvalidContentException;
 import org.sonatype.nexus.repository.storage.DefaultContentValidator;
 
+import com.google.common.base.Supplier;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -44,4 +49,38 @@ public class ConanContentValidatorTest
 
     assertThat(contentType, is("text/x-python"));
   }
+
+  @Test
+  public void shouldNotReadKnownTextFiles() throws IOException {
+    AtomicInteger opened = new AtomicInteger();
+    Supplier<InputStream> content = () -> {
+      opened.incrementAndGet();
+      return new ByteArrayInputStream("{}".getBytes());
+    };
+
+    assertThat(underTest.determineContentType(true, content, MimeRulesSource.NOOP,
+        "group/project/1.0/stable/download_urls", null), is("application/json"));
+    assertThat(underTest.determineContentType(true, content, MimeRulesSource.NOOP,
+        "group/project/1.0/stable/conanmanifest.txt", null), is("text/plain"));
+    assertThat(underTest.determineContentType(true, content, MimeRulesSource.NOOP,
+        "group/project/1.0/stable/packages/1234/conaninfo.txt", "application/octet-stream"), is("text/plain"));
+    assertThat(opened.get(), is(0));
+  }
+
+  @Test
+  public void shouldOnlyCheckArchivesWhenStrict() throws IOException {
+    Supplier<InputStream> gzip = () -> new ByteArrayInputStream(new byte[]{0x1f, (byte) 0x8b, 8, 0});
+
+    assertThat(underTest.determineContentType(true, gzip, MimeRulesSource.NOOP,
+        "group/project/1.0/stable/conan_export.tgz", null), is("application/gzip"));
+    assertThat(underTest.determineContentType(false, () -> new ByteArrayInputStream("text".getBytes()),
+        MimeRulesSource.NOOP, "group/project/1.0/stable/packages/1234/conan_package.tgz", null),
+        is("application/gzip"));
+  }
+
+  @Test(expected = InvalidContentException.class)
+  public void shouldRejectArchiveWhichIsNotGzip() throws IOException {
+    underTest.determineContentType(true, () -> new ByteArrayInputStream("text".getBytes()), MimeRulesSource.NOOP,
+        "group/project/1.0/stable/conan_sources.tgz", null);
+  }
 }
@@ -0,0 +1,74 @@
+package org.sonatype.repository.conan.internal.security.token;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.security.UserPrincipalsExpired;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserUpdatedEvent;
+
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ConanTokenCacheTest
+    extends TestSupport
+{
+  private final PrincipalCollection alice = new SimplePrincipalCollection("alice", "NexusAuthenticatingRealm");
+
+  private final PrincipalCollection bob = new SimplePrincipalCollection("bob", "NexusAuthenticatingRealm");
+
+  private ConanTokenCache underTest;
+
+  @Before
+  public void setUp() {
+    underTest = new ConanTokenCache(100, 300);
+    underTest.putPrincipals("ConanToken.a", alice);
+    underTest.putToken(alice, "ConanToken.a");
+    underTest.putPrincipals("ConanToken.b", bob);
+    underTest.putToken(bob, "ConanToken.b");
+  }
+
+  @Test
+  public void remembersBothDirections() {
+    assertThat(underTest.getPrincipals("ConanToken.a"), is(alice));
+    assertThat(underTest.getToken(new SimplePrincipalCollection("bob", "NexusAuthenticatingRealm")),
+        is("ConanToken.b"));
+    assertThat(underTest.getPrincipals("ConanToken.c"), is(nullValue()));
+  }
+
+  @Test
+  public void userUpdateInvalidatesOnlyThatUser() {
+    User user = new User();
+    user.setUserId("alice");
+    underTest.on(new UserUpdatedEvent(user));
+
+    assertThat(underTest.getPrincipals("ConanToken.a"), is(nullValue()));
+    assertThat(underTest.getToken(alice), is(nullValue()));
+    assertThat(underTest.getPrincipals("ConanToken.b"), is(bob));
+    assertThat(underTest.size(), is(2L));
+  }
+
+  @Test
+  public void expiredPrincipalsInvalidate() {
+    underTest.on(new UserPrincipalsExpired("bob", "default"));
+    assertThat(underTest.getToken(bob), is(nullValue()));
+    assertThat(underTest.size(), is(2L));
+
+    underTest.on(new UserPrincipalsExpired());
+    assertThat(underTest.size(), is(0L));
+  }
+
+  @Test
+  public void disabledWithoutEntries() {
+    underTest = new ConanTokenCache(0, 300);
+    underTest.putPrincipals("ConanToken.a", alice);
+    underTest.putToken(alice, "ConanToken.a");
+
+    assertThat(underTest.getPrincipals("ConanToken.a"), is(nullValue()));
+    assertThat(underTest.getToken(alice), is(nullValue()));
+  }
+}
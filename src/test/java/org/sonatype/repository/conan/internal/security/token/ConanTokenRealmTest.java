@@ -0,0 +1,81 @@
+package org.sonatype.repository.conan.internal.security.token;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.security.UserPrincipalsHelper;
+import org.sonatype.nexus.security.authc.NexusApiKeyAuthenticationToken;
+import org.sonatype.nexus.security.authc.apikey.ApiKeyStore;
+import org.sonatype.nexus.security.user.UserNotFoundException;
+import org.sonatype.nexus.security.user.UserStatus;
+
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConanTokenRealmTest
+    extends TestSupport
+{
+  private static final String TOKEN = "ConanToken.a";
+
+  private final PrincipalCollection alice = new SimplePrincipalCollection("alice", "NexusAuthenticatingRealm");
+
+  @Mock
+  private ApiKeyStore keyStore;
+
+  @Mock
+  private UserPrincipalsHelper principalsHelper;
+
+  private final ConanTokenCache tokenCache = new ConanTokenCache(100, 300);
+
+  private ConanTokenRealm underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    when(keyStore.getPrincipals(eq(ConanToken.NAME), any(char[].class))).thenReturn(alice);
+    when(principalsHelper.getUserStatus(alice)).thenReturn(UserStatus.active);
+    underTest = new ConanTokenRealm(keyStore, principalsHelper, tokenCache);
+  }
+
+  @Test
+  public void cachedTokenAuthenticatesWithoutTheKeyStore() {
+    assertThat(authenticate().getPrincipals(), is(alice));
+    assertThat(authenticate().getPrincipals(), is(alice));
+
+    verify(keyStore).getPrincipals(eq(ConanToken.NAME), any(char[].class));
+  }
+
+  @Test
+  public void cachedTokenOfADisabledUserIsRejected() throws Exception {
+    authenticate();
+    when(principalsHelper.getUserStatus(alice)).thenReturn(UserStatus.disabled);
+
+    assertThat(authenticate(), is(nullValue()));
+    assertThat(tokenCache.getPrincipals(TOKEN), is(nullValue()));
+  }
+
+  @Test
+  public void cachedTokenOfADeletedUserIsLookedUpAgain() throws Exception {
+    authenticate();
+    when(principalsHelper.getUserStatus(alice)).thenThrow(new UserNotFoundException("alice"));
+
+    assertThat(authenticate(), is(nullValue()));
+    verify(keyStore, times(2)).getPrincipals(eq(ConanToken.NAME), any(char[].class));
+    verify(keyStore).deleteApiKeys(alice);
+  }
+
+  private AuthenticationInfo authenticate() {
+    return underTest.doGetAuthenticationInfo(new NexusApiKeyAuthenticationToken(ConanToken.NAME, TOKEN.toCharArray(),
+        null));
+  }
+}
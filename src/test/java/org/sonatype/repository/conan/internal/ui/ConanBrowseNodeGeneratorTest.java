@@ -50,6 +50,19 @@ public class ConanBrowseNodeGeneratorTest
     assertThat(assetPath, contains("vthiery", "jsonformoderncpp", "2.1.1", "stable", "download_urls"));
   }
 
+  @Test
+  public void canComputeRevisionPath() {
+    Asset asset = createAsset("/v2/conans/jsonformoderncpp/2.1.1/vthiery/stable/revisions/"
+        + "b4bbc5f3ce4e43d1b10ea28a8c4b3d5a/packages/5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9/revisions/"
+        + "0c7e5d2b43ed2d1a9c33f2b4c4c02b20/files/conan_package.tgz");
+
+    List<String> assetPath = underTest.computeAssetPath(asset, component);
+
+    assertThat(assetPath, contains("vthiery", "jsonformoderncpp", "2.1.1", "stable", "revisions",
+        "b4bbc5f3ce4e43d1b10ea28a8c4b3d5a", "packages", "5ab84d6acfe1f23c4fae0ab88f26e3a396351ac9", "revisions",
+        "0c7e5d2b43ed2d1a9c33f2b4c4c02b20", "files", "conan_package.tgz"));
+  }
+
   private Asset createAsset(String assetName) {
     Asset asset = mock(Asset.class);
     when(asset.name()).thenReturn(assetName);
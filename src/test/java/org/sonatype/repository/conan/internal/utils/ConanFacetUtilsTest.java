@@ -0,0 +1,87 @@
+package org.sonatype.repository.conan.internal.utils;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobRef;
+import org.sonatype.nexus.repository.storage.Asset;
+import org.sonatype.nexus.repository.storage.Component;
+import org.sonatype.nexus.repository.storage.StorageTx;
+import org.sonatype.repository.conan.internal.metadata.ConanInfo;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConanFacetUtilsTest
+    extends TestSupport
+{
+  private static final String V1_PACKAGES = "/v1/conans/vthiery/jsonformoderncpp/2.1.1/stable/packages/";
+
+  private static final String V2_PACKAGES =
+      "/v2/conans/jsonformoderncpp/2.1.1/vthiery/stable/revisions/f5fe4ba5a0ad49a2bd4f2a4fd5fbc9c7/packages/";
+
+  @Mock
+  private StorageTx tx;
+
+  @Mock
+  private Component component;
+
+  @Before
+  public void setUp() {
+    List<Asset> assets = Arrays.asList(
+        asset(V1_PACKAGES + "sha1/conaninfo.txt", "Linux", 1),
+        asset(V1_PACKAGES + "sha1/conanmanifest.txt", "Linux", 1),
+        asset(V1_PACKAGES + "sha2/conaninfo.txt", "Windows", 1),
+        asset(V2_PACKAGES + "sha1/revisions/prev1/files/conaninfo.txt", "Macos", 1),
+        asset(V2_PACKAGES + "sha1/revisions/prev2/files/conaninfo.txt", "Linux", 2),
+        asset(V2_PACKAGES + "sha1/revisions/prev3/files/conaninfo.txt", "Windows", 0));
+    when(tx.browseAssets(component)).thenReturn(assets);
+  }
+
+  @Test
+  public void findsPackagesOfRecipe() throws Exception {
+    Map<String, ConanInfo> packages = ConanFacetUtils.findPackages(tx, component, V1_PACKAGES, "/conaninfo.txt");
+
+    assertThat(packages.keySet(), containsInAnyOrder("sha1", "sha2"));
+    assertThat(os(packages.get("sha1")), is("Linux"));
+    assertThat(os(packages.get("sha2")), is("Windows"));
+  }
+
+  @Test
+  public void findsLatestPackageRevisionOfRecipeRevision() throws Exception {
+    Map<String, ConanInfo> packages = ConanFacetUtils.findPackages(tx, component, V2_PACKAGES, "/files/conaninfo.txt");
+
+    assertThat(packages.keySet(), containsInAnyOrder("sha1"));
+    assertThat(os(packages.get("sha1")), is("Linux"));
+  }
+
+  private Asset asset(final String name, final String os, final int created) {
+    Asset asset = mock(Asset.class);
+    BlobRef blobRef = mock(BlobRef.class);
+    Blob blob = mock(Blob.class);
+    when(asset.name()).thenReturn(name);
+    when(asset.requireBlobRef()).thenReturn(blobRef);
+    when(asset.blobCreated()).thenReturn(new DateTime(created * 1000L));
+    when(tx.requireBlob(blobRef)).thenReturn(blob);
+    when(blob.getInputStream()).thenAnswer(invocation ->
+        new ByteArrayInputStream(("[settings]\n    os=" + os + "\n").getBytes(UTF_8)));
+    return asset;
+  }
+
+  private static Object os(final ConanInfo info) {
+    return ((Map<?, ?>) info.getAttribute("settings")).get("os");
+  }
+}
@@ -0,0 +1,74 @@
+package org.sonatype.repository.conan.internal.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Random;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+import org.sonatype.nexus.repository.storage.StorageFacet;
+import org.sonatype.nexus.repository.storage.TempBlob;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.MD5;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA1;
+
+public class ConanHashingTest
+    extends TestSupport
+{
+  @Mock
+  private StorageFacet storageFacet;
+
+  @Mock
+  private BlobStore blobStore;
+
+  @Mock
+  private Blob blob;
+
+  private final ConanHashing underTest = new ConanHashing("sha1,md5", 1024, 256, 2);
+
+  private byte[] read;
+
+  @Before
+  public void setUp() {
+    when(storageFacet.blobStore()).thenReturn(blobStore);
+    when(storageFacet.createTempBlob(any(InputStream.class), any(Iterable.class))).thenAnswer(invocation -> {
+      read = ByteStreams.toByteArray((InputStream) invocation.getArguments()[0]);
+      return new TempBlob(blob, Collections.emptyMap(), true, blobStore);
+    });
+  }
+
+  @Test
+  public void smallContentIsHashedByTheStorageFacet() throws Exception {
+    underTest.createTempBlob(storageFacet, new ByteArrayInputStream(new byte[16]), 16);
+
+    verify(storageFacet).createTempBlob(any(InputStream.class), eq(underTest.getAlgorithms()));
+  }
+
+  @Test
+  public void largeContentIsHashedInParallelWhileTheStorageFacetStoresIt() throws Exception {
+    byte[] content = new byte[10000];
+    new Random(1).nextBytes(content);
+
+    TempBlob tempBlob = underTest.createTempBlob(storageFacet, new ByteArrayInputStream(content), content.length);
+
+    assertThat(read, is(content));
+    assertThat(tempBlob.getBlob(), is(blob));
+    assertThat(tempBlob.getHashes().get(SHA1), is(SHA1.function().hashBytes(content)));
+    assertThat(tempBlob.getHashes().get(MD5), is(MD5.function().hashBytes(content)));
+    verify(storageFacet).createTempBlob(any(InputStream.class), eq(Collections.<HashAlgorithm>emptyList()));
+  }
+}
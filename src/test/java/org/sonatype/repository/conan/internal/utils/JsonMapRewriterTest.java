@@ -0,0 +1,140 @@
+package org.sonatype.repository.conan.internal.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.sonatype.repository.conan.internal.utils.JsonMapRewriter.find;
+import static org.sonatype.repository.conan.internal.utils.JsonMapRewriter.rewrite;
+import static org.sonatype.repository.conan.internal.utils.JsonMapRewriter.rewriting;
+import static org.sonatype.repository.conan.internal.utils.JsonMapRewriter.target;
+
+public class JsonMapRewriterTest
+    extends TestSupport
+{
+  private static final String UPLOAD_URLS = "{\"conanmanifest.txt\":16,\"conanfile.py\":68,\"conan_export.tgz\":null}";
+
+  @Test
+  public void rewritesEveryTargetInOrderFromOnePass() throws Exception {
+    ByteArrayOutputStream keys = new ByteArrayOutputStream();
+    ByteArrayOutputStream values = new ByteArrayOutputStream();
+
+    rewrite(json(UPLOAD_URLS),
+        target(keys, (key, value) -> "/path/" + key),
+        target(values, (key, value) -> value));
+
+    assertThat(keys.toString("UTF-8"), is("{\"conanmanifest.txt\":\"/path/conanmanifest.txt\","
+        + "\"conanfile.py\":\"/path/conanfile.py\",\"conan_export.tgz\":\"/path/conan_export.tgz\"}"));
+    assertThat(values.toString("UTF-8"), is("{\"conanmanifest.txt\":\"16\",\"conanfile.py\":\"68\","
+        + "\"conan_export.tgz\":null}"));
+  }
+
+  @Test
+  public void escapesKeysAndValues() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    rewrite(json("{\"a\\\"b\":\"c\\u00e9\"}"), target(out, (key, value) -> key + value));
+
+    assertThat(new String(out.toByteArray(), UTF_8), is("{\"a\\\"b\":\"a\\\"bcé\"}"));
+  }
+
+  @Test
+  public void leavesStreamsOpen() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream() {
+      @Override
+      public void close() {
+        throw new AssertionError("closed");
+      }
+    };
+
+    rewrite(json("{}"), target(out, (key, value) -> value));
+
+    assertThat(out.toString("UTF-8"), is("{}"));
+  }
+
+  @Test
+  public void rewritingStreamReadsAsMuchAsItWrites() throws Exception {
+    StringBuilder json = new StringBuilder("{");
+    for (int i = 0; i < 2000; i++) {
+      json.append(i == 0 ? "" : ",").append("\"file").append(i).append("\":").append(i);
+    }
+    String input = json.append('}').toString();
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    rewrite(json(input), target(expected, (key, value) -> "/path/" + key));
+    CountingInputStream in = new CountingInputStream(json(input));
+
+    try (InputStream rewritten = rewriting(in, (key, value) -> "/path/" + key)) {
+      assertThat(rewritten.read(), is((int) '{'));
+      assertThat(in.read < input.length(), is(true));
+      assertThat(new String(ByteStreams.toByteArray(rewritten), UTF_8), is(expected.toString("UTF-8").substring(1)));
+    }
+    assertThat(in.closed, is(true));
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void rewritingRejectsArraysRightAway() throws IOException {
+    rewriting(json("[\"conanfile.py\"]"), (key, value) -> value);
+  }
+
+  @Test
+  public void findsValue() throws Exception {
+    assertThat(find(json(UPLOAD_URLS), "conanfile.py"), is("68"));
+    assertThat(find(json(UPLOAD_URLS), "conan_package.tgz"), is(nullValue()));
+  }
+
+  @Test
+  public void findStopsAtKey() throws Exception {
+    assertThat(find(json("{\"conanfile.py\":\"url\",\"truncated"), "conanfile.py"), is("url"));
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void rejectsNestedValues() throws IOException {
+    rewrite(json("{\"conanfile.py\":{\"size\":68}}"), target(new ByteArrayOutputStream(), (key, value) -> value));
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void rejectsArrays() throws IOException {
+    find(json("[\"conanfile.py\"]"), "conanfile.py");
+  }
+
+  private static InputStream json(final String json) {
+    return new ByteArrayInputStream(json.getBytes(UTF_8));
+  }
+
+  private static class CountingInputStream
+      extends FilterInputStream
+  {
+    private int read;
+
+    private boolean closed;
+
+    CountingInputStream(final InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      int n = super.read(b, off, len);
+      read += Math.max(n, 0);
+      return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+      super.close();
+    }
+  }
+}
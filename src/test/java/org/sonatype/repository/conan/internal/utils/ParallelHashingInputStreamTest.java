@@ -0,0 +1,92 @@
+package org.sonatype.repository.conan.internal.utils;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.MD5;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA1;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA512;
+
+public class ParallelHashingInputStreamTest
+    extends TestSupport
+{
+  private static final List<HashAlgorithm> ALGORITHMS = ImmutableList.of(SHA256, SHA1, SHA512, MD5);
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void hashesMatchSequentialDigests() throws Exception {
+    byte[] content = new byte[1_000_003];
+    new Random(42).nextBytes(content);
+
+    ParallelHashingInputStream underTest =
+        new ParallelHashingInputStream(ALGORITHMS, new ByteArrayInputStream(content), executor, 4096, 3);
+    ByteStreams.exhaust(underTest);
+
+    assertHashes(underTest.hashes(), content);
+    assertThat(underTest.count(), is((long) content.length));
+  }
+
+  @Test
+  public void singleByteReadsAreHashed() throws Exception {
+    byte[] content = "conan_package.tgz".getBytes();
+
+    ParallelHashingInputStream underTest =
+        new ParallelHashingInputStream(ALGORITHMS, new ByteArrayInputStream(content), executor, 5, 1);
+    while (underTest.read() != -1) {
+      // consume
+    }
+
+    assertHashes(underTest.hashes(), content);
+  }
+
+  @Test
+  public void emptyContentIsHashed() throws Exception {
+    ParallelHashingInputStream underTest =
+        new ParallelHashingInputStream(ALGORITHMS, new ByteArrayInputStream(new byte[0]), executor, 16, 1);
+    ByteStreams.exhaust(underTest);
+
+    assertHashes(underTest.hashes(), new byte[0]);
+  }
+
+  @Test
+  public void requiredAlgorithmsAreAlwaysIncluded() {
+    assertThat(ConanHashing.parseAlgorithms("SHA256"), contains(SHA1, MD5, SHA256));
+    assertThat(ConanHashing.parseAlgorithms(""), contains(SHA1, MD5));
+  }
+
+  private static void assertHashes(final Map<HashAlgorithm, HashCode> actual, final byte[] content) {
+    assertThat(actual.keySet(), contains(ALGORITHMS.toArray()));
+    for (HashAlgorithm algorithm : ALGORITHMS) {
+      assertThat(algorithm.name(), actual.get(algorithm), is(algorithm.function().hashBytes(content)));
+    }
+  }
+}